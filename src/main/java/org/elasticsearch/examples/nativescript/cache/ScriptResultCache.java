@@ -0,0 +1,179 @@
+package org.elasticsearch.examples.nativescript.cache;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.Weigher;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.SegmentReaderUtils;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.MemorySizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Node level cache of the values computed by deterministic scripts for all documents of a segment.
+ * <p/>
+ * Scripts like <code>is_prime</code>, <code>popularity</code> or <code>random</code> with a salt only depend on
+ * the document and the parameters of the script, and segments never change, so the values of a segment can be
+ * computed once and read from an array by the following searches with the same parameters. The values are stored
+ * as a {@link FixedBitSet}, a <code>long[]</code> or a <code>float[]</code>, keyed by the core key of the segment
+ * and the canonical form of the script parameters.
+ * <p/>
+ * The size of the cache is bounded by <code>examples.nativescript.script_cache.size</code>, either a size or a
+ * percentage of the heap (1% by default), the least recently used values are evicted first. The values of a
+ * segment are removed when the segment is closed.
+ */
+public class ScriptResultCache extends AbstractComponent implements SegmentReader.CoreClosedListener {
+
+    private final Cache<Key, Object> cache;
+
+    private final Set<Object> registeredCores = ConcurrentCollections.newConcurrentSet();
+
+    @Inject
+    public ScriptResultCache(Settings settings) {
+        super(settings);
+        long sizeInBytes = MemorySizeValue.parseBytesSizeValueOrHeapRatio(
+                settings.get("examples.nativescript.script_cache.size", "1%")).bytes();
+        if (sizeInBytes > ByteSizeValue.MAX_GUAVA_CACHE_SIZE.bytes()) {
+            sizeInBytes = ByteSizeValue.MAX_GUAVA_CACHE_SIZE.bytes();
+        }
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(sizeInBytes)
+                .weigher(new ValuesWeigher())
+                .build();
+        logger.debug("using script result cache with size [{}]", new ByteSizeValue(sizeInBytes));
+    }
+
+    /**
+     * Returns the cached values of the script for the segment, computing them with the loader if they are not
+     * cached yet. Concurrent searches for the same values wait for a single computation.
+     *
+     * @param scriptKey the canonical key of the script, see {@link #scriptKey(String, Map)}
+     * @param loader    computes the values of all documents of the segment
+     */
+    public Object values(AtomicReader reader, String scriptKey, Callable<Object> loader) throws Exception {
+        Object coreKey = reader.getCoreCacheKey();
+        if (!registeredCores.contains(coreKey)) {
+            if (!SegmentReaderUtils.registerCoreListener(reader, this)) {
+                // We wouldn't be notified when the reader is closed, don't cache
+                return loader.call();
+            }
+            registeredCores.add(coreKey);
+        }
+        try {
+            return cache.get(new Key(coreKey, scriptKey), loader);
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        } catch (UncheckedExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    @Override
+    public void onClose(Object ownerCoreCacheKey) {
+        registeredCores.remove(ownerCoreCacheKey);
+        // Segments are closed after merges, which are rare compared to searches, so a scan is cheaper than keeping
+        // an index of the keys of every segment
+        for (Iterator<Key> it = cache.asMap().keySet().iterator(); it.hasNext(); ) {
+            if (it.next().coreKey == ownerCoreCacheKey) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of cached values
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Returns a key that is the same for all scripts with the given name and equal parameters, regardless of the
+     * order of the parameters in the request
+     */
+    public static String scriptKey(String script, Map<String, Object> params) {
+        StringBuilder key = new StringBuilder(script);
+        appendCanonical(key, params);
+        return key.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendCanonical(StringBuilder key, Object value) {
+        if (value instanceof Map) {
+            key.append('{');
+            for (Map.Entry<String, Object> entry : new TreeMap<String, Object>((Map<String, Object>) value).entrySet()) {
+                key.append(entry.getKey()).append('=');
+                appendCanonical(key, entry.getValue());
+                key.append(',');
+            }
+            key.append('}');
+        } else if (value instanceof List) {
+            key.append('[');
+            for (Object element : (List<?>) value) {
+                appendCanonical(key, element);
+                key.append(',');
+            }
+            key.append(']');
+        } else {
+            key.append(value);
+        }
+    }
+
+    private static class Key {
+
+        private final Object coreKey;
+
+        private final String scriptKey;
+
+        private Key(Object coreKey, String scriptKey) {
+            this.coreKey = coreKey;
+            this.scriptKey = scriptKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return coreKey == key.coreKey && scriptKey.equals(key.scriptKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(coreKey) + scriptKey.hashCode();
+        }
+    }
+
+    private static class ValuesWeigher implements Weigher<Key, Object> {
+
+        @Override
+        public int weigh(Key key, Object values) {
+            long bytes;
+            if (values instanceof FixedBitSet) {
+                bytes = RamUsageEstimator.sizeOf(((FixedBitSet) values).getBits());
+            } else if (values instanceof long[]) {
+                bytes = RamUsageEstimator.sizeOf((long[]) values);
+            } else if (values instanceof float[]) {
+                bytes = RamUsageEstimator.sizeOf((float[]) values);
+            } else {
+                bytes = RamUsageEstimator.NUM_BYTES_OBJECT_HEADER;
+            }
+            return (int) Math.min(Integer.MAX_VALUE, bytes + key.scriptKey.length() * 2);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.elasticsearch.examples.nativescript.cache;
+
+import org.elasticsearch.common.inject.AbstractModule;
+
+/**
+ * Binds the node level {@link ScriptResultCache}, so the cached values are shared by all searches of the node.
+ */
+public class ScriptResultCacheModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+        bind(ScriptResultCache.class).asEagerSingleton();
+    }
+}
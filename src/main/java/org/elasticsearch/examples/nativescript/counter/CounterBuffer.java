@@ -0,0 +1,444 @@
+package org.elasticsearch.examples.nativescript.counter;
+
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.xcontent.ToXContent;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.examples.nativescript.script.UpdaterScript;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Node level buffer that accumulates counter increments (for example clicks) in memory and periodically flushes
+ * them as a single bulk of partial updates. All increments of the same document that were received between two
+ * flushes are coalesced into a single update executed by the {@link UpdaterScript} <code>increment</code> action.
+ * <p/>
+ * Increments are stored in a concurrent map (striped into <code>examples.nativescript.counter.concurrency_level</code>
+ * segments) of atomic counters keyed by index, type, id and field, so recording an increment never takes a lock
+ * once the key is present in the map. The buffer is flushed every
+ * <code>examples.nativescript.counter.flush_interval</code> (1s by default) or as soon as
+ * <code>examples.nativescript.counter.flush_size</code> counters (1000 by default) have pending increments.
+ * <p/>
+ * The increments of documents that fail to update are added back to the buffer and sent again with the next flush,
+ * up to <code>examples.nativescript.counter.max_retries</code> times (3 by default), then they are dropped and
+ * counted as failed. When the node stops, the buffer waits up to
+ * <code>examples.nativescript.counter.shutdown_timeout</code> (10s by default) for the running flush and for the
+ * flush of the remaining increments.
+ */
+public class CounterBuffer extends AbstractLifecycleComponent<CounterBuffer> {
+
+    /**
+     * Marks a counter that was removed from the map. Increments that see this value have to retry with a new
+     * counter, so no increment is lost when an idle counter is removed concurrently.
+     */
+    private static final long RETIRED = Long.MIN_VALUE;
+
+    private final Client client;
+
+    private final ThreadPool threadPool;
+
+    private final TimeValue flushInterval;
+
+    private final int flushSize;
+
+    private final int retryOnConflict;
+
+    private final int maxRetries;
+
+    private final TimeValue shutdownTimeout;
+
+    private final ConcurrentHashMap<CounterKey, AtomicLong> counters;
+
+    private final AtomicLong pendingCounters = new AtomicLong();
+
+    // Held by the running flush until its bulk request completes
+    private final Semaphore flushing = new Semaphore(1);
+
+    // Number of times the increments of a document failed to update
+    private final ConcurrentHashMap<DocKey, Integer> retries = new ConcurrentHashMap<DocKey, Integer>();
+
+    private final CounterMetric receivedEvents = new CounterMetric();
+
+    private final CounterMetric flushes = new CounterMetric();
+
+    private final CounterMetric flushedCounters = new CounterMetric();
+
+    private final CounterMetric flushedDocs = new CounterMetric();
+
+    private final CounterMetric retriedDocs = new CounterMetric();
+
+    private final CounterMetric failedDocs = new CounterMetric();
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    private volatile ScheduledFuture<?> scheduledFlush;
+
+    @Inject
+    public CounterBuffer(Settings settings, Client client, ThreadPool threadPool) {
+        super(settings);
+        this.client = client;
+        this.threadPool = threadPool;
+        this.flushInterval = settings.getAsTime("examples.nativescript.counter.flush_interval", TimeValue.timeValueSeconds(1));
+        this.flushSize = settings.getAsInt("examples.nativescript.counter.flush_size", 1000);
+        this.retryOnConflict = settings.getAsInt("examples.nativescript.counter.retry_on_conflict", 3);
+        this.maxRetries = settings.getAsInt("examples.nativescript.counter.max_retries", 3);
+        this.shutdownTimeout = settings.getAsTime("examples.nativescript.counter.shutdown_timeout", TimeValue.timeValueSeconds(10));
+        this.counters = new ConcurrentHashMap<CounterKey, AtomicLong>(1024, 0.75f,
+                settings.getAsInt("examples.nativescript.counter.concurrency_level", 64));
+    }
+
+    @Override
+    protected void doStart() throws ElasticsearchException {
+        scheduledFlush = threadPool.scheduleWithFixedDelay(flushTask, flushInterval);
+    }
+
+    @Override
+    protected void doStop() throws ElasticsearchException {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+        }
+        try {
+            // Wait for the running flush, flush the remaining increments and wait for their bulk request
+            if (flushing.tryAcquire(shutdownTimeout.millis(), TimeUnit.MILLISECONDS)) {
+                doFlush();
+                if (flushing.tryAcquire(shutdownTimeout.millis(), TimeUnit.MILLISECONDS)) {
+                    flushing.release();
+                    return;
+                }
+            }
+            logger.warn("timed out waiting for the flush of [{}] counters", pendingCounters.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected void doClose() throws ElasticsearchException {
+    }
+
+    /**
+     * Adds delta to the counter of the given field of the given document
+     */
+    public void increment(String index, String type, String id, String field, long delta) {
+        receivedEvents.inc();
+        if (delta == 0) {
+            return;
+        }
+        add(new CounterKey(index, type, id, field), delta);
+    }
+
+    private void add(CounterKey key, long delta) {
+        while (true) {
+            AtomicLong counter = counters.get(key);
+            if (counter == null) {
+                counter = new AtomicLong();
+                AtomicLong existing = counters.putIfAbsent(key, counter);
+                if (existing != null) {
+                    counter = existing;
+                }
+            }
+            long current = counter.get();
+            while (current != RETIRED) {
+                long updated = current + delta;
+                if (counter.compareAndSet(current, updated)) {
+                    if (current == 0) {
+                        if (pendingCounters.incrementAndGet() >= flushSize && flushing.availablePermits() > 0) {
+                            threadPool.generic().execute(flushTask);
+                        }
+                    } else if (updated == 0) {
+                        pendingCounters.decrementAndGet();
+                    }
+                    return;
+                }
+                current = counter.get();
+            }
+            // The counter was removed by flush, help with removal and retry with a new one
+            counters.remove(key, counter);
+        }
+    }
+
+    /**
+     * Sends all pending increments as a single bulk request. Only one flush can run at a time, this method
+     * returns immediately if another flush is in progress.
+     */
+    public void flush() {
+        if (flushing.tryAcquire()) {
+            doFlush();
+        }
+    }
+
+    /**
+     * Sends the pending increments, the caller holds the flush permit which is released once the bulk completes
+     */
+    private void doFlush() {
+        final Map<DocKey, Map<String, Object>> docs = new HashMap<DocKey, Map<String, Object>>();
+        try {
+            for (Map.Entry<CounterKey, AtomicLong> entry : counters.entrySet()) {
+                AtomicLong counter = entry.getValue();
+                long delta = counter.getAndSet(0);
+                if (delta == 0) {
+                    // The counter didn't change since the last flush - remove it unless it's incremented right now
+                    if (counter.compareAndSet(0, RETIRED)) {
+                        counters.remove(entry.getKey(), counter);
+                    }
+                    continue;
+                }
+                pendingCounters.decrementAndGet();
+                CounterKey key = entry.getKey();
+                DocKey docKey = new DocKey(key.index, key.type, key.id);
+                Map<String, Object> fields = docs.get(docKey);
+                if (fields == null) {
+                    fields = new HashMap<String, Object>();
+                    docs.put(docKey, fields);
+                }
+                fields.put(key.field, delta);
+                flushedCounters.inc();
+            }
+        } catch (RuntimeException ex) {
+            flushing.release();
+            throw ex;
+        }
+        if (docs.isEmpty()) {
+            flushing.release();
+            return;
+        }
+        BulkRequestBuilder bulk = client.prepareBulk();
+        // The items of the bulk response are in the order of the requests
+        final List<DocKey> docKeys = new ArrayList<DocKey>(docs.keySet());
+        for (Map.Entry<DocKey, Map<String, Object>> doc : docs.entrySet()) {
+            DocKey docKey = doc.getKey();
+            bulk.add(client.prepareUpdate(docKey.index, docKey.type, docKey.id)
+                    .setScript(UpdaterScript.SCRIPT_NAME)
+                    .setScriptLang("native")
+                    .addScriptParam("increment", doc.getValue())
+                    .setRetryOnConflict(retryOnConflict));
+        }
+        flushes.inc();
+        try {
+            bulk.execute(new ActionListener<BulkResponse>() {
+                @Override
+                public void onResponse(BulkResponse response) {
+                    try {
+                        for (BulkItemResponse item : response.getItems()) {
+                            DocKey docKey = docKeys.get(item.getItemId());
+                            if (item.isFailed()) {
+                                if (logger.isDebugEnabled()) {
+                                    logger.debug("failed to update counters of [{}]/[{}]/[{}]: {}", item.getIndex(), item.getType(), item.getId(), item.getFailureMessage());
+                                }
+                                retry(docKey, docs.get(docKey));
+                            } else {
+                                retries.remove(docKey);
+                                flushedDocs.inc();
+                            }
+                        }
+                    } finally {
+                        flushing.release();
+                    }
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    logger.warn("failed to flush counters of [{}] documents", e, docs.size());
+                    try {
+                        for (Map.Entry<DocKey, Map<String, Object>> doc : docs.entrySet()) {
+                            retry(doc.getKey(), doc.getValue());
+                        }
+                    } finally {
+                        flushing.release();
+                    }
+                }
+            });
+        } catch (RuntimeException ex) {
+            flushing.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Adds the increments of a document that failed to update back to the buffer, unless they were retried too often.
+     * They are added while the flush permit is held, so they are sent by the next flush and not right away.
+     */
+    private void retry(DocKey docKey, Map<String, Object> fields) {
+        Integer failures = retries.get(docKey);
+        failures = failures == null ? 1 : failures + 1;
+        if (failures > maxRetries) {
+            retries.remove(docKey);
+            failedDocs.inc();
+            logger.warn("dropping the counters of [{}]/[{}]/[{}] after [{}] failed updates", docKey.index, docKey.type, docKey.id, failures);
+            return;
+        }
+        retries.put(docKey, failures);
+        retriedDocs.inc();
+        for (Map.Entry<String, Object> field : fields.entrySet()) {
+            add(new CounterKey(docKey.index, docKey.type, docKey.id, field.getKey()), (Long) field.getValue());
+        }
+    }
+
+    /**
+     * Returns the statistics of the buffer
+     */
+    public Stats stats() {
+        return new Stats(receivedEvents.count(), pendingCounters.get(), flushes.count(), flushedCounters.count(),
+                flushedDocs.count(), retriedDocs.count(), failedDocs.count());
+    }
+
+    /**
+     * Buffer statistics
+     */
+    public static class Stats implements ToXContent {
+        private final long receivedEvents;
+        private final long bufferedCounters;
+        private final long flushes;
+        private final long flushedCounters;
+        private final long flushedDocs;
+        private final long retriedDocs;
+        private final long failedDocs;
+
+        public Stats(long receivedEvents, long bufferedCounters, long flushes, long flushedCounters, long flushedDocs,
+                     long retriedDocs, long failedDocs) {
+            this.receivedEvents = receivedEvents;
+            this.bufferedCounters = bufferedCounters;
+            this.flushes = flushes;
+            this.flushedCounters = flushedCounters;
+            this.flushedDocs = flushedDocs;
+            this.retriedDocs = retriedDocs;
+            this.failedDocs = failedDocs;
+        }
+
+        /**
+         * Number of increments received by the buffer
+         */
+        public long getReceivedEvents() {
+            return receivedEvents;
+        }
+
+        /**
+         * Number of counters that have pending increments
+         */
+        public long getBufferedCounters() {
+            return bufferedCounters;
+        }
+
+        /**
+         * Number of bulk requests sent by the buffer
+         */
+        public long getFlushes() {
+            return flushes;
+        }
+
+        /**
+         * Number of field counters sent in bulk requests
+         */
+        public long getFlushedCounters() {
+            return flushedCounters;
+        }
+
+        /**
+         * Number of documents successfully updated
+         */
+        public long getFlushedDocs() {
+            return flushedDocs;
+        }
+
+        /**
+         * Number of failed document updates whose increments were added back to the buffer
+         */
+        public long getRetriedDocs() {
+            return retriedDocs;
+        }
+
+        /**
+         * Number of documents whose increments were dropped after too many failed updates
+         */
+        public long getFailedDocs() {
+            return failedDocs;
+        }
+
+        @Override
+        public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+            builder.startObject("counter");
+            builder.field("received_events", receivedEvents);
+            builder.field("buffered_counters", bufferedCounters);
+            builder.field("flushes", flushes);
+            builder.field("flushed_counters", flushedCounters);
+            builder.field("flushed_docs", flushedDocs);
+            builder.field("retried_docs", retriedDocs);
+            builder.field("failed_docs", failedDocs);
+            builder.endObject();
+            return builder;
+        }
+    }
+
+    private static class DocKey {
+        final String index;
+        final String type;
+        final String id;
+
+        DocKey(String index, String type, String id) {
+            this.index = index;
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            DocKey docKey = (DocKey) o;
+            return index.equals(docKey.index) && type.equals(docKey.type) && id.equals(docKey.id);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = index.hashCode();
+            result = 31 * result + type.hashCode();
+            result = 31 * result + id.hashCode();
+            return result;
+        }
+    }
+
+    private static class CounterKey extends DocKey {
+        final String field;
+        final int hashCode;
+
+        CounterKey(String index, String type, String id, String field) {
+            super(index, type, id);
+            this.field = field;
+            this.hashCode = 31 * super.hashCode() + field.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return super.equals(o) && field.equals(((CounterKey) o).field);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
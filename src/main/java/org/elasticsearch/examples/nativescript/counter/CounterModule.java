@@ -0,0 +1,14 @@
+package org.elasticsearch.examples.nativescript.counter;
+
+import org.elasticsearch.common.inject.AbstractModule;
+
+/**
+ * Binds the node level {@link CounterBuffer}, so the same buffer is shared by all REST requests.
+ */
+public class CounterModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+        bind(CounterBuffer.class).asEagerSingleton();
+    }
+}
@@ -0,0 +1,160 @@
+package org.elasticsearch.examples.nativescript.counter;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.rest.BaseRestHandler;
+import org.elasticsearch.rest.BytesRestResponse;
+import org.elasticsearch.rest.RestChannel;
+import org.elasticsearch.rest.RestController;
+import org.elasticsearch.rest.RestHandler;
+import org.elasticsearch.rest.RestRequest;
+
+import java.io.IOException;
+
+import static org.elasticsearch.rest.RestRequest.Method.GET;
+import static org.elasticsearch.rest.RestRequest.Method.POST;
+import static org.elasticsearch.rest.RestStatus.BAD_REQUEST;
+import static org.elasticsearch.rest.RestStatus.OK;
+
+/**
+ * REST endpoint that records counter increments in the {@link CounterBuffer}.
+ * <p/>
+ * A single increment can be recorded using <code>POST /{index}/{type}/{id}/_counter/{field}?value=1</code>.
+ * Several increments can be sent as a sequence of JSON objects in the body of
+ * <code>POST /_counter</code>, <code>POST /{index}/_counter</code> or <code>POST /{index}/{type}/_counter</code>:
+ * <pre>
+ * {"index": "test", "type": "type", "id": "1", "field": "clicks", "value": 1}
+ * {"id": "2", "field": "clicks"}
+ * </pre>
+ * Index and type default to the index and type in the URL, value defaults to 1.
+ * <p/>
+ * The buffer statistics are available at <code>GET /_counter/stats</code>, and the buffer can be flushed immediately
+ * using <code>POST /_counter/_flush</code>.
+ */
+public class RestCounterAction extends BaseRestHandler {
+
+    private final CounterBuffer counterBuffer;
+
+    @Inject
+    public RestCounterAction(Settings settings, Client client, RestController controller, CounterBuffer counterBuffer) {
+        super(settings, client);
+        this.counterBuffer = counterBuffer;
+        controller.registerHandler(POST, "/_counter", this);
+        controller.registerHandler(POST, "/{index}/_counter", this);
+        controller.registerHandler(POST, "/{index}/{type}/_counter", this);
+        controller.registerHandler(POST, "/{index}/{type}/{id}/_counter/{field}", this);
+        controller.registerHandler(GET, "/_counter/stats", new StatsHandler());
+        controller.registerHandler(POST, "/_counter/_flush", new FlushHandler());
+    }
+
+    @Override
+    public void handleRequest(RestRequest request, RestChannel channel) {
+        try {
+            int accepted;
+            if (request.hasParam("id")) {
+                counterBuffer.increment(request.param("index"), request.param("type"), request.param("id"),
+                        request.param("field"), request.paramAsLong("value", 1));
+                accepted = 1;
+            } else {
+                accepted = parseEvents(request);
+            }
+            XContentBuilder builder = channel.newBuilder();
+            builder.startObject().field("accepted", accepted).endObject();
+            channel.sendResponse(new BytesRestResponse(OK, builder));
+        } catch (Throwable e) {
+            try {
+                channel.sendResponse(new BytesRestResponse(channel, BAD_REQUEST, e));
+            } catch (IOException e1) {
+                logger.error("Failed to send failure response", e1);
+            }
+        }
+    }
+
+    private int parseEvents(RestRequest request) throws IOException {
+        if (!request.hasContent()) {
+            throw new ElasticsearchIllegalArgumentException("request body is required");
+        }
+        String defaultIndex = request.param("index");
+        String defaultType = request.param("type");
+        int accepted = 0;
+        XContentParser parser = XContentHelper.createParser(request.content());
+        try {
+            XContentParser.Token token;
+            // The body is a sequence of objects - one object per event
+            while ((token = parser.nextToken()) != null) {
+                if (token != XContentParser.Token.START_OBJECT) {
+                    throw new ElasticsearchIllegalArgumentException("malformed counter event, expected an object but found [" + token + "]");
+                }
+                String index = defaultIndex;
+                String type = defaultType;
+                String id = null;
+                String field = null;
+                long value = 1;
+                String currentFieldName = null;
+                while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+                    if (token == XContentParser.Token.FIELD_NAME) {
+                        currentFieldName = parser.currentName();
+                    } else if (token.isValue()) {
+                        if ("index".equals(currentFieldName)) {
+                            index = parser.text();
+                        } else if ("type".equals(currentFieldName)) {
+                            type = parser.text();
+                        } else if ("id".equals(currentFieldName)) {
+                            id = parser.text();
+                        } else if ("field".equals(currentFieldName)) {
+                            field = parser.text();
+                        } else if ("value".equals(currentFieldName)) {
+                            value = parser.longValue();
+                        } else {
+                            throw new ElasticsearchIllegalArgumentException("counter event doesn't support [" + currentFieldName + "]");
+                        }
+                    } else {
+                        throw new ElasticsearchIllegalArgumentException("malformed counter event [" + currentFieldName + "]");
+                    }
+                }
+                if (index == null || type == null || id == null || field == null) {
+                    throw new ElasticsearchIllegalArgumentException("counter event requires index, type, id and field");
+                }
+                counterBuffer.increment(index, type, id, field, value);
+                accepted++;
+            }
+        } finally {
+            parser.close();
+        }
+        return accepted;
+    }
+
+    class StatsHandler implements RestHandler {
+        @Override
+        public void handleRequest(RestRequest request, RestChannel channel) {
+            try {
+                XContentBuilder builder = channel.newBuilder();
+                builder.startObject();
+                counterBuffer.stats().toXContent(builder, request);
+                builder.endObject();
+                channel.sendResponse(new BytesRestResponse(OK, builder));
+            } catch (IOException e) {
+                logger.error("Failed to send counter stats", e);
+            }
+        }
+    }
+
+    class FlushHandler implements RestHandler {
+        @Override
+        public void handleRequest(RestRequest request, RestChannel channel) {
+            counterBuffer.flush();
+            try {
+                XContentBuilder builder = channel.newBuilder();
+                builder.startObject().field("acknowledged", true).endObject();
+                channel.sendResponse(new BytesRestResponse(OK, builder));
+            } catch (IOException e) {
+                logger.error("Failed to send flush response", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.elasticsearch.examples.nativescript.function;
+
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.lucene.search.function.ScoreFunction;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.examples.nativescript.script.CosineSimilarityScoreScript;
+import org.elasticsearch.examples.nativescript.script.ShardTermStatistics;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParsingException;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionParser;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Native function_score function that scores documents with cosine similarity, the same way as
+ * {@link CosineSimilarityScoreScript}:
+ * <pre>
+ *     {
+ *         "cosine_sim_score": {
+ *             "field": "text",
+ *             "terms": ["foo", "bar"],
+ *             "weights": [1.0, 1.0]
+ *         }
+ *     }
+ * </pre>
+ */
+public class CosineSimilarityScoreFunction extends TermScoreFunction {
+
+    public static class Parser implements ScoreFunctionParser {
+
+        public static final String[] NAMES = {"cosine_sim_score", "cosineSimScore"};
+
+        @Inject
+        public Parser() {
+        }
+
+        @Override
+        public String[] getNames() {
+            return NAMES;
+        }
+
+        @Override
+        public ScoreFunction parse(QueryParseContext parseContext, XContentParser parser) throws IOException, QueryParsingException {
+            Map<String, Object> params = parser.map();
+            String field = parseField(parseContext, params, NAMES[0]);
+            BytesRef[] terms = parseTerms(parseContext, params, NAMES[0]);
+            Object weightsParam = params.get("weights");
+            if (!(weightsParam instanceof List)) {
+                throw new QueryParsingException(parseContext.index(), "[" + NAMES[0] + "] required field 'weights' missing");
+            }
+            List<?> weightList = (List<?>) weightsParam;
+            if (weightList.size() != terms.length) {
+                throw new QueryParsingException(parseContext.index(), "[" + NAMES[0] + "] terms and weights array must have same length");
+            }
+            double[] weights = new double[terms.length];
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = XContentMapValues.nodeDoubleValue(weightList.get(i));
+            }
+            return new CosineSimilarityScoreFunction(field, terms, weights);
+        }
+    }
+
+    private final double[] weights;
+
+    private final double queryNorm;
+
+    public CosineSimilarityScoreFunction(String field, BytesRef[] terms, double[] weights) {
+        super(field, terms);
+        this.weights = weights;
+        double queryWeightSum = 0;
+        for (double weight : weights) {
+            queryWeightSum += weight * weight;
+        }
+        this.queryNorm = Math.sqrt(queryWeightSum);
+    }
+
+    @Override
+    protected void collectStatistics(ShardTermStatistics statistics) {
+        // Only term frequencies are used
+    }
+
+    @Override
+    public double score(int docId, float subQueryScore) {
+        double score = 0;
+        double docWeightSum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            int tf = tf(i, docId);
+            score += tf * weights[i];
+            docWeightSum += tf * tf;
+        }
+        if (docWeightSum == 0) {
+            return 0;
+        }
+        return score / (Math.sqrt(docWeightSum) * queryNorm);
+    }
+
+    @Override
+    public Explanation explainScore(int docId, Explanation subQueryExpl) {
+        Explanation exp = new Explanation(CombineFunction.toFloat(score(docId, subQueryExpl.getValue())),
+                "cosine similarity score function of field [" + field + "]");
+        exp.addDetail(subQueryExpl);
+        return exp;
+    }
+}
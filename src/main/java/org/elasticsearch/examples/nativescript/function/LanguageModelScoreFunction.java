@@ -0,0 +1,127 @@
+package org.elasticsearch.examples.nativescript.function;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.lucene.search.function.ScoreFunction;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.examples.nativescript.script.LanguageModelScoreScript;
+import org.elasticsearch.examples.nativescript.script.ShardTermStatistics;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.index.fielddata.LongValues;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParsingException;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionParser;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Native function_score function that scores documents with a language model similarity with linear
+ * interpolation, the same way as {@link LanguageModelScoreScript}:
+ * <pre>
+ *     {
+ *         "language_model_score": {
+ *             "field": "text",
+ *             "terms": ["foo", "bar"],
+ *             "word_count_field": "text.word_count",
+ *             "lambda": 0.9
+ *         }
+ *     }
+ * </pre>
+ */
+public class LanguageModelScoreFunction extends TermScoreFunction {
+
+    public static class Parser implements ScoreFunctionParser {
+
+        public static final String[] NAMES = {"language_model_score", "languageModelScore"};
+
+        @Inject
+        public Parser() {
+        }
+
+        @Override
+        public String[] getNames() {
+            return NAMES;
+        }
+
+        @Override
+        public ScoreFunction parse(QueryParseContext parseContext, XContentParser parser) throws IOException, QueryParsingException {
+            Map<String, Object> params = parser.map();
+            String field = parseField(parseContext, params, NAMES[0]);
+            BytesRef[] terms = parseTerms(parseContext, params, NAMES[0]);
+            String docLengthField = XContentMapValues.nodeStringValue(params.get("word_count_field"), null);
+            if (docLengthField == null || params.get("lambda") == null) {
+                throw new QueryParsingException(parseContext.index(), "[" + NAMES[0] + "] required fields 'word_count_field' or 'lambda' missing");
+            }
+            double lambda = XContentMapValues.nodeDoubleValue(params.get("lambda"));
+            FieldMapper mapper = parseContext.smartNameFieldMapper(docLengthField);
+            if (mapper == null) {
+                throw new QueryParsingException(parseContext.index(), "[" + NAMES[0] + "] unable to find a field mapper for field [" + docLengthField + "]");
+            }
+            IndexFieldData fieldData = parseContext.fieldData().getForField(mapper);
+            if (!(fieldData instanceof IndexNumericFieldData)) {
+                throw new QueryParsingException(parseContext.index(), "[" + NAMES[0] + "] field [" + docLengthField + "] is not numeric");
+            }
+            return new LanguageModelScoreFunction(field, terms, (IndexNumericFieldData) fieldData, lambda);
+        }
+    }
+
+    private final IndexNumericFieldData docLengthFieldData;
+
+    private final double lambda;
+
+    // (1 - lambda) * M_c of each term
+    private final double[] collectionWeights;
+
+    private LongValues docLengths;
+
+    public LanguageModelScoreFunction(String field, BytesRef[] terms, IndexNumericFieldData docLengthFieldData, double lambda) {
+        super(field, terms);
+        this.docLengthFieldData = docLengthFieldData;
+        this.lambda = lambda;
+        this.collectionWeights = new double[terms.length];
+    }
+
+    @Override
+    protected void collectStatistics(ShardTermStatistics statistics) {
+        double T = statistics.sumTotalTermFreq();
+        for (int i = 0; i < terms.length; i++) {
+            // M_c = cf_t / T, see Manning et al., "Information Retrieval", Chapter 12
+            collectionWeights[i] = (1.0 - lambda) * statistics.totalTermFreq(i) / T;
+        }
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) {
+        super.setNextReader(context);
+        docLengths = docLengthFieldData.load(context).getLongValues();
+    }
+
+    @Override
+    public double score(int docId, float subQueryScore) {
+        if (docLengths.setDocument(docId) == 0) {
+            throw new ElasticsearchException("Could not compute language model score, word count field missing.");
+        }
+        double lambdaOverLength = lambda / docLengths.nextValue();
+        double score = 0;
+        for (int i = 0; i < collectionWeights.length; i++) {
+            score += Math.log(collectionWeights[i] + lambdaOverLength * tf(i, docId));
+        }
+        return score;
+    }
+
+    @Override
+    public Explanation explainScore(int docId, Explanation subQueryExpl) {
+        Explanation exp = new Explanation(CombineFunction.toFloat(score(docId, subQueryExpl.getValue())),
+                "language model score function of field [" + field + "]");
+        exp.addDetail(subQueryExpl);
+        return exp;
+    }
+}
@@ -0,0 +1,60 @@
+package org.elasticsearch.examples.nativescript.function;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builder for the native function_score functions registered by the plugin. The parameters are the same as the
+ * parameters of the corresponding native scripts.
+ */
+public class NativeScoreFunctionBuilder implements ScoreFunctionBuilder {
+
+    private final String name;
+
+    private final Map<String, Object> params = new HashMap<String, Object>();
+
+    public NativeScoreFunctionBuilder(String name) {
+        this.name = name;
+    }
+
+    public static NativeScoreFunctionBuilder popularityScore(String field) {
+        return new NativeScoreFunctionBuilder(PopularityScoreFunction.Parser.NAMES[0]).param("field", field);
+    }
+
+    public static NativeScoreFunctionBuilder tfidfScore(String field, String... terms) {
+        return new NativeScoreFunctionBuilder(TFIDFScoreFunction.Parser.NAMES[0]).param("field", field).param("terms", terms);
+    }
+
+    public static NativeScoreFunctionBuilder cosineSimilarityScore(String field, String[] terms, double[] weights) {
+        return new NativeScoreFunctionBuilder(CosineSimilarityScoreFunction.Parser.NAMES[0]).param("field", field)
+                .param("terms", terms).param("weights", weights);
+    }
+
+    public static NativeScoreFunctionBuilder languageModelScore(String field, String wordCountField, double lambda, String... terms) {
+        return new NativeScoreFunctionBuilder(LanguageModelScoreFunction.Parser.NAMES[0]).param("field", field)
+                .param("terms", terms).param("word_count_field", wordCountField).param("lambda", lambda);
+    }
+
+    /**
+     * Sets a function parameter
+     */
+    public NativeScoreFunctionBuilder param(String key, Object value) {
+        params.put(key, value);
+        return this;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.field(name, this.params);
+        return builder;
+    }
+}
@@ -0,0 +1,188 @@
+package org.elasticsearch.examples.nativescript.function;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Explanation;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.lucene.search.function.ScoreFunction;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.examples.nativescript.script.PopularityScoreScriptFactory;
+import org.elasticsearch.examples.nativescript.script.PopularityScoreScriptFactory.BoostFunction;
+import org.elasticsearch.examples.nativescript.script.PopularityScoreScriptFactory.DecayFunction;
+import org.elasticsearch.index.fielddata.DoubleValues;
+import org.elasticsearch.index.fielddata.IndexFieldData;
+import org.elasticsearch.index.fielddata.IndexNumericFieldData;
+import org.elasticsearch.index.fielddata.LongValues;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParsingException;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionParser;
+import org.elasticsearch.script.ScriptException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Native function_score function that calculates the same boost as the
+ * {@link PopularityScoreScriptFactory popularity} script:
+ * <pre>
+ *     {
+ *         "popularity_score": {
+ *             "field": "number",
+ *             "function": "log"
+ *         }
+ *     }
+ * </pre>
+ * The function accepts the same parameters as the script. Unlike the script, the function reads the field data
+ * directly without going through the doc lookup, and returns only the boost, which is combined with the query score
+ * according to the <code>boost_mode</code> of the function_score query (multiply by default).
+ */
+public class PopularityScoreFunction extends ScoreFunction {
+
+    public static class Parser implements ScoreFunctionParser {
+
+        public static final String[] NAMES = {"popularity_score", "popularityScore"};
+
+        @Inject
+        public Parser() {
+        }
+
+        @Override
+        public String[] getNames() {
+            return NAMES;
+        }
+
+        @Override
+        public ScoreFunction parse(QueryParseContext parseContext, XContentParser parser) throws IOException, QueryParsingException {
+            Map<String, Object> params = parser.map();
+            try {
+                BoostFunction function = BoostFunction.parse(params);
+                double missing = XContentMapValues.nodeDoubleValue(params.get("missing"), 0);
+                String[] fields;
+                double[] weights;
+                Object fieldsParam = params.get("fields");
+                if (params.get("field") != null) {
+                    fields = new String[]{XContentMapValues.nodeStringValue(params.get("field"), null)};
+                    weights = new double[]{1};
+                } else if (fieldsParam instanceof Map) {
+                    Map<String, Object> fieldWeights = (Map<String, Object>) fieldsParam;
+                    fields = new String[fieldWeights.size()];
+                    weights = new double[fieldWeights.size()];
+                    int i = 0;
+                    for (Map.Entry<String, Object> entry : fieldWeights.entrySet()) {
+                        fields[i] = entry.getKey();
+                        weights[i] = XContentMapValues.nodeDoubleValue(entry.getValue(), 1);
+                        i++;
+                    }
+                } else if (fieldsParam instanceof List) {
+                    List<?> fieldList = (List<?>) fieldsParam;
+                    fields = new String[fieldList.size()];
+                    weights = new double[fieldList.size()];
+                    for (int i = 0; i < fields.length; i++) {
+                        fields[i] = fieldList.get(i).toString();
+                        weights[i] = 1;
+                    }
+                } else {
+                    throw new QueryParsingException(parseContext.index(), "[" + NAMES[0] + "] required field 'field' missing");
+                }
+                IndexNumericFieldData[] fieldData = new IndexNumericFieldData[fields.length];
+                for (int i = 0; i < fields.length; i++) {
+                    fieldData[i] = numericFieldData(parseContext, fields[i]);
+                }
+                String timestampField = XContentMapValues.nodeStringValue(params.get("timestamp_field"), null);
+                IndexNumericFieldData timestampFieldData = null;
+                DecayFunction decayFunction = null;
+                if (timestampField != null) {
+                    timestampFieldData = numericFieldData(parseContext, timestampField);
+                    decayFunction = DecayFunction.parse(params);
+                }
+                return new PopularityScoreFunction(fields, weights, fieldData, function, missing, timestampFieldData, decayFunction);
+            } catch (ScriptException ex) {
+                throw new QueryParsingException(parseContext.index(), "[" + NAMES[0] + "] " + ex.getMessage());
+            }
+        }
+
+        private static IndexNumericFieldData numericFieldData(QueryParseContext parseContext, String field) {
+            FieldMapper mapper = parseContext.smartNameFieldMapper(field);
+            if (mapper == null) {
+                throw new QueryParsingException(parseContext.index(), "[" + NAMES[0] + "] unable to find a field mapper for field [" + field + "]");
+            }
+            IndexFieldData fieldData = parseContext.fieldData().getForField(mapper);
+            if (!(fieldData instanceof IndexNumericFieldData)) {
+                throw new QueryParsingException(parseContext.index(), "[" + NAMES[0] + "] field [" + field + "] is not numeric");
+            }
+            return (IndexNumericFieldData) fieldData;
+        }
+    }
+
+    private final String[] fields;
+
+    private final double[] weights;
+
+    private final IndexNumericFieldData[] fieldData;
+
+    private final BoostFunction function;
+
+    private final double missing;
+
+    private final IndexNumericFieldData timestampFieldData;
+
+    private final DecayFunction decayFunction;
+
+    private final DoubleValues[] values;
+
+    private LongValues timestamps;
+
+    public PopularityScoreFunction(String[] fields, double[] weights, IndexNumericFieldData[] fieldData, BoostFunction function,
+                                   double missing, IndexNumericFieldData timestampFieldData, DecayFunction decayFunction) {
+        super(CombineFunction.MULT);
+        this.fields = fields;
+        this.weights = weights;
+        this.fieldData = fieldData;
+        this.function = function;
+        this.missing = missing;
+        this.timestampFieldData = timestampFieldData;
+        this.decayFunction = decayFunction;
+        this.values = new DoubleValues[fieldData.length];
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) {
+        for (int i = 0; i < fieldData.length; i++) {
+            values[i] = fieldData[i].load(context).getDoubleValues();
+        }
+        if (timestampFieldData != null) {
+            timestamps = timestampFieldData.load(context).getLongValues();
+        }
+    }
+
+    @Override
+    public double score(int docId, float subQueryScore) {
+        double value = 0;
+        for (int i = 0; i < values.length; i++) {
+            DoubleValues fieldValues = values[i];
+            value += weights[i] * (fieldValues.setDocument(docId) == 0 ? missing : fieldValues.nextValue());
+        }
+        double boost = function.boost(value);
+        if (timestamps != null && timestamps.setDocument(docId) > 0) {
+            boost *= decayFunction.decay(timestamps.nextValue());
+        }
+        return boost;
+    }
+
+    @Override
+    public Explanation explainScore(int docId, Explanation subQueryExpl) {
+        Explanation exp = new Explanation(CombineFunction.toFloat(score(docId, subQueryExpl.getValue())),
+                "popularity score function of fields " + Arrays.toString(fields));
+        exp.addDetail(subQueryExpl);
+        return exp;
+    }
+
+    @Override
+    public String toString() {
+        return "popularity_score" + Arrays.toString(fields);
+    }
+}
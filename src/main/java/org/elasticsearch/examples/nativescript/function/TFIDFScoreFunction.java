@@ -0,0 +1,85 @@
+package org.elasticsearch.examples.nativescript.function;
+
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.lucene.search.function.ScoreFunction;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.examples.nativescript.script.ShardTermStatistics;
+import org.elasticsearch.examples.nativescript.script.TFIDFScoreScript;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParsingException;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionParser;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Native function_score function that scores documents as sum_t(tf_t * log((#docs+2)/(df_t+1))), the same way
+ * as {@link TFIDFScoreScript}:
+ * <pre>
+ *     {
+ *         "tfidf_score": {
+ *             "field": "text",
+ *             "terms": ["foo", "bar"]
+ *         }
+ *     }
+ * </pre>
+ */
+public class TFIDFScoreFunction extends TermScoreFunction {
+
+    public static class Parser implements ScoreFunctionParser {
+
+        public static final String[] NAMES = {"tfidf_score", "tfidfScore"};
+
+        @Inject
+        public Parser() {
+        }
+
+        @Override
+        public String[] getNames() {
+            return NAMES;
+        }
+
+        @Override
+        public ScoreFunction parse(QueryParseContext parseContext, XContentParser parser) throws IOException, QueryParsingException {
+            Map<String, Object> params = parser.map();
+            return new TFIDFScoreFunction(parseField(parseContext, params, NAMES[0]), parseTerms(parseContext, params, NAMES[0]));
+        }
+    }
+
+    // idf of each term, 0 if the term doesn't exist in the index
+    private final double[] idf;
+
+    public TFIDFScoreFunction(String field, BytesRef[] terms) {
+        super(field, terms);
+        this.idf = new double[terms.length];
+    }
+
+    @Override
+    protected void collectStatistics(ShardTermStatistics statistics) {
+        double docCount = statistics.docCount();
+        for (int i = 0; i < terms.length; i++) {
+            long df = statistics.docFreq(i);
+            idf[i] = df == 0 ? 0 : Math.log((docCount + 2.0) / (df + 1.0));
+        }
+    }
+
+    @Override
+    public double score(int docId, float subQueryScore) {
+        double score = 0;
+        for (int i = 0; i < idf.length; i++) {
+            score += tf(i, docId) * idf[i];
+        }
+        return score;
+    }
+
+    @Override
+    public Explanation explainScore(int docId, Explanation subQueryExpl) {
+        Explanation exp = new Explanation(CombineFunction.toFloat(score(docId, subQueryExpl.getValue())),
+                "tfidf score function of field [" + field + "]");
+        exp.addDetail(subQueryExpl);
+        return exp;
+    }
+}
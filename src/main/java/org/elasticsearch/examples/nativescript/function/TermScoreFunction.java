@@ -0,0 +1,104 @@
+package org.elasticsearch.examples.nativescript.function;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.lucene.search.function.ScoreFunction;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.examples.nativescript.script.ShardTermStatistics;
+import org.elasticsearch.examples.nativescript.script.TermFrequencies;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParsingException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for native function_score functions that score documents based on the frequencies of a list of terms
+ * in a field.
+ * <p/>
+ * The term and field statistics are resolved once per shard reader by {@link ShardTermStatistics}, and the postings
+ * of the terms are positioned once per segment by {@link TermFrequencies}, the same way as in the term scoring
+ * scripts.
+ */
+public abstract class TermScoreFunction extends ScoreFunction {
+
+    protected final String field;
+
+    protected final BytesRef[] terms;
+
+    private final ShardTermStatistics statistics;
+
+    private final TermFrequencies termFrequencies;
+
+    protected TermScoreFunction(String field, BytesRef[] terms) {
+        super(CombineFunction.REPLACE);
+        this.field = field;
+        this.terms = terms;
+        this.statistics = new ShardTermStatistics(field, terms);
+        this.termFrequencies = new TermFrequencies(field, terms);
+    }
+
+    /**
+     * Called with the term statistics every time a new shard reader is searched.
+     */
+    protected abstract void collectStatistics(ShardTermStatistics statistics);
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) {
+        try {
+            if (statistics.setNextReader(context)) {
+                collectStatistics(statistics);
+            }
+            termFrequencies.setNextReader(context);
+        } catch (IOException ex) {
+            throw new ElasticsearchException("Failed to load postings of field [" + field + "]", ex);
+        }
+    }
+
+    /**
+     * Returns the frequency of the i-th term in the document. Documents have to be requested in increasing order
+     * within a segment.
+     */
+    protected final int tf(int i, int docId) {
+        try {
+            return termFrequencies.tf(i, docId);
+        } catch (IOException ex) {
+            throw new ElasticsearchException("Failed to read postings of field [" + field + "]", ex);
+        }
+    }
+
+    /**
+     * Parses the mandatory field parameter
+     */
+    protected static String parseField(QueryParseContext parseContext, Map<String, Object> params, String name) {
+        String field = XContentMapValues.nodeStringValue(params.get("field"), null);
+        if (field == null) {
+            throw new QueryParsingException(parseContext.index(), "[" + name + "] required field 'field' missing");
+        }
+        return field;
+    }
+
+    /**
+     * Parses the mandatory terms parameter
+     */
+    protected static BytesRef[] parseTerms(QueryParseContext parseContext, Map<String, Object> params, String name) {
+        Object termsParam = params.get("terms");
+        if (!(termsParam instanceof List)) {
+            throw new QueryParsingException(parseContext.index(), "[" + name + "] required field 'terms' missing");
+        }
+        List<?> termList = (List<?>) termsParam;
+        BytesRef[] terms = new BytesRef[termList.size()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = new BytesRef(termList.get(i).toString());
+        }
+        return terms;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[" + field + "]";
+    }
+}
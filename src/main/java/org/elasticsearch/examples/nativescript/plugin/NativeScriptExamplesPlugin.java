@@ -1,19 +1,53 @@
 package org.elasticsearch.examples.nativescript.plugin;
 
+import org.elasticsearch.action.ActionModule;
+import org.elasticsearch.common.collect.Lists;
+import org.elasticsearch.common.component.LifecycleComponent;
+import org.elasticsearch.common.inject.Module;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.examples.nativescript.cache.ScriptResultCacheModule;
+import org.elasticsearch.examples.nativescript.counter.CounterBuffer;
+import org.elasticsearch.examples.nativescript.counter.CounterModule;
+import org.elasticsearch.examples.nativescript.counter.RestCounterAction;
+import org.elasticsearch.examples.nativescript.function.CosineSimilarityScoreFunction;
+import org.elasticsearch.examples.nativescript.function.LanguageModelScoreFunction;
+import org.elasticsearch.examples.nativescript.function.PopularityScoreFunction;
+import org.elasticsearch.examples.nativescript.function.TFIDFScoreFunction;
+import org.elasticsearch.examples.nativescript.query.DenseVectorLshQueryParser;
+import org.elasticsearch.examples.nativescript.query.ProximityQueryParser;
+import org.elasticsearch.examples.nativescript.query.ScriptRescoreQueryParser;
+import org.elasticsearch.examples.nativescript.query.TermScoreQueryParser;
+import org.elasticsearch.examples.nativescript.ranking.RankingModelModule;
 import org.elasticsearch.examples.nativescript.script.ArrayHelperScript;
+import org.elasticsearch.examples.nativescript.script.BM25ScoreScript;
 import org.elasticsearch.examples.nativescript.script.HashHelperScript;
 import org.elasticsearch.examples.nativescript.script.IsPrimeSearchScript;
 import org.elasticsearch.examples.nativescript.script.LanguageModelScoreScript;
 import org.elasticsearch.examples.nativescript.script.LookupScript;
 import org.elasticsearch.examples.nativescript.script.CosineSimilarityScoreScript;
+import org.elasticsearch.examples.nativescript.script.DenseVectorScoreScript;
 import org.elasticsearch.examples.nativescript.script.PhraseScoreScript;
+import org.elasticsearch.examples.nativescript.script.RankingModelScript;
 import org.elasticsearch.examples.nativescript.script.TFIDFScoreScript;
 import org.elasticsearch.examples.nativescript.script.PopularityScoreScriptFactory;
 import org.elasticsearch.examples.nativescript.script.RandomSortScriptFactory;
 import org.elasticsearch.examples.nativescript.script.UpdaterScript;
+import org.elasticsearch.examples.nativescript.similarity.CosineSimilarityProvider;
+import org.elasticsearch.examples.nativescript.similarity.NtnSimilarityProvider;
+import org.elasticsearch.examples.nativescript.stats.TermStatisticsAction;
+import org.elasticsearch.examples.nativescript.stats.TermStatisticsModule;
+import org.elasticsearch.examples.nativescript.stats.TransportTermStatisticsAction;
+import org.elasticsearch.examples.nativescript.vector.DenseVectorIndexModule;
+import org.elasticsearch.index.query.QueryParser;
+import org.elasticsearch.index.query.functionscore.FunctionScoreModule;
+import org.elasticsearch.index.similarity.SimilarityModule;
+import org.elasticsearch.indices.query.IndicesQueriesModule;
 import org.elasticsearch.plugins.AbstractPlugin;
+import org.elasticsearch.rest.RestModule;
 import org.elasticsearch.script.ScriptModule;
 
+import java.util.Collection;
+
 /**
  * This class is instantiated when Elasticsearch loads the plugin for the
  * first time. If you change the name of this plugin, make sure to update
@@ -21,6 +55,14 @@ import org.elasticsearch.script.ScriptModule;
  */
 public class NativeScriptExamplesPlugin extends AbstractPlugin {
 
+    private final boolean transportClient;
+
+    public NativeScriptExamplesPlugin(Settings settings) {
+        // Transport clients load plugins as well, but they don't have a node client for the counter buffer and the
+        // statistics service
+        this.transportClient = settings.getAsBoolean("node.client", false) && !settings.getAsBoolean("network.server", true);
+    }
+
     /**
      * The name of the plugin.
      * <p/>
@@ -43,6 +85,81 @@ public class NativeScriptExamplesPlugin extends AbstractPlugin {
         return "Native script examples";
     }
 
+    /**
+     * Node level modules of the plugin.
+     *
+     * @return the modules that bind the counter buffer, the global term statistics service, the ranking models and the
+     * script result cache
+     */
+    @Override
+    public Collection<Class<? extends Module>> modules() {
+        Collection<Class<? extends Module>> modules = Lists.newArrayList();
+        if (!transportClient) {
+            modules.add(CounterModule.class);
+            modules.add(TermStatisticsModule.class);
+            modules.add(RankingModelModule.class);
+            modules.add(ScriptResultCacheModule.class);
+        }
+        return modules;
+    }
+
+    /**
+     * Node level services that are started and stopped together with the node.
+     *
+     * @return the counter buffer service
+     */
+    @Override
+    public Collection<Class<? extends LifecycleComponent>> services() {
+        Collection<Class<? extends LifecycleComponent>> services = Lists.newArrayList();
+        if (!transportClient) {
+            services.add(CounterBuffer.class);
+        }
+        return services;
+    }
+
+    /**
+     * Index level modules of the plugin.
+     *
+     * @return the module that registers the dense vector field type
+     */
+    @Override
+    public Collection<Class<? extends Module>> indexModules() {
+        Collection<Class<? extends Module>> modules = Lists.newArrayList();
+        modules.add(DenseVectorIndexModule.class);
+        return modules;
+    }
+
+    public void onModule(ActionModule module) {
+        module.registerAction(TermStatisticsAction.INSTANCE, TransportTermStatisticsAction.class);
+    }
+
+    public void onModule(RestModule module) {
+        module.addRestAction(RestCounterAction.class);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void onModule(IndicesQueriesModule module) {
+        module.addQuery((Class<QueryParser>) (Class<?>) TermScoreQueryParser.class);
+        module.addQuery((Class<QueryParser>) (Class<?>) DenseVectorLshQueryParser.class);
+        module.addQuery((Class<QueryParser>) (Class<?>) ProximityQueryParser.class);
+        // Rescorers are not pluggable, expensive scripts are run on the rescore window through this query
+        module.addQuery((Class<QueryParser>) (Class<?>) ScriptRescoreQueryParser.class);
+    }
+
+    public void onModule(FunctionScoreModule module) {
+        // Register native function_score functions that don't go through the script layer
+        module.registerParser(PopularityScoreFunction.Parser.class);
+        module.registerParser(TFIDFScoreFunction.Parser.class);
+        module.registerParser(CosineSimilarityScoreFunction.Parser.class);
+        module.registerParser(LanguageModelScoreFunction.Parser.class);
+    }
+
+    public void onModule(SimilarityModule module) {
+        // Similarities that can be selected per field in the mappings, called for every index
+        module.addSimilarity(NtnSimilarityProvider.NAME, NtnSimilarityProvider.class);
+        module.addSimilarity(CosineSimilarityProvider.NAME, CosineSimilarityProvider.class);
+    }
+
     public void onModule(ScriptModule module) {
         // Register each script that we defined in this plugin
         module.registerScript("is_prime", IsPrimeSearchScript.Factory.class);
@@ -53,7 +170,10 @@ public class NativeScriptExamplesPlugin extends AbstractPlugin {
         module.registerScript(CosineSimilarityScoreScript.SCRIPT_NAME, CosineSimilarityScoreScript.Factory.class);
         module.registerScript(PhraseScoreScript.SCRIPT_NAME, PhraseScoreScript.Factory.class);
         module.registerScript(LanguageModelScoreScript.SCRIPT_NAME, LanguageModelScoreScript.Factory.class);
+        module.registerScript(BM25ScoreScript.SCRIPT_NAME, BM25ScoreScript.Factory.class);
+        module.registerScript(DenseVectorScoreScript.SCRIPT_NAME, DenseVectorScoreScript.Factory.class);
         module.registerScript(UpdaterScript.SCRIPT_NAME, UpdaterScript.Factory.class);
+        module.registerScript(RankingModelScript.SCRIPT_NAME, RankingModelScript.Factory.class);
         module.registerScript("array", ArrayHelperScript.Factory.class);
         module.registerScript("array.set", ArrayHelperScript.FactorySet.class);
         module.registerScript("array.append", ArrayHelperScript.FactoryAppend.class);
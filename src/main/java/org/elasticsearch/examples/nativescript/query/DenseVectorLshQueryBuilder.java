@@ -0,0 +1,68 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.BaseQueryBuilder;
+import org.elasticsearch.index.query.BoostableQueryBuilder;
+
+import java.io.IOException;
+
+/**
+ * Builder for the {@link DenseVectorLshQueryParser dense_vector_lsh} query
+ */
+public class DenseVectorLshQueryBuilder extends BaseQueryBuilder implements BoostableQueryBuilder<DenseVectorLshQueryBuilder> {
+
+    private final String field;
+
+    private final float[] vector;
+
+    private String metric;
+
+    private int minMatches;
+
+    private float boost = -1;
+
+    public DenseVectorLshQueryBuilder(String field, float... vector) {
+        this.field = field;
+        this.vector = vector;
+    }
+
+    /**
+     * The similarity the candidates are scored with, <code>cosine</code> (default), <code>dot_product</code> or
+     * <code>l2</code>
+     */
+    public DenseVectorLshQueryBuilder metric(String metric) {
+        this.metric = metric;
+        return this;
+    }
+
+    /**
+     * The number of buckets a document has to share with the query vector to be scored, 1 by default
+     */
+    public DenseVectorLshQueryBuilder minMatches(int minMatches) {
+        this.minMatches = minMatches;
+        return this;
+    }
+
+    @Override
+    public DenseVectorLshQueryBuilder boost(float boost) {
+        this.boost = boost;
+        return this;
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(DenseVectorLshQueryParser.NAME);
+        builder.field("field", field);
+        builder.field("vector", vector);
+        if (metric != null) {
+            builder.field("metric", metric);
+        }
+        if (minMatches > 0) {
+            builder.field("min_matches", minMatches);
+        }
+        if (boost != -1) {
+            builder.field("boost", boost);
+        }
+        builder.endObject();
+    }
+}
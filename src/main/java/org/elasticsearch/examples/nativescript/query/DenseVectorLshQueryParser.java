@@ -0,0 +1,108 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.lucene.search.function.FunctionScoreQuery;
+import org.elasticsearch.common.lucene.search.function.ScriptScoreFunction;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.examples.nativescript.script.DenseVectorScoreScript;
+import org.elasticsearch.examples.nativescript.vector.DenseVectorFieldMapper;
+import org.elasticsearch.examples.nativescript.vector.RandomHyperplaneLsh;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParser;
+import org.elasticsearch.index.query.QueryParsingException;
+import org.elasticsearch.script.ScriptException;
+import org.elasticsearch.script.SearchScript;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the <code>dense_vector_lsh</code> query, an approximate nearest neighbour search on a
+ * {@link DenseVectorFieldMapper dense_vector} field with <code>lsh</code> enabled:
+ * <pre>
+ *     {
+ *         "dense_vector_lsh": {
+ *             "field": "embedding",
+ *             "vector": [0.12, -0.5, ...],
+ *             "metric": "cosine",
+ *             "min_matches": 1
+ *         }
+ *     }
+ * </pre>
+ * The query vector is hashed with the LSH configuration of the field, and only the documents that share at least
+ * <code>min_matches</code> buckets with the query vector are candidates. The candidates are scored exactly with the
+ * {@link DenseVectorScoreScript dense vector script}, using the float vectors if the field stores them, so the
+ * scores are the same as those of a brute force search and only documents that don't share a bucket are missed.
+ */
+public class DenseVectorLshQueryParser implements QueryParser {
+
+    public static final String NAME = "dense_vector_lsh";
+
+    @Inject
+    public DenseVectorLshQueryParser() {
+    }
+
+    @Override
+    public String[] names() {
+        return new String[]{NAME, "denseVectorLsh"};
+    }
+
+    @Override
+    public Query parse(QueryParseContext parseContext) throws IOException, QueryParsingException {
+        Map<String, Object> params = parseContext.parser().map();
+        String field = XContentMapValues.nodeStringValue(params.get("field"), null);
+        Object vectorParam = params.get("vector");
+        if (field == null || !(vectorParam instanceof List)) {
+            throw new QueryParsingException(parseContext.index(), "[" + NAME + "] requires field and vector");
+        }
+        FieldMapper<?> mapper = parseContext.smartNameFieldMapper(field);
+        if (!(mapper instanceof DenseVectorFieldMapper) || ((DenseVectorFieldMapper) mapper).lsh() == null) {
+            throw new QueryParsingException(parseContext.index(), "[" + NAME + "] field [" + field + "] is not a dense_vector field with lsh");
+        }
+        DenseVectorFieldMapper vectorMapper = (DenseVectorFieldMapper) mapper;
+        float[] vector = vectorMapper.value(vectorParam);
+        if (vector.length != vectorMapper.dims()) {
+            throw new QueryParsingException(parseContext.index(), "[" + NAME + "] expected a vector of [" + vectorMapper.dims()
+                    + "] dimensions, but got [" + vector.length + "]");
+        }
+        RandomHyperplaneLsh lsh = vectorMapper.lsh();
+        int minMatches = XContentMapValues.nodeIntegerValue(params.get("min_matches"), 1);
+        if (minMatches < 1 || minMatches > lsh.tables()) {
+            throw new QueryParsingException(parseContext.index(), "[" + NAME + "] min_matches must be between 1 and " + lsh.tables());
+        }
+
+        BooleanQuery candidates = new BooleanQuery(true);
+        for (String bucket : lsh.buckets(vector)) {
+            candidates.add(new TermQuery(new Term(vectorMapper.names().indexName(), bucket)), BooleanClause.Occur.SHOULD);
+        }
+        candidates.setMinimumNumberShouldMatch(minMatches);
+
+        // the candidates are scored exactly, with the quantized vectors if there are no float vectors
+        String scoredField = vectorMapper.floatIndexName() != null ? vectorMapper.floatIndexName() : vectorMapper.names().indexName();
+        Map<String, Object> scriptParams = new HashMap<String, Object>();
+        scriptParams.put("field", scoredField);
+        scriptParams.put("vector", vectorParam);
+        scriptParams.put("metric", XContentMapValues.nodeStringValue(params.get("metric"), "cosine"));
+        SearchScript script;
+        try {
+            script = parseContext.scriptService().search(parseContext.lookup(), "native", DenseVectorScoreScript.SCRIPT_NAME, scriptParams);
+        } catch (ScriptException ex) {
+            throw new QueryParsingException(parseContext.index(), "[" + NAME + "] " + ex.getMessage());
+        }
+        FunctionScoreQuery query = new FunctionScoreQuery(new ConstantScoreQuery(candidates),
+                new ScriptScoreFunction(DenseVectorScoreScript.SCRIPT_NAME, scriptParams, script));
+        query.setCombineFunction(CombineFunction.REPLACE);
+        query.setBoost(XContentMapValues.nodeFloatValue(params.get("boost"), 1.0f));
+        return query;
+    }
+}
@@ -0,0 +1,173 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.cache.Weigher;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.lucene.SegmentReaderUtils;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.common.unit.MemorySizeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.UncheckedExecutionException;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Caches the highest frequency of a term in any document of a segment.
+ * <p/>
+ * Lucene doesn't store this statistic, so it is computed by reading the postings of the term, which costs a pass
+ * over all documents containing the term. Segments never change, so the value is cached until the segment is
+ * closed, and only queries on terms that were never seen in a segment pay for reading the postings.
+ * <p/>
+ * Every distinct term queried in a segment takes an entry of about 100 bytes plus the length of the term, so the
+ * cache is bounded by <code>examples.nativescript.max_tf_cache.size</code>, either a size or a percentage of the heap
+ * (10mb by default), the least recently used terms are evicted first. With a size of 0 the cache is disabled and
+ * the postings are never read, the frequency is bounded by the term statistics of the segment instead, which is
+ * looser for common terms, so fewer documents are skipped.
+ */
+public class MaxTermFrequencyCache extends AbstractComponent implements SegmentReader.CoreClosedListener {
+
+    private final Cache<Key, Integer> cache;
+
+    private final Set<Object> registeredCores = ConcurrentCollections.newConcurrentSet();
+
+    @Inject
+    public MaxTermFrequencyCache(Settings settings) {
+        super(settings);
+        long sizeInBytes = MemorySizeValue.parseBytesSizeValueOrHeapRatio(
+                settings.get("examples.nativescript.max_tf_cache.size", "10mb")).bytes();
+        if (sizeInBytes > ByteSizeValue.MAX_GUAVA_CACHE_SIZE.bytes()) {
+            sizeInBytes = ByteSizeValue.MAX_GUAVA_CACHE_SIZE.bytes();
+        }
+        if (sizeInBytes > 0) {
+            this.cache = CacheBuilder.newBuilder()
+                    .maximumWeight(sizeInBytes)
+                    .weigher(new TermWeigher())
+                    .build();
+        } else {
+            this.cache = null;
+        }
+        logger.debug("using max term frequency cache with size [{}]", new ByteSizeValue(sizeInBytes));
+    }
+
+    /**
+     * Returns an upper bound of the frequency of the term in a document of the segment, the highest frequency of the
+     * term if the cache is enabled
+     *
+     * @param termsEnum terms enum of the segment positioned on the term
+     */
+    public int maxTermFreq(AtomicReader reader, Term term, final TermsEnum termsEnum) throws IOException {
+        if (cache == null) {
+            return statisticsBound(termsEnum);
+        }
+        Object coreKey = reader.getCoreCacheKey();
+        if (!registeredCores.contains(coreKey)) {
+            if (!SegmentReaderUtils.registerCoreListener(reader, this)) {
+                // We wouldn't be notified when the reader is closed, don't cache
+                return computeMaxTermFreq(termsEnum);
+            }
+            registeredCores.add(coreKey);
+        }
+        try {
+            return cache.get(new Key(coreKey, term), new Callable<Integer>() {
+                @Override
+                public Integer call() throws IOException {
+                    return computeMaxTermFreq(termsEnum);
+                }
+            });
+        } catch (ExecutionException e) {
+            throw (IOException) e.getCause();
+        } catch (UncheckedExecutionException e) {
+            throw (RuntimeException) e.getCause();
+        }
+    }
+
+    private static int statisticsBound(TermsEnum termsEnum) throws IOException {
+        // Every document containing the term contains it at least once, so no document can exceed this frequency
+        long totalTermFreq = termsEnum.totalTermFreq();
+        if (totalTermFreq == -1) {
+            // frequencies are not indexed, every document has a frequency of 1
+            return 1;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, totalTermFreq - termsEnum.docFreq() + 1);
+    }
+
+    private static int computeMaxTermFreq(TermsEnum termsEnum) throws IOException {
+        int bound = statisticsBound(termsEnum);
+        DocsEnum docs = termsEnum.docs(null, null, DocsEnum.FLAG_FREQS);
+        int max = 0;
+        while (docs.nextDoc() != DocsEnum.NO_MORE_DOCS) {
+            max = Math.max(max, docs.freq());
+            if (max >= bound) {
+                break;
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public void onClose(Object ownerCoreCacheKey) {
+        registeredCores.remove(ownerCoreCacheKey);
+        // Same as the script result cache: merges are rare compared to searches, so a scan is good enough
+        for (Iterator<Key> it = cache.asMap().keySet().iterator(); it.hasNext(); ) {
+            if (it.next().coreKey == ownerCoreCacheKey) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of cached frequencies
+     */
+    public long size() {
+        return cache == null ? 0 : cache.size();
+    }
+
+    private static class Key {
+
+        private final Object coreKey;
+
+        private final Term term;
+
+        private Key(Object coreKey, Term term) {
+            this.coreKey = coreKey;
+            this.term = term;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return coreKey == key.coreKey && term.equals(key.term);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(coreKey) + term.hashCode();
+        }
+    }
+
+    private static class TermWeigher implements Weigher<Key, Integer> {
+
+        // key, term, bytes ref, field name and cached integer objects, plus the entry of the cache
+        private static final int OVERHEAD = 5 * RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 8 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+        @Override
+        public int weigh(Key key, Integer maxTermFreq) {
+            return OVERHEAD + key.term.bytes().length + key.term.field().length() * 2;
+        }
+    }
+}
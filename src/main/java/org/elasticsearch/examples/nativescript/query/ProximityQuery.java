@@ -0,0 +1,171 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ComplexExplanation;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.ToStringUtils;
+import org.elasticsearch.examples.nativescript.script.ProximityPostings;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * Query that matches the documents containing all of a list of terms and scores them by the proximity of the
+ * terms like the {@link org.elasticsearch.examples.nativescript.script.PhraseScoreScript phrase} script.
+ * <p/>
+ * The postings of the terms are intersected by leapfrogging, see {@link ProximityPostings}, so only documents
+ * containing all terms are visited, and their positions are read from the same postings.
+ * <p/>
+ * Scores are not normalized, they are the same as the scores of the script used with <code>boost_mode</code>
+ * replace, multiplied by the boost of the query.
+ */
+public class ProximityQuery extends Query {
+
+    private final String field;
+
+    private final String[] terms;
+
+    private final BytesRef[] termBytes;
+
+    /**
+     * @param terms distinct terms
+     */
+    public ProximityQuery(String field, String[] terms) {
+        this.field = field;
+        this.terms = terms;
+        this.termBytes = new BytesRef[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            termBytes[i] = new BytesRef(terms[i]);
+        }
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher) throws IOException {
+        return new ProximityWeight();
+    }
+
+    @Override
+    public void extractTerms(Set<Term> terms) {
+        for (BytesRef term : termBytes) {
+            terms.add(new Term(field, term));
+        }
+    }
+
+    @Override
+    public String toString(String field) {
+        return "proximity(" + this.field + Arrays.toString(terms) + ")" + ToStringUtils.boost(getBoost());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ProximityQuery that = (ProximityQuery) o;
+        return getBoost() == that.getBoost() && field.equals(that.field) && Arrays.equals(terms, that.terms);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(getBoost());
+        result = 31 * result + field.hashCode();
+        result = 31 * result + Arrays.hashCode(terms);
+        return result;
+    }
+
+    class ProximityWeight extends Weight {
+
+        private float boost = 1;
+
+        @Override
+        public Query getQuery() {
+            return ProximityQuery.this;
+        }
+
+        @Override
+        public float getValueForNormalization() {
+            // scores are not normalized
+            return 1f;
+        }
+
+        @Override
+        public void normalize(float norm, float topLevelBoost) {
+            boost = getBoost() * topLevelBoost;
+        }
+
+        @Override
+        public Scorer scorer(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+            ProximityPostings postings = ProximityPostings.open(context.reader(), field, termBytes, acceptDocs);
+            return postings == null ? null : new ProximityScorer(this, postings, boost);
+        }
+
+        @Override
+        public Explanation explain(AtomicReaderContext context, int doc) throws IOException {
+            Scorer scorer = scorer(context, context.reader().getLiveDocs());
+            if (scorer != null && scorer.advance(doc) == doc) {
+                return new ComplexExplanation(true, scorer.score(), "proximity of the terms of "
+                        + ProximityQuery.this.toString() + ", boost " + boost);
+            }
+            return new ComplexExplanation(false, 0f, "not all terms match");
+        }
+    }
+
+    static class ProximityScorer extends Scorer {
+
+        private final ProximityPostings postings;
+
+        private final float boost;
+
+        private int scoredDoc = -1;
+
+        private float score;
+
+        ProximityScorer(Weight weight, ProximityPostings postings, float boost) {
+            super(weight);
+            this.postings = postings;
+            this.boost = boost;
+        }
+
+        @Override
+        public int docID() {
+            return postings.docID();
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            return postings.advance(postings.docID() + 1);
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            return postings.advance(target);
+        }
+
+        @Override
+        public float score() throws IOException {
+            // positions can only be read once per document
+            if (scoredDoc != postings.docID()) {
+                scoredDoc = postings.docID();
+                score = (float) (boost * postings.score());
+            }
+            return score;
+        }
+
+        @Override
+        public int freq() {
+            return 1;
+        }
+
+        @Override
+        public long cost() {
+            return postings.cost();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.BaseQueryBuilder;
+import org.elasticsearch.index.query.BoostableQueryBuilder;
+
+import java.io.IOException;
+
+/**
+ * Builder for the {@link ProximityQuery proximity} query
+ */
+public class ProximityQueryBuilder extends BaseQueryBuilder implements BoostableQueryBuilder<ProximityQueryBuilder> {
+
+    private final String field;
+
+    private final String[] terms;
+
+    private float boost = -1;
+
+    public ProximityQueryBuilder(String field, String... terms) {
+        this.field = field;
+        this.terms = terms;
+    }
+
+    @Override
+    public ProximityQueryBuilder boost(float boost) {
+        this.boost = boost;
+        return this;
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(ProximityQueryParser.NAME);
+        builder.field("field", field);
+        builder.field("terms", terms);
+        if (boost != -1) {
+            builder.field("boost", boost);
+        }
+        builder.endObject();
+    }
+}
@@ -0,0 +1,58 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParser;
+import org.elasticsearch.index.query.QueryParsingException;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parses the <code>proximity</code> query:
+ * <pre>
+ *     {
+ *         "proximity": {
+ *             "field": "name",
+ *             "terms": ["john", "smith"]
+ *         }
+ *     }
+ * </pre>
+ * See {@link ProximityQuery}.
+ */
+public class ProximityQueryParser implements QueryParser {
+
+    public static final String NAME = "proximity";
+
+    @Inject
+    public ProximityQueryParser() {
+    }
+
+    @Override
+    public String[] names() {
+        return new String[]{NAME};
+    }
+
+    @Override
+    public Query parse(QueryParseContext parseContext) throws IOException, QueryParsingException {
+        Map<String, Object> params = parseContext.parser().map();
+        String field = XContentMapValues.nodeStringValue(params.get("field"), null);
+        Object termsParam = params.get("terms");
+        if (field == null || !(termsParam instanceof List) || ((List<?>) termsParam).isEmpty()) {
+            throw new QueryParsingException(parseContext.index(), "[" + NAME + "] requires field and terms");
+        }
+        // a term repeated in the query would match its own positions
+        Set<String> terms = new LinkedHashSet<String>();
+        for (Object term : (List<?>) termsParam) {
+            terms.add(term.toString());
+        }
+        ProximityQuery query = new ProximityQuery(field, terms.toArray(new String[terms.size()]));
+        query.setBoost(XContentMapValues.nodeFloatValue(params.get("boost"), 1.0f));
+        return query;
+    }
+}
@@ -0,0 +1,228 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ComplexExplanation;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.ToStringUtils;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.index.fielddata.IndexFieldDataService;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.script.SearchScript;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Query that matches all documents and scores them with a script, meant to be the <code>rescore_query</code> of
+ * a query rescorer, so that an expensive script only scores the top documents of each shard:
+ * <pre>
+ *     "rescore": {
+ *         "window_size": 200,
+ *         "query": {
+ *             "rescore_query": {
+ *                 "rescore_script": {"script": "phrase_script_score", "params": {...}}
+ *             },
+ *             "query_weight": 1.0,
+ *             "rescore_query_weight": 1.0,
+ *             "score_mode": "total"
+ *         }
+ *     }
+ * </pre>
+ * The rescorer runs the query with a filter that only accepts the documents in the window and drives the search,
+ * so the scorer of this query is only advanced to these documents, segment by segment in doc id order. The script
+ * reads the postings and doc values of the documents in the window forward only, like it would for a full
+ * search, but the other documents are never scored. How the script score is combined with the original score is
+ * configured with the weights and the <code>score_mode</code> (total, multiply, avg, max or min) of the rescorer.
+ * <p/>
+ * Scores are not normalized, they are the scores of the script multiplied by the boost of the query. The original
+ * score is not available to the script.
+ * <p/>
+ * Scripts keep the state of the segment they score, so every weight scores with its own script instance. The first
+ * weight uses the script created while parsing, the following ones, like the weights created to explain a score
+ * while the rescorer is still scoring, create a new script with its own lookup.
+ */
+public class ScriptRescoreQuery extends Query {
+
+    private final String script;
+
+    private final Map<String, Object> params;
+
+    private final String lang;
+
+    private final ScriptService scriptService;
+
+    private final MapperService mapperService;
+
+    private final IndexFieldDataService fieldDataService;
+
+    // the script created while parsing, until the first weight takes it
+    private final AtomicReference<SearchScript> parsedScript;
+
+    /**
+     * @param script       name of the script
+     * @param lang         language of the script
+     * @param params       parameters of the script
+     * @param parsedScript the script created while parsing, used by the first weight
+     */
+    public ScriptRescoreQuery(String script, String lang, @Nullable Map<String, Object> params, SearchScript parsedScript,
+                              ScriptService scriptService, MapperService mapperService, IndexFieldDataService fieldDataService) {
+        this.script = script;
+        this.lang = lang;
+        this.params = params;
+        this.parsedScript = new AtomicReference<SearchScript>(parsedScript);
+        this.scriptService = scriptService;
+        this.mapperService = mapperService;
+        this.fieldDataService = fieldDataService;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher) throws IOException {
+        SearchScript searchScript = parsedScript.getAndSet(null);
+        if (searchScript == null) {
+            searchScript = scriptService.search(mapperService, fieldDataService, lang, script, params);
+        }
+        return new ScriptRescoreWeight(searchScript);
+    }
+
+    @Override
+    public void extractTerms(Set<Term> terms) {
+        // the terms read by the script are not known
+    }
+
+    @Override
+    public String toString(String field) {
+        return "rescore_script(" + script + "," + params + ")" + ToStringUtils.boost(getBoost());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ScriptRescoreQuery that = (ScriptRescoreQuery) o;
+        return getBoost() == that.getBoost() && script.equals(that.script)
+                && (params == null ? that.params == null : params.equals(that.params));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(getBoost());
+        result = 31 * result + script.hashCode();
+        result = 31 * result + (params == null ? 0 : params.hashCode());
+        return result;
+    }
+
+    class ScriptRescoreWeight extends Weight {
+
+        private final SearchScript searchScript;
+
+        private float boost;
+
+        ScriptRescoreWeight(SearchScript searchScript) {
+            this.searchScript = searchScript;
+        }
+
+        @Override
+        public Query getQuery() {
+            return ScriptRescoreQuery.this;
+        }
+
+        @Override
+        public float getValueForNormalization() {
+            // scores are not normalized
+            return 1f;
+        }
+
+        @Override
+        public void normalize(float norm, float topLevelBoost) {
+            boost = getBoost() * topLevelBoost;
+        }
+
+        @Override
+        public Scorer scorer(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+            searchScript.setNextReader(context);
+            return new ScriptRescoreScorer(this, searchScript, context.reader().maxDoc(), acceptDocs, boost);
+        }
+
+        @Override
+        public Explanation explain(AtomicReaderContext context, int doc) throws IOException {
+            Scorer scorer = scorer(context, context.reader().getLiveDocs());
+            if (scorer.advance(doc) == doc) {
+                return new ComplexExplanation(true, scorer.score(), "script score of " + ScriptRescoreQuery.this.toString()
+                        + ", boost " + boost);
+            }
+            return new ComplexExplanation(false, 0f, "deleted document");
+        }
+    }
+
+    /**
+     * Matches all documents, and scores a document only when it is asked for its score. Advancing is cheap, so
+     * a filter leading the search only pays for the documents it accepts.
+     */
+    static class ScriptRescoreScorer extends Scorer {
+
+        private final SearchScript searchScript;
+
+        private final int maxDoc;
+
+        private final Bits acceptDocs;
+
+        private final float boost;
+
+        private int doc = -1;
+
+        ScriptRescoreScorer(Weight weight, SearchScript searchScript, int maxDoc, Bits acceptDocs, float boost) {
+            super(weight);
+            this.searchScript = searchScript;
+            this.maxDoc = maxDoc;
+            this.acceptDocs = acceptDocs;
+            this.boost = boost;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            return advance(doc + 1);
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            doc = target;
+            while (doc < maxDoc && acceptDocs != null && !acceptDocs.get(doc)) {
+                doc++;
+            }
+            if (doc >= maxDoc) {
+                doc = NO_MORE_DOCS;
+            }
+            return doc;
+        }
+
+        @Override
+        public float score() throws IOException {
+            searchScript.setNextDocId(doc);
+            return searchScript.runAsFloat() * boost;
+        }
+
+        @Override
+        public int freq() throws IOException {
+            return 1;
+        }
+
+        @Override
+        public long cost() {
+            return maxDoc;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.BaseQueryBuilder;
+import org.elasticsearch.index.query.BoostableQueryBuilder;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Builder for the {@link ScriptRescoreQuery rescore_script} query
+ */
+public class ScriptRescoreQueryBuilder extends BaseQueryBuilder implements BoostableQueryBuilder<ScriptRescoreQueryBuilder> {
+
+    private final String script;
+
+    private Map<String, Object> params;
+
+    private String lang;
+
+    private float boost = -1;
+
+    public ScriptRescoreQueryBuilder(String script) {
+        this.script = script;
+    }
+
+    public ScriptRescoreQueryBuilder params(Map<String, Object> params) {
+        this.params = params;
+        return this;
+    }
+
+    /**
+     * The language of the script, <code>native</code> by default
+     */
+    public ScriptRescoreQueryBuilder lang(String lang) {
+        this.lang = lang;
+        return this;
+    }
+
+    @Override
+    public ScriptRescoreQueryBuilder boost(float boost) {
+        this.boost = boost;
+        return this;
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(ScriptRescoreQueryParser.NAME);
+        builder.field("script", script);
+        if (lang != null) {
+            builder.field("lang", lang);
+        }
+        if (this.params != null) {
+            builder.field("params", this.params);
+        }
+        if (boost != -1) {
+            builder.field("boost", boost);
+        }
+        builder.endObject();
+    }
+}
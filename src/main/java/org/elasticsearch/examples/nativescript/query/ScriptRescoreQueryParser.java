@@ -0,0 +1,65 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParser;
+import org.elasticsearch.index.query.QueryParsingException;
+import org.elasticsearch.script.ScriptException;
+import org.elasticsearch.script.SearchScript;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Parses the <code>rescore_script</code> query:
+ * <pre>
+ *     {
+ *         "rescore_script": {
+ *             "script": "phrase_script_score",
+ *             "lang": "native",
+ *             "params": {"field": "text", "terms": ["john", "doe"]}
+ *         }
+ *     }
+ * </pre>
+ * <code>lang</code> defaults to <code>native</code>. See {@link ScriptRescoreQuery} for how to use it in a rescorer.
+ */
+public class ScriptRescoreQueryParser implements QueryParser {
+
+    public static final String NAME = "rescore_script";
+
+    @Inject
+    public ScriptRescoreQueryParser() {
+    }
+
+    @Override
+    public String[] names() {
+        return new String[]{NAME, "rescoreScript"};
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Query parse(QueryParseContext parseContext) throws IOException, QueryParsingException {
+        Map<String, Object> map = parseContext.parser().map();
+        String script = XContentMapValues.nodeStringValue(map.get("script"), null);
+        if (script == null) {
+            throw new QueryParsingException(parseContext.index(), "[" + NAME + "] requires script");
+        }
+        String lang = XContentMapValues.nodeStringValue(map.get("lang"), "native");
+        Object params = map.get("params");
+        if (params != null && !(params instanceof Map)) {
+            throw new QueryParsingException(parseContext.index(), "[" + NAME + "] params must be an object");
+        }
+        SearchScript searchScript;
+        try {
+            searchScript = parseContext.scriptService().search(parseContext.lookup(), lang, script, (Map<String, Object>) params);
+        } catch (ScriptException ex) {
+            throw new QueryParsingException(parseContext.index(), "[" + NAME + "] " + ex.getMessage());
+        }
+        ScriptRescoreQuery query = new ScriptRescoreQuery(script, lang, (Map<String, Object>) params, searchScript,
+                parseContext.scriptService(), parseContext.mapperService(), parseContext.fieldData());
+        query.setBoost(XContentMapValues.nodeFloatValue(map.get("boost"), 1.0f));
+        return query;
+    }
+}
@@ -0,0 +1,425 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.ComplexExplanation;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.ToStringUtils;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.examples.nativescript.script.TermScoringPlan;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Query that matches the documents containing any of a list of terms and scores them like the
+ * {@link org.elasticsearch.examples.nativescript.script.TFIDFScoreScript tfidf} or
+ * {@link org.elasticsearch.examples.nativescript.script.CosineSimilarityScoreScript cosine similarity} script.
+ * <p/>
+ * If only the top k documents are needed, documents that cannot make it into the top k are skipped using MaxScore:
+ * the query knows an upper bound of the score of a document that only contains some of the terms, and keeps the
+ * k best scores it returned so far. Once the bound of the terms with the lowest bounds drops below the k-th best
+ * score, documents containing only these terms are not visited anymore, and the other documents are not scored
+ * completely if the rest of the terms cannot lift them above the k-th best score.
+ * <ul>
+ * <li>tfidf: the bound of a term is weight * idf * the highest frequency of the term in the segment, or a looser
+ * bound from the term statistics if the frequencies are not cached, see {@link MaxTermFrequencyCache}. The bounds of
+ * several terms add up.</li>
+ * <li>cosine: by the Cauchy-Schwarz inequality, a document containing a subset of the terms cannot score more
+ * than the norm of the weights of this subset divided by the norm of all weights.</li>
+ * </ul>
+ * Skipped documents are not returned at all, so with top k the hit count only counts the visited documents. The
+ * top k mode relies on the scores of this query being the final scores, so the query should be used as the top
+ * level query (possibly filtered) of a search sorted by score, with k at least from + size of the search.
+ * <p/>
+ * Scores are not normalized, they are the same as the scores of the scripts used with <code>boost_mode</code>
+ * replace, multiplied by the boost of the query.
+ */
+public class TermScoreQuery extends Query {
+
+    /**
+     * The scoring models supported by the query
+     */
+    public static enum Model {
+        TFIDF, COSINE;
+
+        public static Model fromString(String model) {
+            if ("tfidf".equals(model)) {
+                return TFIDF;
+            } else if ("cosine".equals(model)) {
+                return COSINE;
+            }
+            throw new ElasticsearchIllegalArgumentException("No term score model found for [" + model + "]");
+        }
+    }
+
+    // bounds are inflated a little, so float rounding of the scores never makes a skipped document competitive
+    private static final double BOUND_SLACK = 1.0 + 1e-5;
+
+    private final TermScoringPlan plan;
+
+    private final Model model;
+
+    private final int topK;
+
+    private final MaxTermFrequencyCache maxTermFrequencies;
+
+    /**
+     * @param topK number of top documents needed, 0 to score all documents that contain any of the terms
+     */
+    public TermScoreQuery(TermScoringPlan plan, Model model, int topK, MaxTermFrequencyCache maxTermFrequencies) {
+        this.plan = plan;
+        this.model = model;
+        this.topK = topK;
+        this.maxTermFrequencies = maxTermFrequencies;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher) throws IOException {
+        return new TermScoreWeight(searcher);
+    }
+
+    @Override
+    public void extractTerms(Set<Term> terms) {
+        for (BytesRef term : plan.termBytes()) {
+            terms.add(new Term(plan.field(), term));
+        }
+    }
+
+    @Override
+    public String toString(String field) {
+        return "term_score(" + model.name().toLowerCase() + ":" + plan.field() + Arrays.toString(plan.terms())
+                + (topK > 0 ? ",top_k=" + topK : "") + ")" + ToStringUtils.boost(getBoost());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TermScoreQuery that = (TermScoreQuery) o;
+        return getBoost() == that.getBoost() && topK == that.topK && model == that.model
+                && plan.field().equals(that.plan.field()) && Arrays.equals(plan.terms(), that.plan.terms())
+                && Arrays.equals(plan.weights(), that.plan.weights());
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Float.floatToIntBits(getBoost());
+        result = 31 * result + model.hashCode();
+        result = 31 * result + topK;
+        result = 31 * result + plan.field().hashCode();
+        result = 31 * result + Arrays.hashCode(plan.terms());
+        result = 31 * result + Arrays.hashCode(plan.weights());
+        return result;
+    }
+
+    class TermScoreWeight extends Weight {
+
+        // tfidf: weight * idf, cosine: weight of each term
+        private final double[] termWeights;
+
+        // shared by the scorers of all segments, so documents of later segments are compared with the best
+        // documents of all previous segments
+        private final TopScores topScores;
+
+        private float boost = 1;
+
+        TermScoreWeight(IndexSearcher searcher) throws IOException {
+            String field = plan.field();
+            termWeights = new double[plan.size()];
+            if (model == Model.TFIDF) {
+                // the searcher returns index wide statistics with dfs_query_then_fetch
+                long docCount = searcher.collectionStatistics(field).docCount();
+                for (int i = 0; i < termWeights.length; i++) {
+                    Term term = new Term(field, plan.termBytes()[i]);
+                    long df = searcher.termStatistics(term, TermContext.build(searcher.getTopReaderContext(), term)).docFreq();
+                    termWeights[i] = df == 0 ? 0 : plan.weights()[i] * Math.log((docCount + 2.0) / (df + 1.0));
+                }
+            } else {
+                for (int i = 0; i < termWeights.length; i++) {
+                    termWeights[i] = plan.weights()[i] / plan.queryNorm();
+                }
+            }
+            topScores = topK > 0 ? new TopScores(topK) : null;
+        }
+
+        @Override
+        public Query getQuery() {
+            return TermScoreQuery.this;
+        }
+
+        @Override
+        public float getValueForNormalization() {
+            // scores are not normalized
+            return 1f;
+        }
+
+        @Override
+        public void normalize(float norm, float topLevelBoost) {
+            boost = getBoost() * topLevelBoost;
+        }
+
+        @Override
+        public Scorer scorer(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+            return scorer(context, acceptDocs, topScores);
+        }
+
+        private TermScoreScorer scorer(AtomicReaderContext context, Bits acceptDocs, @Nullable TopScores topScores) throws IOException {
+            AtomicReader reader = context.reader();
+            Terms terms = reader.terms(plan.field());
+            if (terms == null) {
+                return null;
+            }
+            TermsEnum termsEnum = terms.iterator(null);
+            List<TermPostings> postings = new ArrayList<TermPostings>();
+            for (int i = 0; i < termWeights.length; i++) {
+                if (model == Model.TFIDF && termWeights[i] == 0) {
+                    // the term doesn't exist or doesn't contribute to the tfidf score
+                    continue;
+                }
+                if (termsEnum.seekExact(plan.termBytes()[i])) {
+                    double bound = 0;
+                    if (topScores != null) {
+                        if (model == Model.TFIDF) {
+                            Term term = new Term(plan.field(), plan.termBytes()[i]);
+                            bound = Math.max(0, termWeights[i] * maxTermFrequencies.maxTermFreq(reader, term, termsEnum));
+                        } else {
+                            bound = Math.abs(termWeights[i]);
+                        }
+                    }
+                    postings.add(new TermPostings(termsEnum.docs(acceptDocs, null, DocsEnum.FLAG_FREQS), boost * termWeights[i], boost * bound));
+                }
+            }
+            if (postings.isEmpty()) {
+                return null;
+            }
+            return new TermScoreScorer(this, postings, topScores);
+        }
+
+        @Override
+        public Explanation explain(AtomicReaderContext context, int doc) throws IOException {
+            // explain the full score, even if the document would be skipped in top k mode
+            TermScoreScorer scorer = scorer(context, context.reader().getLiveDocs(), null);
+            if (scorer != null && scorer.advance(doc) == doc) {
+                return new ComplexExplanation(true, scorer.score(), model.name().toLowerCase() + " score of "
+                        + scorer.freq() + " matching terms of " + TermScoreQuery.this.toString() + ", boost " + boost);
+            }
+            return new ComplexExplanation(false, 0f, "no matching term");
+        }
+    }
+
+    /**
+     * Postings, weight and score bound of a term
+     */
+    private static class TermPostings {
+        final DocsEnum docs;
+        final double weight;
+        final double bound;
+
+        TermPostings(DocsEnum docs, double weight, double bound) {
+            this.docs = docs;
+            this.weight = weight;
+            this.bound = bound;
+        }
+    }
+
+    /**
+     * The best scores returned by the scorers of a search
+     */
+    static class TopScores extends PriorityQueue<Float> {
+
+        private final int k;
+
+        TopScores(int k) {
+            super(k);
+            this.k = k;
+        }
+
+        @Override
+        protected boolean lessThan(Float a, Float b) {
+            return a < b;
+        }
+
+        /**
+         * A document needs a score greater than this score to make it into the top k
+         */
+        float threshold() {
+            return size() < k ? Float.NEGATIVE_INFINITY : top();
+        }
+    }
+
+    class TermScoreScorer extends Scorer {
+
+        private final DocsEnum[] docs;
+
+        private final double[] weights;
+
+        // maxScores[j] is the highest score of a document that only contains terms before j
+        private final double[] maxScores;
+
+        private final TopScores topScores;
+
+        private final long cost;
+
+        // terms before this index are non essential: documents containing only these terms are not competitive
+        private int firstEssential;
+
+        private int doc = -1;
+
+        private float score;
+
+        private int freq;
+
+        private int collectedDoc = -1;
+
+        TermScoreScorer(Weight weight, List<TermPostings> postings, @Nullable TopScores topScores) {
+            super(weight);
+            // terms with low bounds first, they become non essential first
+            Collections.sort(postings, new Comparator<TermPostings>() {
+                @Override
+                public int compare(TermPostings o1, TermPostings o2) {
+                    return Double.compare(o1.bound, o2.bound);
+                }
+            });
+            int size = postings.size();
+            this.docs = new DocsEnum[size];
+            this.weights = new double[size];
+            this.maxScores = new double[size + 1];
+            this.topScores = topScores;
+            long cost = 0;
+            double boundSum = 0;
+            for (int i = 0; i < size; i++) {
+                TermPostings termPostings = postings.get(i);
+                docs[i] = termPostings.docs;
+                weights[i] = termPostings.weight;
+                cost += termPostings.docs.cost();
+                if (model == Model.TFIDF) {
+                    boundSum += termPostings.bound;
+                    maxScores[i + 1] = boundSum * BOUND_SLACK;
+                } else {
+                    boundSum += termPostings.bound * termPostings.bound;
+                    maxScores[i + 1] = Math.sqrt(boundSum) * BOUND_SLACK;
+                }
+            }
+            this.cost = cost;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            return next(doc + 1);
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            return next(target);
+        }
+
+        /**
+         * Moves to the first competitive document at or after the target
+         */
+        private int next(int target) throws IOException {
+            while (true) {
+                if (topScores != null) {
+                    float threshold = topScores.threshold();
+                    while (firstEssential < docs.length && maxScores[firstEssential + 1] <= threshold) {
+                        firstEssential++;
+                    }
+                }
+                int candidate = NO_MORE_DOCS;
+                for (int i = firstEssential; i < docs.length; i++) {
+                    int docId = docs[i].docID();
+                    if (docId < target) {
+                        docId = docs[i].advance(target);
+                    }
+                    candidate = Math.min(candidate, docId);
+                }
+                doc = candidate;
+                if (candidate == NO_MORE_DOCS || score(candidate)) {
+                    return doc;
+                }
+                target = candidate + 1;
+            }
+        }
+
+        /**
+         * Scores the document
+         *
+         * @return false if the document is not competitive
+         */
+        private boolean score(int docId) throws IOException {
+            float threshold = topScores == null ? Float.NEGATIVE_INFINITY : topScores.threshold();
+            double dotProduct = 0;
+            double tfSquares = 0;
+            freq = 0;
+            for (int i = firstEssential; i < docs.length; i++) {
+                if (docs[i].docID() == docId) {
+                    int tf = docs[i].freq();
+                    dotProduct += weights[i] * tf;
+                    tfSquares += (double) tf * tf;
+                    freq++;
+                }
+            }
+            if (model == Model.TFIDF && dotProduct + maxScores[firstEssential] <= threshold) {
+                // even the non essential terms can't make the document competitive
+                return false;
+            }
+            for (int i = 0; i < firstEssential; i++) {
+                int current = docs[i].docID();
+                if (current < docId) {
+                    current = docs[i].advance(docId);
+                }
+                if (current == docId) {
+                    int tf = docs[i].freq();
+                    dotProduct += weights[i] * tf;
+                    tfSquares += (double) tf * tf;
+                    freq++;
+                }
+            }
+            score = (float) (model == Model.TFIDF ? dotProduct : dotProduct / Math.sqrt(tfSquares));
+            return score > threshold;
+        }
+
+        @Override
+        public float score() {
+            if (topScores != null && collectedDoc != doc) {
+                // the collector asks for the score of every document it collects
+                collectedDoc = doc;
+                topScores.insertWithOverflow(score);
+            }
+            return score;
+        }
+
+        @Override
+        public int freq() {
+            return freq;
+        }
+
+        @Override
+        public long cost() {
+            return cost;
+        }
+    }
+}
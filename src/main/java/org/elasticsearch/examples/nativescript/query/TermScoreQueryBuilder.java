@@ -0,0 +1,80 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.index.query.BaseQueryBuilder;
+import org.elasticsearch.index.query.BoostableQueryBuilder;
+
+import java.io.IOException;
+
+/**
+ * Builder for the {@link TermScoreQuery term_score} query
+ */
+public class TermScoreQueryBuilder extends BaseQueryBuilder implements BoostableQueryBuilder<TermScoreQueryBuilder> {
+
+    private final String field;
+
+    private final String[] terms;
+
+    private double[] weights;
+
+    private String model;
+
+    private int topK;
+
+    private float boost = -1;
+
+    public TermScoreQueryBuilder(String field, String... terms) {
+        this.field = field;
+        this.terms = terms;
+    }
+
+    /**
+     * The weight of each term
+     */
+    public TermScoreQueryBuilder weights(double... weights) {
+        this.weights = weights;
+        return this;
+    }
+
+    /**
+     * The scoring model, <code>tfidf</code> (default) or <code>cosine</code>
+     */
+    public TermScoreQueryBuilder model(String model) {
+        this.model = model;
+        return this;
+    }
+
+    /**
+     * Skip documents that cannot make it into the top k documents
+     */
+    public TermScoreQueryBuilder topK(int topK) {
+        this.topK = topK;
+        return this;
+    }
+
+    @Override
+    public TermScoreQueryBuilder boost(float boost) {
+        this.boost = boost;
+        return this;
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(TermScoreQueryParser.NAME);
+        builder.field("field", field);
+        builder.field("terms", terms);
+        if (weights != null) {
+            builder.field("weights", weights);
+        }
+        if (model != null) {
+            builder.field("model", model);
+        }
+        if (topK > 0) {
+            builder.field("top_k", topK);
+        }
+        if (boost != -1) {
+            builder.field("boost", boost);
+        }
+        builder.endObject();
+    }
+}
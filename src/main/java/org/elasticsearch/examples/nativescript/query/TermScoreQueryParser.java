@@ -0,0 +1,77 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.examples.nativescript.script.TermScoringPlan;
+import org.elasticsearch.index.query.QueryParseContext;
+import org.elasticsearch.index.query.QueryParser;
+import org.elasticsearch.index.query.QueryParsingException;
+import org.elasticsearch.script.ScriptException;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Parses the <code>term_score</code> query:
+ * <pre>
+ *     {
+ *         "term_score": {
+ *             "field": "text",
+ *             "terms": ["foo", "bar"],
+ *             "weights": [1.0, 0.5],
+ *             "model": "tfidf",
+ *             "top_k": 10
+ *         }
+ *     }
+ * </pre>
+ * <code>model</code> is either <code>tfidf</code> (default) or <code>cosine</code>, <code>weights</code> are
+ * optional and <code>top_k</code> enables skipping of documents that cannot make it into the top k, see
+ * {@link TermScoreQuery}.
+ */
+public class TermScoreQueryParser implements QueryParser {
+
+    public static final String NAME = "term_score";
+
+    // the parser is a node level singleton, so all queries share the cached frequencies
+    private final MaxTermFrequencyCache maxTermFrequencies;
+
+    @Inject
+    public TermScoreQueryParser(Settings settings) {
+        this.maxTermFrequencies = new MaxTermFrequencyCache(settings);
+    }
+
+    @Override
+    public String[] names() {
+        return new String[]{NAME, "termScore"};
+    }
+
+    @Override
+    public Query parse(QueryParseContext parseContext) throws IOException, QueryParsingException {
+        Map<String, Object> params = parseContext.parser().map();
+        try {
+            TermScoreQuery.Model model = TermScoreQuery.Model.fromString(XContentMapValues.nodeStringValue(params.get("model"), "tfidf"));
+            TermScoringPlan plan = TermScoringPlan.parse(params, NAME, false);
+            int topK = XContentMapValues.nodeIntegerValue(params.get("top_k"), 0);
+            if (topK < 0) {
+                throw new QueryParsingException(parseContext.index(), "[" + NAME + "] top_k must not be negative");
+            }
+            TermScoreQuery query = new TermScoreQuery(plan, model, topK, maxTermFrequencies);
+            query.setBoost(XContentMapValues.nodeFloatValue(params.get("boost"), 1.0f));
+            return query;
+        } catch (ScriptException ex) {
+            throw new QueryParsingException(parseContext.index(), "[" + NAME + "] " + ex.getMessage());
+        } catch (ElasticsearchIllegalArgumentException ex) {
+            throw new QueryParsingException(parseContext.index(), "[" + NAME + "] " + ex.getMessage());
+        }
+    }
+
+    /**
+     * The frequency cache shared by all queries of this parser
+     */
+    public MaxTermFrequencyCache maxTermFrequencies() {
+        return maxTermFrequencies;
+    }
+}
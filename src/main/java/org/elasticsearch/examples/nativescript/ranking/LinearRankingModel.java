@@ -0,0 +1,42 @@
+package org.elasticsearch.examples.nativescript.ranking;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model that scores documents as bias + sum_i(weight_i * feature_i):
+ * <pre>
+ * "linear": {"weights": {"title_tfidf": 0.8, "popularity": 0.2}, "bias": 0.1}
+ * </pre>
+ * Features without a weight get weight 0.
+ */
+public class LinearRankingModel extends RankingModel {
+
+    private final double[] weights;
+
+    private final double bias;
+
+    LinearRankingModel(List<RankingFeature> features, Map<String, Object> source) {
+        super(features);
+        if (!(source.get("weights") instanceof Map)) {
+            throw new ElasticsearchIllegalArgumentException("linear model has no weights");
+        }
+        weights = new double[features.size()];
+        for (Map.Entry<?, ?> weight : ((Map<?, ?>) source.get("weights")).entrySet()) {
+            weights[featureIndex(weight.getKey().toString())] = XContentMapValues.nodeDoubleValue(weight.getValue());
+        }
+        bias = XContentMapValues.nodeDoubleValue(source.get("bias"), 0);
+    }
+
+    @Override
+    public double score(double[] values) {
+        double score = bias;
+        for (int i = 0; i < weights.length; i++) {
+            score += weights[i] * values[i];
+        }
+        return score;
+    }
+}
@@ -0,0 +1,42 @@
+package org.elasticsearch.examples.nativescript.ranking;
+
+import java.util.Map;
+
+/**
+ * A feature of a {@link RankingModel}, the value of a native script for the scored document
+ */
+public class RankingFeature {
+
+    private final String name;
+
+    private final String script;
+
+    private final Map<String, Object> params;
+
+    public RankingFeature(String name, String script, Map<String, Object> params) {
+        this.name = name;
+        this.script = script;
+        this.params = params;
+    }
+
+    /**
+     * The name of the feature, used by the model to refer to it
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * The name of the native script computing the feature
+     */
+    public String script() {
+        return script;
+    }
+
+    /**
+     * The parameters of the script, added to the parameters of the ranking script
+     */
+    public Map<String, Object> params() {
+        return params;
+    }
+}
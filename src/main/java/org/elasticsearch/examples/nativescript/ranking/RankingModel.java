@@ -0,0 +1,103 @@
+package org.elasticsearch.examples.nativescript.ranking;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.collect.ImmutableList;
+import org.elasticsearch.common.collect.ImmutableMap;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A learned model that scores documents from the values of a list of features.
+ * <p/>
+ * Models are loaded from JSON files by the {@link RankingModelService}. A model file lists the features, each
+ * computed by a native script of the plugin, and either a <code>linear</code> model or an <code>ensemble</code> of
+ * regression trees:
+ * <pre>
+ * {
+ *   "features": [
+ *     {"name": "title_tfidf", "script": "tfidf_script_score", "params": {"field": "title"}},
+ *     {"name": "popularity", "script": "popularity", "params": {"field": "number"}}
+ *   ],
+ *   "linear": {"weights": {"title_tfidf": 0.8, "popularity": 0.2}, "bias": 0.1}
+ * }
+ * </pre>
+ * Models are immutable, so a model can be replaced while searches are still using the previous one.
+ */
+public abstract class RankingModel {
+
+    private final List<RankingFeature> features;
+
+    private final Map<String, Integer> featureIndexes;
+
+    protected RankingModel(List<RankingFeature> features) {
+        this.features = ImmutableList.copyOf(features);
+        Map<String, Integer> featureIndexes = new HashMap<String, Integer>();
+        for (int i = 0; i < features.size(); i++) {
+            if (featureIndexes.put(features.get(i).name(), i) != null) {
+                throw new ElasticsearchIllegalArgumentException("duplicate feature [" + features.get(i).name() + "]");
+            }
+        }
+        this.featureIndexes = ImmutableMap.copyOf(featureIndexes);
+    }
+
+    /**
+     * The features of the model, in the order of the values passed to {@link #score(double[])}
+     */
+    public List<RankingFeature> features() {
+        return features;
+    }
+
+    /**
+     * Returns the index of the feature with the given name
+     */
+    protected int featureIndex(String name) {
+        Integer index = featureIndexes.get(name);
+        if (index == null) {
+            throw new ElasticsearchIllegalArgumentException("unknown feature [" + name + "]");
+        }
+        return index;
+    }
+
+    /**
+     * Scores a document
+     *
+     * @param values the values of the features for the document
+     */
+    public abstract double score(double[] values);
+
+    /**
+     * Parses a model from the map representation of a model file
+     */
+    @SuppressWarnings("unchecked")
+    public static RankingModel parse(Map<String, Object> source) {
+        Object featuresParam = source.get("features");
+        if (!(featuresParam instanceof List)) {
+            throw new ElasticsearchIllegalArgumentException("ranking model has no features");
+        }
+        ImmutableList.Builder<RankingFeature> features = ImmutableList.builder();
+        for (Object featureParam : (List<?>) featuresParam) {
+            if (!(featureParam instanceof Map)) {
+                throw new ElasticsearchIllegalArgumentException("features must be objects");
+            }
+            Map<String, Object> feature = (Map<String, Object>) featureParam;
+            String name = XContentMapValues.nodeStringValue(feature.get("name"), null);
+            String script = XContentMapValues.nodeStringValue(feature.get("script"), null);
+            if (name == null || script == null) {
+                throw new ElasticsearchIllegalArgumentException("features must have a name and a script");
+            }
+            Object params = feature.get("params");
+            features.add(new RankingFeature(name, script,
+                    params instanceof Map ? (Map<String, Object>) params : ImmutableMap.<String, Object>of()));
+        }
+        if (source.get("linear") instanceof Map) {
+            return new LinearRankingModel(features.build(), (Map<String, Object>) source.get("linear"));
+        }
+        if (source.get("ensemble") instanceof Map) {
+            return new TreeEnsembleRankingModel(features.build(), (Map<String, Object>) source.get("ensemble"));
+        }
+        throw new ElasticsearchIllegalArgumentException("ranking model must be linear or an ensemble");
+    }
+}
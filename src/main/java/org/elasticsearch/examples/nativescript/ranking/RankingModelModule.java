@@ -0,0 +1,14 @@
+package org.elasticsearch.examples.nativescript.ranking;
+
+import org.elasticsearch.common.inject.AbstractModule;
+
+/**
+ * Binds the node level {@link RankingModelService}, so the models are loaded and watched once per node.
+ */
+public class RankingModelModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+        bind(RankingModelService.class).asEagerSingleton();
+    }
+}
@@ -0,0 +1,99 @@
+package org.elasticsearch.examples.nativescript.ranking;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.watcher.FileChangesListener;
+import org.elasticsearch.watcher.FileWatcher;
+import org.elasticsearch.watcher.ResourceWatcherService;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Node level registry of the {@link RankingModel ranking models}.
+ * <p/>
+ * Models are loaded from the <code>.json</code> files of the <code>ranking_models</code> directory of the config
+ * directory, or of the directory set with <code>examples.nativescript.ranking.path</code>. The name of a model is
+ * the path of its file relative to the directory, without the extension. The directory is watched by the resource
+ * watcher service (every <code>watcher.interval</code>, 60s by default), and changed files are compiled and swap
+ * the previous model atomically: searches that already got the previous model finish with it, later searches use
+ * the new one. A file that cannot be parsed is logged and the previous model is kept.
+ */
+public class RankingModelService extends AbstractComponent {
+
+    private static final String EXTENSION = ".json";
+
+    private final File modelsDirectory;
+
+    private final ConcurrentMap<String, RankingModel> models = ConcurrentCollections.newConcurrentMap();
+
+    @Inject
+    public RankingModelService(Settings settings, Environment environment, ResourceWatcherService resourceWatcherService) {
+        super(settings);
+        String path = settings.get("examples.nativescript.ranking.path");
+        this.modelsDirectory = path != null ? new File(path) : new File(environment.configFile(), "ranking_models");
+        FileWatcher fileWatcher = new FileWatcher(modelsDirectory);
+        fileWatcher.addListener(new ModelChangesListener());
+        // loads the existing models right away, and checks for changes periodically
+        resourceWatcherService.add(fileWatcher);
+    }
+
+    /**
+     * Returns the model with the given name, or null if there is no such model
+     */
+    @Nullable
+    public RankingModel model(String name) {
+        return models.get(name);
+    }
+
+    private class ModelChangesListener extends FileChangesListener {
+
+        @Nullable
+        private String modelName(File file) {
+            String modelPath = modelsDirectory.toURI().relativize(file.toURI()).getPath();
+            if (!modelPath.endsWith(EXTENSION)) {
+                return null;
+            }
+            return modelPath.substring(0, modelPath.length() - EXTENSION.length()).replace('/', '_');
+        }
+
+        @Override
+        public void onFileInit(File file) {
+            String name = modelName(file);
+            if (name == null) {
+                return;
+            }
+            try {
+                logger.info("loading ranking model [{}] from [{}]", name, file.getAbsolutePath());
+                models.put(name, RankingModel.parse(XContentHelper.convertToMap(Streams.copyToByteArray(file), true).v2()));
+            } catch (Throwable t) {
+                logger.warn("failed to load ranking model [{}]", t, name);
+            }
+        }
+
+        @Override
+        public void onFileCreated(File file) {
+            onFileInit(file);
+        }
+
+        @Override
+        public void onFileChanged(File file) {
+            onFileInit(file);
+        }
+
+        @Override
+        public void onFileDeleted(File file) {
+            String name = modelName(file);
+            if (name != null) {
+                logger.info("removing ranking model [{}]", name);
+                models.remove(name);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.elasticsearch.examples.nativescript.ranking;
+
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model that scores documents with an ensemble of regression trees, for example gradient boosted trees, as
+ * base_score + the sum of the values of the leaves the document reaches in each tree:
+ * <pre>
+ * "ensemble": {
+ *   "base_score": 0.5,
+ *   "trees": [
+ *     {"feature": "title_tfidf", "threshold": 1.2,
+ *      "left": {"value": -0.1},
+ *      "right": {"feature": "popularity", "threshold": 3, "left": {"value": 0.2}, "right": {"value": 0.7}}}
+ *   ]
+ * }
+ * </pre>
+ * A document goes to the left child if its feature value is lower than or equal to the threshold, or NaN (a missing
+ * value), and to the right child otherwise.
+ * <p/>
+ * The trees are compiled into flat arrays instead of node objects: the two children of a node are stored next to
+ * each other, so a split only selects the left child or the one after it, and walking down a tree is a tight loop
+ * over primitive arrays with the leaf check as the only branch.
+ */
+public class TreeEnsembleRankingModel extends RankingModel {
+
+    private static final int LEAF = -1;
+
+    // the feature of each split, LEAF for leaves
+    private final int[] splitFeatures;
+
+    // the threshold of each split, the value of each leaf
+    private final double[] values;
+
+    // the index of the left child of each split, the right child is the next node
+    private final int[] leftChildren;
+
+    // the index of the root of each tree
+    private final int[] roots;
+
+    private final double baseScore;
+
+    // number of nodes compiled so far
+    private int size;
+
+    TreeEnsembleRankingModel(List<RankingFeature> features, Map<String, Object> source) {
+        super(features);
+        if (!(source.get("trees") instanceof List)) {
+            throw new ElasticsearchIllegalArgumentException("ensemble has no trees");
+        }
+        List<?> trees = (List<?>) source.get("trees");
+        int numNodes = 0;
+        for (Object tree : trees) {
+            numNodes += countNodes(tree);
+        }
+        splitFeatures = new int[numNodes];
+        values = new double[numNodes];
+        leftChildren = new int[numNodes];
+        roots = new int[trees.size()];
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = size++;
+            compile(trees.get(i), roots[i]);
+        }
+        baseScore = XContentMapValues.nodeDoubleValue(source.get("base_score"), 0);
+    }
+
+    private static int countNodes(Object node) {
+        if (!(node instanceof Map)) {
+            throw new ElasticsearchIllegalArgumentException("tree nodes must be objects");
+        }
+        Map<?, ?> map = (Map<?, ?>) node;
+        if (map.get("feature") == null) {
+            return 1;
+        }
+        return 1 + countNodes(map.get("left")) + countNodes(map.get("right"));
+    }
+
+    private void compile(Object node, int index) {
+        Map<?, ?> map = (Map<?, ?>) node;
+        if (map.get("feature") == null) {
+            if (map.get("value") == null) {
+                throw new ElasticsearchIllegalArgumentException("tree nodes must have either a feature or a value");
+            }
+            splitFeatures[index] = LEAF;
+            values[index] = XContentMapValues.nodeDoubleValue(map.get("value"));
+            return;
+        }
+        if (map.get("threshold") == null) {
+            throw new ElasticsearchIllegalArgumentException("split on feature [" + map.get("feature") + "] has no threshold");
+        }
+        splitFeatures[index] = featureIndex(map.get("feature").toString());
+        values[index] = XContentMapValues.nodeDoubleValue(map.get("threshold"));
+        int left = size;
+        size += 2;
+        leftChildren[index] = left;
+        compile(map.get("left"), left);
+        compile(map.get("right"), left + 1);
+    }
+
+    @Override
+    public double score(double[] featureValues) {
+        double score = baseScore;
+        for (int root : roots) {
+            int node = root;
+            int feature;
+            while ((feature = splitFeatures[node]) != LEAF) {
+                node = leftChildren[node] + (featureValues[feature] > values[node] ? 1 : 0);
+            }
+            score += values[node];
+        }
+        return score;
+    }
+
+    /**
+     * Number of trees of the ensemble
+     */
+    public int numTrees() {
+        return roots.length;
+    }
+}
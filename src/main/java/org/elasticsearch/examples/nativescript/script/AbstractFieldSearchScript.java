@@ -0,0 +1,148 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.index.fielddata.BytesValues;
+import org.elasticsearch.index.fielddata.DoubleValues;
+import org.elasticsearch.index.fielddata.LongValues;
+import org.elasticsearch.index.fielddata.ScriptDocValues;
+import org.elasticsearch.index.fielddata.ordinals.Ordinals;
+import org.elasticsearch.script.AbstractSearchScript;
+import org.elasticsearch.script.ScriptException;
+
+/**
+ * Base class for native scripts that read doc values of a fixed list of fields.
+ * <p/>
+ * Calling <code>doc().get(field)</code> for every document costs a map lookup, a cast and a wrapper update before
+ * the script can read the value. This class resolves the values of all fields once in {@link #setNextReader}, and
+ * the {@link #run()} method of the script reads them for the current document using the typed accessors, where
+ * fields are referenced by their position in the list passed to the constructor.
+ */
+public abstract class AbstractFieldSearchScript extends AbstractSearchScript {
+
+    private final String[] fields;
+
+    private final LongValues[] longValues;
+
+    private final DoubleValues[] doubleValues;
+
+    private final BytesValues[] bytesValues;
+
+    private final Ordinals.Docs[] ordinals;
+
+    private int docId = -1;
+
+    protected AbstractFieldSearchScript(String... fields) {
+        this.fields = fields;
+        this.longValues = new LongValues[fields.length];
+        this.doubleValues = new DoubleValues[fields.length];
+        this.bytesValues = new BytesValues[fields.length];
+        this.ordinals = new Ordinals.Docs[fields.length];
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) {
+        super.setNextReader(context);
+        for (int i = 0; i < fields.length; i++) {
+            Object values = doc().get(fields[i]);
+            longValues[i] = null;
+            doubleValues[i] = null;
+            bytesValues[i] = null;
+            ordinals[i] = null;
+            if (values instanceof ScriptDocValues.Longs) {
+                longValues[i] = ((ScriptDocValues.Longs) values).getInternalValues();
+            } else if (values instanceof ScriptDocValues.Doubles) {
+                doubleValues[i] = ((ScriptDocValues.Doubles) values).getInternalValues();
+            } else if (values instanceof ScriptDocValues.Strings) {
+                bytesValues[i] = ((ScriptDocValues.Strings) values).getInternalValues();
+                if (bytesValues[i] instanceof BytesValues.WithOrdinals) {
+                    ordinals[i] = ((BytesValues.WithOrdinals) bytesValues[i]).ordinals();
+                }
+            } else {
+                throw new ScriptException("Field [" + fields[i] + "] is not supported by script " + getClass().getSimpleName());
+            }
+        }
+    }
+
+    @Override
+    public void setNextDocId(int doc) {
+        super.setNextDocId(doc);
+        this.docId = doc;
+    }
+
+    /**
+     * Returns the id of the current document within the current segment
+     */
+    protected final int docId() {
+        return docId;
+    }
+
+    /**
+     * Returns true if the current document has a value in the field
+     */
+    protected final boolean hasValue(int field) {
+        if (longValues[field] != null) {
+            return longValues[field].setDocument(docId) > 0;
+        } else if (doubleValues[field] != null) {
+            return doubleValues[field].setDocument(docId) > 0;
+        }
+        return bytesValues[field].setDocument(docId) > 0;
+    }
+
+    /**
+     * Returns the first value of a numeric field for the current document or <code>missing</code> if the document
+     * doesn't have a value in the field
+     */
+    protected final long longValue(int field, long missing) {
+        LongValues values = longValues[field];
+        if (values != null) {
+            return values.setDocument(docId) == 0 ? missing : values.nextValue();
+        }
+        DoubleValues doubles = doubleValues[field];
+        if (doubles == null) {
+            throw new ScriptException("Field [" + fields[field] + "] is not numeric");
+        }
+        return doubles.setDocument(docId) == 0 ? missing : (long) doubles.nextValue();
+    }
+
+    /**
+     * Returns the first value of a numeric field for the current document or <code>missing</code> if the document
+     * doesn't have a value in the field
+     */
+    protected final double doubleValue(int field, double missing) {
+        DoubleValues values = doubleValues[field];
+        if (values != null) {
+            return values.setDocument(docId) == 0 ? missing : values.nextValue();
+        }
+        LongValues longs = longValues[field];
+        if (longs == null) {
+            throw new ScriptException("Field [" + fields[field] + "] is not numeric");
+        }
+        return longs.setDocument(docId) == 0 ? missing : longs.nextValue();
+    }
+
+    /**
+     * Returns the first value of a string field for the current document or <code>null</code> if the document
+     * doesn't have a value in the field. The returned bytes are reused and must not be kept between documents.
+     */
+    protected final BytesRef bytesValue(int field) {
+        BytesValues values = bytesValues[field];
+        if (values == null) {
+            throw new ScriptException("Field [" + fields[field] + "] is not a string field");
+        }
+        return values.setDocument(docId) == 0 ? null : values.nextValue();
+    }
+
+    /**
+     * Returns the ordinal of the first value of a string field for the current document or
+     * {@link Ordinals#MISSING_ORDINAL} if the document doesn't have a value in the field. Ordinals are only
+     * comparable within the current segment.
+     */
+    protected final long ordinal(int field) {
+        Ordinals.Docs docs = ordinals[field];
+        if (docs == null) {
+            throw new ScriptException("Field [" + fields[field] + "] doesn't have ordinals");
+        }
+        return docs.getOrd(docId);
+    }
+}
@@ -0,0 +1,29 @@
+package org.elasticsearch.examples.nativescript.script;
+
+/**
+ * A field search script that returns a float, the same way as {@link org.elasticsearch.script.AbstractFloatSearchScript}
+ */
+public abstract class AbstractFloatFieldSearchScript extends AbstractFieldSearchScript {
+
+    protected AbstractFloatFieldSearchScript(String... fields) {
+        super(fields);
+    }
+
+    @Override
+    public Object run() {
+        return runAsFloat();
+    }
+
+    @Override
+    public abstract float runAsFloat();
+
+    @Override
+    public double runAsDouble() {
+        return runAsFloat();
+    }
+
+    @Override
+    public long runAsLong() {
+        return (long) runAsFloat();
+    }
+}
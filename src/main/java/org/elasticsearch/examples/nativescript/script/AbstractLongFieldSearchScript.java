@@ -0,0 +1,29 @@
+package org.elasticsearch.examples.nativescript.script;
+
+/**
+ * A field search script that returns a long, the same way as {@link org.elasticsearch.script.AbstractLongSearchScript}
+ */
+public abstract class AbstractLongFieldSearchScript extends AbstractFieldSearchScript {
+
+    protected AbstractLongFieldSearchScript(String... fields) {
+        super(fields);
+    }
+
+    @Override
+    public Object run() {
+        return runAsLong();
+    }
+
+    @Override
+    public abstract long runAsLong();
+
+    @Override
+    public double runAsDouble() {
+        return runAsLong();
+    }
+
+    @Override
+    public float runAsFloat() {
+        return runAsLong();
+    }
+}
@@ -0,0 +1,181 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.examples.nativescript.stats.FieldTermStatistics;
+import org.elasticsearch.examples.nativescript.stats.GlobalTermStatisticsService;
+import org.elasticsearch.script.AbstractDoubleSearchScript;
+import org.elasticsearch.script.ScriptException;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Base class for scripts that score documents based on the frequencies of a list of terms in a field, or in several
+ * fields in a single pass, see {@link TermScoringPlan#parseFields(java.util.Map, String, boolean)}.
+ * <p/>
+ * The query is compiled from the script parameters into a {@link TermScoringPlan} by the factory, and the score is
+ * returned as a primitive double from {@link #runAsDouble()}.
+ * <p/>
+ * The term statistics are resolved once per shard reader by {@link ShardTermStatistics}, and the postings of the
+ * terms are positioned once per segment by {@link TermFrequencies}, so the per document work is reduced to reading
+ * term frequencies. Scripts can be given index wide statistics instead, see
+ * {@link org.elasticsearch.examples.nativescript.stats.GlobalTermStatisticsService}.
+ */
+public abstract class AbstractTermScoreScript extends AbstractDoubleSearchScript {
+
+    protected final TermScoringPlan plan;
+
+    protected final String field;
+
+    protected final String[] terms;
+
+    // plans of all scored fields, the first one is plan
+    protected final TermScoringPlan[] plans;
+
+    private final ShardTermStatistics[] statistics;
+
+    private final TermFrequencies[] termFrequencies;
+
+    private int docId = -1;
+
+    private int maxDoc;
+
+    // scores of all documents of the current segment in bulk mode, sized to the largest segment seen so far
+    private float[] accumulator = new float[0];
+
+    private boolean accumulated;
+
+    protected AbstractTermScoreScript(TermScoringPlan plan) {
+        this(plan, null);
+    }
+
+    /**
+     * @param globalStatistics index wide statistics of the terms of the plan, or null to score with the statistics
+     *                         of the shard
+     */
+    protected AbstractTermScoreScript(TermScoringPlan plan, @Nullable FieldTermStatistics globalStatistics) {
+        this(new TermScoringPlan[]{plan}, new FieldTermStatistics[]{globalStatistics});
+    }
+
+    /**
+     * @param plans            the plans of the scored fields, all with the same terms
+     * @param globalStatistics index wide statistics of the terms of each plan, null entries to score with the
+     *                         statistics of the shard
+     */
+    protected AbstractTermScoreScript(TermScoringPlan[] plans, FieldTermStatistics[] globalStatistics) {
+        this.plans = plans;
+        this.plan = plans[0];
+        this.field = plan.field();
+        this.terms = plan.terms();
+        this.statistics = new ShardTermStatistics[plans.length];
+        this.termFrequencies = new TermFrequencies[plans.length];
+        for (int i = 0; i < plans.length; i++) {
+            statistics[i] = new ShardTermStatistics(plans[i].field(), plans[i].termBytes(), globalStatistics[i]);
+            termFrequencies[i] = new TermFrequencies(plans[i].field(), plans[i].termBytes(), plans[i].strategy());
+        }
+    }
+
+    /**
+     * Returns the index wide statistics of the terms of the plan if the plan asks for them and they are available,
+     * null otherwise.
+     */
+    @Nullable
+    static FieldTermStatistics globalStatistics(GlobalTermStatisticsService service, TermScoringPlan plan) {
+        if (!plan.globalStatistics()) {
+            return null;
+        }
+        return service.statistics(SearchContext.current(), plan.field(), plan.terms());
+    }
+
+    /**
+     * Returns the index wide statistics of each plan, see {@link #globalStatistics(GlobalTermStatisticsService, TermScoringPlan)}
+     */
+    static FieldTermStatistics[] globalStatistics(GlobalTermStatisticsService service, TermScoringPlan[] plans) {
+        FieldTermStatistics[] globalStatistics = new FieldTermStatistics[plans.length];
+        for (int i = 0; i < plans.length; i++) {
+            globalStatistics[i] = globalStatistics(service, plans[i]);
+        }
+        return globalStatistics;
+    }
+
+    /**
+     * Called with the term statistics of each field every time a new shard reader is searched. Scripts precompute
+     * the constants they need for scoring here.
+     *
+     * @param fieldIndex index of the field in {@link #plans}
+     */
+    protected abstract void collectStatistics(int fieldIndex, ShardTermStatistics statistics);
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) {
+        super.setNextReader(context);
+        for (int i = 0; i < plans.length; i++) {
+            try {
+                if (statistics[i].setNextReader(context)) {
+                    collectStatistics(i, statistics[i]);
+                }
+                termFrequencies[i].setNextReader(context);
+            } catch (IOException ex) {
+                throw new ScriptException("Could not load the terms of field [" + plans[i].field() + "]", ex);
+            }
+        }
+        maxDoc = context.reader().maxDoc();
+        accumulated = false;
+    }
+
+    @Override
+    public void setNextDocId(int doc) {
+        super.setNextDocId(doc);
+        this.docId = doc;
+    }
+
+    /**
+     * Returns the id of the current document within the current segment
+     */
+    protected final int docId() {
+        return docId;
+    }
+
+    /**
+     * Returns sum_f(sum_t(termWeights[f][t] * tf_f_t)) of the current document.
+     * <p/>
+     * The first call in a segment accumulates the scores of all documents of the segment term at a time, see
+     * {@link TermFrequencies#accumulate(float[], float[])}, later calls only read the accumulator. The term
+     * weights must not change within a segment, and {@link #tf(int, int)} must not be used together with this
+     * method.
+     */
+    protected final float accumulatedScore(float[][] termWeights) {
+        if (!accumulated) {
+            if (accumulator.length < maxDoc) {
+                accumulator = new float[maxDoc];
+            } else {
+                Arrays.fill(accumulator, 0, maxDoc, 0f);
+            }
+            for (int i = 0; i < plans.length; i++) {
+                try {
+                    termFrequencies[i].accumulate(termWeights[i], accumulator);
+                } catch (IOException ex) {
+                    throw new ScriptException("Could not read the postings of field [" + plans[i].field() + "]", ex);
+                }
+            }
+            accumulated = true;
+        }
+        return accumulator[docId];
+    }
+
+    /**
+     * Returns the frequency of the i-th term in the given field of the current document
+     *
+     * @param fieldIndex index of the field in {@link #plans}
+     */
+    protected final int tf(int fieldIndex, int i) {
+        try {
+            return termFrequencies[fieldIndex].tf(i, docId);
+        } catch (IOException ex) {
+            throw new ScriptException("Could not read the frequency of term [" + terms[i] + "] in field ["
+                    + plans[fieldIndex].field() + "]", ex);
+        }
+    }
+}
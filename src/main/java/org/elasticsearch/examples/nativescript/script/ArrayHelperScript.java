@@ -1,6 +1,9 @@
 package org.elasticsearch.examples.nativescript.script;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import org.elasticsearch.common.Nullable;
@@ -11,6 +14,7 @@ import org.elasticsearch.node.Node;
 import org.elasticsearch.script.AbstractSearchScript;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
+import org.elasticsearch.script.ScriptException;
 
 /**
  * Script that updates an array.
@@ -24,6 +28,8 @@ public class ArrayHelperScript extends AbstractSearchScript {
 
 	public static class Factory extends AbstractComponent implements NativeScriptFactory {
 
+        private final CompiledParamsCache<Plan> plans;
+
         /**
          * This constructor will be called by guice during initialization
          *
@@ -33,6 +39,7 @@ public class ArrayHelperScript extends AbstractSearchScript {
         @Inject
         public Factory(Node node, Settings settings) {
             super(settings);
+            plans = planCache(settings, ACTION_PARAMETER, "value");
         }
 
         /**
@@ -44,43 +51,53 @@ public class ArrayHelperScript extends AbstractSearchScript {
          */
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) {
-            return new ArrayHelperScript(params);
+            return new ArrayHelperScript(plans.plan(params));
         }	
 	}
 	public static class FactorySet extends AbstractComponent implements NativeScriptFactory {
+        private final CompiledParamsCache<Plan> plans;
         @SuppressWarnings("unchecked")
         @Inject
         public FactorySet(Node node, Settings settings) {
             super(settings);
+            plans = planCache(settings, ACTION_SET, "value");
         }
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) {
-            return new ArrayHelperScript(params, ACTION_SET);
+            return new ArrayHelperScript(plans.plan(params));
         }	
 	}
 	public static class FactoryAppend extends AbstractComponent implements NativeScriptFactory {
+        private final CompiledParamsCache<Plan> plans;
         @SuppressWarnings("unchecked")
         @Inject
         public FactoryAppend(Node node, Settings settings) {
             super(settings);
+            plans = planCache(settings, ACTION_APPEND, "value");
         }
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) {
-            return new ArrayHelperScript(params, ACTION_APPEND);
+            return new ArrayHelperScript(plans.plan(params));
         }	
 	}
 	public static class FactoryRemove extends AbstractComponent implements NativeScriptFactory {
+        private final CompiledParamsCache<Plan> plans;
         @SuppressWarnings("unchecked")
         @Inject
         public FactoryRemove(Node node, Settings settings) {
             super(settings);
+            plans = planCache(settings, ACTION_REMOVE, "value");
         }
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) {
-            return new ArrayHelperScript(params, ACTION_REMOVE);
+            return new ArrayHelperScript(plans.plan(params));
         }	
 	}
 	
+	/**
+	 * The action is read from the "action" parameter
+	 */
+	protected static final int ACTION_PARAMETER = 0;
 	protected static final int ACTION_SET = 1;
 	protected static final int ACTION_APPEND = 2;
 	protected static final int ACTION_REMOVE = 3;
@@ -92,6 +109,62 @@ public class ArrayHelperScript extends AbstractSearchScript {
 	
 	protected Map<String, Object> ctx;
 
+	/**
+	 * The parameters of the script once validated. Plans are cached by the factories and shared by all scripts
+	 * created with the same parameters, so bulk updates that send the same script for every document only parse
+	 * the parameters once.
+	 */
+	protected static class Plan {
+		final int action;
+		final String fieldName;
+		final String sourceName;
+		final List<Object> values;
+
+		Plan(int action, String fieldName, String sourceName, List<Object> values) {
+			this.action = action;
+			this.fieldName = fieldName;
+			this.sourceName = sourceName;
+			this.values = values;
+		}
+	}
+
+	protected static CompiledParamsCache<Plan> planCache(Settings settings, final int act, final String valueParameterName) {
+		return new CompiledParamsCache<Plan>(settings, new CompiledParamsCache.Compiler<Plan>() {
+			@Override
+			public Plan compile(Map<String, Object> params) {
+				return ArrayHelperScript.compile(params, act, valueParameterName);
+			}
+		});
+	}
+
+	/**
+	 * Parses the parameters, the values are copied so the plan doesn't depend on the parameters
+	 */
+	protected static Plan compile(Map<String, Object> params, int act, String valueParameterName) {
+		if (act == ACTION_PARAMETER) {
+			act = getAction((String) params.get("action"));
+		}
+		List<Object> values;
+		Object value = params.get(valueParameterName);
+		if (value != null) {
+			values = Collections.singletonList(CompiledParamsCache.immutableCopy(value));
+		} else {
+			Object vals = params.get(valueParameterName+"s");
+			if (vals instanceof Iterable<?>) {
+				values = new ArrayList<Object>();
+				for (Object o : (Iterable<?>) vals) {
+					values.add(CompiledParamsCache.immutableCopy(o));
+				}
+				values = Collections.unmodifiableList(values);
+			} else if (vals instanceof Object[]) {
+				values = CompiledParamsCache.immutableCopy(Arrays.asList((Object[]) vals));
+			} else {
+				throw new ScriptException("Missing the " + valueParameterName + " or " + valueParameterName + "s parameter");
+			}
+		}
+		return new Plan(act, (String) params.get("field"), (String) params.get("source"), values);
+	}
+
 	private static final int getAction(String act) {
 		if (act == null || act.equals("set")) {
 			return ACTION_SET;
@@ -104,7 +177,7 @@ public class ArrayHelperScript extends AbstractSearchScript {
 	}
 	
 	public ArrayHelperScript(Map<String, Object> params) {
-		this(params, getAction((String)params.get("action")));
+		this(params, ACTION_PARAMETER);
 	}
 
 	public ArrayHelperScript(Map<String, Object> params, int act) {
@@ -112,26 +185,14 @@ public class ArrayHelperScript extends AbstractSearchScript {
 	}	
 	
 	public ArrayHelperScript(Map<String, Object> params, int act, String valueParameterName) {
-		action = act;
-		sourceName = (String) params.get("source");
-		fieldName = (String) params.get("field");
+		this(compile(params, act, valueParameterName));
+	}
 
-		Object value = params.get(valueParameterName);
-		if (value != null) {
-			values = new ArrayList<Object>(1);
-			((ArrayList<Object>)values).add(value);
-		} else {
-			Object vals = params.get(valueParameterName+"s");
-			if (vals instanceof Iterable<?>) {
-				values = (Iterable<?>) vals;
-			} else {
-				Object[] objs = (Object[]) vals;
-				values = new ArrayList<Object>(objs.length);
-				for (Object o : objs) {
-					((ArrayList<Object>)values).add(o);
-				}
-			}
-		}
+	protected ArrayHelperScript(Plan plan) {
+		action = plan.action;
+		sourceName = plan.sourceName;
+		fieldName = plan.fieldName;
+		values = plan.values;
 	}
 
 	@Override
@@ -150,13 +211,13 @@ public class ArrayHelperScript extends AbstractSearchScript {
 				if (!items.contains(val)) {
 					atLeastOneChange = true;
 				    //System.err.println("Adding " + val + " to " + items.getClass());
-				    items.add(val);
+				    items.add(CompiledParamsCache.mutableCopy(val));
 				}
 			}
 		} else if (action == ACTION_APPEND) {
 			for (Object val : values) {
 				atLeastOneChange = true;
-				items.add(val);
+				items.add(CompiledParamsCache.mutableCopy(val));
 			}
 		} else if (action == ACTION_REMOVE) {
 			for (Object val : values) {
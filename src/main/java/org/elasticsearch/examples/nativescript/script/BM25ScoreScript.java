@@ -0,0 +1,216 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.util.SmallFloat;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.examples.nativescript.stats.FieldTermStatistics;
+import org.elasticsearch.examples.nativescript.stats.GlobalTermStatisticsService;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.fielddata.LongValues;
+import org.elasticsearch.index.fielddata.ScriptDocValues;
+import org.elasticsearch.script.ExecutableScript;
+import org.elasticsearch.script.NativeScriptFactory;
+import org.elasticsearch.script.ScriptException;
+
+/**
+ * Script that scores documents with Okapi BM25, see Manning et al.,
+ * "Information Retrieval", Chapter 11, Equation 11.32 (link:
+ * http://nlp.stanford.edu/IR-book/). The terms can be scored on several
+ * fields, the score is the sum of the BM25 scores of the fields multiplied
+ * by the boost of the field.
+ * <p/>
+ * The script accepts the following parameters:
+ * <ul>
+ * <li><code>terms</code> - the terms to score</li>
+ * <li><code>weights</code> - optional boost of each term</li>
+ * <li><code>field</code> - the field to score, or <code>fields</code> - a map of fields to boosts (or a list of
+ * fields with boost 1)</li>
+ * <li><code>k1</code> - term frequency saturation, 1.2 by default</li>
+ * <li><code>b</code> - length normalization, 0.75 by default</li>
+ * <li><code>length_field</code> - optional numeric field (for example a token_count field) holding the length of
+ * the scored field. Only supported with a single field. By default the length is decoded from the norms of the
+ * field.</li>
+ * <li><code>global_statistics</code> - if true, idf and average field length are computed from index wide
+ * statistics, so the scores don't depend on the shard, see
+ * {@link org.elasticsearch.examples.nativescript.stats.GlobalTermStatisticsService}</li>
+ * </ul>
+ * The statistics are the same as the statistics of the Lucene BM25 similarity, so the script calculates the
+ * same scores as a query on a field configured with the BM25 similarity. Like the other term scoring scripts,
+ * the frequencies can be read from term vectors with the <code>strategy</code> parameter, see
+ * {@link TermFrequencies}.
+ */
+public class BM25ScoreScript extends AbstractTermScoreScript {
+
+    final static public String SCRIPT_NAME = "bm25_script_score";
+
+    /**
+     * Document lengths of the 256 norm values, see
+     * {@link org.apache.lucene.search.similarities.BM25Similarity}. Both the BM25
+     * and the default similarity encode the norm as 1/sqrt(length).
+     */
+    static final float[] NORM_TABLE = new float[256];
+
+    static {
+        for (int i = 0; i < NORM_TABLE.length; i++) {
+            float f = SmallFloat.byte315ToFloat((byte) i);
+            NORM_TABLE[i] = 1.0f / (f * f);
+        }
+    }
+
+    /**
+     * Factory that is registered in
+     * {@link org.elasticsearch.examples.nativescript.plugin.NativeScriptExamplesPlugin#onModule(org.elasticsearch.script.ScriptModule)}
+     * method when the plugin is loaded.
+     */
+    public static class Factory implements NativeScriptFactory {
+
+        private final GlobalTermStatisticsService globalStatistics;
+
+        /**
+         * This constructor will be called by guice during initialization
+         *
+         * @param globalStatistics
+         *            cache of index wide term statistics, used with the
+         *            <code>global_statistics</code> parameter
+         */
+        @Inject
+        public Factory(GlobalTermStatisticsService globalStatistics) {
+            this.globalStatistics = globalStatistics;
+        }
+
+        /**
+         * This method is called for every search on every shard.
+         * 
+         * @param params
+         *            list of script parameters passed with the query
+         * @return new native script
+         */
+        @Override
+        public ExecutableScript newScript(@Nullable Map<String, Object> params) {
+            TermScoringPlan[] plans = TermScoringPlan.parseFields(params, SCRIPT_NAME, false);
+            float k1 = (float) XContentMapValues.nodeDoubleValue(params.get("k1"), 1.2);
+            float b = (float) XContentMapValues.nodeDoubleValue(params.get("b"), 0.75);
+            if (k1 < 0 || b < 0 || b > 1) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": k1 must be non-negative and b between 0 and 1!");
+            }
+            String lengthField = XContentMapValues.nodeStringValue(params.get("length_field"), null);
+            if (lengthField != null && plans.length != 1) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": length_field is only supported with a single field!");
+            }
+            return new BM25ScoreScript(plans, globalStatistics(globalStatistics, plans), k1, b, lengthField);
+        }
+    }
+
+    private final float k1;
+
+    private final float b;
+
+    private final String lengthField;
+
+    // boost * weight * idf * (k1 + 1) of each field and term, resolved once per shard reader
+    private final float[][] weights;
+
+    // average length of each field, resolved once per shard reader
+    private final float[] avgFieldLengths;
+
+    // k1 * (1 - b + b * length / avgdl) of each field and norm value, resolved once per shard reader
+    private final float[][] normCache;
+
+    // norms of each field in the current segment
+    private final NumericDocValues[] norms;
+
+    private LongValues lengths;
+
+    /**
+     * @param plans
+     *            the fields and the terms that are scored
+     * @param globalStatistics
+     *            index wide statistics of the terms of each field, or null
+     *            entries to use the statistics of the shard
+     * @param lengthField
+     *            the field holding the number of terms in the field, or null
+     *            to decode the length from the norms
+     */
+    private BM25ScoreScript(TermScoringPlan[] plans, FieldTermStatistics[] globalStatistics, float k1, float b,
+            @Nullable String lengthField) {
+        super(plans, globalStatistics);
+        this.k1 = k1;
+        this.b = b;
+        this.lengthField = lengthField;
+        this.weights = new float[plans.length][plan.size()];
+        this.avgFieldLengths = new float[plans.length];
+        this.normCache = new float[plans.length][256];
+        this.norms = new NumericDocValues[plans.length];
+    }
+
+    @Override
+    protected void collectStatistics(int fieldIndex, ShardTermStatistics statistics) {
+        long maxDoc = statistics.maxDoc();
+        float boost = plans[fieldIndex].boost();
+        double[] termWeights = plans[fieldIndex].weights();
+        float[] fieldWeights = weights[fieldIndex];
+        for (int i = 0; i < fieldWeights.length; i++) {
+            long df = statistics.docFreq(i);
+            float idf = (float) Math.log(1 + (maxDoc - df + 0.5D) / (df + 0.5D));
+            fieldWeights[i] = boost * (float) termWeights[i] * idf * (k1 + 1);
+        }
+        long sumTotalTermFreq = statistics.sumTotalTermFreq();
+        avgFieldLengths[fieldIndex] = sumTotalTermFreq <= 0 ? 1f : (float) (sumTotalTermFreq / (double) maxDoc);
+        float[] fieldNormCache = normCache[fieldIndex];
+        for (int i = 0; i < fieldNormCache.length; i++) {
+            fieldNormCache[i] = lengthNorm(fieldIndex, NORM_TABLE[i]);
+        }
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) {
+        super.setNextReader(context);
+        if (lengthField != null) {
+            lengths = ((ScriptDocValues.Longs) doc().get(lengthField)).getInternalValues();
+            return;
+        }
+        for (int i = 0; i < plans.length; i++) {
+            try {
+                norms[i] = context.reader().getNormValues(plans[i].field());
+            } catch (IOException ex) {
+                throw new ScriptException("Could not load the norms of field [" + plans[i].field() + "]", ex);
+            }
+        }
+    }
+
+    private float lengthNorm(int fieldIndex, float length) {
+        return k1 * ((1 - b) + b * length / avgFieldLengths[fieldIndex]);
+    }
+
+    @Override
+    public double runAsDouble() {
+        if (lengths != null) {
+            long length = lengths.setDocument(docId()) == 0 ? 0 : lengths.nextValue();
+            return fieldScore(0, lengthNorm(0, length));
+        }
+        double score = 0;
+        for (int f = 0; f < plans.length; f++) {
+            // Like Lucene, fields without norms are not normalized by length
+            NumericDocValues fieldNorms = norms[f];
+            score += fieldScore(f, fieldNorms == null ? k1 : normCache[f][(byte) fieldNorms.get(docId()) & 0xFF]);
+        }
+        return score;
+    }
+
+    private double fieldScore(int fieldIndex, float lengthNorm) {
+        float[] fieldWeights = weights[fieldIndex];
+        double score = 0;
+        for (int i = 0; i < fieldWeights.length; i++) {
+            int tf = tf(fieldIndex, i);
+            if (tf != 0) {
+                score += fieldWeights[i] * tf / (tf + lengthNorm);
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,195 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.util.FixedBitSet;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.examples.nativescript.cache.ScriptResultCache;
+import org.elasticsearch.script.AbstractSearchScript;
+import org.elasticsearch.script.ScriptException;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.script.SearchScript;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Script that reads the values of a deterministic script from the {@link ScriptResultCache}.
+ * <p/>
+ * Scripts opt in with the <code>cache</code> parameter. The factory of the script then wraps the script, created
+ * with the same parameters without <code>cache</code>, in this script. The first search that reaches a segment
+ * runs the script on all documents of the segment and caches the values, the following searches with the same
+ * parameters only read the values and don't even load the field data of the script. Computing the values of all
+ * documents is more expensive than running the script on the matching documents, so caching pays off for
+ * searches that are repeated, like dashboards and pagination.
+ */
+public class CachedSearchScript extends AbstractSearchScript {
+
+    /**
+     * How the values of the script are stored
+     */
+    public static enum ValueType {
+        /**
+         * Boolean values, stored in a bitset
+         */
+        BOOLEAN,
+        /**
+         * Long values
+         */
+        LONG,
+        /**
+         * Float values
+         */
+        FLOAT,
+        /**
+         * Float values multiplied with the score of the document. The values are computed with a score of 1, and
+         * multiplied with the score of the document when they are read.
+         */
+        FLOAT_TIMES_SCORE
+    }
+
+    /**
+     * Wraps the script with the given name in a cached script, if the <code>cache</code> parameter is set
+     *
+     * @return the cached script, or null if the script shouldn't be cached
+     */
+    public static CachedSearchScript wrap(ScriptResultCache cache, ScriptService scriptService, String script,
+                                          Map<String, Object> params, ValueType type) {
+        if (params == null || !XContentMapValues.nodeBooleanValue(params.get("cache"), false)) {
+            return null;
+        }
+        SearchContext context = SearchContext.current();
+        if (context == null) {
+            throw new ScriptException("cannot initialize " + script + ": cache can only be used in searches!");
+        }
+        Map<String, Object> scriptParams = new HashMap<String, Object>(params);
+        scriptParams.remove("cache");
+        SearchScript delegate = scriptService.search(context.lookup(), "native", script, scriptParams);
+        return new CachedSearchScript(cache, delegate, ScriptResultCache.scriptKey(script, scriptParams), type);
+    }
+
+    private final ScriptResultCache cache;
+
+    private final SearchScript script;
+
+    private final String scriptKey;
+
+    private final ValueType type;
+
+    private FixedBitSet bits;
+
+    private long[] longs;
+
+    private float[] floats;
+
+    private int docId;
+
+    private CachedSearchScript(ScriptResultCache cache, SearchScript script, String scriptKey, ValueType type) {
+        this.cache = cache;
+        this.script = script;
+        this.scriptKey = scriptKey;
+        this.type = type;
+    }
+
+    @Override
+    public void setNextReader(final AtomicReaderContext context) {
+        super.setNextReader(context);
+        Object values;
+        try {
+            values = cache.values(context.reader(), scriptKey, new Callable<Object>() {
+                @Override
+                public Object call() {
+                    return computeValues(context);
+                }
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ScriptException("failed to compute the values of " + scriptKey, e);
+        }
+        switch (type) {
+            case BOOLEAN:
+                bits = (FixedBitSet) values;
+                break;
+            case LONG:
+                longs = (long[]) values;
+                break;
+            default:
+                floats = (float[]) values;
+        }
+    }
+
+    private Object computeValues(AtomicReaderContext context) {
+        int maxDoc = context.reader().maxDoc();
+        script.setNextReader(context);
+        script.setNextScore(1f);
+        switch (type) {
+            case BOOLEAN:
+                FixedBitSet bits = new FixedBitSet(maxDoc);
+                for (int doc = 0; doc < maxDoc; doc++) {
+                    script.setNextDocId(doc);
+                    if (Boolean.TRUE.equals(script.run())) {
+                        bits.set(doc);
+                    }
+                }
+                return bits;
+            case LONG:
+                long[] longs = new long[maxDoc];
+                for (int doc = 0; doc < maxDoc; doc++) {
+                    script.setNextDocId(doc);
+                    longs[doc] = script.runAsLong();
+                }
+                return longs;
+            default:
+                float[] floats = new float[maxDoc];
+                for (int doc = 0; doc < maxDoc; doc++) {
+                    script.setNextDocId(doc);
+                    floats[doc] = script.runAsFloat();
+                }
+                return floats;
+        }
+    }
+
+    @Override
+    public void setNextDocId(int doc) {
+        super.setNextDocId(doc);
+        this.docId = doc;
+    }
+
+    @Override
+    public Object run() {
+        switch (type) {
+            case BOOLEAN:
+                return bits.get(docId);
+            case LONG:
+                return longs[docId];
+            default:
+                return runAsFloat();
+        }
+    }
+
+    @Override
+    public float runAsFloat() {
+        switch (type) {
+            case BOOLEAN:
+                return bits.get(docId) ? 1 : 0;
+            case LONG:
+                return longs[docId];
+            case FLOAT:
+                return floats[docId];
+            default:
+                return floats[docId] * score();
+        }
+    }
+
+    @Override
+    public long runAsLong() {
+        return type == ValueType.LONG ? longs[docId] : (long) runAsFloat();
+    }
+
+    @Override
+    public double runAsDouble() {
+        return type == ValueType.LONG ? longs[docId] : runAsFloat();
+    }
+}
@@ -0,0 +1,149 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of the execution plans that a script factory compiles from the script parameters.
+ * <p/>
+ * Factories are called for every shard of a search and for every item of a bulk update, and bulk updates often send
+ * the same script with the same parameters thousands of times. Instead of parsing and validating the parameters
+ * again, the factory looks up the plan compiled for equal parameters. The key is an immutable deep copy of the
+ * parameters. Maps compare by content regardless of the order of their entries, so the same parameters in another
+ * order share the plan and plans must not depend on the order of the entries of a map, only lists are ordered.
+ * Plans are shared by all scripts created from equal parameters, so they must be immutable.
+ * <p/>
+ * Caching only pays off for parameters that repeat. Parameters that are different for almost every script, like
+ * the per document deltas of a bulk of counter updates, should be compiled directly with the compiler, looking
+ * them up would only copy them and evict the plans that are actually reused.
+ * <p/>
+ * The number of plans of each factory is bounded by <code>examples.nativescript.compiled_params_cache.size</code>,
+ * 1000 by default, and the least recently used plans are evicted first.
+ */
+public class CompiledParamsCache<T> {
+
+    /**
+     * Compiles the parameters of a script into an execution plan
+     */
+    public static interface Compiler<T> {
+
+        /**
+         * Parses and validates the parameters
+         *
+         * @param params immutable copy of the script parameters
+         */
+        T compile(Map<String, Object> params);
+    }
+
+    private final Cache<Map<String, Object>, T> cache;
+
+    private final Compiler<T> compiler;
+
+    public CompiledParamsCache(Settings settings, Compiler<T> compiler) {
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(settings.getAsInt("examples.nativescript.compiled_params_cache.size", 1000))
+                .build();
+        this.compiler = compiler;
+    }
+
+    /**
+     * Returns the plan compiled from the parameters, compiling them if they were never seen before
+     */
+    public T plan(@Nullable Map<String, Object> params) {
+        if (params == null) {
+            params = Collections.emptyMap();
+        }
+        // Maps and lists compare by content, so the parameters of the request find the plan without being copied.
+        // Arrays, passed by the Java API, compare by identity and are converted to lists first.
+        Map<String, Object> lookup = containsArray(params) ? immutableCopy(params) : params;
+        T plan = cache.getIfPresent(lookup);
+        if (plan == null) {
+            Map<String, Object> key = lookup == params ? immutableCopy(params) : lookup;
+            plan = compiler.compile(key);
+            cache.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Number of cached plans
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    private static boolean containsArray(Object value) {
+        if (value instanceof Map) {
+            for (Object element : ((Map<?, ?>) value).values()) {
+                if (containsArray(element)) {
+                    return true;
+                }
+            }
+        } else if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (containsArray(element)) {
+                    return true;
+                }
+            }
+        }
+        return value instanceof Object[];
+    }
+
+    /**
+     * Returns an immutable deep copy of the maps and lists of the value
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V immutableCopy(V value) {
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), immutableCopy(entry.getValue()));
+            }
+            return (V) Collections.unmodifiableMap(copy);
+        } else if (value instanceof List) {
+            List<Object> copy = new ArrayList<Object>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                copy.add(immutableCopy(element));
+            }
+            return (V) Collections.unmodifiableList(copy);
+        } else if (value instanceof Object[]) {
+            List<Object> copy = new ArrayList<Object>(((Object[]) value).length);
+            for (Object element : (Object[]) value) {
+                copy.add(immutableCopy(element));
+            }
+            return (V) Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    /**
+     * Returns a mutable deep copy of the maps and lists of a value of a plan, so it can be added to a document
+     * that may be modified later on
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> V mutableCopy(V value) {
+        if (value instanceof Map) {
+            Map<Object, Object> copy = new HashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                copy.put(entry.getKey(), mutableCopy(entry.getValue()));
+            }
+            return (V) copy;
+        } else if (value instanceof List) {
+            List<Object> copy = new ArrayList<Object>(((List<?>) value).size());
+            for (Object element : (List<?>) value) {
+                copy.add(mutableCopy(element));
+            }
+            return (V) copy;
+        }
+        return value;
+    }
+}
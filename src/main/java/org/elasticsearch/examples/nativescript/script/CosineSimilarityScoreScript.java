@@ -1,34 +1,32 @@
 package org.elasticsearch.examples.nativescript.script;
 
-import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Map;
 
 import org.elasticsearch.script.ScriptException;
 
 import org.elasticsearch.common.Nullable;
-import org.elasticsearch.script.AbstractSearchScript;
+import org.elasticsearch.examples.nativescript.stats.FieldTermStatistics;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
-import org.elasticsearch.search.lookup.IndexField;
-import org.elasticsearch.search.lookup.IndexFieldTerm;
 
 /**
  * Script that scores documents with cosine similarity, see Manning et al.,
  * "Information Retrieval", Chapter 6, Eq. 6.12 (link:
- * http://nlp.stanford.edu/IR-book/). This implementation only scores a list of
- * terms on one field.
+ * http://nlp.stanford.edu/IR-book/). This implementation scores a list of
+ * terms on one <code>field</code>, or on several <code>fields</code> given as a
+ * map of fields to boosts, in which case the score is the sum of the cosines
+ * of the fields multiplied by the boost of the field. Fields without any of
+ * the terms add nothing.
  */
-public class CosineSimilarityScoreScript extends AbstractSearchScript {
+public class CosineSimilarityScoreScript extends AbstractTermScoreScript {
 
-    // the field containing the terms that should be scored, must be initialized
-    // in constructor from parameters.
-    String field = null;
-    // terms that are used for scoring, must be unique
-    ArrayList<String> terms = null;
     // weights, in case we want to put emphasis on a specific term. In the most
     // simple case, 1.0 for every term.
-    ArrayList<Double> weights = null;
+    private final double[] weights;
+    // norm of the query vector, which is the same for every document
+    private final double queryNorm;
+    // boost of each field
+    private final double[] fieldBoosts;
 
     final static public String SCRIPT_NAME = "cosine_sim_script_score";
 
@@ -48,57 +46,56 @@ public class CosineSimilarityScoreScript extends AbstractSearchScript {
          */
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) throws ScriptException {
-            return new CosineSimilarityScoreScript(params);
+            return new CosineSimilarityScoreScript(TermScoringPlan.parseFields(params, SCRIPT_NAME, true));
         }
     }
 
     /**
-     * @param params
-     *            terms that a scored are placed in this parameter. Initialize
-     *            them here.
-     * @throws ScriptException 
+     * @param plans
+     *            the fields, the terms that are scored (must be unique) and their weights
      */
-    private CosineSimilarityScoreScript(Map<String, Object> params) throws ScriptException {
-        params.entrySet();
-        // get the terms
-        terms = (ArrayList<String>) params.get("terms");
-        weights = (ArrayList<Double>) params.get("weights");
-        // get the field
-        field = (String) params.get("field");
-        if (field == null || terms == null || weights == null) {
-            throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": field, terms or weights parameter missing!");
-        }
-        if (weights.size() != terms.size()) {
-            throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": terms and weights array must have same length!");
+    private CosineSimilarityScoreScript(TermScoringPlan[] plans) {
+        super(plans, new FieldTermStatistics[plans.length]);
+        this.weights = plan.weights();
+        this.queryNorm = plan.queryNorm();
+        this.fieldBoosts = new double[plans.length];
+        for (int i = 0; i < plans.length; i++) {
+            fieldBoosts[i] = plans[i].boost();
         }
     }
 
     @Override
-    public Object run() {
-        try {
-            float score = 0;
-            // first, get the ShardTerms object for the field.
-            IndexField indexField = this.indexLookup().get(field);
-            double queryWeightSum = 0.0f;
-            double docWeightSum = 0.0f;
-            for (int i = 0; i < terms.size(); i++) {
-                // Now, get the ShardTerm object that can be used to access all
-                // the term statistics
-                IndexFieldTerm indexTermField = indexField.get(terms.get(i));
-                // compute the most naive tfidf and add to current score
-                int df = (int) indexTermField.df();
-                int tf = indexTermField.tf();
-                if (df != 0 && tf != 0) {
-                    double termscore = (double) tf * weights.get(i);
-                    score += termscore;
-                    docWeightSum += Math.pow(tf, 2.0);
-                }
-                queryWeightSum += Math.pow(weights.get(i), 2.0);
+    protected void collectStatistics(int fieldIndex, ShardTermStatistics statistics) {
+        // only term frequencies are needed
+    }
+
+    @Override
+    public double runAsDouble() {
+        if (fieldBoosts.length == 1) {
+            return fieldBoosts[0] * fieldScore(0);
+        }
+        double score = 0;
+        for (int f = 0; f < fieldBoosts.length; f++) {
+            double fieldScore = fieldScore(f);
+            // the cosine is undefined if the field has none of the terms
+            if (!Double.isNaN(fieldScore)) {
+                score += fieldBoosts[f] * fieldScore;
+            }
+        }
+        return score;
+    }
+
+    private double fieldScore(int fieldIndex) {
+        double score = 0;
+        double docWeightSum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            int tf = tf(fieldIndex, i);
+            if (tf != 0) {
+                score += tf * weights[i];
+                docWeightSum += tf * tf;
             }
-            return score / (Math.sqrt(docWeightSum) * Math.sqrt(queryWeightSum));
-        } catch (IOException ex) {
-            throw new ScriptException("Could not compute cosine similarity: ", ex);
         }
+        return score / (Math.sqrt(docWeightSum) * queryNorm);
     }
 
 }
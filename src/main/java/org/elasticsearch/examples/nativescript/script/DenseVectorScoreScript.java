@@ -0,0 +1,220 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.BinaryDocValues;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.examples.nativescript.vector.DenseVectorFieldMapper;
+import org.elasticsearch.examples.nativescript.vector.DenseVectors;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.script.AbstractSearchScript;
+import org.elasticsearch.script.ExecutableScript;
+import org.elasticsearch.script.NativeScriptFactory;
+import org.elasticsearch.script.ScriptException;
+import org.elasticsearch.search.internal.SearchContext;
+
+/**
+ * Script that scores documents by the similarity of a
+ * {@link org.elasticsearch.examples.nativescript.vector.DenseVectorFieldMapper dense_vector} field and a query
+ * vector, for example to rerank the documents matching a query by the similarity of their embeddings:
+ * <ul>
+ * <li><code>cosine</code> (default): cosine similarity, using the norm that was stored with the document vector</li>
+ * <li><code>dot_product</code>: dot product</li>
+ * <li><code>l2</code>: 1 / (1 + l2 distance), so that closer vectors score higher</li>
+ * </ul>
+ * The query vector is normalized once per request, and the document vectors are decoded from the binary doc values
+ * without allocating anything. Documents without a vector score 0. The number of dimensions and the encoding of the
+ * vectors are read from the mapping of the field, and the query vector must have the same number of dimensions.
+ * <p/>
+ * Int8 vectors are scored like float vectors, with a small error. Bit vectors are scored with the cosine similarity
+ * estimated from their Hamming distance to the query vector, whatever the metric. To score the best documents
+ * exactly, rescore them with this script on the <code>&lt;field&gt;.float</code> field of a field with
+ * <code>store_float</code> enabled.
+ */
+public class DenseVectorScoreScript extends AbstractSearchScript {
+
+    final static public String SCRIPT_NAME = "dense_vector_script_score";
+
+    public enum Metric {
+        COSINE, DOT_PRODUCT, L2;
+
+        public static Metric fromString(String metric) {
+            try {
+                return valueOf(metric.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": unknown metric [" + metric + "]");
+            }
+        }
+    }
+
+    /**
+     * Factory that is registered in
+     * {@link org.elasticsearch.examples.nativescript.plugin.NativeScriptExamplesPlugin#onModule(org.elasticsearch.script.ScriptModule)}
+     * method when the plugin is loaded.
+     */
+    public static class Factory implements NativeScriptFactory {
+
+        /**
+         * This method is called for every search on every shard.
+         *
+         * @param params
+         *            list of script parameters passed with the query
+         * @return new native script
+         */
+        @Override
+        public ExecutableScript newScript(@Nullable Map<String, Object> params) {
+            String field = params == null ? null : XContentMapValues.nodeStringValue(params.get("field"), null);
+            Object vectorParam = params == null ? null : params.get("vector");
+            if (field == null || !(vectorParam instanceof List) || ((List<?>) vectorParam).isEmpty()) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": field or vector parameter missing!");
+            }
+            SearchContext context = SearchContext.current();
+            if (context == null) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": can only be used in searches!");
+            }
+            float[] vector = parseVector((List<?>) vectorParam);
+            DenseVectorFieldMapper mapper = vectorMapper(context, field);
+            if (mapper == null) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": field [" + field + "] is not a dense_vector field");
+            }
+            if (vector.length != mapper.dims()) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": query vector has [" + vector.length
+                        + "] dimensions, but field [" + field + "] has [" + mapper.dims() + "]");
+            }
+            return new DenseVectorScoreScript(mapper.names().indexName(), vector, mapper.encoding(),
+                    Metric.fromString(XContentMapValues.nodeStringValue(params.get("metric"), "cosine")));
+        }
+
+        @Nullable
+        private static DenseVectorFieldMapper vectorMapper(SearchContext context, String field) {
+            FieldMapper<?> mapper = context.smartNameFieldMapper(field);
+            return mapper instanceof DenseVectorFieldMapper ? (DenseVectorFieldMapper) mapper : null;
+        }
+    }
+
+    static float[] parseVector(List<?> values) {
+        float[] vector = new float[values.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = XContentMapValues.nodeFloatValue(values.get(i));
+        }
+        return vector;
+    }
+
+    private final String field;
+
+    private final Metric metric;
+
+    // the encoding of the vectors of the field, from its mapping
+    private final DenseVectors.Encoding encoding;
+
+    // the query vector, scaled to unit length for cosine similarity
+    private final float[] vector;
+
+    // sum of the query vector for int8 dot products
+    private final double vectorSum;
+
+    // sign bits of the query vector for bit vectors
+    private final long[] vectorBits;
+
+    private final BytesRef scratch = new BytesRef();
+
+    private BinaryDocValues values;
+
+    private int docId;
+
+    /**
+     * @param field
+     *            the doc values field holding the vectors
+     * @param vector
+     *            the query vector, with the number of dimensions of the field
+     * @param encoding
+     *            the encoding of the vectors of the field
+     * @param metric
+     *            the similarity function
+     */
+    public DenseVectorScoreScript(String field, float[] vector, DenseVectors.Encoding encoding, Metric metric) {
+        this.field = field;
+        this.encoding = encoding;
+        this.metric = metric;
+        this.vector = metric == Metric.COSINE ? DenseVectors.normalize(vector) : vector;
+        this.vectorSum = DenseVectors.sum(this.vector);
+        this.vectorBits = DenseVectors.packBits(vector);
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) {
+        super.setNextReader(context);
+        try {
+            values = context.reader().getBinaryDocValues(field);
+        } catch (IOException ex) {
+            throw new ElasticsearchException("Could not read the vectors of field [" + field + "]", ex);
+        }
+    }
+
+    @Override
+    public void setNextDocId(int doc) {
+        super.setNextDocId(doc);
+        this.docId = doc;
+    }
+
+    @Override
+    public Object run() {
+        return runAsDouble();
+    }
+
+    @Override
+    public float runAsFloat() {
+        return (float) runAsDouble();
+    }
+
+    @Override
+    public double runAsDouble() {
+        if (values == null) {
+            return 0;
+        }
+        values.get(docId, scratch);
+        if (scratch.length == 0) {
+            // no vector in this document
+            return 0;
+        }
+        switch (encoding) {
+        case FLOAT:
+            return scoreFloat();
+        case INT8:
+            return scoreInt8();
+        default:
+            return DenseVectors.hammingCosine(DenseVectors.hammingDistance(scratch, vectorBits), vector.length);
+        }
+    }
+
+    private double scoreFloat() {
+        switch (metric) {
+        case COSINE:
+            float norm = DenseVectors.norm(scratch);
+            return norm == 0 ? 0 : DenseVectors.dotProduct(scratch, vector) / norm;
+        case DOT_PRODUCT:
+            return DenseVectors.dotProduct(scratch, vector);
+        default:
+            return 1 / (1 + Math.sqrt(DenseVectors.l2DistanceSquared(scratch, vector)));
+        }
+    }
+
+    private double scoreInt8() {
+        switch (metric) {
+        case COSINE:
+            float norm = DenseVectors.norm(scratch);
+            return norm == 0 ? 0 : DenseVectors.int8DotProduct(scratch, vector, vectorSum) / norm;
+        case DOT_PRODUCT:
+            return DenseVectors.int8DotProduct(scratch, vector, vectorSum);
+        default:
+            return 1 / (1 + Math.sqrt(DenseVectors.int8L2DistanceSquared(scratch, vector)));
+        }
+    }
+}
@@ -20,14 +20,16 @@ import org.elasticsearch.script.NativeScriptFactory;
 public class HashHelperScript extends ArrayHelperScript {
 
 	public static class FactoryRemove extends AbstractComponent implements NativeScriptFactory {
+        private final CompiledParamsCache<Plan> plans;
         @SuppressWarnings("unchecked")
         @Inject
         public FactoryRemove(Node node, Settings settings) {
             super(settings);
+            plans = planCache(settings, ACTION_REMOVE, "key");
         }
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) {
-            return new HashHelperScript(params, ACTION_REMOVE);
+            return new HashHelperScript(plans.plan(params));
         }
 	}
 
@@ -35,6 +37,10 @@ public class HashHelperScript extends ArrayHelperScript {
 		super(params, act, "key");
 	}
 
+	protected HashHelperScript(Plan plan) {
+		super(plan);
+	}
+
 	@Override
 	public Object run() {
 
@@ -5,20 +5,26 @@ import java.util.Map;
 
 import org.elasticsearch.script.ScriptException;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
-import org.elasticsearch.index.fielddata.ScriptDocValues;
-import org.elasticsearch.index.fielddata.ScriptDocValues.Longs;
-import org.elasticsearch.script.AbstractSearchScript;
+import org.elasticsearch.examples.nativescript.cache.ScriptResultCache;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
+import org.elasticsearch.script.ScriptService;
 
 /**
  * Implementation of the native script that checks that the field exists and contains a prime number.
  * <p/>
  * The native script has to implement {@link org.elasticsearch.script.SearchScript} interface. But the
- * {@link org.elasticsearch.script.AbstractSearchScript} class can be used to simplify the implementation.
+ * {@link org.elasticsearch.script.AbstractSearchScript} class can be used to simplify the implementation. This script
+ * extends {@link AbstractFieldSearchScript}, which binds the field once per segment instead of looking it up
+ * for every document.
+ * <p/>
+ * The result only depends on the value of the field, so with the parameter <code>cache</code> set to true the results
+ * of each segment are computed once and cached by the {@link CachedSearchScript}.
  */
-public class IsPrimeSearchScript extends AbstractSearchScript {
+public class IsPrimeSearchScript extends AbstractFieldSearchScript {
 
     /**
      * Native scripts are build using factories that are registered in the
@@ -27,6 +33,22 @@ public class IsPrimeSearchScript extends AbstractSearchScript {
      */
     public static class Factory implements NativeScriptFactory {
 
+        private final ScriptResultCache cache;
+
+        private final Provider<ScriptService> scriptService;
+
+        /**
+         * This constructor will be called by guice during initialization
+         *
+         * @param cache         caches the results when the <code>cache</code> parameter is set
+         * @param scriptService creates the script whose results are cached
+         */
+        @Inject
+        public Factory(ScriptResultCache cache, Provider<ScriptService> scriptService) {
+            this.cache = cache;
+            this.scriptService = scriptService;
+        }
+
         /**
          * This method is called for every search on every shard.
          *
@@ -41,6 +63,11 @@ public class IsPrimeSearchScript extends AbstractSearchScript {
             if (fieldName == null) {
                 throw new ScriptException("Missing the field parameter");
             }
+            CachedSearchScript cached = CachedSearchScript.wrap(cache, scriptService.get(), "is_prime", params,
+                    CachedSearchScript.ValueType.BOOLEAN);
+            if (cached != null) {
+                return cached;
+            }
 
             // Example of an optional integer  parameter
             int certainty = params == null ? 10 : XContentMapValues.nodeIntegerValue(params.get("certainty"), 10);
@@ -48,8 +75,6 @@ public class IsPrimeSearchScript extends AbstractSearchScript {
         }
     }
 
-    private final String fieldName;
-
     private final int certainty;
 
     /**
@@ -59,24 +84,16 @@ public class IsPrimeSearchScript extends AbstractSearchScript {
      * @param certainty the required certainty for the number to be prime
      */
     private IsPrimeSearchScript(String fieldName, int certainty) {
-        this.fieldName = fieldName;
+        super(fieldName);
         this.certainty = certainty;
     }
 
     @Override
     public Object run() {
-        // First we get field using doc lookup
-        ScriptDocValues docValue = (ScriptDocValues) doc().get(fieldName);
         // Check if field exists
-        if (docValue != null && !docValue.isEmpty()) {
-            try {
-                // Try to parse it as an integer
-                BigInteger bigInteger = new BigInteger(Long.toString(((Longs) docValue).getValue()));
-                // Check if it's prime
-                return bigInteger.isProbablePrime(certainty);
-            } catch (NumberFormatException ex) {
-                return false;
-            }
+        if (hasValue(0)) {
+            // Check if it's prime
+            return BigInteger.valueOf(longValue(0, 0)).isProbablePrime(certainty);
         }
         return false;
     }
@@ -1,36 +1,89 @@
 package org.elasticsearch.examples.nativescript.script;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Map;
 
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.examples.nativescript.stats.FieldTermStatistics;
+import org.elasticsearch.examples.nativescript.stats.GlobalTermStatisticsService;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.fielddata.LongValues;
 import org.elasticsearch.index.fielddata.ScriptDocValues;
-import org.elasticsearch.script.AbstractSearchScript;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
 import org.elasticsearch.script.ScriptException;
-import org.elasticsearch.search.lookup.IndexField;
-import org.elasticsearch.search.lookup.IndexFieldTerm;
 
 /**
- * Script that scores documents with a language model similarity with linear
- * interpolation, see Manning et al., "Information Retrieval", Chapter 12,
- * Equation 12.12 (link: http://nlp.stanford.edu/IR-book/) This implementation
- * only scores a list of terms on one field.
+ * Script that scores documents with a language model similarity, see
+ * Manning et al., "Information Retrieval", Chapter 12 (link:
+ * http://nlp.stanford.edu/IR-book/) This implementation scores a list of
+ * terms on one <code>field</code>, or on several <code>fields</code> given as
+ * a map of fields to boosts, in which case the score is the sum of the log
+ * likelihoods of the fields multiplied by the boost of the field.
+ * <p/>
+ * The document model is smoothed with the collection model either by linear
+ * interpolation (<code>"smoothing": "jelinek_mercer"</code>, the default,
+ * with the <code>lambda</code> parameter, Equation 12.12), or with a
+ * Dirichlet prior (<code>"smoothing": "dirichlet"</code>, with the
+ * <code>mu</code> parameter, 2000 by default), see Zhai and Lafferty, "A
+ * Study of Smoothing Methods for Language Models Applied to Information
+ * Retrieval".
+ * <p/>
+ * The document length is read from the <code>word_count_field</code> (a
+ * <code>token_count</code> field) if given, which is only supported with a
+ * single field. Otherwise it is decoded from the norms of the field, which
+ * costs no extra field but is lossy: norms store 1 / sqrt(length) in a
+ * single byte, so lengths are rounded, and index time boosts of the field
+ * skew them. Documents without the field have length 0, so the field only
+ * contributes the collection model to their score.
+ * <p/>
+ * With the <code>global_statistics</code> parameter set to true, the
+ * statistics are index wide instead of shard level statistics, see
+ * {@link org.elasticsearch.examples.nativescript.stats.GlobalTermStatisticsService}.
  */
-public class LanguageModelScoreScript extends AbstractSearchScript {
+public class LanguageModelScoreScript extends AbstractTermScoreScript {
+
+    /**
+     * The smoothing methods supported by the script
+     */
+    public static enum Smoothing {
+        JELINEK_MERCER, DIRICHLET;
+
+        public static Smoothing fromString(String smoothing) {
+            if ("jelinek_mercer".equals(smoothing)) {
+                return JELINEK_MERCER;
+            } else if ("dirichlet".equals(smoothing)) {
+                return DIRICHLET;
+            }
+            throw new ElasticsearchIllegalArgumentException("No smoothing found for [" + smoothing + "]");
+        }
+    }
 
-    // the field containing the terms that should be scored, must be initialized
-    // in constructor from parameters.
-    String field;
     // name of the field that holds the word count of a field, see
-    // http://www.elasticsearch.org/guide/en/elasticsearch/reference/current/mapping-core-types.html)
-    String docLengthField;
-    // terms that are used for scoring
-    ArrayList<String> terms;
+    // http://www.elasticsearch.org/guide/en/elasticsearch/reference/current/mapping-core-types.html),
+    // null to use the norms of the field
+    private final String docLengthField;
+    private final Smoothing smoothing;
     // lambda parameter
-    float lambda;
+    private final double lambda;
+    // mu parameter
+    private final double mu;
+    // jelinek_mercer: (1 - lambda) * M_c, dirichlet: mu * M_c of each field
+    // and term, resolved once per shard reader
+    private final double[][] collectionWeights;
+    // score contribution of each field and term if the term doesn't occur in
+    // the field: log((1 - lambda) * M_c) or log(mu * M_c)
+    private final double[][] missingTermScores;
+    // boost of each field
+    private final double[] fieldBoosts;
+    // word counts of the current segment
+    private LongValues docLengths;
+    // norms of each field in the current segment
+    private final NumericDocValues[] norms;
 
     final static public String SCRIPT_NAME = "language_model_script_score";
 
@@ -41,6 +94,20 @@ public class LanguageModelScoreScript extends AbstractSearchScript {
      */
     public static class Factory implements NativeScriptFactory {
 
+        private final GlobalTermStatisticsService globalStatistics;
+
+        /**
+         * This constructor will be called by guice during initialization
+         *
+         * @param globalStatistics
+         *            cache of index wide term statistics, used with the
+         *            <code>global_statistics</code> parameter
+         */
+        @Inject
+        public Factory(GlobalTermStatisticsService globalStatistics) {
+            this.globalStatistics = globalStatistics;
+        }
+
         /**
          * This method is called for every search on every shard.
          * 
@@ -50,82 +117,162 @@ public class LanguageModelScoreScript extends AbstractSearchScript {
          */
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) {
-            return new LanguageModelScoreScript(params);
+            TermScoringPlan[] plans = TermScoringPlan.parseFields(params, SCRIPT_NAME, false);
+            // get the field holding the document length, if any
+            String docLengthField = XContentMapValues.nodeStringValue(params.get("word_count_field"), null);
+            if (docLengthField != null && plans.length != 1) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": word_count_field is only supported with a single field!");
+            }
+            Smoothing smoothing;
+            try {
+                smoothing = Smoothing.fromString(XContentMapValues.nodeStringValue(params.get("smoothing"), "jelinek_mercer"));
+            } catch (ElasticsearchIllegalArgumentException ex) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": " + ex.getMessage());
+            }
+            if (smoothing == Smoothing.JELINEK_MERCER && params.get("lambda") == null) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": lambda parameter missing!");
+            }
+            // get lambda and mu
+            double lambda = XContentMapValues.nodeDoubleValue(params.get("lambda"), 0);
+            double mu = XContentMapValues.nodeDoubleValue(params.get("mu"), 2000);
+            if (mu <= 0) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": mu must be positive");
+            }
+            return new LanguageModelScoreScript(plans, globalStatistics(globalStatistics, plans), docLengthField, smoothing, lambda, mu);
         }
     }
 
     /**
-     * @param params
-     *            terms that a scored are placed in this parameter. Initialize
-     *            them here.
+     * @param plans
+     *            the fields and the terms that are scored
+     * @param globalStatistics
+     *            index wide statistics of the terms of each field, or null
+     *            entries to use the statistics of the shard
+     * @param docLengthField
+     *            the field holding the number of terms in the field, or null
+     *            to decode the length from the norms
+     * @param lambda
+     *            weight of the document model with jelinek_mercer smoothing
+     * @param mu
+     *            weight of the collection model with dirichlet smoothing
      */
-    private LanguageModelScoreScript(Map<String, Object> params) {
-        params.entrySet();
-        // get the terms
-        terms = (ArrayList<String>) params.get("terms");
-        // get the field
-        field = (String) params.get("field");
-        // get the field holding the document length
-        docLengthField = (String) params.get("word_count_field");
-        // get lambda
-        lambda = ((Double) params.get("lambda")).floatValue();
-        if (field == null || terms == null || docLengthField == null) {
-            throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": field, terms or length field parameter missing!");
+    private LanguageModelScoreScript(TermScoringPlan[] plans, FieldTermStatistics[] globalStatistics, @Nullable String docLengthField,
+            Smoothing smoothing, double lambda, double mu) {
+        super(plans, globalStatistics);
+        this.docLengthField = docLengthField;
+        this.smoothing = smoothing;
+        this.lambda = lambda;
+        this.mu = mu;
+        this.collectionWeights = new double[plans.length][this.terms.length];
+        this.missingTermScores = new double[plans.length][this.terms.length];
+        this.fieldBoosts = new double[plans.length];
+        for (int i = 0; i < plans.length; i++) {
+            fieldBoosts[i] = plans[i].boost();
         }
+        this.norms = new NumericDocValues[plans.length];
     }
 
     @Override
-    public Object run() {
-        try {
-            double score = 0.0;
-            // first, get the ShardTerms object for the field.
-            IndexField indexField = indexLookup().get(field);
-            long T = indexField.sumttf();
+    protected void collectStatistics(int fieldIndex, ShardTermStatistics statistics) {
+        double T = statistics.sumTotalTermFreq();
+        double[] collectionWeights = this.collectionWeights[fieldIndex];
+        double[] missingTermScores = this.missingTermScores[fieldIndex];
+        for (int i = 0; i < collectionWeights.length; i++) {
+            /*
+             * compute M_c as ttf/T, see Manning et al.,
+             * "Information Retrieval", Chapter 12, Equation just before
+             * Equation 12.10 (link: http://nlp.stanford.edu/IR-book/)
+             */
+            double M_c = (double) statistics.totalTermFreq(i) / T;
+            collectionWeights[i] = (smoothing == Smoothing.DIRICHLET ? mu : 1.0 - lambda) * M_c;
+            missingTermScores[i] = Math.log(collectionWeights[i]);
+        }
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) {
+        super.setNextReader(context);
+        if (docLengthField != null) {
             /*
              * document length cannot be obtained by the shardTerms, we use the
              * word_count field instead (link:
              * http://www.elasticsearch.org/guide
              * /en/elasticsearch/reference/current/mapping-core-types.html)
              */
-            ScriptDocValues docValues = (ScriptDocValues) doc().get(docLengthField);
-            if (docValues == null || !docValues.isEmpty()) {
-                long L_d = ((ScriptDocValues.Longs) docValues).getValue();
-                for (int i = 0; i < terms.size(); i++) {
-                    // Now, get the ShardTerm object that can be used to access
-                    // all
-                    // the term statistics
-                    IndexFieldTerm indexFieldTerm = indexField.get(terms.get(i));
-
-                    /*
-                     * compute M_c as ttf/T, see Manning et al.,
-                     * "Information Retrieval", Chapter 12, Equation just before
-                     * Equation 12.10 (link: http://nlp.stanford.edu/IR-book/)
-                     */
-                    long cf_t = indexFieldTerm.ttf();
-                    double M_c = (double) cf_t / (double) T;
-                    /*
-                     * Compute M_d, see Manning et al., "Information Retrieval",
-                     * Chapter 12, Equation just before Equation 12.9 (link:
-                     * http://nlp.stanford.edu/IR-book/)
-                     */
-                    double M_d = (double) indexFieldTerm.tf() / (double) L_d;
-                    /*
-                     * compute score contribution for this term, but sum the log
-                     * to avoid underflow, see Manning et al.,
-                     * "Information Retrieval", Chapter 12, Equation 12.12
-                     * (link: http://nlp.stanford.edu/IR-book/)
-                     */
-                    score += Math.log((1.0 - lambda) * M_c + lambda * M_d);
-
-                }
-                return score;
-            } else {
-                throw new ScriptException("Could not compute language model score, word count field missing.");
+            docLengths = ((ScriptDocValues.Longs) doc().get(docLengthField)).getInternalValues();
+            return;
+        }
+        for (int i = 0; i < plans.length; i++) {
+            String field = plans[i].field();
+            try {
+                norms[i] = context.reader().getNormValues(field);
+            } catch (IOException ex) {
+                throw new ScriptException("Could not load the norms of field [" + field + "]", ex);
+            }
+            if (norms[i] == null && context.reader().getFieldInfos().fieldInfo(field) != null) {
+                throw new ScriptException("Could not compute language model score, field [" + field
+                        + "] has no norms, word_count_field is required.");
             }
+        }
+    }
+
+    private double docLength(int fieldIndex) {
+        if (docLengthField == null) {
+            // a segment without the field has no norms
+            NumericDocValues fieldNorms = norms[fieldIndex];
+            int norm = fieldNorms == null ? 0 : (byte) fieldNorms.get(docId()) & 0xFF;
+            // norm 0 is the norm of the documents without the field, which would decode to an infinite length
+            return norm == 0 ? 0 : BM25ScoreScript.NORM_TABLE[norm];
+        }
+        if (docLengths.setDocument(docId()) == 0) {
+            throw new ScriptException("Could not compute language model score, word count field missing.");
+        }
+        return docLengths.nextValue();
+    }
+
+    @Override
+    public double runAsDouble() {
+        double score = 0.0;
+        for (int f = 0; f < fieldBoosts.length; f++) {
+            score += fieldBoosts[f] * fieldScore(f);
+        }
+        return score;
+    }
 
-        } catch (IOException ex) {
-            throw new ScriptException("Could not compute language model score: ", ex);
+    private double fieldScore(int fieldIndex) {
+        double[] collectionWeights = this.collectionWeights[fieldIndex];
+        double[] missingTermScores = this.missingTermScores[fieldIndex];
+        double L_d = docLength(fieldIndex);
+        double score = 0.0;
+        if (smoothing == Smoothing.DIRICHLET) {
+            /*
+             * P(t|d) = (tf + mu * M_c) / (L_d + mu), the denominator is the
+             * same for all terms
+             */
+            for (int i = 0; i < collectionWeights.length; i++) {
+                int tf = tf(fieldIndex, i);
+                score += tf == 0 ? missingTermScores[i] : Math.log(collectionWeights[i] + tf);
+            }
+            return score - collectionWeights.length * Math.log(L_d + mu);
+        }
+        /*
+         * M_d = tf / L_d, see Manning et al., "Information Retrieval",
+         * Chapter 12, Equation just before Equation 12.9 (link:
+         * http://nlp.stanford.edu/IR-book/). The division by the document
+         * length is done once per document.
+         */
+        double lambdaOverL_d = lambda / L_d;
+        for (int i = 0; i < collectionWeights.length; i++) {
+            /*
+             * compute score contribution for this term, but sum the log
+             * to avoid underflow, see Manning et al.,
+             * "Information Retrieval", Chapter 12, Equation 12.12
+             * (link: http://nlp.stanford.edu/IR-book/)
+             */
+            int tf = tf(fieldIndex, i);
+            score += tf == 0 ? missingTermScores[i] : Math.log(collectionWeights[i] + lambdaOverL_d * tf);
         }
+        return score;
     }
 
 }
@@ -1,5 +1,6 @@
 package org.elasticsearch.examples.nativescript.script;
 
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.action.get.GetResponse;
 import org.elasticsearch.client.Client;
 import org.elasticsearch.common.Nullable;
@@ -14,9 +15,7 @@ import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
-import org.elasticsearch.index.fielddata.ScriptDocValues;
 import org.elasticsearch.node.Node;
-import org.elasticsearch.script.AbstractSearchScript;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
 import org.elasticsearch.script.ScriptException;
@@ -28,7 +27,7 @@ import java.util.concurrent.TimeUnit;
 
 /**
  */
-public class LookupScript extends AbstractSearchScript {
+public class LookupScript extends AbstractFieldSearchScript {
 
     /**
      * Native scripts are build using factories that are registered in the
@@ -96,7 +95,6 @@ public class LookupScript extends AbstractSearchScript {
 
     private final String lookupIndex;
     private final String lookupType;
-    private final String field;
     private final ESLogger logger;
 
     private final Client client;
@@ -105,43 +103,40 @@ public class LookupScript extends AbstractSearchScript {
     private static final Map<String, Object> EMPTY_MAP = ImmutableMap.of();
 
     private LookupScript(Client client, ESLogger logger, Cache<Tuple<String, String>, Map<String, Object>> cache, String lookupIndex, String lookupType, String field) {
+        super(field);
         this.client = client;
         this.logger = logger;
         this.lookupIndex = lookupIndex;
         this.lookupType = lookupType;
-        this.field = field;
         this.cache = cache;
     }
 
     @Override
     public Object run() {
-        // First we get field using doc lookup
-        ScriptDocValues  docValue = (ScriptDocValues)doc().get(field);
-        // This is not very efficient
+        // The field is bound once per segment by AbstractFieldSearchScript
+        BytesRef value = bytesValue(0);
         // Check if field exists
-        if (docValue != null && !docValue.isEmpty()) {
-            final String fieldValue = ((ScriptDocValues.Strings) docValue).getValue();
-            if (fieldValue != null) {
-                try {
-                    return cache.get(new Tuple<String, String>(lookupIndex + "/" + lookupType, fieldValue), new Callable<Map<String, Object>>() {
-                        @Override
-                        public Map<String, Object> call() throws Exception {
-                            // This is not very efficient of doing this, but it demonstrates using injected client
-                            // for record lookup
-                            GetResponse response = client.prepareGet(lookupIndex, lookupType, fieldValue).setPreference("_local").execute().actionGet();
-                            if (logger.isTraceEnabled()) {
-                                logger.trace("lookup [{}]/[{}]/[{}], found: [{}]", lookupIndex, lookupType, fieldValue, response.isExists());
-                            }
-                            if (response.isExists()) {
-                                return response.getSource();
-                            }
-                            return EMPTY_MAP;
+        if (value != null) {
+            final String fieldValue = value.utf8ToString();
+            try {
+                return cache.get(new Tuple<String, String>(lookupIndex + "/" + lookupType, fieldValue), new Callable<Map<String, Object>>() {
+                    @Override
+                    public Map<String, Object> call() throws Exception {
+                        // This is not very efficient of doing this, but it demonstrates using injected client
+                        // for record lookup
+                        GetResponse response = client.prepareGet(lookupIndex, lookupType, fieldValue).setPreference("_local").execute().actionGet();
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("lookup [{}]/[{}]/[{}], found: [{}]", lookupIndex, lookupType, fieldValue, response.isExists());
                         }
-                    });
+                        if (response.isExists()) {
+                            return response.getSource();
+                        }
+                        return EMPTY_MAP;
+                    }
+                });
 
-                } catch (ExecutionException ex) {
-                    throw new ScriptException("Lookup failure ", ex);
-                }
+            } catch (ExecutionException ex) {
+                throw new ScriptException("Lookup failure ", ex);
             }
         }
         return null;
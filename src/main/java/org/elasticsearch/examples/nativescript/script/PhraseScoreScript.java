@@ -1,32 +1,55 @@
 package org.elasticsearch.examples.nativescript.script;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.script.AbstractSearchScript;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
 import org.elasticsearch.script.ScriptException;
-import org.elasticsearch.search.lookup.IndexField;
-import org.elasticsearch.search.lookup.IndexLookup;
-import org.elasticsearch.search.lookup.TermPosition;
 
 /**
- * Script that scores documents by distance of two given terms in a text, see
+ * Script that scores documents by the proximity of a list of terms in a text, see
  * Manning et al., "Information Retrieval", Chapter 2.4 (link:
  * http://nlp.stanford.edu/IR-book/) for more information on positional indexes.
  * Might be useful if you search for names and know first and last name.
+ * <p/>
+ * The score is (N - 1) / w, where w is the width of the smallest window of
+ * the text that contains all N terms, in any order, see
+ * {@link ProximityWindow}. Terms next to each other score 1, and documents
+ * that don't contain all terms score 0. A single term scores 1 if the
+ * document contains it.
+ * <p/>
+ * The script is a thin wrapper of {@link ProximityPostings}: the postings
+ * of the terms are intersected once per segment, so documents that miss one
+ * of the terms are skipped without reading any position. Use the
+ * {@link org.elasticsearch.examples.nativescript.query.ProximityQuery proximity}
+ * query to only visit the documents containing all terms in the first place.
+ * <p/>
+ * For two terms, like first and last name, adjacency can be scored without
+ * reading positions from a sub-field indexed with shingles of two terms,
+ * given with the <code>shingle_field</code> parameter: a document in which
+ * one of the bigrams "first last" or "last first" occurs scores 1, all other
+ * documents score 0. With <code>slop</code> greater than 0, documents
+ * without the bigram fall back to positions and score 1 / w if w - 1 is at
+ * most the slop. The bigrams are built with the separator given by
+ * <code>token_separator</code> (a space by default, like the shingle token
+ * filter).
  */
 public class PhraseScoreScript extends AbstractSearchScript {
 
-    // the field containing the terms that should be scored, must be initialized
-    // in constructor from parameters.
-    String field = null;
-    // terms that are used for scoring
-    ArrayList<String> terms = null;
-
     final static public String SCRIPT_NAME = "phrase_script_score";
 
     /**
@@ -45,44 +68,162 @@ public class PhraseScoreScript extends AbstractSearchScript {
          */
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) {
-            return new PhraseScoreScript(params);
+            String field = params == null ? null : XContentMapValues.nodeStringValue(params.get("field"), null);
+            Object termsParam = params == null ? null : params.get("terms");
+            if (termsParam instanceof Object[]) {
+                termsParam = Arrays.asList((Object[]) termsParam);
+            }
+            if (field == null || !(termsParam instanceof List) || ((List<?>) termsParam).isEmpty()) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": field or terms parameter missing!");
+            }
+            // a term repeated in the query would match its own positions
+            Set<String> terms = new LinkedHashSet<String>();
+            for (Object term : (List<?>) termsParam) {
+                terms.add(term.toString());
+            }
+            String shingleField = XContentMapValues.nodeStringValue(params.get("shingle_field"), null);
+            String tokenSeparator = XContentMapValues.nodeStringValue(params.get("token_separator"), " ");
+            int slop = XContentMapValues.nodeIntegerValue(params.get("slop"), 0);
+            if (shingleField != null && terms.size() != 2) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": shingle_field can only be used with two terms");
+            }
+            if (slop < 0) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": slop must not be negative");
+            }
+            return new PhraseScoreScript(field, terms.toArray(new String[terms.size()]), shingleField, tokenSeparator, slop);
         }
     }
 
+    // the field containing the terms that should be scored
+    private final String field;
+
+    // terms that are used for scoring
+    private final BytesRef[] terms;
+
+    // the sub-field containing the bigrams of the terms, null to score from positions
+    private final String shingleField;
+
+    // the bigram of the two terms in both orders
+    private final BytesRef[] bigrams;
+
+    // the largest number of positions between two terms that are still scored in shingle mode
+    private final int slop;
+
+    // postings of the bigrams in the current segment, null if a bigram doesn't occur in the segment
+    private final DocsEnum[] bigramDocs;
+
+    // postings of the terms in the current segment, null if one of the terms
+    // doesn't occur in the segment or positions are not needed
+    private ProximityPostings postings;
+
+    private AtomicReaderContext context;
+
+    // the smallest document the postings can still move to
+    private int nextTarget;
+
+    private int docId;
+
     /**
-     * @param params
-     *            terms that a scored are placed in this parameter. Initialize
-     *            them here.
+     * @param field
+     *            the field containing the terms
+     * @param terms
+     *            the distinct terms that are scored
+     * @param shingleField
+     *            the field containing bigrams of the terms, or null
      */
-    private PhraseScoreScript(Map<String, Object> params) {
-        params.entrySet();
-        // get the terms
-        terms = (ArrayList<String>) params.get("terms");
-        // get the field
-        field = (String) params.get("field");
-        if (field == null || terms == null) {
-            throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": field or terms parameter missing!");
+    private PhraseScoreScript(String field, String[] terms, @Nullable String shingleField, String tokenSeparator, int slop) {
+        this.field = field;
+        this.terms = new BytesRef[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            this.terms[i] = new BytesRef(terms[i]);
+        }
+        this.shingleField = shingleField;
+        this.slop = slop;
+        if (shingleField != null) {
+            bigrams = new BytesRef[]{new BytesRef(terms[0] + tokenSeparator + terms[1]), new BytesRef(terms[1] + tokenSeparator + terms[0])};
+            bigramDocs = new DocsEnum[2];
+        } else {
+            bigrams = null;
+            bigramDocs = null;
         }
-        assert (terms.size() == 2);
     }
 
     @Override
-    public Object run() {
-        double score = 1.e10;
-        // first, get the ShardTerms object for the field.
-        IndexField indexField = this.indexLookup().get(field);
-        // get the positions iterators
-        Iterator<TermPosition> firstNameIter = indexField.get(terms.get(0), IndexLookup.FLAG_POSITIONS).iterator();
-        Iterator<TermPosition> lastNameIter = indexField.get(terms.get(1), IndexLookup.FLAG_POSITIONS).iterator();
-        int lastNamePos = -1;
-        while (firstNameIter.hasNext()) {
-            int firstNamePos = firstNameIter.next().position;
-            while (lastNameIter.hasNext() && lastNamePos < firstNamePos) {
-                lastNamePos = lastNameIter.next().position;
+    public void setNextReader(AtomicReaderContext context) {
+        super.setNextReader(context);
+        this.context = context;
+        openPostings();
+    }
+
+    private void openPostings() {
+        try {
+            nextTarget = 0;
+            postings = null;
+            if (shingleField != null) {
+                Terms shingleTerms = context.reader().terms(shingleField);
+                TermsEnum termsEnum = shingleTerms == null ? null : shingleTerms.iterator(null);
+                for (int i = 0; i < bigrams.length; i++) {
+                    bigramDocs[i] = termsEnum != null && termsEnum.seekExact(bigrams[i]) ? termsEnum.docs(null, null, DocsEnum.FLAG_NONE) : null;
+                }
+                if (slop == 0) {
+                    return;
+                }
             }
-            score = Math.min(score, lastNamePos - firstNamePos);
+            postings = ProximityPostings.open(context.reader(), field, terms, null);
+        } catch (IOException ex) {
+            throw new ElasticsearchException("Could not read the positions of field [" + field + "]", ex);
         }
-        return 1.0 / (float) score;
     }
 
+    @Override
+    public void setNextDocId(int doc) {
+        super.setNextDocId(doc);
+        this.docId = doc;
+    }
+
+    @Override
+    public Object run() {
+        return runAsDouble();
+    }
+
+    @Override
+    public float runAsFloat() {
+        return (float) runAsDouble();
+    }
+
+    @Override
+    public double runAsDouble() {
+        if (docId < nextTarget) {
+            // documents are scored in order, unless the script is used for explanations
+            openPostings();
+        }
+        nextTarget = docId + 1;
+        try {
+            if (shingleField != null) {
+                for (DocsEnum docs : bigramDocs) {
+                    if (docs != null && (docs.docID() == docId || (docs.docID() < docId && docs.advance(docId) == docId))) {
+                        // the bigram occurs, the terms are adjacent
+                        return 1;
+                    }
+                }
+            }
+            if (postings == null) {
+                return 0;
+            }
+            if (postings.docID() < docId) {
+                postings.advance(docId);
+            }
+            if (postings.docID() != docId) {
+                return 0;
+            }
+            if (shingleField == null) {
+                return postings.score();
+            }
+            // terms at the same position, like synonyms, are as close as adjacent terms
+            int window = Math.max(postings.window(), 1);
+            return window - 1 <= slop ? 1.0 / window : 0;
+        } catch (IOException ex) {
+            throw new ElasticsearchException("Could not read the positions of field [" + field + "]", ex);
+        }
+    }
 }
@@ -1,56 +1,406 @@
 package org.elasticsearch.examples.nativescript.script;
 
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
-import org.elasticsearch.index.fielddata.ScriptDocValues;
-import org.elasticsearch.script.AbstractFloatSearchScript;
+import org.elasticsearch.examples.nativescript.cache.ScriptResultCache;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
 import org.elasticsearch.script.ScriptException;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.search.internal.SearchContext;
 
+import java.util.List;
 import java.util.Map;
 
 /**
  * Factory for the script that boosts score of a record based on a value of  the record's field.
  * <p/>
  * This native script demonstrates how to write native custom scores scripts.
+ * <p/>
+ * The script accepts the following parameters:
+ * <ul>
+ * <li><code>field</code> - the numeric field containing the popularity value</li>
+ * <li><code>fields</code> - alternatively, a map of numeric fields to weights (or a list of fields with weight 1).
+ * The popularity value is the weighted sum of the fields.</li>
+ * <li><code>function</code> - the boost function: <code>log</code> (default), <code>log1p</code>, <code>sqrt</code>,
+ * <code>saturation</code>, <code>sigmoid</code> or <code>linear</code></li>
+ * <li><code>missing</code> - the value used for records that don't have the field, 0 by default</li>
+ * <li><code>factor</code>, <code>k</code>, <code>a</code> - parameters of the <code>linear</code>,
+ * <code>saturation</code> and <code>sigmoid</code> functions</li>
+ * </ul>
+ * If the parameter <code>timestamp_field</code> is specified, the boost is additionally weighted by the age of the
+ * record:
+ * <ul>
+ * <li><code>timestamp_field</code> - the date field containing the time the record was created</li>
+ * <li><code>decay_function</code> - <code>exp</code> (default) or <code>gauss</code></li>
+ * <li><code>scale</code> - the age (for example <code>7d</code>) at which the weight drops to <code>decay</code></li>
+ * <li><code>decay</code> - the weight of the records of age <code>scale</code>, 0.5 by default</li>
+ * <li><code>offset</code> - the age until which records are not decayed, 0 by default</li>
+ * <li><code>now</code> - the current time in milliseconds, the start time of the request by default</li>
+ * </ul>
+ * With the parameter <code>cache</code> set to true, the boosts of each segment are computed once and cached by the
+ * {@link CachedSearchScript}. Decayed boosts can only be cached with a fixed <code>now</code>.
  */
 public class PopularityScoreScriptFactory implements NativeScriptFactory {
 
+    private final ScriptResultCache cache;
+
+    private final Provider<ScriptService> scriptService;
+
+    /**
+     * This constructor will be called by guice during initialization
+     *
+     * @param cache         caches the boosts when the <code>cache</code> parameter is set
+     * @param scriptService creates the script whose boosts are cached
+     */
+    @Inject
+    public PopularityScoreScriptFactory(ScriptResultCache cache, Provider<ScriptService> scriptService) {
+        this.cache = cache;
+        this.scriptService = scriptService;
+    }
+
     @Override
     public ExecutableScript newScript(@Nullable Map<String, Object> params) {
-        String fieldName = params == null ? null : XContentMapValues.nodeStringValue(params.get("field"), null);
-        if (fieldName == null) {
+        if (params == null) {
             throw new ScriptException("Missing the field parameter");
         }
-        return new PopularityScoreScript(fieldName);
+        if (params.get("timestamp_field") != null && params.get("now") == null
+                && XContentMapValues.nodeBooleanValue(params.get("cache"), false)) {
+            // the boost would depend on the start time of the request
+            throw new ScriptException("Decayed popularity can only be cached with the now parameter");
+        }
+        // the boost is cached, and multiplied with the score of the document when it is read
+        CachedSearchScript cached = CachedSearchScript.wrap(cache, scriptService.get(), "popularity", params,
+                CachedSearchScript.ValueType.FLOAT_TIMES_SCORE);
+        if (cached != null) {
+            return cached;
+        }
+        BoostFunction function = BoostFunction.parse(params);
+        double missing = XContentMapValues.nodeDoubleValue(params.get("missing"), 0);
+        String fieldName = XContentMapValues.nodeStringValue(params.get("field"), null);
+        String timestampField = XContentMapValues.nodeStringValue(params.get("timestamp_field"), null);
+        if (timestampField != null) {
+            if (fieldName == null) {
+                throw new ScriptException("Missing the field parameter");
+            }
+            return new DecayedPopularityScoreScript(fieldName, timestampField, function, DecayFunction.parse(params), missing);
+        }
+        if (fieldName != null) {
+            return new PopularityScoreScript(fieldName, function, missing);
+        }
+        Object fields = params.get("fields");
+        if (fields instanceof Map) {
+            Map<String, Object> fieldWeights = (Map<String, Object>) fields;
+            String[] names = new String[fieldWeights.size()];
+            double[] weights = new double[fieldWeights.size()];
+            int i = 0;
+            for (Map.Entry<String, Object> entry : fieldWeights.entrySet()) {
+                names[i] = entry.getKey();
+                weights[i] = XContentMapValues.nodeDoubleValue(entry.getValue(), 1);
+                i++;
+            }
+            return new MultiFieldPopularityScoreScript(names, weights, function, missing);
+        } else if (fields instanceof List) {
+            List<?> fieldList = (List<?>) fields;
+            String[] names = new String[fieldList.size()];
+            double[] weights = new double[fieldList.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = fieldList.get(i).toString();
+                weights[i] = 1;
+            }
+            return new MultiFieldPopularityScoreScript(names, weights, function, missing);
+        }
+        throw new ScriptException("Missing the field parameter");
+    }
+
+    /**
+     * Function that converts a popularity value into a boost. All functions return 1 for the value 0, so records
+     * without popularity get no boost.
+     * <p/>
+     * The function is chosen once when the script is created, so the script doesn't need to check what
+     * function to use for every record. Negative values are treated as 0 by all functions but <code>linear</code>,
+     * the other functions are not defined for them and would return NaN.
+     */
+    public static abstract class BoostFunction {
+
+        public abstract double boost(double value);
+
+        public static BoostFunction parse(Map<String, Object> params) {
+            String name = XContentMapValues.nodeStringValue(params.get("function"), "log");
+            if ("log".equals(name)) {
+                return new Log();
+            } else if ("log1p".equals(name)) {
+                return new Log1p();
+            } else if ("sqrt".equals(name)) {
+                return new Sqrt();
+            } else if ("saturation".equals(name)) {
+                return new Saturation(XContentMapValues.nodeDoubleValue(params.get("k"), 1));
+            } else if ("sigmoid".equals(name)) {
+                return new Sigmoid(XContentMapValues.nodeDoubleValue(params.get("k"), 1),
+                        XContentMapValues.nodeDoubleValue(params.get("a"), 1));
+            } else if ("linear".equals(name)) {
+                return new Linear(XContentMapValues.nodeDoubleValue(params.get("factor"), 1));
+            }
+            throw new ScriptException("Unknown boost function [" + name + "]");
+        }
+    }
+
+    /**
+     * 1 + log10(value + 1). Records with value 9 gets boost of 2.0, records with value 99, gets boost of 3,
+     * 999 - 4 and so on.
+     */
+    private static final class Log extends BoostFunction {
+        @Override
+        public double boost(double value) {
+            return 1 + Math.log10(Math.max(value, 0) + 1);
+        }
+    }
+
+    /**
+     * 1 + ln(value + 1)
+     */
+    private static final class Log1p extends BoostFunction {
+        @Override
+        public double boost(double value) {
+            return 1 + Math.log1p(Math.max(value, 0));
+        }
     }
 
+    /**
+     * 1 + sqrt(value)
+     */
+    private static final class Sqrt extends BoostFunction {
+        @Override
+        public double boost(double value) {
+            return 1 + Math.sqrt(Math.max(value, 0));
+        }
+    }
+
+    /**
+     * 1 + value / (value + k). The boost never exceeds 2 and reaches 1.5 when value equals k.
+     */
+    private static final class Saturation extends BoostFunction {
+        private final double k;
+
+        private Saturation(double k) {
+            if (k <= 0) {
+                throw new ScriptException("Parameter k of the saturation function must be positive");
+            }
+            this.k = k;
+        }
+
+        @Override
+        public double boost(double value) {
+            value = Math.max(value, 0);
+            return 1 + value / (value + k);
+        }
+    }
+
+    /**
+     * 1 + value^a / (value^a + k^a). Same as saturation but with a steeper slope around k when a > 1.
+     */
+    private static final class Sigmoid extends BoostFunction {
+        private final double a;
+        private final double kPowA;
+
+        private Sigmoid(double k, double a) {
+            if (k <= 0 || a <= 0) {
+                throw new ScriptException("Parameters k and a of the sigmoid function must be positive");
+            }
+            this.a = a;
+            this.kPowA = Math.pow(k, a);
+        }
+
+        @Override
+        public double boost(double value) {
+            double valuePowA = Math.pow(Math.max(value, 0), a);
+            return 1 + valuePowA / (valuePowA + kPowA);
+        }
+    }
+
+    /**
+     * 1 + factor * value
+     */
+    private static final class Linear extends BoostFunction {
+        private final double factor;
+
+        private Linear(double factor) {
+            this.factor = factor;
+        }
+
+        @Override
+        public double boost(double value) {
+            return 1 + factor * value;
+        }
+    }
+
+    /**
+     * Function that calculates the weight of a record based on its age. The current time and the constants of the
+     * function are calculated once when the script is created.
+     */
+    public static abstract class DecayFunction {
+
+        protected final long origin;
+
+        protected DecayFunction(long now, long offset) {
+            this.origin = now - offset;
+        }
+
+        /**
+         * Returns the weight of the record with the given timestamp.
+         */
+        public abstract double decay(long timestamp);
+
+        public static DecayFunction parse(Map<String, Object> params) {
+            TimeValue scale = XContentMapValues.nodeTimeValue(params.get("scale"), null);
+            if (scale == null || scale.millis() <= 0) {
+                throw new ScriptException("Missing or invalid scale parameter");
+            }
+            double decay = XContentMapValues.nodeDoubleValue(params.get("decay"), 0.5);
+            if (decay <= 0 || decay >= 1) {
+                throw new ScriptException("Parameter decay must be between 0 and 1");
+            }
+            long offset = XContentMapValues.nodeTimeValue(params.get("offset"), TimeValue.timeValueMillis(0)).millis();
+            // Use the time of the request, so all shards and all records are decayed using the same time
+            SearchContext context = SearchContext.current();
+            long now = XContentMapValues.nodeLongValue(params.get("now"),
+                    context != null ? context.nowInMillis() : System.currentTimeMillis());
+            String name = XContentMapValues.nodeStringValue(params.get("decay_function"), "exp");
+            if ("exp".equals(name)) {
+                return new ExpDecay(now, offset, scale.millis(), decay);
+            } else if ("gauss".equals(name)) {
+                return new GaussDecay(now, offset, scale.millis(), decay);
+            }
+            throw new ScriptException("Unknown decay function [" + name + "]");
+        }
+    }
+
+    /**
+     * exp(ln(decay) / scale * age)
+     */
+    private static final class ExpDecay extends DecayFunction {
+        private final double lambda;
+
+        private ExpDecay(long now, long offset, long scale, double decay) {
+            super(now, offset);
+            this.lambda = Math.log(decay) / scale;
+        }
+
+        @Override
+        public double decay(long timestamp) {
+            return Math.exp(lambda * Math.max(0, origin - timestamp));
+        }
+    }
+
+    /**
+     * exp(ln(decay) / scale^2 * age^2)
+     */
+    private static final class GaussDecay extends DecayFunction {
+        private final double lambda;
+
+        private GaussDecay(long now, long offset, long scale, double decay) {
+            super(now, offset);
+            this.lambda = Math.log(decay) / ((double) scale * scale);
+        }
+
+        @Override
+        public double decay(long timestamp) {
+            double age = Math.max(0, origin - timestamp);
+            return Math.exp(lambda * age * age);
+        }
+    }
 
     /**
      * This script takes a numeric value from the field specified in the parameter field. And calculates boost
-     * for the record using the following formula: 1 + log10(field_value + 1). So, records with value 0 in the field
-     * get no boost. Records with value 9 gets boost of 2.0, records with value 99, gets boost of 3, 999 - 4 and so on.
+     * for the record using the selected boost function, by default: 1 + log10(field_value + 1). So, records with
+     * value 0 in the field get no boost. Records with value 9 gets boost of 2.0, records with value 99, gets boost
+     * of 3, 999 - 4 and so on.
+     */
+    private static class PopularityScoreScript extends AbstractFloatFieldSearchScript {
+
+        private final BoostFunction function;
+
+        private final double missing;
+
+        public PopularityScoreScript(String field, BoostFunction function, double missing) {
+            super(field);
+            this.function = function;
+            this.missing = missing;
+        }
+
+        @Override
+        public float runAsFloat() {
+            double value = doubleValue(0, missing);
+            // Because this script is used in custom_score script the value of score() is populated.
+            // In all other cases doc().getScore() should be used instead.
+            return (float) function.boost(value) * score();
+        }
+    }
+
+    /**
+     * Same as {@link PopularityScoreScript} but the popularity value is the weighted sum of several fields.
+     * All fields are combined in a single pass, so there is no need to chain several scripts.
+     */
+    private static class MultiFieldPopularityScoreScript extends AbstractFloatFieldSearchScript {
+
+        private final double[] weights;
+
+        private final BoostFunction function;
+
+        private final double missing;
+
+        public MultiFieldPopularityScoreScript(String[] fields, double[] weights, BoostFunction function, double missing) {
+            super(fields);
+            this.weights = weights;
+            this.function = function;
+            this.missing = missing;
+        }
+
+        @Override
+        public float runAsFloat() {
+            double value = 0;
+            for (int i = 0; i < weights.length; i++) {
+                value += weights[i] * doubleValue(i, missing);
+            }
+            return (float) function.boost(value) * score();
+        }
+    }
+
+    /**
+     * Same as {@link PopularityScoreScript} but the boost is multiplied by the weight of the record based on its age.
+     * The count and the timestamp are read in the same pass, so there is no need to combine the script with
+     * a separate decay function. Records without timestamp are not decayed.
      */
-    private static class PopularityScoreScript extends AbstractFloatSearchScript {
+    private static class DecayedPopularityScoreScript extends AbstractFloatFieldSearchScript {
+
+        private static final int FIELD = 0;
 
-        private final String field;
+        private static final int TIMESTAMP_FIELD = 1;
 
-        public PopularityScoreScript(String field) {
-            this.field = field;
+        private final BoostFunction function;
+
+        private final DecayFunction decayFunction;
+
+        private final double missing;
+
+        public DecayedPopularityScoreScript(String field, String timestampField, BoostFunction function,
+                                            DecayFunction decayFunction, double missing) {
+            super(field, timestampField);
+            this.function = function;
+            this.decayFunction = decayFunction;
+            this.missing = missing;
         }
 
         @Override
         public float runAsFloat() {
-            ScriptDocValues docValue = (ScriptDocValues) doc().get(field);
-            if (docValue != null && !docValue.isEmpty()) {
-                ScriptDocValues.Longs fieldData = (ScriptDocValues.Longs) docValue;
-                double boost = 1 + Math.log10(fieldData.getValue() + 1);
-                // Because this script is used in custom_score script the value of score() is populated.
-                // In all other cases doc().getScore() should be used instead.
-                return (float) boost * score();
-            }
-            return score();
+            double boost = function.boost(doubleValue(FIELD, missing));
+            if (hasValue(TIMESTAMP_FIELD)) {
+                boost *= decayFunction.decay(longValue(TIMESTAMP_FIELD, 0));
+            }
+            return (float) boost * score();
         }
     }
 }
@@ -0,0 +1,139 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.script.ScriptException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The postings with positions of a list of terms in a segment, intersected to the documents containing all terms.
+ * <p/>
+ * The postings are intersected by leapfrogging: the rarest term proposes a document, every other term advances to
+ * it, and the first term that jumps past it proposes the next document to the rarest term. Only documents
+ * containing all terms are visited, so the cost depends on how often the terms occur together and not on the
+ * number of documents matched by any other query. The proximity of the terms in the current document is computed
+ * with a {@link ProximityWindow} from the positions of the same postings.
+ */
+public final class ProximityPostings {
+
+    // rarest term first
+    private final DocsAndPositionsEnum[] postings;
+
+    // the same postings in the order of the terms
+    private final DocsAndPositionsEnum[] termPostings;
+
+    private final ProximityWindow window;
+
+    private int doc = -1;
+
+    private ProximityPostings(DocsAndPositionsEnum[] termPostings) {
+        this.termPostings = termPostings;
+        this.postings = termPostings.clone();
+        Arrays.sort(postings, new Comparator<DocsAndPositionsEnum>() {
+            @Override
+            public int compare(DocsAndPositionsEnum o1, DocsAndPositionsEnum o2) {
+                return Long.compare(o1.cost(), o2.cost());
+            }
+        });
+        this.window = new ProximityWindow(termPostings.length);
+    }
+
+    /**
+     * Opens the postings of the terms in a segment
+     *
+     * @param terms      distinct terms
+     * @param acceptDocs documents that may be returned, null for all documents
+     * @return the postings, or null if one of the terms doesn't occur in the segment
+     * @throws ScriptException if the field was indexed without positions
+     */
+    @Nullable
+    public static ProximityPostings open(AtomicReader reader, String field, BytesRef[] terms, @Nullable Bits acceptDocs) throws IOException {
+        Terms fieldTerms = reader.terms(field);
+        if (fieldTerms == null) {
+            return null;
+        }
+        TermsEnum termsEnum = fieldTerms.iterator(null);
+        List<DocsAndPositionsEnum> postings = new ArrayList<DocsAndPositionsEnum>(terms.length);
+        for (BytesRef term : terms) {
+            if (!termsEnum.seekExact(term)) {
+                // no document of this segment contains all terms
+                return null;
+            }
+            DocsAndPositionsEnum termPostings = termsEnum.docsAndPositions(acceptDocs, null, DocsAndPositionsEnum.FLAG_NONE);
+            if (termPostings == null) {
+                throw new ScriptException("proximity scoring needs positions, but field [" + field + "] was indexed without positions");
+            }
+            postings.add(termPostings);
+        }
+        return new ProximityPostings(postings.toArray(new DocsAndPositionsEnum[postings.size()]));
+    }
+
+    /**
+     * The current document
+     */
+    public int docID() {
+        return doc;
+    }
+
+    /**
+     * Moves to the first document at or after the target that contains all terms
+     */
+    public int advance(int target) throws IOException {
+        DocsAndPositionsEnum lead = postings[0];
+        int candidate = lead.docID() < target ? lead.advance(target) : lead.docID();
+        outer:
+        while (candidate != DocsEnum.NO_MORE_DOCS) {
+            for (int i = 1; i < postings.length; i++) {
+                int other = postings[i].docID();
+                if (other < candidate) {
+                    other = postings[i].advance(candidate);
+                }
+                if (other > candidate) {
+                    candidate = lead.advance(other);
+                    continue outer;
+                }
+            }
+            break;
+        }
+        return doc = candidate;
+    }
+
+    /**
+     * The number of documents containing the rarest term, an upper bound of the documents containing all terms
+     */
+    public long cost() {
+        return postings[0].cost();
+    }
+
+    /**
+     * Scores the proximity of the terms in the current document: (N - 1) / w, where w is the width of the smallest
+     * window containing all N terms. Adjacent terms and single terms score 1. The positions of a document can only
+     * be read once.
+     */
+    public double score() throws IOException {
+        int numTerms = termPostings.length;
+        return numTerms == 1 ? 1 : (numTerms - 1) / (double) Math.max(window(), numTerms - 1);
+    }
+
+    /**
+     * The width (last position - first position) of the smallest window containing all terms in the current
+     * document. The positions of a document can only be read once.
+     */
+    public int window() throws IOException {
+        for (int i = 0; i < termPostings.length; i++) {
+            window.readPositions(i, termPostings[i]);
+        }
+        return window.minimalWindow();
+    }
+}
@@ -0,0 +1,105 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.util.ArrayUtil;
+
+import java.io.IOException;
+
+/**
+ * Finds the smallest window of positions of a document that contains all terms of a query.
+ * <p/>
+ * The positions of each term are read from the postings into an int array that is reused for all documents, and
+ * the position lists are merged in one pass with a min-heap of the terms ordered by their current position: the
+ * window from the smallest current position to the largest one contains all terms, and moving the term with the
+ * smallest position to its next position gives the next candidate window. The merge stops as soon as the window
+ * cannot get smaller, when the N terms are on N consecutive positions.
+ */
+public final class ProximityWindow {
+
+    private final int numTerms;
+
+    private final int[][] positions;
+
+    private final int[] freqs;
+
+    // index of the current position of each term
+    private final int[] upto;
+
+    // terms ordered by current position
+    private final int[] heap;
+
+    public ProximityWindow(int numTerms) {
+        this.numTerms = numTerms;
+        this.positions = new int[numTerms][8];
+        this.freqs = new int[numTerms];
+        this.upto = new int[numTerms];
+        this.heap = new int[numTerms];
+    }
+
+    /**
+     * Reads the positions of a term in the current document of the postings
+     */
+    public void readPositions(int term, DocsAndPositionsEnum postings) throws IOException {
+        int freq = postings.freq();
+        if (positions[term].length < freq) {
+            positions[term] = new int[ArrayUtil.oversize(freq, 4)];
+        }
+        int[] termPositions = positions[term];
+        for (int i = 0; i < freq; i++) {
+            termPositions[i] = postings.nextPosition();
+        }
+        freqs[term] = freq;
+    }
+
+    /**
+     * Returns the width (last position - first position) of the smallest window containing all terms, from the
+     * positions read for the current document
+     */
+    public int minimalWindow() {
+        int max = Integer.MIN_VALUE;
+        for (int term = 0; term < numTerms; term++) {
+            upto[term] = 0;
+            heap[term] = term;
+            max = Math.max(max, positions[term][0]);
+        }
+        for (int i = numTerms / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+        int best = max - position(heap[0]);
+        while (best > numTerms - 1) {
+            int term = heap[0];
+            if (++upto[term] == freqs[term]) {
+                // no window without the current position of this term
+                break;
+            }
+            max = Math.max(max, position(term));
+            siftDown(0);
+            best = Math.min(best, max - position(heap[0]));
+        }
+        return best;
+    }
+
+    private int position(int term) {
+        return positions[term][upto[term]];
+    }
+
+    private void siftDown(int i) {
+        int term = heap[i];
+        int position = position(term);
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= numTerms) {
+                break;
+            }
+            if (child + 1 < numTerms && position(heap[child + 1]) < position(heap[child])) {
+                child++;
+            }
+            if (position(heap[child]) >= position) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = term;
+    }
+}
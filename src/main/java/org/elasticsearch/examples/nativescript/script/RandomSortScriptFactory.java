@@ -1,13 +1,19 @@
 package org.elasticsearch.examples.nativescript.script;
 
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.base.Charsets;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
-import org.elasticsearch.index.fielddata.ScriptDocValues;
+import org.elasticsearch.examples.nativescript.cache.ScriptResultCache;
 import org.elasticsearch.index.mapper.internal.UidFieldMapper;
 import org.elasticsearch.script.AbstractFloatSearchScript;
 import org.elasticsearch.script.AbstractLongSearchScript;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
+import org.elasticsearch.script.ScriptException;
+import org.elasticsearch.script.ScriptService;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -20,9 +26,28 @@ import java.util.Random;
  * <p/>
  * The script accepts one optional parameter salt. If parameter is specified, a pseudo random sort order is used.
  * Otherwise, a random sort order is used.
+ * <p/>
+ * The pseudo random order only depends on the id of the record and the salt, so with the parameter <code>cache</code>
+ * set to true the sort values of each segment are computed once and cached by the {@link CachedSearchScript}.
  */
 public class RandomSortScriptFactory implements NativeScriptFactory {
 
+    private final ScriptResultCache cache;
+
+    private final Provider<ScriptService> scriptService;
+
+    /**
+     * This constructor will be called by guice during initialization
+     *
+     * @param cache         caches the sort values when the <code>cache</code> parameter is set
+     * @param scriptService creates the script whose sort values are cached
+     */
+    @Inject
+    public RandomSortScriptFactory(ScriptResultCache cache, Provider<ScriptService> scriptService) {
+        this.cache = cache;
+        this.scriptService = scriptService;
+    }
+
     /**
      * This method is called for every search on every shard.
      *
@@ -33,10 +58,17 @@ public class RandomSortScriptFactory implements NativeScriptFactory {
     public ExecutableScript newScript(@Nullable Map<String, Object> params) {
         String salt = params == null ? null : XContentMapValues.nodeStringValue(params.get("salt"), null);
         if (salt == null) {
+            if (params != null && XContentMapValues.nodeBooleanValue(params.get("cache"), false)) {
+                throw new ScriptException("Random sort can only be cached with a salt");
+            }
             return new RandomSortScript();
-        } else {
-            return new PseudoRandomSortScript(salt);
         }
+        CachedSearchScript cached = CachedSearchScript.wrap(cache, scriptService.get(), "random", params,
+                CachedSearchScript.ValueType.LONG);
+        if (cached != null) {
+            return cached;
+        }
+        return new PseudoRandomSortScript(salt);
     }
 
     private static class RandomSortScript extends AbstractLongSearchScript {
@@ -52,21 +84,27 @@ public class RandomSortScriptFactory implements NativeScriptFactory {
         }
     }
 
-    private static class PseudoRandomSortScript extends AbstractLongSearchScript {
-        private final String salt;
+    private static class PseudoRandomSortScript extends AbstractLongFieldSearchScript {
+        private final byte[] salt;
+
+        private MessageDigest digest;
 
         private PseudoRandomSortScript(String salt) {
-            this.salt = salt;
+            super(UidFieldMapper.NAME);
+            this.salt = salt.getBytes(Charsets.UTF_8);
         }
 
         @Override
         public long runAsLong() {
-            ScriptDocValues.Strings fieldData = (ScriptDocValues.Strings) doc().get(UidFieldMapper.NAME);
+            BytesRef uid = bytesValue(0);
             try {
-                MessageDigest m = MessageDigest.getInstance("MD5");
-                m.reset();
-                m.update((fieldData.getValue() + salt).getBytes());
-                byte[] sort = m.digest();
+                if (digest == null) {
+                    digest = MessageDigest.getInstance("MD5");
+                }
+                digest.reset();
+                digest.update(uid.bytes, uid.offset, uid.length);
+                digest.update(salt);
+                byte[] sort = digest.digest();
                 return (sort[0] & 0xFFL) << 56
                         | (sort[1] & 0xFFL) << 48
                         | (sort[2] & 0xFFL) << 40
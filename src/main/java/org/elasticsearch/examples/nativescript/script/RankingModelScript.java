@@ -0,0 +1,154 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.Scorer;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Provider;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.examples.nativescript.ranking.RankingFeature;
+import org.elasticsearch.examples.nativescript.ranking.RankingModel;
+import org.elasticsearch.examples.nativescript.ranking.RankingModelService;
+import org.elasticsearch.script.AbstractDoubleSearchScript;
+import org.elasticsearch.script.ExecutableScript;
+import org.elasticsearch.script.NativeScriptFactory;
+import org.elasticsearch.script.ScriptException;
+import org.elasticsearch.script.ScriptService;
+import org.elasticsearch.script.SearchScript;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Script that scores documents with a learned {@link RankingModel}, loaded from a file by the
+ * {@link RankingModelService}.
+ * <p/>
+ * The features of the model are computed by the native scripts of the plugin, for example the tfidf, cosine and
+ * popularity scripts, which are called one after the other for every document, so all features and the model are
+ * evaluated in a single pass. The parameters of a feature script are the parameters of this script, like the
+ * <code>terms</code> of the query, together with the parameters of the feature in the model file. The features
+ * don't see the score of the query, which isn't available when rescoring, so scripts that multiply their value with
+ * the score, like the popularity script, return their value times 1.
+ * <p/>
+ * Models are usually too expensive for all documents matching a query, run the script as a rescorer of the top
+ * documents with the <code>rescore_script</code> query.
+ */
+public class RankingModelScript extends AbstractDoubleSearchScript {
+
+    final static public String SCRIPT_NAME = "ranking_model";
+
+    /**
+     * Factory that is registered in
+     * {@link org.elasticsearch.examples.nativescript.plugin.NativeScriptExamplesPlugin#onModule(org.elasticsearch.script.ScriptModule)}
+     * method when the plugin is loaded.
+     */
+    public static class Factory implements NativeScriptFactory {
+
+        private final RankingModelService models;
+
+        private final Provider<ScriptService> scriptService;
+
+        /**
+         * This constructor will be called by guice during initialization
+         *
+         * @param models        the loaded ranking models
+         * @param scriptService creates the feature scripts, a provider as the script service depends on the
+         *                      native script factories
+         */
+        @Inject
+        public Factory(RankingModelService models, Provider<ScriptService> scriptService) {
+            this.models = models;
+            this.scriptService = scriptService;
+        }
+
+        /**
+         * This method is called for every search on every shard.
+         *
+         * @param params list of script parameters passed with the query
+         * @return new native script
+         */
+        @Override
+        public ExecutableScript newScript(@Nullable Map<String, Object> params) {
+            String name = params == null ? null : XContentMapValues.nodeStringValue(params.get("model"), null);
+            if (name == null) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": model parameter missing!");
+            }
+            // the model is resolved once, so a model swapped during the search doesn't affect it
+            RankingModel model = models.model(name);
+            if (model == null) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": model [" + name + "] not found!");
+            }
+            SearchContext context = SearchContext.current();
+            if (context == null) {
+                throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": can only be used in searches!");
+            }
+            List<RankingFeature> features = model.features();
+            SearchScript[] featureScripts = new SearchScript[features.size()];
+            for (int i = 0; i < featureScripts.length; i++) {
+                RankingFeature feature = features.get(i);
+                Map<String, Object> featureParams = new HashMap<String, Object>(params);
+                featureParams.putAll(feature.params());
+                featureScripts[i] = scriptService.get().search(context.lookup(), "native", feature.script(), featureParams);
+            }
+            return new RankingModelScript(model, featureScripts);
+        }
+    }
+
+    private final RankingModel model;
+
+    private final SearchScript[] featureScripts;
+
+    // feature values of the current document
+    private final double[] values;
+
+    private RankingModelScript(RankingModel model, SearchScript[] featureScripts) {
+        this.model = model;
+        this.featureScripts = featureScripts;
+        this.values = new double[featureScripts.length];
+        for (SearchScript featureScript : featureScripts) {
+            featureScript.setNextScore(1f);
+        }
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) {
+        super.setScorer(scorer);
+        for (SearchScript featureScript : featureScripts) {
+            featureScript.setScorer(scorer);
+        }
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) {
+        super.setNextReader(context);
+        for (SearchScript featureScript : featureScripts) {
+            featureScript.setNextReader(context);
+        }
+    }
+
+    @Override
+    public void setNextDocId(int doc) {
+        super.setNextDocId(doc);
+        for (SearchScript featureScript : featureScripts) {
+            featureScript.setNextDocId(doc);
+        }
+    }
+
+    @Override
+    public void setNextSource(Map<String, Object> source) {
+        super.setNextSource(source);
+        for (SearchScript featureScript : featureScripts) {
+            featureScript.setNextSource(source);
+        }
+    }
+
+    @Override
+    public double runAsDouble() {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = featureScripts[i].runAsDouble();
+        }
+        return model.score(values);
+    }
+}
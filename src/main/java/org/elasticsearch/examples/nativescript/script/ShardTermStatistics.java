@@ -0,0 +1,145 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.examples.nativescript.stats.FieldTermStatistics;
+
+import java.io.IOException;
+
+/**
+ * Shard level statistics of a list of terms in a field.
+ * <p/>
+ * The document frequencies and total term frequencies of the terms, as well as the field statistics, don't change
+ * while the same shard reader is searched. They are read from the top level reader the first time a segment of this
+ * reader is visited, so scripts and functions can precompute the constants derived from them once and only read
+ * the term frequencies for each document.
+ * <p/>
+ * If index wide statistics are given, they are used instead of the statistics of the shard, so documents get the
+ * same score on all shards.
+ */
+public class ShardTermStatistics {
+
+    private final String field;
+
+    private final BytesRef[] terms;
+
+    private final long[] docFreq;
+
+    private final long[] totalTermFreq;
+
+    private long maxDoc;
+
+    private long docCount;
+
+    private long sumTotalTermFreq;
+
+    private final boolean global;
+
+    private IndexReader reader;
+
+    public ShardTermStatistics(String field, BytesRef[] terms) {
+        this(field, terms, null);
+    }
+
+    /**
+     * @param globalStatistics index wide statistics of the same terms, or null to use the statistics of the shard
+     */
+    public ShardTermStatistics(String field, BytesRef[] terms, @Nullable FieldTermStatistics globalStatistics) {
+        this.field = field;
+        this.terms = terms;
+        this.docFreq = new long[terms.length];
+        this.totalTermFreq = new long[terms.length];
+        this.global = globalStatistics != null;
+        if (global) {
+            maxDoc = globalStatistics.maxDoc();
+            docCount = globalStatistics.docCount();
+            sumTotalTermFreq = globalStatistics.sumTotalTermFreq();
+            for (int i = 0; i < terms.length; i++) {
+                docFreq[i] = globalStatistics.docFreq(i);
+                totalTermFreq[i] = globalStatistics.totalTermFreq(i);
+            }
+        }
+    }
+
+    /**
+     * Loads the statistics if the segment belongs to a different shard reader than the previous one.
+     *
+     * @return true if the statistics were reloaded and the derived constants have to be recomputed
+     */
+    public boolean setNextReader(AtomicReaderContext context) throws IOException {
+        IndexReader topLevelReader = ReaderUtil.getTopLevelContext(context).reader();
+        if (topLevelReader == reader) {
+            return false;
+        }
+        if (global) {
+            // the index wide statistics don't depend on the reader, they only have to be collected once
+            boolean first = reader == null;
+            reader = topLevelReader;
+            return first;
+        }
+        maxDoc = topLevelReader.maxDoc();
+        docCount = topLevelReader.getDocCount(field);
+        sumTotalTermFreq = topLevelReader.getSumTotalTermFreq(field);
+        for (int i = 0; i < terms.length; i++) {
+            Term term = new Term(field, terms[i]);
+            docFreq[i] = topLevelReader.docFreq(term);
+            totalTermFreq[i] = topLevelReader.totalTermFreq(term);
+        }
+        reader = topLevelReader;
+        return true;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * True if the statistics are index wide statistics
+     */
+    public boolean global() {
+        return global;
+    }
+
+    /**
+     * Number of documents, including deleted documents
+     */
+    public long maxDoc() {
+        return maxDoc;
+    }
+
+    /**
+     * Number of documents that have at least one term in the field
+     */
+    public long docCount() {
+        return docCount;
+    }
+
+    /**
+     * Total number of terms in the field
+     */
+    public long sumTotalTermFreq() {
+        return sumTotalTermFreq;
+    }
+
+    /**
+     * Number of documents that contain the i-th term
+     */
+    public long docFreq(int i) {
+        return docFreq[i];
+    }
+
+    /**
+     * Number of occurrences of the i-th term in the field
+     */
+    public long totalTermFreq(int i) {
+        return totalTermFreq[i];
+    }
+}
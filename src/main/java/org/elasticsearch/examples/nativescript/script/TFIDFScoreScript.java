@@ -1,30 +1,43 @@
 package org.elasticsearch.examples.nativescript.script;
 
-import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Map;
 
 import org.elasticsearch.common.Nullable;
-import org.elasticsearch.script.AbstractSearchScript;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.examples.nativescript.stats.FieldTermStatistics;
+import org.elasticsearch.examples.nativescript.stats.GlobalTermStatisticsService;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
-import org.elasticsearch.script.ScriptException;
-import org.elasticsearch.search.lookup.IndexField;
-import org.elasticsearch.search.lookup.IndexFieldTerm;
 
 /**
  * Script that scores documents as sum_t(tf_t * (#docs+2)/(df_t+1)), which
  * equals ntn in SMART notation, see Manning et al., "Information Retrieval",
  * Chapter 6, Figure 6.15 (link: http://nlp.stanford.edu/IR-book/) This
- * implementation only scores a list of terms on one field.
+ * implementation scores a list of terms on one <code>field</code>, or on
+ * several <code>fields</code> given as a map of fields to boosts, in which
+ * case the score is the sum of the scores of the fields multiplied by the
+ * boost of the field.
+ * <p/>
+ * With the <code>global_statistics</code> parameter set to true, the
+ * statistics are index wide instead of shard level statistics, see
+ * {@link org.elasticsearch.examples.nativescript.stats.GlobalTermStatisticsService}.
+ * <p/>
+ * With the <code>bulk</code> parameter set to true, the scores of all
+ * documents of a segment are accumulated term at a time into a float array
+ * the first time a document of the segment is scored, and documents matching
+ * the main query only read their score from the array. This is faster for
+ * long queries, like more like this queries, whose terms occur in a large part
+ * of the documents matching the main query.
  */
-public class TFIDFScoreScript extends AbstractSearchScript {
+public class TFIDFScoreScript extends AbstractTermScoreScript {
 
-    // the field containing the terms that should be scored, must be initialized
-    // in constructor from parameters.
-    String field = null;
-    // terms that are used for scoring
-    ArrayList<String> terms = null;
+    // boost * idf factor log((#docs+2)/(df_t+1)) of each field and term,
+    // resolved once per shard reader. Terms that don't exist in the shard get 0.
+    private final double[][] idf;
+
+    // idf as float for the term at a time accumulator, only used in bulk mode
+    private final float[][] bulkWeights;
 
     final static public String SCRIPT_NAME = "tfidf_script_score";
 
@@ -35,6 +48,20 @@ public class TFIDFScoreScript extends AbstractSearchScript {
      */
     public static class Factory implements NativeScriptFactory {
 
+        private final GlobalTermStatisticsService globalStatistics;
+
+        /**
+         * This constructor will be called by guice during initialization
+         *
+         * @param globalStatistics
+         *            cache of index wide term statistics, used with the
+         *            <code>global_statistics</code> parameter
+         */
+        @Inject
+        public Factory(GlobalTermStatisticsService globalStatistics) {
+            this.globalStatistics = globalStatistics;
+        }
+
         /**
          * This method is called for every search on every shard.
          * 
@@ -44,47 +71,54 @@ public class TFIDFScoreScript extends AbstractSearchScript {
          */
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) {
-            return new TFIDFScoreScript(params);
+            TermScoringPlan[] plans = TermScoringPlan.parseFields(params, SCRIPT_NAME, false);
+            boolean bulk = XContentMapValues.nodeBooleanValue(params.get("bulk"), false);
+            return new TFIDFScoreScript(plans, globalStatistics(globalStatistics, plans), bulk);
         }
     }
 
     /**
-     * @param params
-     *            terms that a scored are placed in this parameter. Initialize
-     *            them here.
+     * @param plans
+     *            the fields and the terms that are scored
+     * @param globalStatistics
+     *            index wide statistics of the terms of each field, or null
+     *            entries to use the statistics of the shard
+     * @param bulk
+     *            if true, scores are accumulated term at a time per segment
      */
-    private TFIDFScoreScript(Map<String, Object> params) {
-        params.entrySet();
-        // get the terms
-        terms = (ArrayList<String>) params.get("terms");
-        // get the field
-        field = (String) params.get("field");
-        if (field == null || terms == null) {
-            throw new ScriptException("cannot initialize " + SCRIPT_NAME + ": field or terms parameter missing!");
+    private TFIDFScoreScript(TermScoringPlan[] plans, FieldTermStatistics[] globalStatistics, boolean bulk) {
+        super(plans, globalStatistics);
+        idf = new double[plans.length][plan.size()];
+        bulkWeights = bulk ? new float[plans.length][plan.size()] : null;
+    }
+
+    @Override
+    protected void collectStatistics(int fieldIndex, ShardTermStatistics statistics) {
+        double boost = plans[fieldIndex].boost();
+        double[] fieldIdf = idf[fieldIndex];
+        for (int i = 0; i < fieldIdf.length; i++) {
+            long df = statistics.docFreq(i);
+            fieldIdf[i] = df == 0 ? 0 : boost * Math.log((statistics.docCount() + 2.0) / (df + 1.0));
+            if (bulkWeights != null) {
+                bulkWeights[fieldIndex][i] = (float) fieldIdf[i];
+            }
         }
     }
 
     @Override
-    public Object run() {
-        try {
-            float score = 0;
-            // first, get the IndexField object for the field.
-            IndexField indexField = indexLookup().get(field);
-            for (int i = 0; i < terms.size(); i++) {
-                // Now, get the IndexFieldTerm object that can be used to access all
-                // the term statistics
-                IndexFieldTerm indexFieldTerm = indexField.get(terms.get(i));
+    public double runAsDouble() {
+        if (bulkWeights != null) {
+            return accumulatedScore(bulkWeights);
+        }
+        double score = 0;
+        for (int f = 0; f < idf.length; f++) {
+            double[] fieldIdf = idf[f];
+            for (int i = 0; i < fieldIdf.length; i++) {
                 // compute the most naive tfidf and add to current score
-                int df = (int) indexFieldTerm.df();
-                int tf = indexFieldTerm.tf();
-                if (df != 0 && tf != 0) {
-                    score += (float) indexFieldTerm.tf() * Math.log(((float) indexField.docCount() + 2.0) / ((float) df + 1.0));
-                }
+                score += tf(f, i) * fieldIdf[i];
             }
-            return score;
-        } catch (IOException ex) {
-            throw new ScriptException("Could not compute tfidf: ", ex);
         }
+        return score;
     }
 
 }
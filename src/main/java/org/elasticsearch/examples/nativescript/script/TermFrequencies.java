@@ -0,0 +1,236 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads the frequencies of a list of terms in a field for documents of a segment.
+ * <p/>
+ * With the postings strategy, a postings enum is positioned on each term once per segment and then only advanced
+ * as documents are requested, so looking up the frequencies of the next document doesn't require any term
+ * lookups, but every term is advanced for every document.
+ * <p/>
+ * With the term vectors strategy, the term vector of each requested document is read once and its terms are
+ * probed in a hash of the query terms, so the cost depends on the number of distinct terms of the document
+ * instead of the number of query terms. This pays off for queries with hundreds of terms on short fields. The
+ * field has to be indexed with <code>term_vector</code>, documents without term vectors contain none of the terms.
+ * <p/>
+ * The auto strategy picks term vectors for a segment if the field has term vectors there and the query has more
+ * than {@link #TERM_VECTOR_COST} times as many terms as the documents of the segment have distinct terms on
+ * average (sum of the document frequencies of all terms / number of documents with the field). Term vectors are
+ * stored compressed in chunks of documents, and reading the term vector of a single document decompresses its
+ * chunk, so a term vector costs as much as advancing the postings of many terms.
+ */
+public class TermFrequencies {
+
+    /**
+     * How the frequencies of the terms in a document are read
+     */
+    public static enum Strategy {
+        POSTINGS, TERM_VECTORS, AUTO;
+
+        public static Strategy fromString(String strategy) {
+            if ("postings".equals(strategy)) {
+                return POSTINGS;
+            } else if ("term_vectors".equals(strategy)) {
+                return TERM_VECTORS;
+            } else if ("auto".equals(strategy)) {
+                return AUTO;
+            }
+            throw new ElasticsearchIllegalArgumentException("No term frequency strategy found for [" + strategy + "]");
+        }
+    }
+
+    /**
+     * Cost of reading the term vector of a document relative to advancing the postings of as many terms as the
+     * document has distinct terms, measured with the TermVectorBenchmark
+     */
+    public static final int TERM_VECTOR_COST = 200;
+
+    private final String field;
+
+    private final BytesRef[] terms;
+
+    private final Strategy strategy;
+
+    private final DocsEnum[] docsEnums;
+
+    // term vectors strategy: the query terms, and the id of each term in the hash
+    private final BytesRefHash termHash;
+
+    private final int[] termIds;
+
+    // term vectors strategy: frequencies of the current document by term id, and the ids of the terms that occur
+    // in the current document, so only these are reset for the next document
+    private final int[] termVectorFreqs;
+
+    private final int[] matchingTermIds;
+
+    private int numMatchingTerms;
+
+    private TermsEnum termVectorEnum;
+
+    private AtomicReaderContext context;
+
+    private boolean useTermVectors;
+
+    private int lastDocId;
+
+    public TermFrequencies(String field, BytesRef[] terms) {
+        this(field, terms, Strategy.POSTINGS);
+    }
+
+    public TermFrequencies(String field, BytesRef[] terms, Strategy strategy) {
+        this.field = field;
+        this.terms = terms;
+        this.strategy = strategy;
+        this.docsEnums = new DocsEnum[terms.length];
+        if (strategy != Strategy.POSTINGS) {
+            termHash = new BytesRefHash();
+            termIds = new int[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                int id = termHash.add(terms[i]);
+                // the same term can be scored several times
+                termIds[i] = id < 0 ? -id - 1 : id;
+            }
+            termVectorFreqs = new int[termHash.size()];
+            matchingTermIds = new int[termHash.size()];
+        } else {
+            termHash = null;
+            termIds = null;
+            termVectorFreqs = null;
+            matchingTermIds = null;
+        }
+    }
+
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+        this.context = context;
+        this.lastDocId = -1;
+        Terms fieldTerms = context.reader().terms(field);
+        useTermVectors = useTermVectors(fieldTerms);
+        if (useTermVectors) {
+            Arrays.fill(docsEnums, null);
+        } else {
+            positionPostings(fieldTerms);
+        }
+    }
+
+    private boolean useTermVectors(Terms fieldTerms) throws IOException {
+        if (strategy == Strategy.POSTINGS) {
+            return false;
+        } else if (strategy == Strategy.TERM_VECTORS) {
+            return true;
+        }
+        FieldInfo fieldInfo = context.reader().getFieldInfos().fieldInfo(field);
+        if (fieldTerms == null || fieldInfo == null || !fieldInfo.hasVectors()) {
+            return false;
+        }
+        long sumDocFreq = fieldTerms.getSumDocFreq();
+        int docCount = fieldTerms.getDocCount();
+        // -1 if the codec doesn't store the statistics
+        return sumDocFreq > 0 && docCount > 0 && terms.length > TERM_VECTOR_COST * sumDocFreq / (double) docCount;
+    }
+
+    private void positionPostings(Terms fieldTerms) throws IOException {
+        TermsEnum termsEnum = fieldTerms == null ? null : fieldTerms.iterator(null);
+        for (int i = 0; i < terms.length; i++) {
+            if (termsEnum != null && termsEnum.seekExact(terms[i])) {
+                // Deleted documents are never scored, so we don't need to check live docs
+                docsEnums[i] = termsEnum.docs(null, docsEnums[i], DocsEnum.FLAG_FREQS);
+            } else {
+                docsEnums[i] = null;
+            }
+        }
+    }
+
+    /**
+     * True if the frequencies of the current segment are read from term vectors
+     */
+    public boolean usesTermVectors() {
+        return useTermVectors;
+    }
+
+    /**
+     * Walks the postings of all terms once and adds weights[i] * tf_i to the score of every document of the segment
+     * that contains the i-th term. Term at a time accumulation like this reads each postings list sequentially
+     * instead of advancing all enums for every document, which pays off if the terms are scored on most of their
+     * documents, for example long queries over a broad main query. The postings are read even if the strategy
+     * picked term vectors for the segment.
+     * <p/>
+     * The postings are consumed, a subsequent call to {@link #tf(int, int)} positions them again.
+     *
+     * @param scores accumulator indexed by document id, at least as large as the max doc of the segment
+     */
+    public void accumulate(float[] weights, float[] scores) throws IOException {
+        if (useTermVectors) {
+            positionPostings(context.reader().terms(field));
+        }
+        for (int i = 0; i < docsEnums.length; i++) {
+            DocsEnum docs = docsEnums[i];
+            float weight = weights[i];
+            if (docs == null || weight == 0) {
+                continue;
+            }
+            for (int docId = docs.nextDoc(); docId != DocsEnum.NO_MORE_DOCS; docId = docs.nextDoc()) {
+                scores[docId] += weight * docs.freq();
+            }
+        }
+        lastDocId = Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the frequency of the i-th term in the document. Documents are expected to be requested in increasing
+     * order, the postings are read again from the start of the segment otherwise.
+     */
+    public int tf(int i, int docId) throws IOException {
+        if (useTermVectors) {
+            if (docId != lastDocId) {
+                readTermVector(docId);
+                lastDocId = docId;
+            }
+            return termVectorFreqs[termIds[i]];
+        }
+        if (docId < lastDocId) {
+            setNextReader(context);
+        }
+        lastDocId = docId;
+        DocsEnum docs = docsEnums[i];
+        if (docs == null) {
+            return 0;
+        }
+        int current = docs.docID();
+        if (current < docId) {
+            current = docs.advance(docId);
+        }
+        return current == docId ? docs.freq() : 0;
+    }
+
+    private void readTermVector(int docId) throws IOException {
+        for (int i = 0; i < numMatchingTerms; i++) {
+            termVectorFreqs[matchingTermIds[i]] = 0;
+        }
+        numMatchingTerms = 0;
+        Terms termVector = context.reader().getTermVector(docId, field);
+        if (termVector == null) {
+            return;
+        }
+        termVectorEnum = termVector.iterator(termVectorEnum);
+        for (BytesRef term = termVectorEnum.next(); term != null; term = termVectorEnum.next()) {
+            int id = termHash.find(term);
+            if (id >= 0) {
+                // the term vector enum returns the frequency in the document as total term freq
+                termVectorFreqs[id] = (int) termVectorEnum.totalTermFreq();
+                matchingTermIds[numMatchingTerms++] = id;
+            }
+        }
+    }
+}
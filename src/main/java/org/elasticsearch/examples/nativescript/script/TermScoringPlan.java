@@ -0,0 +1,212 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchIllegalArgumentException;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.script.ScriptException;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Query of a term scoring script compiled from the script parameters.
+ * <p/>
+ * The factories parse the parameters into this typed form once per script, so the scripts work with term bytes
+ * and primitive weights instead of looking up and unboxing parameter values for every document.
+ */
+public class TermScoringPlan {
+
+    private final String field;
+
+    private final String[] terms;
+
+    private final BytesRef[] termBytes;
+
+    private final double[] weights;
+
+    private final double queryNorm;
+
+    private final boolean globalStatistics;
+
+    private final TermFrequencies.Strategy strategy;
+
+    private final float boost;
+
+    public TermScoringPlan(String field, String[] terms, double[] weights) {
+        this(field, terms, weights, false);
+    }
+
+    public TermScoringPlan(String field, String[] terms, double[] weights, boolean globalStatistics) {
+        this(field, terms, weights, globalStatistics, TermFrequencies.Strategy.POSTINGS);
+    }
+
+    public TermScoringPlan(String field, String[] terms, double[] weights, boolean globalStatistics, TermFrequencies.Strategy strategy) {
+        this(field, terms, weights, globalStatistics, strategy, 1);
+    }
+
+    public TermScoringPlan(String field, String[] terms, double[] weights, boolean globalStatistics, TermFrequencies.Strategy strategy,
+            float boost) {
+        this.field = field;
+        this.terms = terms;
+        this.termBytes = new BytesRef[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            termBytes[i] = new BytesRef(terms[i]);
+        }
+        this.weights = weights;
+        double queryWeightSum = 0;
+        for (double weight : weights) {
+            queryWeightSum += weight * weight;
+        }
+        this.queryNorm = Math.sqrt(queryWeightSum);
+        this.globalStatistics = globalStatistics;
+        this.strategy = strategy;
+        this.boost = boost;
+    }
+
+    /**
+     * Parses the <code>field</code>, <code>terms</code> and optional <code>weights</code>,
+     * <code>global_statistics</code> and <code>strategy</code> parameters. Terms without weights get weight 1.
+     *
+     * @param requireWeights if true, the <code>weights</code> parameter is mandatory
+     */
+    public static TermScoringPlan parse(Map<String, Object> params, String scriptName, boolean requireWeights) {
+        String field = params == null ? null : XContentMapValues.nodeStringValue(params.get("field"), null);
+        return parse(field, params, scriptName, requireWeights);
+    }
+
+    /**
+     * Parses the plans of the fields given either as <code>field</code>, or as <code>fields</code>, a map of fields
+     * to boosts (or a list of fields with boost 1). Every field gets its own plan, as the terms are looked up in each
+     * field, the other parameters are parsed like in {@link #parse(Map, String, boolean)}.
+     */
+    public static TermScoringPlan[] parseFields(Map<String, Object> params, String scriptName, boolean requireWeights) {
+        Object fieldsParam = params == null ? null : params.get("fields");
+        if (params == null || params.get("field") != null || fieldsParam == null) {
+            return new TermScoringPlan[]{parse(params, scriptName, requireWeights)};
+        }
+        if (fieldsParam instanceof Map) {
+            Map<?, ?> fieldBoosts = (Map<?, ?>) fieldsParam;
+            TermScoringPlan[] plans = new TermScoringPlan[fieldBoosts.size()];
+            int i = 0;
+            for (Map.Entry<?, ?> entry : fieldBoosts.entrySet()) {
+                float boost = (float) XContentMapValues.nodeDoubleValue(entry.getValue(), 1);
+                plans[i++] = parse(entry.getKey().toString(), boost, params, scriptName, requireWeights);
+            }
+            return plans;
+        }
+        if (fieldsParam instanceof List) {
+            List<?> fieldList = (List<?>) fieldsParam;
+            TermScoringPlan[] plans = new TermScoringPlan[fieldList.size()];
+            for (int i = 0; i < plans.length; i++) {
+                plans[i] = parse(fieldList.get(i).toString(), 1, params, scriptName, requireWeights);
+            }
+            return plans;
+        }
+        throw new ScriptException("cannot initialize " + scriptName + ": fields must be a map of fields to boosts or a list of fields!");
+    }
+
+    /**
+     * Parses the <code>terms</code> and optional <code>weights</code>, <code>global_statistics</code> and
+     * <code>strategy</code> parameters
+     * for the given field
+     */
+    public static TermScoringPlan parse(String field, Map<String, Object> params, String scriptName, boolean requireWeights) {
+        return parse(field, 1, params, scriptName, requireWeights);
+    }
+
+    private static TermScoringPlan parse(String field, float boost, Map<String, Object> params, String scriptName, boolean requireWeights) {
+        Object termsParam = params == null ? null : params.get("terms");
+        Object weightsParam = params == null ? null : params.get("weights");
+        if (field == null || !(termsParam instanceof List) || (requireWeights && !(weightsParam instanceof List))) {
+            throw new ScriptException("cannot initialize " + scriptName + ": field, terms" + (requireWeights ? " or weights" : "")
+                    + " parameter missing!");
+        }
+        List<?> termList = (List<?>) termsParam;
+        String[] terms = new String[termList.size()];
+        for (int i = 0; i < terms.length; i++) {
+            terms[i] = termList.get(i).toString();
+        }
+        double[] weights = new double[terms.length];
+        if (weightsParam instanceof List) {
+            List<?> weightList = (List<?>) weightsParam;
+            if (weightList.size() != terms.length) {
+                throw new ScriptException("cannot initialize " + scriptName + ": terms and weights array must have same length!");
+            }
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = XContentMapValues.nodeDoubleValue(weightList.get(i));
+            }
+        } else {
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = 1;
+            }
+        }
+        boolean globalStatistics = XContentMapValues.nodeBooleanValue(params.get("global_statistics"), false);
+        TermFrequencies.Strategy strategy;
+        try {
+            strategy = TermFrequencies.Strategy.fromString(XContentMapValues.nodeStringValue(params.get("strategy"), "postings"));
+        } catch (ElasticsearchIllegalArgumentException ex) {
+            throw new ScriptException("cannot initialize " + scriptName + ": " + ex.getMessage());
+        }
+        return new TermScoringPlan(field, terms, weights, globalStatistics, strategy, boost);
+    }
+
+    /**
+     * The field containing the terms
+     */
+    public String field() {
+        return field;
+    }
+
+    public int size() {
+        return terms.length;
+    }
+
+    /**
+     * The terms as strings
+     */
+    public String[] terms() {
+        return terms;
+    }
+
+    /**
+     * The terms as bytes, as they are stored in the index
+     */
+    public BytesRef[] termBytes() {
+        return termBytes;
+    }
+
+    /**
+     * The weight of each term
+     */
+    public double[] weights() {
+        return weights;
+    }
+
+    /**
+     * The norm of the vector of term weights
+     */
+    public double queryNorm() {
+        return queryNorm;
+    }
+
+    /**
+     * True if the terms should be scored with index wide instead of shard level statistics
+     */
+    public boolean globalStatistics() {
+        return globalStatistics;
+    }
+
+    /**
+     * The boost of the field, if several fields are scored
+     */
+    public float boost() {
+        return boost;
+    }
+
+    /**
+     * How the frequencies of the terms are read, see {@link TermFrequencies}
+     */
+    public TermFrequencies.Strategy strategy() {
+        return strategy;
+    }
+}
@@ -1,10 +1,13 @@
 package org.elasticsearch.examples.nativescript.script;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.TreeMap;
 
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.component.AbstractComponent;
@@ -14,6 +17,7 @@ import org.elasticsearch.node.Node;
 import org.elasticsearch.script.AbstractSearchScript;
 import org.elasticsearch.script.ExecutableScript;
 import org.elasticsearch.script.NativeScriptFactory;
+import org.elasticsearch.script.ScriptException;
 
 /**
  * Same functionality than the partial document update except that lists can be manipulated
@@ -25,10 +29,20 @@ import org.elasticsearch.script.NativeScriptFactory;
  * <li>Remove items from lists: <code>{"removeItems": { "my.tags" : [ "wow" ] }</code></li>
  * <li>Append items to lists: <code>{"appendItems": { "my.tags" : [ "wow" ] }</code></li>
  * <li>Append items to lists if they were not in the list: <code>{"setItems": { "my.tags" : [ "wow" ] }</code></li>
+ * <li>Increment numeric values: <code>{"increment": { "stats.clicks" : 3 }</code></li>
  * </ul>
  * 
  * <p>
- * Note that the script first executes doc, then the removals, then the additions.
+ * Note that the script first executes doc, then the removals (remove, then removeItems), then the additions
+ * (set, mergeItems, appendItems, then increment) and finally the operations of ordered, in the order of the list.
+ * The paths of an operation are processed in alphabetical order. The order of the parameters in the request
+ * doesn't matter.
+ * </p>
+ * <p>
+ * The parameters are validated and compiled into a list of actions once, and the factory reuses the actions for
+ * the following scripts with the same parameters, like the items of a bulk update. Parameters with only
+ * <code>increment</code>, whose deltas usually differ for every document, are compiled for every script instead.
+ * Unknown operations are rejected.
  * </p>
  * <p>
  * Example:
@@ -50,7 +64,7 @@ import org.elasticsearch.script.NativeScriptFactory;
  *     "removeItems": { "my.tags" : [ "wow" ], "my.tags": ["foo"] }, 
  *     "appendItems": { "my.tags" : [ "elasticsearch" ] },
  *     "mergeItems"   : { "my.tags" : [ "bonsai" ] },
- *     "orderedActions" : [
+ *     "ordered" : [
  *       { "remove": [ "address.city", "name" ] },
  *       { "mergeItems" : { "my.tags" : [ "bonsai" ] } }
  *     ]
@@ -66,6 +80,8 @@ public class UpdaterScript  extends AbstractSearchScript {
 
 	public static class Factory extends AbstractComponent implements NativeScriptFactory {
 
+        private final CompiledParamsCache<List<Action>> plans;
+
         /**
          * This constructor will be called by guice during initialization
          *
@@ -74,6 +90,12 @@ public class UpdaterScript  extends AbstractSearchScript {
         @Inject
         public Factory(Node node, Settings settings) {
             super(settings);
+            plans = new CompiledParamsCache<List<Action>>(settings, new CompiledParamsCache.Compiler<List<Action>>() {
+                @Override
+                public List<Action> compile(Map<String, Object> params) {
+                    return compileActions(params);
+                }
+            });
         }
 
         /**
@@ -85,21 +107,60 @@ public class UpdaterScript  extends AbstractSearchScript {
          */
         @Override
         public ExecutableScript newScript(@Nullable Map<String, Object> params) {
-            return new UpdaterScript(params);
+            if (params != null && params.size() == 1 && params.containsKey("increment")) {
+                // Increments, like the ones sent by the counter buffer, carry different deltas for every document
+                // and are cheap to compile, caching them would only evict the plans that are reused
+                return new UpdaterScript(compileActions(params));
+            }
+            return new UpdaterScript(plans.plan(params));
         }	
 	}
-	
+
+	/**
+	 * The operations in the order they are executed, the operations of <code>ordered</code> run last
+	 */
+	private static final List<String> OPERATIONS = Arrays.asList(
+			"doc", "remove", "removeItems", "set", "mergeItems", "appendItems", "increment", "ordered");
+
+	protected static enum ActionType {
+		DOC, MERGE_ITEMS, APPEND_ITEMS, REMOVE_ITEMS, SET, INCREMENT, REMOVE
+	}
+
+	/**
+	 * One step of the execution plan compiled from the parameters. The plans are cached by the factory and shared by
+	 * all scripts created with the same parameters, so values are copied before they are added to the document.
+	 */
+	protected static class Action {
+		final ActionType type;
+		final String path;
+		final Object value;
+
+		Action(ActionType type, String path, Object value) {
+			this.type = type;
+			this.path = path;
+			this.value = value;
+		}
+	}
+
 	protected Map<String,Object> source;
 	protected Map<String, Object> ctx;
-	private Map<String, Object> params;
+	private final List<Action> actions;
 	
 	public UpdaterScript(@Nullable Map<String, Object> params) {
-		this.params = params;
+		this(compileActions(params));
+	}
+
+	protected UpdaterScript(List<Action> actions) {
+		this.actions = actions;
 	}
 
 	@Override
 	public Object run() {
-		if (!execActions(params)) {
+		boolean atLeastOneChange = false;
+		for (Action action : actions) {
+			atLeastOneChange = execAction(action) || atLeastOneChange;
+		}
+		if (!atLeastOneChange) {
 			ctx.put("op", "none");
 		}
 		return null;
@@ -113,49 +174,105 @@ public class UpdaterScript  extends AbstractSearchScript {
         }
     }
     
-    protected boolean execActions(Map<String, Object> params) {
-    	boolean atLeastOneChange = false;
-    	for (Entry<String, Object> param : params.entrySet()) {
-    		atLeastOneChange = execAction(param.getKey(), param.getValue()) || atLeastOneChange;
+    /**
+     * Validates the parameters and flattens them into the list of actions to execute, ordered actions included
+     */
+    protected static List<Action> compileActions(@Nullable Map<String, Object> params) {
+    	List<Action> actions = new ArrayList<Action>();
+    	if (params != null) {
+    		compileActions(params, actions);
+    	}
+    	return Collections.unmodifiableList(actions);
+    }
+
+    private static void compileActions(Map<String, Object> params, List<Action> actions) {
+    	for (String operation : params.keySet()) {
+    		if (!OPERATIONS.contains(operation)) {
+    			throw new ScriptException("Invalid operation [" + operation + "]");
+    		}
+    	}
+    	// The plans are shared by the parameters with the same content in any order, so the operations run in a
+    	// fixed order instead of the order of the map
+    	for (String operation : OPERATIONS) {
+    		if (params.containsKey(operation)) {
+    			compileAction(operation, params.get(operation), actions);
+    		}
     	}
-    	return atLeastOneChange;
     }
     
-    protected boolean execAction(String action, Object value) {
-    	boolean atLeastOneChange = false;
+    private static void compileAction(String action, Object value, List<Action> actions) {
 		if ("ordered".equals(action)) {
-			List<Map<String,Object>> actions = (List<Map<String, Object>>)value;
-			for (Map<String,Object> subAction : actions) {
-				atLeastOneChange = execActions(subAction) || atLeastOneChange;
+			if (!(value instanceof List)) {
+				throw new ScriptException("Invalid operation [ordered]: expected a list of operations");
+			}
+			for (Object subAction : (List<?>) value) {
+				if (!(subAction instanceof Map)) {
+					throw new ScriptException("Invalid operation [ordered]: expected a list of operations");
+				}
+				compileActions((Map<String,Object>) subAction, actions);
 			}
 		} else if (value instanceof Map && "doc".equals(action)) {
-			atLeastOneChange = executeDoc( (Map<String,Object>) value) || atLeastOneChange;
+			actions.add(new Action(ActionType.DOC, null, CompiledParamsCache.immutableCopy(value)));
 		} else if (value instanceof Map) {
-			Map<String,Object> pathValues = (Map<String,Object>) value;
+			ActionType type = pathActionType(action);
+			Map<String,Object> pathValues = new TreeMap<String,Object>((Map<String,Object>) value);
 			for (Entry<String,Object> entry : pathValues.entrySet()) {
-				String path = entry.getKey();
-				if ("mergeItems".equals(action)) {
-					atLeastOneChange = execMergeItems(path, getEntryValueAsList(entry)) || atLeastOneChange;
-				} else if ("appendItems".equals(action)) {
-					atLeastOneChange = execAppendItems(path, getEntryValueAsList(entry)) || atLeastOneChange;
-				} else if ("removeItems".equals(action)) {
-					atLeastOneChange = execRemoveItems(path, getEntryValueAsList(entry)) || atLeastOneChange;
-				} else if ("set".equals(action)) {
-					atLeastOneChange = execSet(path, entry.getValue()) || atLeastOneChange;
-				} else {
-					System.err.println("Invalid operation.");
+				Object pathValue = entry.getValue();
+				if (type == ActionType.INCREMENT) {
+					if (pathValue != null && !(pathValue instanceof Number)) {
+						throw new ScriptException("Invalid operation [increment]: [" + entry.getKey() + "] is not a number");
+					}
+				} else if (type != ActionType.SET) {
+					pathValue = getValueAsList(pathValue);
 				}
+				actions.add(new Action(type, entry.getKey(), CompiledParamsCache.immutableCopy(pathValue)));
 			}
-		} else if (value instanceof List) {
+		} else if ("remove".equals(action) && value instanceof List) {
 			for (Object v : (List<?>) value) {
-				if ("remove".equals(action)) {
-					atLeastOneChange = execRemove((String)v) || atLeastOneChange;
+				if (!(v instanceof String)) {
+					throw new ScriptException("Invalid operation [remove]: expected paths");
 				}
+				actions.add(new Action(ActionType.REMOVE, (String) v, null));
 			}
-		} else if (value instanceof String && "remove".equals(action)) {
-			atLeastOneChange = execRemove((String)value) || atLeastOneChange;
+		} else if ("remove".equals(action) && value instanceof String) {
+			actions.add(new Action(ActionType.REMOVE, (String) value, null));
+		} else {
+			throw new ScriptException("Invalid operation [" + action + "]");
 		}
-		return atLeastOneChange;
+    }
+
+    private static ActionType pathActionType(String action) {
+		if ("mergeItems".equals(action)) {
+			return ActionType.MERGE_ITEMS;
+		} else if ("appendItems".equals(action)) {
+			return ActionType.APPEND_ITEMS;
+		} else if ("removeItems".equals(action)) {
+			return ActionType.REMOVE_ITEMS;
+		} else if ("set".equals(action)) {
+			return ActionType.SET;
+		} else if ("increment".equals(action)) {
+			return ActionType.INCREMENT;
+		}
+		throw new ScriptException("Invalid operation [" + action + "]");
+    }
+
+    protected boolean execAction(Action action) {
+    	switch (action.type) {
+    		case DOC:
+    			return executeDoc((Map<String,Object>) action.value);
+    		case MERGE_ITEMS:
+    			return execMergeItems(action.path, (List<Object>) action.value);
+    		case APPEND_ITEMS:
+    			return execAppendItems(action.path, (List<Object>) action.value);
+    		case REMOVE_ITEMS:
+    			return execRemoveItems(action.path, (List<Object>) action.value);
+    		case SET:
+    			return execSet(action.path, CompiledParamsCache.mutableCopy(action.value));
+    		case INCREMENT:
+    			return execIncrement(action.path, (Number) action.value);
+    		default:
+    			return execRemove(action.path);
+    	}
     }
 
     private boolean executeDoc(Map<String, Object> doc) {
@@ -210,7 +327,7 @@ public class UpdaterScript  extends AbstractSearchScript {
 			// this wont work for Object values. We only support 'simple' values
 			if (!checkUnique || !items.contains(val)) {
 				atLeastOneChange = true;
-			    items.add(val);
+			    items.add(CompiledParamsCache.mutableCopy(val));
 			}
 		}
 		return atLeastOneChange;
@@ -243,6 +360,30 @@ public class UpdaterScript  extends AbstractSearchScript {
     	return true;
     }
 
+    private boolean execIncrement(String path, Number delta) {
+    	if (delta == null) {
+    		return false;
+    	}
+    	Map<String, Object> parent = selectParent(path, true);
+    	String leafName = getLeafName(path);
+    	Object current = parent.get(leafName);
+    	if (current != null && !(current instanceof Number)) {
+    		// We only increment numeric values
+    		return false;
+    	}
+    	Number value = (Number) current;
+    	if ((value == null || isIntegral(value)) && isIntegral(delta)) {
+    		parent.put(leafName, (value == null ? 0 : value.longValue()) + delta.longValue());
+    	} else {
+    		parent.put(leafName, (value == null ? 0 : value.doubleValue()) + delta.doubleValue());
+    	}
+    	return true;
+    }
+
+    private static boolean isIntegral(Number value) {
+    	return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+    }
+
     protected Map<String,Object> selectParent(String path, boolean lazyBuild) {
     	return selectParent(source, path.split("\\."), 0, lazyBuild);
     }
@@ -267,12 +408,12 @@ public class UpdaterScript  extends AbstractSearchScript {
     	return path.substring(last+1);
     }
     
-    private static List<Object> getEntryValueAsList(Entry<String,Object> entry) {
-    	if (entry.getValue() instanceof List) {
-    		return (List<Object>) entry.getValue();
+    private static List<Object> getValueAsList(Object value) {
+    	if (value instanceof List) {
+    		return (List<Object>) value;
     	} else {
     		List<Object> res = new ArrayList<Object>();
-    		res.add(entry.getValue());
+    		res.add(value);
     		return res;
     	}
     }
@@ -319,7 +460,7 @@ public class UpdaterScript  extends AbstractSearchScript {
     	for (Map.Entry<String, Object> changesEntry : changes.entrySet()) {
             if (!source.containsKey(changesEntry.getKey())) {
                 // safe to copy, change does not exist in source
-                source.put(changesEntry.getKey(), changesEntry.getValue());
+                source.put(changesEntry.getKey(), CompiledParamsCache.mutableCopy(changesEntry.getValue()));
                 atLeastOneChange = true;
             } else {
             	Object changesKey = changesEntry.getKey();
@@ -336,7 +477,7 @@ public class UpdaterScript  extends AbstractSearchScript {
                 	List<Object> sourceList = (List<Object>)sourceValue;
                 	for (Object o : (List<Object>)changesValue) {
                 		if (!sourceList.contains(o)) {
-                			sourceList.add(o);
+                			sourceList.add(CompiledParamsCache.mutableCopy(o));
                 			atLeastOneChange = true;
                 		}
                 	}
@@ -345,7 +486,7 @@ public class UpdaterScript  extends AbstractSearchScript {
                 	Object oldValue = source.get(changesEntry.getKey());
                 	if (oldValue != changesEntry.getValue()) {
                 		atLeastOneChange = true;
-                		source.put(changesEntry.getKey(), changesEntry.getValue());
+                		source.put(changesEntry.getKey(), CompiledParamsCache.mutableCopy(changesEntry.getValue()));
                 	}
                 }
             }
@@ -0,0 +1,52 @@
+package org.elasticsearch.examples.nativescript.similarity;
+
+import org.apache.lucene.index.FieldInvertState;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.SmallFloat;
+
+/**
+ * Base class of the similarities of the plugin. Norms are encoded like the default similarity does it, as
+ * boost / sqrt(number of terms) in one byte, so a field can switch between these similarities and the built-in ones
+ * without reindexing.
+ */
+public abstract class AbstractLengthNormSimilarity extends Similarity {
+
+    /**
+     * The decoded norm, boost / sqrt(length), of each norm byte
+     */
+    static final float[] NORM_TABLE = new float[256];
+
+    static {
+        for (int i = 0; i < NORM_TABLE.length; i++) {
+            NORM_TABLE[i] = SmallFloat.byte315ToFloat((byte) i);
+        }
+    }
+
+    @Override
+    public long computeNorm(FieldInvertState state) {
+        // Like the default similarity, tokens at the same position (synonyms) don't count
+        int numTerms = state.getLength() - state.getNumOverlap();
+        return SmallFloat.floatToByte315(state.getBoost() / (float) Math.sqrt(numTerms));
+    }
+
+    /**
+     * Base class of the scorers, phrases count like the default similarity does it and payloads are ignored
+     */
+    abstract static class AbstractSimScorer extends SimScorer {
+
+        @Override
+        public float computeSlopFactor(int distance) {
+            return 1.0f / (distance + 1);
+        }
+
+        @Override
+        public float computePayloadFactor(int doc, int start, int end, BytesRef payload) {
+            return 1;
+        }
+
+        @Override
+        public abstract Explanation explain(int doc, Explanation freq);
+    }
+}
@@ -0,0 +1,87 @@
+package org.elasticsearch.examples.nativescript.similarity;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.ComplexExplanation;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.TermStatistics;
+
+import java.io.IOException;
+
+/**
+ * Similarity that scores the cosine between the vector of query term boosts and the term frequency vector of a
+ * document, see Manning et al., "Information Retrieval", Chapter 6, Eq. 6.12 (link:
+ * http://nlp.stanford.edu/IR-book/).
+ * <p/>
+ * A term query gets boost * tf / (|q| * |d|). The norm of the query vector |q| is the query norm computed by the
+ * searcher from the boosts of all terms, so the query norm of the base similarity of the index must not be changed.
+ * A similarity only sees one term at a time, so unlike the
+ * {@link org.elasticsearch.examples.nativescript.script.CosineSimilarityScoreScript cosine} script, which only
+ * knows the frequencies of the query terms, the document vector is the vector of all terms of the document, and
+ * its norm is taken from the norms of the field: sqrt(length), which is exact if no term occurs twice in the
+ * document and rounded to one byte. The coord factor is applied by the base similarity of the index, so boolean
+ * queries should disable it with <code>disable_coord</code>.
+ */
+public class CosineSimilarity extends AbstractLengthNormSimilarity {
+
+    @Override
+    public SimWeight computeWeight(float queryBoost, CollectionStatistics collectionStats, TermStatistics... termStats) {
+        return new CosineWeight(collectionStats.field(), queryBoost);
+    }
+
+    @Override
+    public SimScorer simScorer(SimWeight weight, AtomicReaderContext context) throws IOException {
+        final CosineWeight cosineWeight = (CosineWeight) weight;
+        final NumericDocValues norms = context.reader().getNormValues(cosineWeight.field);
+        return new AbstractSimScorer() {
+            @Override
+            public float score(int doc, float freq) {
+                // without norms, the length of the documents is unknown
+                return freq * cosineWeight.value * (norms == null ? 1f : NORM_TABLE[(byte) norms.get(doc) & 0xFF]);
+            }
+
+            @Override
+            public Explanation explain(int doc, Explanation freq) {
+                ComplexExplanation explanation = new ComplexExplanation(true, score(doc, freq.getValue()),
+                        "cosine_sim, product of:");
+                explanation.addDetail(freq);
+                explanation.addDetail(new Explanation(cosineWeight.value, "boost / |q|"));
+                explanation.addDetail(new Explanation(norms == null ? 1f : NORM_TABLE[(byte) norms.get(doc) & 0xFF],
+                        "1 / |d|, from the norms of the field"));
+                return explanation;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "cosine_sim";
+    }
+
+    static class CosineWeight extends SimWeight {
+
+        final String field;
+
+        final float queryBoost;
+
+        // boost / |q|
+        float value;
+
+        CosineWeight(String field, float queryBoost) {
+            this.field = field;
+            this.queryBoost = queryBoost;
+            this.value = queryBoost;
+        }
+
+        @Override
+        public float getValueForNormalization() {
+            return queryBoost * queryBoost;
+        }
+
+        @Override
+        public void normalize(float queryNorm, float topLevelBoost) {
+            value = queryBoost * queryNorm * topLevelBoost;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.elasticsearch.examples.nativescript.similarity;
+
+import org.apache.lucene.search.similarities.Similarity;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.assistedinject.Assisted;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.similarity.AbstractSimilarityProvider;
+
+/**
+ * Provides the {@link CosineSimilarity}, selected in a field mapping with <code>"similarity": "cosine_sim"</code>
+ */
+public class CosineSimilarityProvider extends AbstractSimilarityProvider {
+
+    public static final String NAME = "cosine_sim";
+
+    private final CosineSimilarity similarity = new CosineSimilarity();
+
+    @Inject
+    public CosineSimilarityProvider(@Assisted String name, @Assisted Settings settings) {
+        super(name);
+    }
+
+    @Override
+    public Similarity get() {
+        return similarity;
+    }
+}
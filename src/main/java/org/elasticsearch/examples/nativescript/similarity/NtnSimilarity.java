@@ -0,0 +1,85 @@
+package org.elasticsearch.examples.nativescript.similarity;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.CollectionStatistics;
+import org.apache.lucene.search.ComplexExplanation;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.TermStatistics;
+
+import java.io.IOException;
+
+/**
+ * Similarity that scores terms like the {@link org.elasticsearch.examples.nativescript.script.TFIDFScoreScript tfidf}
+ * script, as tf * log((#docs + 2) / (df + 1)), ntn in SMART notation.
+ * <p/>
+ * Like BM25, the similarity ignores the query norm, so a boolean query of term queries returns the same scores as
+ * the script. The coord factor is applied by the base similarity of the index though, so boolean queries should
+ * disable it with <code>disable_coord</code>.
+ */
+public class NtnSimilarity extends AbstractLengthNormSimilarity {
+
+    @Override
+    public SimWeight computeWeight(float queryBoost, CollectionStatistics collectionStats, TermStatistics... termStats) {
+        long docCount = collectionStats.docCount() == -1 ? collectionStats.maxDoc() : collectionStats.docCount();
+        // phrases get the sum of the idfs of their terms
+        float idf = 0;
+        for (TermStatistics termStatistics : termStats) {
+            long df = termStatistics.docFreq();
+            idf += df == 0 ? 0 : (float) Math.log((docCount + 2.0) / (df + 1.0));
+        }
+        return new NtnWeight(idf, queryBoost);
+    }
+
+    @Override
+    public SimScorer simScorer(SimWeight weight, AtomicReaderContext context) throws IOException {
+        final NtnWeight ntnWeight = (NtnWeight) weight;
+        return new AbstractSimScorer() {
+            @Override
+            public float score(int doc, float freq) {
+                return freq * ntnWeight.value;
+            }
+
+            @Override
+            public Explanation explain(int doc, Explanation freq) {
+                ComplexExplanation explanation = new ComplexExplanation(true, score(doc, freq.getValue()),
+                        "tfidf_ntn, product of:");
+                explanation.addDetail(freq);
+                explanation.addDetail(new Explanation(ntnWeight.idf, "idf, log((docCount + 2) / (docFreq + 1))"));
+                explanation.addDetail(new Explanation(ntnWeight.value / ntnWeight.idf, "boost"));
+                return explanation;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "tfidf_ntn";
+    }
+
+    static class NtnWeight extends SimWeight {
+
+        final float idf;
+
+        final float queryBoost;
+
+        // idf * boost
+        float value;
+
+        NtnWeight(float idf, float queryBoost) {
+            this.idf = idf;
+            this.queryBoost = queryBoost;
+            this.value = idf * queryBoost;
+        }
+
+        @Override
+        public float getValueForNormalization() {
+            return value * value;
+        }
+
+        @Override
+        public void normalize(float queryNorm, float topLevelBoost) {
+            // scores are not normalized
+            value = idf * queryBoost * topLevelBoost;
+        }
+    }
+}
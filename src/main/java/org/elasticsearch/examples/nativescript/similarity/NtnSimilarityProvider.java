@@ -0,0 +1,27 @@
+package org.elasticsearch.examples.nativescript.similarity;
+
+import org.apache.lucene.search.similarities.Similarity;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.assistedinject.Assisted;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.similarity.AbstractSimilarityProvider;
+
+/**
+ * Provides the {@link NtnSimilarity}, selected in a field mapping with <code>"similarity": "tfidf_ntn"</code>
+ */
+public class NtnSimilarityProvider extends AbstractSimilarityProvider {
+
+    public static final String NAME = "tfidf_ntn";
+
+    private final NtnSimilarity similarity = new NtnSimilarity();
+
+    @Inject
+    public NtnSimilarityProvider(@Assisted String name, @Assisted Settings settings) {
+        super(name);
+    }
+
+    @Override
+    public Similarity get() {
+        return similarity;
+    }
+}
@@ -0,0 +1,138 @@
+package org.elasticsearch.examples.nativescript.stats;
+
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.io.stream.Streamable;
+
+import java.io.IOException;
+
+/**
+ * Statistics of a field and of a list of terms in this field. Depending on where they come from, the statistics
+ * cover a single shard or all shards of an index.
+ */
+public class FieldTermStatistics implements Streamable {
+
+    private String field;
+
+    private long maxDoc;
+
+    private long docCount;
+
+    private long sumTotalTermFreq;
+
+    private String[] terms;
+
+    private long[] docFreq;
+
+    private long[] totalTermFreq;
+
+    FieldTermStatistics() {
+    }
+
+    public FieldTermStatistics(String field, long maxDoc, long docCount, long sumTotalTermFreq, String[] terms,
+                               long[] docFreq, long[] totalTermFreq) {
+        this.field = field;
+        this.maxDoc = maxDoc;
+        this.docCount = docCount;
+        this.sumTotalTermFreq = sumTotalTermFreq;
+        this.terms = terms;
+        this.docFreq = docFreq;
+        this.totalTermFreq = totalTermFreq;
+    }
+
+    /**
+     * Adds the statistics of another shard to these statistics. Both statistics must be about the same terms
+     * in the same order.
+     */
+    void add(FieldTermStatistics other) {
+        maxDoc += other.maxDoc;
+        docCount = sum(docCount, other.docCount);
+        sumTotalTermFreq = sum(sumTotalTermFreq, other.sumTotalTermFreq);
+        for (int i = 0; i < terms.length; i++) {
+            docFreq[i] += other.docFreq[i];
+            totalTermFreq[i] = sum(totalTermFreq[i], other.totalTermFreq[i]);
+        }
+    }
+
+    // Lucene returns -1 for statistics that the codec doesn't store, the sum stays unavailable in this case
+    private static long sum(long a, long b) {
+        return a == -1 || b == -1 ? -1 : a + b;
+    }
+
+    public String field() {
+        return field;
+    }
+
+    /**
+     * Number of documents, including deleted documents
+     */
+    public long maxDoc() {
+        return maxDoc;
+    }
+
+    /**
+     * Number of documents that have at least one term in the field
+     */
+    public long docCount() {
+        return docCount;
+    }
+
+    /**
+     * Total number of terms in the field
+     */
+    public long sumTotalTermFreq() {
+        return sumTotalTermFreq;
+    }
+
+    public String[] terms() {
+        return terms;
+    }
+
+    /**
+     * Number of documents that contain the i-th term
+     */
+    public long docFreq(int i) {
+        return docFreq[i];
+    }
+
+    /**
+     * Number of occurrences of the i-th term in the field
+     */
+    public long totalTermFreq(int i) {
+        return totalTermFreq[i];
+    }
+
+    public static FieldTermStatistics readFieldTermStatistics(StreamInput in) throws IOException {
+        FieldTermStatistics statistics = new FieldTermStatistics();
+        statistics.readFrom(in);
+        return statistics;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        field = in.readString();
+        maxDoc = in.readVLong();
+        docCount = in.readLong();
+        sumTotalTermFreq = in.readLong();
+        terms = in.readStringArray();
+        docFreq = new long[terms.length];
+        totalTermFreq = new long[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            docFreq[i] = in.readVLong();
+            totalTermFreq[i] = in.readLong();
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeString(field);
+        out.writeVLong(maxDoc);
+        out.writeLong(docCount);
+        out.writeLong(sumTotalTermFreq);
+        out.writeStringArray(terms);
+        for (int i = 0; i < terms.length; i++) {
+            out.writeVLong(docFreq[i]);
+            out.writeLong(totalTermFreq[i]);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package org.elasticsearch.examples.nativescript.stats;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.cache.Cache;
+import org.elasticsearch.common.cache.CacheBuilder;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.search.internal.SearchContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Node level cache of index wide term statistics, used by the term scoring scripts with the
+ * <code>global_statistics</code> parameter to score documents consistently on all shards.
+ * <p/>
+ * The statistics are collected from all shards with the {@link TermStatisticsAction} and cached per index and
+ * field. Only the first query for a term waits for the statistics of this term. Afterwards the cached statistics
+ * are used, and they are refreshed in the background once they are older than
+ * <code>examples.nativescript.global_stats.refresh_interval</code> (1m by default), so queries never wait for a
+ * round trip to the other shards, at the price of statistics that lag behind by up to the refresh interval.
+ * The statistics of an index are discarded when the index is recreated, and the statistics of fields that were
+ * not used for <code>examples.nativescript.global_stats.expire</code> (30m by default) are evicted.
+ * <p/>
+ * The first query for a term waits on a search thread, so the wait is bounded by
+ * <code>examples.nativescript.global_stats.timeout</code> (1s by default). If the statistics are not collected
+ * by then, or some shards fail, null is returned and the scripts fall back to the statistics of their shard.
+ * The statistics that arrive after the timeout are still cached for the following queries. After a failure or a
+ * timeout, the statistics of the field are not requested again for
+ * <code>examples.nativescript.global_stats.retry_interval</code> (10s by default), so while a shard is failing or
+ * unassigned the queries use the shard statistics or the cached statistics without waiting for the other shards.
+ */
+public class GlobalTermStatisticsService extends AbstractComponent {
+
+    private final Node node;
+
+    private final TimeValue refreshInterval;
+
+    private final TimeValue timeout;
+
+    private final TimeValue retryInterval;
+
+    private final int maxTerms;
+
+    private final Cache<FieldKey, FieldEntry> cache;
+
+    @Inject
+    public GlobalTermStatisticsService(Settings settings, Node node) {
+        super(settings);
+        // Node is not fully initialized here, the client is resolved when the first statistics are requested
+        this.node = node;
+        this.refreshInterval = settings.getAsTime("examples.nativescript.global_stats.refresh_interval", TimeValue.timeValueMinutes(1));
+        this.timeout = settings.getAsTime("examples.nativescript.global_stats.timeout", TimeValue.timeValueSeconds(1));
+        this.retryInterval = settings.getAsTime("examples.nativescript.global_stats.retry_interval", TimeValue.timeValueSeconds(10));
+        this.maxTerms = settings.getAsInt("examples.nativescript.global_stats.max_terms", 10000);
+        TimeValue expire = settings.getAsTime("examples.nativescript.global_stats.expire", TimeValue.timeValueMinutes(30));
+        this.cache = CacheBuilder.newBuilder().expireAfterAccess(expire.nanos(), TimeUnit.NANOSECONDS).build();
+    }
+
+    /**
+     * Returns the index wide statistics of the terms for the index searched by the given search context.
+     *
+     * @return the statistics, or null if they are not available
+     */
+    @Nullable
+    public FieldTermStatistics statistics(@Nullable SearchContext context, String field, String[] terms) {
+        if (context == null) {
+            return null;
+        }
+        String indexUUID = context.indexShard().indexSettings().get(IndexMetaData.SETTING_UUID, IndexMetaData.INDEX_UUID_NA_VALUE);
+        return statistics(context.shardTarget().index(), indexUUID, field, terms);
+    }
+
+    /**
+     * Returns the index wide statistics of the terms
+     *
+     * @return the statistics, or null if they are not available
+     */
+    @Nullable
+    public FieldTermStatistics statistics(String index, String indexUUID, String field, String[] terms) {
+        FieldEntry entry = entry(new FieldKey(index, field), indexUUID);
+        if (entry.failedRecently(retryInterval)) {
+            // Don't wait for the shards again on every query while some of them are failing
+            return entry.statistics(field, terms);
+        }
+        List<String> missingTerms = new ArrayList<String>();
+        for (String term : terms) {
+            if (!entry.terms.containsKey(term)) {
+                missingTerms.add(term);
+            }
+        }
+        if (entry.fieldStatistics == null || !missingTerms.isEmpty()) {
+            load(index, field, missingTerms.toArray(new String[missingTerms.size()]), entry);
+        } else if (System.nanoTime() - entry.loadedAt > refreshInterval.nanos() && entry.refreshing.compareAndSet(false, true)) {
+            refresh(index, field, entry);
+        }
+        return entry.statistics(field, terms);
+    }
+
+    private FieldEntry entry(FieldKey key, String indexUUID) {
+        ConcurrentMap<FieldKey, FieldEntry> entries = cache.asMap();
+        while (true) {
+            FieldEntry entry = entries.get(key);
+            if (entry == null) {
+                entry = new FieldEntry(indexUUID);
+                FieldEntry existing = entries.putIfAbsent(key, entry);
+                if (existing == null) {
+                    return entry;
+                }
+                entry = existing;
+            }
+            if (entry.indexUUID.equals(indexUUID)) {
+                return entry;
+            }
+            // The index was recreated, the statistics of the old index are replaced unless a concurrent query did it
+            FieldEntry replacement = new FieldEntry(indexUUID);
+            if (entries.replace(key, entry, replacement)) {
+                return replacement;
+            }
+        }
+    }
+
+    /**
+     * Clears the cached statistics
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private Client client() {
+        return node.client();
+    }
+
+    /**
+     * Loads the statistics of the terms into the entry, waiting for them at most for the timeout
+     */
+    private void load(final String index, final String field, String[] terms, final FieldEntry entry) {
+        final CountDownLatch loaded = new CountDownLatch(1);
+        try {
+            client().execute(TermStatisticsAction.INSTANCE, new TermStatisticsRequest(index).field(field).terms(terms),
+                    new ActionListener<TermStatisticsResponse>() {
+                        @Override
+                        public void onResponse(TermStatisticsResponse response) {
+                            if (complete(response)) {
+                                entry.update(response.getStatistics(), maxTerms);
+                            } else {
+                                entry.failed();
+                            }
+                            loaded.countDown();
+                        }
+
+                        @Override
+                        public void onFailure(Throwable e) {
+                            entry.failed();
+                            loaded.countDown();
+                            logger.debug("failed to load the statistics of field [{}] in index [{}]", e, field, index);
+                        }
+                    });
+            if (!loaded.await(timeout.millis(), TimeUnit.MILLISECONDS)) {
+                // The statistics are still cached if they arrive later
+                entry.failed();
+                logger.debug("timed out loading the statistics of field [{}] in index [{}]", field, index);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (Exception ex) {
+            entry.failed();
+            logger.debug("failed to load the statistics of field [{}] in index [{}]", ex, field, index);
+        }
+    }
+
+    private void refresh(final String index, final String field, final FieldEntry entry) {
+        Set<String> cachedTerms = entry.terms.keySet();
+        TermStatisticsRequest request = new TermStatisticsRequest(index).field(field)
+                .terms(cachedTerms.toArray(new String[cachedTerms.size()]));
+        try {
+            client().execute(TermStatisticsAction.INSTANCE, request, new ActionListener<TermStatisticsResponse>() {
+                @Override
+                public void onResponse(TermStatisticsResponse response) {
+                    if (complete(response)) {
+                        entry.update(response.getStatistics(), maxTerms);
+                    } else {
+                        entry.failed();
+                    }
+                    entry.refreshing.set(false);
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    entry.failed();
+                    entry.refreshing.set(false);
+                    logger.debug("failed to refresh the statistics of field [{}] in index [{}]", e, field, index);
+                }
+            });
+        } catch (RuntimeException ex) {
+            entry.failed();
+            entry.refreshing.set(false);
+            throw ex;
+        }
+    }
+
+    // Statistics that are missing some shards would be just as inconsistent as shard statistics
+    private static boolean complete(TermStatisticsResponse response) {
+        return response.getStatistics() != null && response.getSuccessfulShards() == response.getTotalShards();
+    }
+
+    private static class FieldEntry {
+
+        final String indexUUID;
+
+        // doc freq and total term freq of each term
+        final ConcurrentMap<String, long[]> terms = ConcurrentCollections.newConcurrentMap();
+
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        // max doc, doc count and sum of total term freqs of the field
+        volatile long[] fieldStatistics;
+
+        volatile long loadedAt;
+
+        // whether the last request failed, and when
+        volatile boolean failed;
+
+        volatile long failedAt;
+
+        FieldEntry(String indexUUID) {
+            this.indexUUID = indexUUID;
+        }
+
+        void failed() {
+            failedAt = System.nanoTime();
+            failed = true;
+        }
+
+        boolean failedRecently(TimeValue retryInterval) {
+            return failed && System.nanoTime() - failedAt < retryInterval.nanos();
+        }
+
+        void update(FieldTermStatistics loaded, int maxTerms) {
+            // Refreshes reload the cached terms, only the terms that are not cached yet add to the size
+            int newTerms = 0;
+            for (String term : loaded.terms()) {
+                if (!terms.containsKey(term)) {
+                    newTerms++;
+                }
+            }
+            if (terms.size() + newTerms > maxTerms) {
+                // Start over instead of tracking term usage, the terms of the next queries are loaded again
+                terms.clear();
+            }
+            for (int i = 0; i < loaded.terms().length; i++) {
+                terms.put(loaded.terms()[i], new long[]{loaded.docFreq(i), loaded.totalTermFreq(i)});
+            }
+            fieldStatistics = new long[]{loaded.maxDoc(), loaded.docCount(), loaded.sumTotalTermFreq()};
+            loadedAt = System.nanoTime();
+            failed = false;
+        }
+
+        FieldTermStatistics statistics(String field, String[] requestedTerms) {
+            long[] current = fieldStatistics;
+            if (current == null) {
+                // not loaded yet
+                return null;
+            }
+            long[] docFreq = new long[requestedTerms.length];
+            long[] totalTermFreq = new long[requestedTerms.length];
+            for (int i = 0; i < requestedTerms.length; i++) {
+                long[] termStatistics = terms.get(requestedTerms[i]);
+                if (termStatistics == null) {
+                    // not loaded yet, or cleared concurrently
+                    return null;
+                }
+                docFreq[i] = termStatistics[0];
+                totalTermFreq[i] = termStatistics[1];
+            }
+            return new FieldTermStatistics(field, current[0], current[1], current[2], requestedTerms, docFreq, totalTermFreq);
+        }
+    }
+
+    private static class FieldKey {
+        final String index;
+        final String field;
+
+        FieldKey(String index, String field) {
+            this.index = index;
+            this.field = field;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            FieldKey fieldKey = (FieldKey) o;
+            return index.equals(fieldKey.index) && field.equals(fieldKey.field);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * index.hashCode() + field.hashCode();
+        }
+    }
+}
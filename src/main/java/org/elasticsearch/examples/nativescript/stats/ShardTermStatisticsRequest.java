@@ -0,0 +1,48 @@
+package org.elasticsearch.examples.nativescript.stats;
+
+import org.elasticsearch.action.support.broadcast.BroadcastShardOperationRequest;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * Request for the term statistics of a single shard
+ */
+class ShardTermStatisticsRequest extends BroadcastShardOperationRequest {
+
+    private String field;
+
+    private String[] terms;
+
+    ShardTermStatisticsRequest() {
+    }
+
+    ShardTermStatisticsRequest(String index, int shardId, TermStatisticsRequest request) {
+        super(index, shardId, request);
+        this.field = request.field();
+        this.terms = request.terms();
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public String[] terms() {
+        return terms;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        field = in.readString();
+        terms = in.readStringArray();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(field);
+        out.writeStringArray(terms);
+    }
+}
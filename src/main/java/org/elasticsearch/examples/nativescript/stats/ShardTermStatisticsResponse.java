@@ -0,0 +1,39 @@
+package org.elasticsearch.examples.nativescript.stats;
+
+import org.elasticsearch.action.support.broadcast.BroadcastShardOperationResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * Term statistics of a single shard
+ */
+class ShardTermStatisticsResponse extends BroadcastShardOperationResponse {
+
+    private FieldTermStatistics statistics;
+
+    ShardTermStatisticsResponse() {
+    }
+
+    ShardTermStatisticsResponse(String index, int shardId, FieldTermStatistics statistics) {
+        super(index, shardId);
+        this.statistics = statistics;
+    }
+
+    public FieldTermStatistics statistics() {
+        return statistics;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        statistics = FieldTermStatistics.readFieldTermStatistics(in);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        statistics.writeTo(out);
+    }
+}
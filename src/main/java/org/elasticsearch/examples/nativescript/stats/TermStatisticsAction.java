@@ -0,0 +1,28 @@
+package org.elasticsearch.examples.nativescript.stats;
+
+import org.elasticsearch.action.Action;
+import org.elasticsearch.client.Client;
+
+/**
+ * Action that collects the statistics of a field and of a list of terms from all shards of an index
+ */
+public class TermStatisticsAction extends Action<TermStatisticsRequest, TermStatisticsResponse, TermStatisticsRequestBuilder> {
+
+    public static final TermStatisticsAction INSTANCE = new TermStatisticsAction();
+
+    public static final String NAME = "indices/examples/term_stats";
+
+    private TermStatisticsAction() {
+        super(NAME);
+    }
+
+    @Override
+    public TermStatisticsResponse newResponse() {
+        return new TermStatisticsResponse();
+    }
+
+    @Override
+    public TermStatisticsRequestBuilder newRequestBuilder(Client client) {
+        return new TermStatisticsRequestBuilder(client);
+    }
+}
@@ -0,0 +1,14 @@
+package org.elasticsearch.examples.nativescript.stats;
+
+import org.elasticsearch.common.inject.AbstractModule;
+
+/**
+ * Binds the node level {@link GlobalTermStatisticsService}, so all scripts share the same cached statistics.
+ */
+public class TermStatisticsModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+        bind(GlobalTermStatisticsService.class).asEagerSingleton();
+    }
+}
@@ -0,0 +1,73 @@
+package org.elasticsearch.examples.nativescript.stats;
+
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.action.support.broadcast.BroadcastOperationRequest;
+import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+import static org.elasticsearch.action.ValidateActions.addValidationError;
+
+/**
+ * Request for the statistics of a field and of a list of terms in this field, summed over all shards of the
+ * requested indices.
+ */
+public class TermStatisticsRequest extends BroadcastOperationRequest<TermStatisticsRequest> {
+
+    private String field;
+
+    private String[] terms = Strings.EMPTY_ARRAY;
+
+    TermStatisticsRequest() {
+    }
+
+    public TermStatisticsRequest(String... indices) {
+        super(indices);
+    }
+
+    public String field() {
+        return field;
+    }
+
+    public TermStatisticsRequest field(String field) {
+        this.field = field;
+        return this;
+    }
+
+    public String[] terms() {
+        return terms;
+    }
+
+    public TermStatisticsRequest terms(String... terms) {
+        this.terms = terms;
+        return this;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        ActionRequestValidationException validationException = super.validate();
+        if (field == null) {
+            validationException = addValidationError("field is missing", validationException);
+        }
+        if (terms == null) {
+            validationException = addValidationError("terms are missing", validationException);
+        }
+        return validationException;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        field = in.readString();
+        terms = in.readStringArray();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(field);
+        out.writeStringArray(terms);
+    }
+}
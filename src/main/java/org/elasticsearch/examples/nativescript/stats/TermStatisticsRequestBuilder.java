@@ -0,0 +1,31 @@
+package org.elasticsearch.examples.nativescript.stats;
+
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.broadcast.BroadcastOperationRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.internal.InternalClient;
+
+/**
+ * Builder for {@link TermStatisticsRequest}
+ */
+public class TermStatisticsRequestBuilder extends BroadcastOperationRequestBuilder<TermStatisticsRequest, TermStatisticsResponse, TermStatisticsRequestBuilder> {
+
+    public TermStatisticsRequestBuilder(Client client) {
+        super((InternalClient) client, new TermStatisticsRequest());
+    }
+
+    public TermStatisticsRequestBuilder setField(String field) {
+        request.field(field);
+        return this;
+    }
+
+    public TermStatisticsRequestBuilder setTerms(String... terms) {
+        request.terms(terms);
+        return this;
+    }
+
+    @Override
+    protected void doExecute(ActionListener<TermStatisticsResponse> listener) {
+        ((InternalClient) client).execute(TermStatisticsAction.INSTANCE, request, listener);
+    }
+}
@@ -0,0 +1,52 @@
+package org.elasticsearch.examples.nativescript.stats;
+
+import org.elasticsearch.action.ShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.BroadcastOperationResponse;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Statistics of a field and of a list of terms summed over all shards that responded
+ */
+public class TermStatisticsResponse extends BroadcastOperationResponse {
+
+    private FieldTermStatistics statistics;
+
+    TermStatisticsResponse() {
+    }
+
+    TermStatisticsResponse(int totalShards, int successfulShards, int failedShards, List<ShardOperationFailedException> shardFailures,
+                           FieldTermStatistics statistics) {
+        super(totalShards, successfulShards, failedShards, shardFailures);
+        this.statistics = statistics;
+    }
+
+    /**
+     * The summed statistics, or null if no shard responded
+     */
+    public FieldTermStatistics getStatistics() {
+        return statistics;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        if (in.readBoolean()) {
+            statistics = FieldTermStatistics.readFieldTermStatistics(in);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        if (statistics == null) {
+            out.writeBoolean(false);
+        } else {
+            out.writeBoolean(true);
+            statistics.writeTo(out);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package org.elasticsearch.examples.nativescript.stats;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.action.ShardOperationFailedException;
+import org.elasticsearch.action.support.DefaultShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.BroadcastShardOperationFailedException;
+import org.elasticsearch.action.support.broadcast.TransportBroadcastOperationAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.block.ClusterBlockException;
+import org.elasticsearch.cluster.block.ClusterBlockLevel;
+import org.elasticsearch.cluster.routing.GroupShardsIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.shard.service.IndexShard;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.elasticsearch.common.collect.Lists.newArrayList;
+
+/**
+ * Reads the term statistics from one copy of every shard and sums them up.
+ * <p/>
+ * The statistics are read from the top level reader of the shard, like the scripts do it, so summing the
+ * statistics of all shards gives the statistics a single shard index would have.
+ */
+public class TransportTermStatisticsAction extends TransportBroadcastOperationAction<TermStatisticsRequest, TermStatisticsResponse, ShardTermStatisticsRequest, ShardTermStatisticsResponse> {
+
+    private final IndicesService indicesService;
+
+    @Inject
+    public TransportTermStatisticsAction(Settings settings, ThreadPool threadPool, ClusterService clusterService,
+                                         TransportService transportService, IndicesService indicesService) {
+        super(settings, threadPool, clusterService, transportService);
+        this.indicesService = indicesService;
+    }
+
+    @Override
+    protected String executor() {
+        // Not the search pool: searches may wait for these statistics
+        return ThreadPool.Names.MANAGEMENT;
+    }
+
+    @Override
+    protected String transportAction() {
+        return TermStatisticsAction.NAME;
+    }
+
+    @Override
+    protected TermStatisticsRequest newRequest() {
+        return new TermStatisticsRequest();
+    }
+
+    @Override
+    protected TermStatisticsResponse newResponse(TermStatisticsRequest request, AtomicReferenceArray shardsResponses, ClusterState clusterState) {
+        int successfulShards = 0;
+        int failedShards = 0;
+        List<ShardOperationFailedException> shardFailures = null;
+        FieldTermStatistics statistics = null;
+        for (int i = 0; i < shardsResponses.length(); i++) {
+            Object shardResponse = shardsResponses.get(i);
+            if (shardResponse == null) {
+                // simply ignore non active shards
+            } else if (shardResponse instanceof BroadcastShardOperationFailedException) {
+                failedShards++;
+                if (shardFailures == null) {
+                    shardFailures = newArrayList();
+                }
+                shardFailures.add(new DefaultShardOperationFailedException((BroadcastShardOperationFailedException) shardResponse));
+            } else {
+                successfulShards++;
+                FieldTermStatistics shardStatistics = ((ShardTermStatisticsResponse) shardResponse).statistics();
+                if (statistics == null) {
+                    statistics = shardStatistics;
+                } else {
+                    statistics.add(shardStatistics);
+                }
+            }
+        }
+        return new TermStatisticsResponse(shardsResponses.length(), successfulShards, failedShards, shardFailures, statistics);
+    }
+
+    @Override
+    protected ShardTermStatisticsRequest newShardRequest() {
+        return new ShardTermStatisticsRequest();
+    }
+
+    @Override
+    protected ShardTermStatisticsRequest newShardRequest(ShardRouting shard, TermStatisticsRequest request) {
+        return new ShardTermStatisticsRequest(shard.index(), shard.id(), request);
+    }
+
+    @Override
+    protected ShardTermStatisticsResponse newShardResponse() {
+        return new ShardTermStatisticsResponse();
+    }
+
+    @Override
+    protected ShardTermStatisticsResponse shardOperation(ShardTermStatisticsRequest request) throws ElasticsearchException {
+        IndexShard indexShard = indicesService.indexServiceSafe(request.index()).shardSafe(request.shardId());
+        Engine.Searcher searcher = indexShard.acquireSearcher("term_stats");
+        try {
+            IndexReader reader = searcher.reader();
+            String field = request.field();
+            String[] terms = request.terms();
+            long[] docFreq = new long[terms.length];
+            long[] totalTermFreq = new long[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                Term term = new Term(field, terms[i]);
+                docFreq[i] = reader.docFreq(term);
+                totalTermFreq[i] = reader.totalTermFreq(term);
+            }
+            FieldTermStatistics statistics = new FieldTermStatistics(field, reader.maxDoc(), reader.getDocCount(field),
+                    reader.getSumTotalTermFreq(field), terms, docFreq, totalTermFreq);
+            return new ShardTermStatisticsResponse(request.index(), request.shardId(), statistics);
+        } catch (IOException ex) {
+            throw new ElasticsearchException("Failed to read the term statistics of field [" + request.field() + "]", ex);
+        } finally {
+            searcher.close();
+        }
+    }
+
+    /**
+     * The statistics are read from one copy of every shard, like a search.
+     */
+    @Override
+    protected GroupShardsIterator shards(ClusterState clusterState, TermStatisticsRequest request, String[] concreteIndices) {
+        return clusterService.operationRouting().searchShards(clusterState, request.indices(), concreteIndices, null, null);
+    }
+
+    @Override
+    protected ClusterBlockException checkGlobalBlock(ClusterState state, TermStatisticsRequest request) {
+        return state.blocks().globalBlockedException(ClusterBlockLevel.READ);
+    }
+
+    @Override
+    protected ClusterBlockException checkRequestBlock(ClusterState state, TermStatisticsRequest request, String[] concreteIndices) {
+        return state.blocks().indicesBlockedException(ClusterBlockLevel.READ, concreteIndices);
+    }
+}
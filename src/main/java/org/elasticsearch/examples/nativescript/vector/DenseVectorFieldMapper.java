@@ -0,0 +1,325 @@
+package org.elasticsearch.examples.nativescript.vector;
+
+import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.index.FieldInfo;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.fielddata.FieldDataType;
+import org.elasticsearch.index.mapper.FieldMapperListener;
+import org.elasticsearch.index.mapper.Mapper;
+import org.elasticsearch.index.mapper.MapperParsingException;
+import org.elasticsearch.index.mapper.MergeContext;
+import org.elasticsearch.index.mapper.MergeMappingException;
+import org.elasticsearch.index.mapper.ParseContext;
+import org.elasticsearch.index.mapper.core.AbstractFieldMapper;
+import org.elasticsearch.index.mapper.object.ArrayValueMapperParser;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mapper for <code>dense_vector</code> fields: arrays of a fixed number of floats, for example embeddings, that are
+ * stored in binary doc values and can be scored with the
+ * {@link org.elasticsearch.examples.nativescript.script.DenseVectorScoreScript dense vector script}:
+ * <pre>
+ *     "embedding": {
+ *         "type": "dense_vector",
+ *         "dims": 256
+ *     }
+ * </pre>
+ * The vectors are neither indexed nor stored, they are only available in the doc values (and the source).
+ * <p/>
+ * With <code>"encoding": "int8"</code> or <code>"encoding": "bit"</code>, the doc values hold a quantized vector
+ * that is 4 or 32 times smaller than the floats, see {@link DenseVectors}. Quantized vectors can only be scored
+ * approximately, so with <code>"store_float": true</code> the float vector is also stored in the doc values of the
+ * <code>&lt;field&gt;.float</code> sub field, a float <code>dense_vector</code> field, for rescoring the best
+ * documents exactly.
+ * <p/>
+ * With <code>"lsh": {"tables": 16, "bits": 8}</code>, the field indexes the {@link RandomHyperplaneLsh LSH} bucket
+ * of the vector in each table as a term, so that the
+ * {@link org.elasticsearch.examples.nativescript.query.DenseVectorLshQueryParser dense_vector_lsh} query only has to
+ * score the documents that share a bucket with the query vector.
+ */
+public class DenseVectorFieldMapper extends AbstractFieldMapper<float[]> implements ArrayValueMapperParser {
+
+    public static final String CONTENT_TYPE = "dense_vector";
+
+    /**
+     * Name of the sub field holding the float vectors of a quantized field with <code>store_float</code>
+     */
+    public static final String FLOAT_FIELD_NAME = "float";
+
+    public static class Defaults extends AbstractFieldMapper.Defaults {
+        public static final FieldType FIELD_TYPE = new FieldType(AbstractFieldMapper.Defaults.FIELD_TYPE);
+        public static final FieldType LSH_FIELD_TYPE = new FieldType(AbstractFieldMapper.Defaults.FIELD_TYPE);
+
+        static {
+            FIELD_TYPE.setIndexed(false);
+            FIELD_TYPE.freeze();
+
+            LSH_FIELD_TYPE.setTokenized(false);
+            LSH_FIELD_TYPE.setOmitNorms(true);
+            LSH_FIELD_TYPE.setIndexOptions(FieldInfo.IndexOptions.DOCS_ONLY);
+            LSH_FIELD_TYPE.freeze();
+        }
+    }
+
+    public static class Builder extends AbstractFieldMapper.Builder<Builder, DenseVectorFieldMapper> {
+
+        private int dims;
+
+        private DenseVectors.Encoding encoding = DenseVectors.Encoding.FLOAT;
+
+        private boolean storeFloat = false;
+
+        private RandomHyperplaneLsh lsh;
+
+        public Builder(String name) {
+            super(name, new FieldType(Defaults.FIELD_TYPE));
+            this.builder = this;
+        }
+
+        public Builder dims(int dims) {
+            this.dims = dims;
+            return this;
+        }
+
+        public Builder encoding(DenseVectors.Encoding encoding) {
+            this.encoding = encoding;
+            return this;
+        }
+
+        public Builder storeFloat(boolean storeFloat) {
+            this.storeFloat = storeFloat;
+            return this;
+        }
+
+        public Builder lsh(RandomHyperplaneLsh lsh) {
+            this.lsh = lsh;
+            return this;
+        }
+
+        @Override
+        public DenseVectorFieldMapper build(BuilderContext context) {
+            FieldType fieldType = lsh == null ? this.fieldType : new FieldType(Defaults.LSH_FIELD_TYPE);
+            DenseVectorFieldMapper floatMapper = null;
+            if (storeFloat && encoding != DenseVectors.Encoding.FLOAT) {
+                // the float vectors are a float dense_vector sub field, so the codec and the scripts find its mapping
+                context.path().add(name);
+                floatMapper = new Builder(FLOAT_FIELD_NAME).dims(dims).build(context);
+                context.path().remove();
+            }
+            return new DenseVectorFieldMapper(buildNames(context), fieldType, dims, encoding, floatMapper, lsh);
+        }
+    }
+
+    public static class TypeParser implements Mapper.TypeParser {
+
+        @Override
+        public Mapper.Builder<?, ?> parse(String name, Map<String, Object> node, ParserContext parserContext) throws MapperParsingException {
+            Builder builder = new Builder(name);
+            Object dims = node.get("dims");
+            if (dims == null) {
+                throw new MapperParsingException("[dims] is required for field [" + name + "] of type [" + CONTENT_TYPE + "]");
+            }
+            builder.dims(XContentMapValues.nodeIntegerValue(dims));
+            if (builder.dims <= 0) {
+                throw new MapperParsingException("[dims] must be positive for field [" + name + "]");
+            }
+            Object encoding = node.get("encoding");
+            if (encoding != null) {
+                try {
+                    builder.encoding(DenseVectors.Encoding.fromString(encoding.toString()));
+                } catch (IllegalArgumentException e) {
+                    throw new MapperParsingException("unknown [encoding] [" + encoding + "] for field [" + name + "]");
+                }
+            }
+            Object storeFloat = node.get("store_float");
+            if (storeFloat != null) {
+                builder.storeFloat(XContentMapValues.nodeBooleanValue(storeFloat));
+            }
+            Object lsh = node.get("lsh");
+            if (lsh instanceof Map) {
+                Map<?, ?> lshNode = (Map<?, ?>) lsh;
+                try {
+                    builder.lsh(new RandomHyperplaneLsh(builder.dims,
+                            XContentMapValues.nodeIntegerValue(lshNode.get("tables"), 16),
+                            XContentMapValues.nodeIntegerValue(lshNode.get("bits"), 8),
+                            XContentMapValues.nodeLongValue(lshNode.get("seed"), 0)));
+                } catch (IllegalArgumentException e) {
+                    throw new MapperParsingException("invalid [lsh] for field [" + name + "]: " + e.getMessage());
+                }
+            } else if (lsh != null) {
+                throw new MapperParsingException("[lsh] of field [" + name + "] must be an object");
+            }
+            return builder;
+        }
+    }
+
+    private final int dims;
+
+    private final DenseVectors.Encoding encoding;
+
+    private final boolean storeFloat;
+
+    // mapper of the <field>.float sub field, null unless store_float is enabled on a quantized field
+    private final DenseVectorFieldMapper floatMapper;
+
+    private final RandomHyperplaneLsh lsh;
+
+    public DenseVectorFieldMapper(Names names, FieldType fieldType, int dims, DenseVectors.Encoding encoding,
+                                  @Nullable DenseVectorFieldMapper floatMapper, @Nullable RandomHyperplaneLsh lsh) {
+        super(names, 1.0f, fieldType, null, null, null, null, null, null, null, null, null);
+        this.dims = dims;
+        this.encoding = encoding;
+        this.floatMapper = floatMapper;
+        this.storeFloat = floatMapper != null;
+        this.lsh = lsh;
+    }
+
+    public int dims() {
+        return dims;
+    }
+
+    public DenseVectors.Encoding encoding() {
+        return encoding;
+    }
+
+    /**
+     * The name of the doc values field holding the float vectors, which is the field itself for float vectors, or
+     * null if only quantized vectors are stored
+     */
+    @Nullable
+    public String floatIndexName() {
+        if (encoding == DenseVectors.Encoding.FLOAT) {
+            return names.indexName();
+        }
+        return floatMapper != null ? floatMapper.names().indexName() : null;
+    }
+
+    /**
+     * The hashing of the vectors into the terms of this field, or null if the vectors are not hashed
+     */
+    @Nullable
+    public RandomHyperplaneLsh lsh() {
+        return lsh;
+    }
+
+    @Override
+    public FieldType defaultFieldType() {
+        return Defaults.FIELD_TYPE;
+    }
+
+    @Override
+    public FieldDataType defaultFieldDataType() {
+        return new FieldDataType("binary");
+    }
+
+    @Override
+    public float[] value(Object value) {
+        if (value instanceof float[]) {
+            return (float[]) value;
+        }
+        if (value instanceof List) {
+            List<?> values = (List<?>) value;
+            float[] vector = new float[values.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = XContentMapValues.nodeFloatValue(values.get(i));
+            }
+            return vector;
+        }
+        return null;
+    }
+
+    @Override
+    protected void parseCreateField(ParseContext context, List<Field> fields) throws IOException {
+        XContentParser parser = context.parser();
+        XContentParser.Token token = parser.currentToken();
+        if (token == XContentParser.Token.VALUE_NULL) {
+            return;
+        }
+        float[] vector = new float[dims];
+        int length = 0;
+        if (token == XContentParser.Token.START_ARRAY) {
+            while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                if (length == dims) {
+                    throw new MapperParsingException("field [" + names.fullName() + "] expects vectors of [" + dims + "] dimensions, but got more");
+                }
+                vector[length++] = parser.floatValue();
+            }
+        } else {
+            vector[length++] = parser.floatValue();
+        }
+        if (length != dims) {
+            throw new MapperParsingException("field [" + names.fullName() + "] expects vectors of [" + dims + "] dimensions, but got [" + length + "]");
+        }
+        context.doc().add(new BinaryDocValuesField(names.indexName(), encoding.encode(vector)));
+        if (storeFloat) {
+            context.doc().add(new BinaryDocValuesField(floatIndexName(), DenseVectors.encode(vector)));
+        }
+        if (lsh != null) {
+            for (String bucket : lsh.buckets(vector)) {
+                fields.add(new Field(names.indexName(), bucket, fieldType));
+            }
+        }
+    }
+
+    @Override
+    public void traverse(FieldMapperListener fieldMapperListener) {
+        super.traverse(fieldMapperListener);
+        if (floatMapper != null) {
+            floatMapper.traverse(fieldMapperListener);
+        }
+    }
+
+    @Override
+    protected String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public void merge(Mapper mergeWith, MergeContext mergeContext) throws MergeMappingException {
+        super.merge(mergeWith, mergeContext);
+        if (!this.getClass().equals(mergeWith.getClass())) {
+            return;
+        }
+        DenseVectorFieldMapper other = (DenseVectorFieldMapper) mergeWith;
+        if (other.dims != dims) {
+            mergeContext.addConflict("mapper [" + names.fullName() + "] has different dims");
+        }
+        if (other.encoding != encoding) {
+            mergeContext.addConflict("mapper [" + names.fullName() + "] has different encoding");
+        }
+        if (other.storeFloat != storeFloat) {
+            mergeContext.addConflict("mapper [" + names.fullName() + "] has different store_float");
+        }
+        if (lsh == null ? other.lsh != null : !lsh.equals(other.lsh)) {
+            mergeContext.addConflict("mapper [" + names.fullName() + "] has different lsh");
+        }
+    }
+
+    @Override
+    protected void doXContentBody(XContentBuilder builder, boolean includeDefaults, Params params) throws IOException {
+        // The field type is derived from the vector options, so only these options are serialized
+        builder.field("type", CONTENT_TYPE);
+        builder.field("dims", dims);
+        if (includeDefaults || encoding != DenseVectors.Encoding.FLOAT) {
+            builder.field("encoding", encoding.toString());
+        }
+        if (includeDefaults || storeFloat) {
+            builder.field("store_float", storeFloat);
+        }
+        if (lsh != null) {
+            builder.startObject("lsh");
+            builder.field("tables", lsh.tables());
+            builder.field("bits", lsh.bits());
+            builder.field("seed", lsh.seed());
+            builder.endObject();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.elasticsearch.examples.nativescript.vector;
+
+import org.elasticsearch.common.inject.AbstractModule;
+
+/**
+ * Index level module that adds the vector field types to every index
+ */
+public class DenseVectorIndexModule extends AbstractModule {
+
+    @Override
+    protected void configure() {
+        bind(RegisterDenseVectorType.class).asEagerSingleton();
+    }
+}
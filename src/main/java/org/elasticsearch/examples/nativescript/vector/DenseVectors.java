@@ -0,0 +1,339 @@
+package org.elasticsearch.examples.nativescript.vector;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.util.Locale;
+
+/**
+ * Encodings of dense float vectors in binary doc values, and similarity functions that work directly on the encoded
+ * bytes.
+ * <ul>
+ * <li>{@link Encoding#FLOAT}: d + 1 big endian floats, the L2 norm of the vector followed by its values. Storing the
+ * norm at index time saves the norm calculation when scoring with cosine similarity.</li>
+ * <li>{@link Encoding#INT8}: the norm, the minimum value and the scale of the vector as floats, followed by one
+ * byte per value, (value - min) / scale rounded to 0..255. This is almost 4 times smaller, at the price of an error
+ * of at most scale / 2 per value.</li>
+ * <li>{@link Encoding#BIT}: the sign of each value as one bit, d / 8 bytes. This only keeps the direction of the
+ * vector, and the angle between two vectors is estimated from the number of differing bits (the Hamming distance).
+ * </li>
+ * </ul>
+ * The encoding isn't stored with the values, the lengths of vectors of different dimensions and encodings can be
+ * equal, so the encoding and the number of dimensions of a field are read from its mapping.
+ * <p/>
+ * The similarity functions decode the values from the byte array of the {@link BytesRef} as they go, so scoring a
+ * document doesn't allocate anything. The loops are unrolled by four, which lets the JIT interleave the independent
+ * loads and multiplications.
+ */
+public final class DenseVectors {
+
+    public enum Encoding {
+        FLOAT, INT8, BIT;
+
+        public static Encoding fromString(String encoding) {
+            return valueOf(encoding.toUpperCase(Locale.ROOT));
+        }
+
+        /**
+         * Number of bytes of an encoded vector with the given number of dimensions
+         */
+        public int encodedLength(int dims) {
+            switch (this) {
+            case FLOAT:
+                return (dims + 1) * 4;
+            case INT8:
+                return 12 + dims;
+            default:
+                return (dims + 7) / 8;
+            }
+        }
+
+        public BytesRef encode(float[] vector) {
+            switch (this) {
+            case FLOAT:
+                return DenseVectors.encode(vector);
+            case INT8:
+                return encodeInt8(vector);
+            default:
+                return encodeBits(vector);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private DenseVectors() {
+    }
+
+    /**
+     * Number of bytes of a float encoded vector with the given number of dimensions
+     */
+    public static int encodedLength(int dims) {
+        return Encoding.FLOAT.encodedLength(dims);
+    }
+
+    /**
+     * Encodes the vector and its norm
+     */
+    public static BytesRef encode(float[] vector) {
+        byte[] bytes = new byte[encodedLength(vector.length)];
+        writeFloat(bytes, 0, (float) norm(vector));
+        for (int i = 0; i < vector.length; i++) {
+            writeFloat(bytes, (i + 1) * 4, vector[i]);
+        }
+        return new BytesRef(bytes);
+    }
+
+    /**
+     * Encodes the norm, the offset and the scale of the vector, and each value as one unsigned byte
+     */
+    public static BytesRef encodeInt8(float[] vector) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (float value : vector) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        float scale = max > min ? (max - min) / 255 : 1;
+        byte[] bytes = new byte[Encoding.INT8.encodedLength(vector.length)];
+        writeFloat(bytes, 0, (float) norm(vector));
+        writeFloat(bytes, 4, min);
+        writeFloat(bytes, 8, scale);
+        for (int i = 0; i < vector.length; i++) {
+            bytes[12 + i] = (byte) Math.round((vector[i] - min) / scale);
+        }
+        return new BytesRef(bytes);
+    }
+
+    /**
+     * Encodes the sign of each value as one bit, the first value being the highest bit of the first byte
+     */
+    public static BytesRef encodeBits(float[] vector) {
+        byte[] bytes = new byte[Encoding.BIT.encodedLength(vector.length)];
+        for (int i = 0; i < vector.length; i++) {
+            if (vector[i] > 0) {
+                bytes[i >> 3] |= 0x80 >>> (i & 7);
+            }
+        }
+        return new BytesRef(bytes);
+    }
+
+    /**
+     * Returns the bits of the vector as longs for {@link #hammingDistance(BytesRef, long[])}
+     */
+    public static long[] packBits(float[] vector) {
+        BytesRef bits = encodeBits(vector);
+        long[] packed = new long[(bits.length + 7) / 8];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = readLong(bits.bytes, i * 8, bits.length);
+        }
+        return packed;
+    }
+
+    /**
+     * Returns the L2 norm of the vector
+     */
+    public static double norm(float[] vector) {
+        double sum = 0;
+        for (float value : vector) {
+            sum += value * value;
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * Returns the vector scaled to unit length, or the vector itself if it is all zeros
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = norm(vector);
+        if (norm == 0) {
+            return vector;
+        }
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    /**
+     * Returns the sum of the values of the vector
+     */
+    public static double sum(float[] vector) {
+        double sum = 0;
+        for (float value : vector) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the norm that was stored with the float or int8 encoded vector
+     */
+    public static float norm(BytesRef encoded) {
+        return readFloat(encoded.bytes, encoded.offset);
+    }
+
+    /**
+     * Returns the dot product of the float encoded vector and the query vector
+     */
+    public static double dotProduct(BytesRef encoded, float[] query) {
+        byte[] bytes = encoded.bytes;
+        int offset = encoded.offset + 4;
+        int length = query.length;
+        int unrolled = length & ~3;
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i < unrolled; i += 4, offset += 16) {
+            s0 += readFloat(bytes, offset) * query[i];
+            s1 += readFloat(bytes, offset + 4) * query[i + 1];
+            s2 += readFloat(bytes, offset + 8) * query[i + 2];
+            s3 += readFloat(bytes, offset + 12) * query[i + 3];
+        }
+        for (; i < length; i++, offset += 4) {
+            s0 += readFloat(bytes, offset) * query[i];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    /**
+     * Returns the squared L2 distance of the float encoded vector and the query vector
+     */
+    public static double l2DistanceSquared(BytesRef encoded, float[] query) {
+        byte[] bytes = encoded.bytes;
+        int offset = encoded.offset + 4;
+        int length = query.length;
+        int unrolled = length & ~3;
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i < unrolled; i += 4, offset += 16) {
+            float d0 = readFloat(bytes, offset) - query[i];
+            float d1 = readFloat(bytes, offset + 4) - query[i + 1];
+            float d2 = readFloat(bytes, offset + 8) - query[i + 2];
+            float d3 = readFloat(bytes, offset + 12) - query[i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < length; i++, offset += 4) {
+            float d = readFloat(bytes, offset) - query[i];
+            s0 += d * d;
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    /**
+     * Returns the dot product of the int8 encoded vector and the query vector.
+     * <p/>
+     * Each value is min + scale * q, so the dot product is min * sum(query) + scale * sum(q * query), and the inner
+     * loop only multiplies bytes with floats.
+     *
+     * @param querySum the sum of the values of the query vector, see {@link #sum(float[])}
+     */
+    public static double int8DotProduct(BytesRef encoded, float[] query, double querySum) {
+        byte[] bytes = encoded.bytes;
+        int offset = encoded.offset;
+        float min = readFloat(bytes, offset + 4);
+        float scale = readFloat(bytes, offset + 8);
+        offset += 12;
+        int length = query.length;
+        int unrolled = length & ~3;
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i < unrolled; i += 4, offset += 4) {
+            s0 += (bytes[offset] & 0xFF) * query[i];
+            s1 += (bytes[offset + 1] & 0xFF) * query[i + 1];
+            s2 += (bytes[offset + 2] & 0xFF) * query[i + 2];
+            s3 += (bytes[offset + 3] & 0xFF) * query[i + 3];
+        }
+        for (; i < length; i++, offset++) {
+            s0 += (bytes[offset] & 0xFF) * query[i];
+        }
+        return min * querySum + scale * ((double) s0 + s1 + s2 + s3);
+    }
+
+    /**
+     * Returns the squared L2 distance of the int8 encoded vector and the query vector
+     */
+    public static double int8L2DistanceSquared(BytesRef encoded, float[] query) {
+        byte[] bytes = encoded.bytes;
+        int offset = encoded.offset;
+        float min = readFloat(bytes, offset + 4);
+        float scale = readFloat(bytes, offset + 8);
+        offset += 12;
+        int length = query.length;
+        int unrolled = length & ~3;
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i < unrolled; i += 4, offset += 4) {
+            float d0 = min + scale * (bytes[offset] & 0xFF) - query[i];
+            float d1 = min + scale * (bytes[offset + 1] & 0xFF) - query[i + 1];
+            float d2 = min + scale * (bytes[offset + 2] & 0xFF) - query[i + 2];
+            float d3 = min + scale * (bytes[offset + 3] & 0xFF) - query[i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < length; i++, offset++) {
+            float d = min + scale * (bytes[offset] & 0xFF) - query[i];
+            s0 += d * d;
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    /**
+     * Returns the number of bits that differ between the bit encoded vector and the query bits
+     *
+     * @param queryBits the bits of the query vector, see {@link #packBits(float[])}
+     */
+    public static int hammingDistance(BytesRef encoded, long[] queryBits) {
+        byte[] bytes = encoded.bytes;
+        int offset = encoded.offset;
+        int end = offset + encoded.length;
+        int distance = 0;
+        for (int i = 0; i < queryBits.length; i++, offset += 8) {
+            distance += Long.bitCount(readLong(bytes, offset, end) ^ queryBits[i]);
+        }
+        return distance;
+    }
+
+    /**
+     * Estimates the cosine similarity of two vectors from the Hamming distance of their bits: the probability that
+     * a value differs in sign is the angle between the vectors divided by pi for random rotations of the vectors.
+     */
+    public static double hammingCosine(int hammingDistance, int dims) {
+        return Math.cos(Math.PI * hammingDistance / dims);
+    }
+
+    // reads 8 bytes as a long, padding with zero bytes at the end of the value
+    private static long readLong(byte[] bytes, int offset, int end) {
+        if (offset + 8 <= end) {
+            return ((long) (bytes[offset] & 0xFF) << 56) | ((long) (bytes[offset + 1] & 0xFF) << 48)
+                    | ((long) (bytes[offset + 2] & 0xFF) << 40) | ((long) (bytes[offset + 3] & 0xFF) << 32)
+                    | ((long) (bytes[offset + 4] & 0xFF) << 24) | ((bytes[offset + 5] & 0xFF) << 16)
+                    | ((bytes[offset + 6] & 0xFF) << 8) | (bytes[offset + 7] & 0xFF);
+        }
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (offset + i < end ? bytes[offset + i] & 0xFF : 0);
+        }
+        return value;
+    }
+
+    static float readFloat(byte[] bytes, int offset) {
+        return Float.intBitsToFloat(((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF));
+    }
+
+    static void writeFloat(byte[] bytes, int offset, float value) {
+        int bits = Float.floatToIntBits(value);
+        bytes[offset] = (byte) (bits >>> 24);
+        bytes[offset + 1] = (byte) (bits >>> 16);
+        bytes[offset + 2] = (byte) (bits >>> 8);
+        bytes[offset + 3] = (byte) bits;
+    }
+}
@@ -0,0 +1,99 @@
+package org.elasticsearch.examples.nativescript.vector;
+
+import java.util.Random;
+
+/**
+ * Locality sensitive hashing of vectors for cosine similarity with random hyperplanes (Charikar, "Similarity
+ * Estimation Techniques from Rounding Algorithms", STOC 2002).
+ * <p/>
+ * Each bit of a hash is the side of a random hyperplane through the origin the vector is on. Two vectors get the same
+ * bit with probability 1 - angle / pi, so similar vectors are likely to get the same hash, and dissimilar vectors are
+ * not. A hash of more bits makes the buckets smaller and more selective, and more tables, each with its own
+ * hyperplanes, give similar vectors more chances to share a bucket.
+ * <p/>
+ * The hyperplanes are generated from the seed, so the same configuration hashes the vectors at index time and the
+ * query vectors at search time the same way.
+ */
+public class RandomHyperplaneLsh {
+
+    private final int dims;
+
+    private final int tables;
+
+    private final int bits;
+
+    private final long seed;
+
+    // normal vectors of the hyperplanes, bits per table
+    private final float[][] hyperplanes;
+
+    public RandomHyperplaneLsh(int dims, int tables, int bits, long seed) {
+        if (tables <= 0 || bits <= 0 || bits > 31) {
+            throw new IllegalArgumentException("LSH needs at least one table and between 1 and 31 bits");
+        }
+        this.dims = dims;
+        this.tables = tables;
+        this.bits = bits;
+        this.seed = seed;
+        this.hyperplanes = new float[tables * bits][dims];
+        Random random = new Random(seed);
+        for (float[] hyperplane : hyperplanes) {
+            for (int i = 0; i < dims; i++) {
+                hyperplane[i] = (float) random.nextGaussian();
+            }
+        }
+    }
+
+    public int tables() {
+        return tables;
+    }
+
+    public int bits() {
+        return bits;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * Returns the bucket term of the vector in each table
+     */
+    public String[] buckets(float[] vector) {
+        if (vector.length != dims) {
+            throw new IllegalArgumentException("expected a vector of [" + dims + "] dimensions, but got [" + vector.length + "]");
+        }
+        String[] buckets = new String[tables];
+        for (int table = 0; table < tables; table++) {
+            int hash = 0;
+            for (int bit = 0; bit < bits; bit++) {
+                float[] hyperplane = hyperplanes[table * bits + bit];
+                float dot = 0;
+                for (int i = 0; i < dims; i++) {
+                    dot += hyperplane[i] * vector[i];
+                }
+                hash = (hash << 1) | (dot > 0 ? 1 : 0);
+            }
+            // the table is part of the term, so that equal hashes of different tables are different buckets
+            buckets[table] = table + "_" + Integer.toHexString(hash);
+        }
+        return buckets;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RandomHyperplaneLsh that = (RandomHyperplaneLsh) o;
+        return dims == that.dims && tables == that.tables && bits == that.bits && seed == that.seed;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = dims;
+        result = 31 * result + tables;
+        result = 31 * result + bits;
+        result = 31 * result + (int) (seed ^ (seed >>> 32));
+        return result;
+    }
+}
@@ -0,0 +1,20 @@
+package org.elasticsearch.examples.nativescript.vector;
+
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.AbstractIndexComponent;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.index.settings.IndexSettings;
+
+/**
+ * Registers the <code>dense_vector</code> field type with the mapper service of an index
+ */
+public class RegisterDenseVectorType extends AbstractIndexComponent {
+
+    @Inject
+    public RegisterDenseVectorType(Index index, @IndexSettings Settings indexSettings, MapperService mapperService) {
+        super(index, indexSettings);
+        mapperService.documentMapperParser().putTypeParser(DenseVectorFieldMapper.CONTENT_TYPE, new DenseVectorFieldMapper.TypeParser());
+    }
+}
@@ -0,0 +1,230 @@
+package org.elasticsearch.examples.nativescript.benchmark;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
+import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.examples.nativescript.function.NativeScoreFunctionBuilder;
+import org.elasticsearch.examples.nativescript.query.ProximityQueryBuilder;
+import org.elasticsearch.examples.nativescript.query.ScriptRescoreQueryBuilder;
+import org.elasticsearch.examples.nativescript.query.TermScoreQueryBuilder;
+import org.elasticsearch.examples.nativescript.script.BM25ScoreScript;
+import org.elasticsearch.examples.nativescript.script.CosineSimilarityScoreScript;
+import org.elasticsearch.examples.nativescript.script.LanguageModelScoreScript;
+import org.elasticsearch.examples.nativescript.script.PhraseScoreScript;
+import org.elasticsearch.examples.nativescript.script.TFIDFScoreScript;
+import org.elasticsearch.examples.nativescript.similarity.CosineSimilarityProvider;
+import org.elasticsearch.examples.nativescript.similarity.NtnSimilarityProvider;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.functionscore.FunctionScoreQueryBuilder;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilder;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.search.rescore.RescoreBuilder;
+
+/**
+ * Compares the time it takes to score all documents of an index using the native scripts through
+ * <code>script_score</code> with the time it takes using the equivalent native function_score functions.
+ * <p/>
+ * Run it as a Java application with the plugin on the classpath, for example from the IDE.
+ */
+public class ScoreFunctionBenchmark {
+
+    private static final int NUM_DOCS = 200000;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+    private static final int RESCORE_WINDOW = 200;
+    private static final String[] WORDS = {"foo", "bar", "baz", "qux", "quux", "corge", "grault", "garply"};
+
+    public static void main(String[] args) throws Exception {
+        Node node = nodeBuilder().local(true).settings(settingsBuilder()
+                .put("gateway.type", "none")
+                .put("index.number_of_shards", 1)
+                .put("index.number_of_replicas", 0)
+                .put("path.data", "target/benchmark")).node();
+        try {
+            Client client = node.client();
+            indexData(client);
+
+            Map<String, Object> popularityParams = new HashMap<String, Object>();
+            popularityParams.put("field", "number");
+            run(client, "popularity script", ScoreFunctionBuilders.scriptFunction("popularity", "native", popularityParams));
+            run(client, "popularity_score function", NativeScoreFunctionBuilder.popularityScore("number"));
+            Map<String, Object> cachedPopularityParams = new HashMap<String, Object>(popularityParams);
+            cachedPopularityParams.put("cache", true);
+            run(client, "popularity script (cached)", ScoreFunctionBuilders.scriptFunction("popularity", "native", cachedPopularityParams));
+
+            Map<String, Object> tfidfParams = new HashMap<String, Object>();
+            tfidfParams.put("field", "text");
+            tfidfParams.put("terms", new String[]{"foo", "bar"});
+            run(client, "tfidf script", ScoreFunctionBuilders.scriptFunction(TFIDFScoreScript.SCRIPT_NAME, "native", tfidfParams));
+            run(client, "tfidf_score function", NativeScoreFunctionBuilder.tfidfScore("text", "foo", "bar"));
+
+            // Long queries, doc at a time vs. term at a time
+            Map<String, Object> longTfidfParams = new HashMap<String, Object>();
+            longTfidfParams.put("field", "text");
+            longTfidfParams.put("terms", WORDS);
+            run(client, "tfidf script (" + WORDS.length + " terms)", ScoreFunctionBuilders.scriptFunction(TFIDFScoreScript.SCRIPT_NAME, "native", longTfidfParams));
+            longTfidfParams.put("bulk", true);
+            run(client, "tfidf script bulk (" + WORDS.length + " terms)", ScoreFunctionBuilders.scriptFunction(TFIDFScoreScript.SCRIPT_NAME, "native", longTfidfParams));
+
+            // The same scores from a query, exhaustive and top 10
+            run(client, "tfidf script (terms query)", functionScoreQuery(termsQuery("text", WORDS)).boostMode(CombineFunction.REPLACE)
+                    .add(ScoreFunctionBuilders.scriptFunction(TFIDFScoreScript.SCRIPT_NAME, "native", longTfidfParams)));
+            run(client, "term_score query", new TermScoreQueryBuilder("text", WORDS));
+            run(client, "term_score query top 10", new TermScoreQueryBuilder("text", WORDS).topK(10));
+
+            // Three fields, one script per field vs. all fields in a single script
+            String[] fields = {"text", "text.tfidf", "text.cosine"};
+            FunctionScoreQueryBuilder perFieldScripts = functionScoreQuery(matchAllQuery()).boostMode(CombineFunction.REPLACE).scoreMode("sum");
+            for (String field : fields) {
+                Map<String, Object> fieldParams = new HashMap<String, Object>(tfidfParams);
+                fieldParams.put("field", field);
+                perFieldScripts.add(ScoreFunctionBuilders.scriptFunction(TFIDFScoreScript.SCRIPT_NAME, "native", fieldParams));
+            }
+            run(client, "tfidf script (3 fields, 3 scripts)", perFieldScripts);
+            Map<String, Object> multiFieldParams = new HashMap<String, Object>();
+            multiFieldParams.put("terms", new String[]{"foo", "bar"});
+            multiFieldParams.put("fields", Arrays.asList(fields));
+            run(client, "tfidf script (3 fields, 1 script)", ScoreFunctionBuilders.scriptFunction(TFIDFScoreScript.SCRIPT_NAME, "native", multiFieldParams));
+
+            Map<String, Object> cosineParams = new HashMap<String, Object>(tfidfParams);
+            cosineParams.put("weights", new double[]{1.0, 0.5});
+            run(client, "cosine script", ScoreFunctionBuilders.scriptFunction(CosineSimilarityScoreScript.SCRIPT_NAME, "native", cosineParams));
+
+            // The scripts on the documents matching a term, vs. the same formulas as similarities of sub-fields
+            run(client, "tfidf script (bool query)", functionScoreQuery(boolQuery().disableCoord(true)
+                    .should(termQuery("text", "foo")).should(termQuery("text", "bar"))).boostMode(CombineFunction.REPLACE)
+                    .add(ScoreFunctionBuilders.scriptFunction(TFIDFScoreScript.SCRIPT_NAME, "native", tfidfParams)));
+            run(client, "tfidf_ntn similarity", boolQuery().disableCoord(true)
+                    .should(termQuery("text.tfidf", "foo")).should(termQuery("text.tfidf", "bar")));
+            run(client, "cosine script (bool query)", functionScoreQuery(boolQuery().disableCoord(true)
+                    .should(termQuery("text", "foo")).should(termQuery("text", "bar"))).boostMode(CombineFunction.REPLACE)
+                    .add(ScoreFunctionBuilders.scriptFunction(CosineSimilarityScoreScript.SCRIPT_NAME, "native", cosineParams)));
+            run(client, "cosine_sim similarity", boolQuery().disableCoord(true)
+                    .should(termQuery("text.cosine", "foo")).should(termQuery("text.cosine", "bar").boost(0.5f)));
+
+            Map<String, Object> languageModelParams = new HashMap<String, Object>(tfidfParams);
+            languageModelParams.put("word_count_field", "text.word_count");
+            languageModelParams.put("lambda", 0.9);
+            run(client, "language model script", ScoreFunctionBuilders.scriptFunction(LanguageModelScoreScript.SCRIPT_NAME, "native", languageModelParams));
+            Map<String, Object> normsLanguageModelParams = new HashMap<String, Object>(tfidfParams);
+            normsLanguageModelParams.put("lambda", 0.9);
+            run(client, "language model script (norms)", ScoreFunctionBuilders.scriptFunction(LanguageModelScoreScript.SCRIPT_NAME, "native", normsLanguageModelParams));
+            normsLanguageModelParams.put("smoothing", "dirichlet");
+            run(client, "language model script (norms, dirichlet)", ScoreFunctionBuilders.scriptFunction(LanguageModelScoreScript.SCRIPT_NAME, "native", normsLanguageModelParams));
+
+            run(client, "bm25 script", ScoreFunctionBuilders.scriptFunction(BM25ScoreScript.SCRIPT_NAME, "native", tfidfParams));
+
+            // Proximity of three terms, scripted on all documents vs. only on documents containing all terms
+            Map<String, Object> phraseParams = new HashMap<String, Object>();
+            phraseParams.put("field", "text");
+            phraseParams.put("terms", new String[]{"foo", "bar", "baz"});
+            run(client, "phrase script", ScoreFunctionBuilders.scriptFunction(PhraseScoreScript.SCRIPT_NAME, "native", phraseParams));
+            run(client, "proximity query", new ProximityQueryBuilder("text", "foo", "bar", "baz"));
+
+            // Adjacency of two terms, from positions vs. from the bigrams of the shingle sub-field
+            Map<String, Object> adjacencyParams = new HashMap<String, Object>();
+            adjacencyParams.put("field", "text");
+            adjacencyParams.put("terms", new String[]{"foo", "bar"});
+            run(client, "phrase script (2 terms)", ScoreFunctionBuilders.scriptFunction(PhraseScoreScript.SCRIPT_NAME, "native", adjacencyParams));
+            adjacencyParams.put("shingle_field", "text.shingles");
+            run(client, "phrase script (2 terms, shingles)", ScoreFunctionBuilders.scriptFunction(PhraseScoreScript.SCRIPT_NAME, "native", adjacencyParams));
+
+            // The expensive script on all documents vs. on the top 200 documents only
+            run(client, "language model script (terms query)", functionScoreQuery(termsQuery("text", "foo", "bar")).boostMode(CombineFunction.REPLACE)
+                    .add(ScoreFunctionBuilders.scriptFunction(LanguageModelScoreScript.SCRIPT_NAME, "native", languageModelParams)));
+            run(client, "language model script (rescore top 200)", termsQuery("text", "foo", "bar"), RescoreBuilder.queryRescorer(
+                    new ScriptRescoreQueryBuilder(LanguageModelScoreScript.SCRIPT_NAME).params(languageModelParams)).setQueryWeight(0));
+        } finally {
+            node.close();
+        }
+    }
+
+    private static void indexData(Client client) throws Exception {
+        client.admin().indices().prepareCreate("test").setSettings(settingsBuilder()
+                .put("index.analysis.filter.bigrams.type", "shingle")
+                .put("index.analysis.filter.bigrams.output_unigrams", false)
+                .put("index.analysis.analyzer.bigrams.tokenizer", "standard")
+                .putArray("index.analysis.analyzer.bigrams.filter", "lowercase", "bigrams"))
+                .addMapping("type", XContentFactory.jsonBuilder().startObject()
+                .startObject("type").startObject("properties")
+                .startObject("number").field("type", "integer").endObject()
+                .startObject("text").field("type", "multi_field").startObject("fields")
+                .startObject("text").field("type", "string").endObject()
+                .startObject("word_count").field("type", "token_count").field("analyzer", "standard").endObject()
+                .startObject("shingles").field("type", "string").field("analyzer", "bigrams").endObject()
+                .startObject("tfidf").field("type", "string").field("similarity", NtnSimilarityProvider.NAME).endObject()
+                .startObject("cosine").field("type", "string").field("similarity", CosineSimilarityProvider.NAME).endObject()
+                .endObject().endObject()
+                .endObject().endObject().endObject()).execute().actionGet();
+        client.admin().cluster().prepareHealth("test").setWaitForGreenStatus().execute().actionGet();
+        Random random = new Random(0);
+        BulkRequestBuilder bulk = client.prepareBulk();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(20); j >= 0; j--) {
+                text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            bulk.add(client.prepareIndex("test", "type", Integer.toString(i)).setSource(XContentFactory.jsonBuilder().startObject()
+                    .field("number", random.nextInt(1000))
+                    .field("text", text.toString())
+                    .endObject()));
+            if (bulk.numberOfActions() == 1000) {
+                bulk.execute().actionGet();
+                bulk = client.prepareBulk();
+            }
+        }
+        if (bulk.numberOfActions() > 0) {
+            bulk.execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh("test").execute().actionGet();
+        client.admin().indices().prepareOptimize("test").setMaxNumSegments(1).execute().actionGet();
+    }
+
+    private static void run(Client client, String name, ScoreFunctionBuilder function) {
+        run(client, name, functionScoreQuery(matchAllQuery()).boostMode(CombineFunction.REPLACE).add(function));
+    }
+
+    private static void run(Client client, String name, QueryBuilder query) {
+        run(client, name, query, null);
+    }
+
+    private static void run(Client client, String name, QueryBuilder query, RescoreBuilder.Rescorer rescorer) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            search(client, query, rescorer);
+        }
+        StopWatch stopWatch = new StopWatch().start();
+        long tookInMillis = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            tookInMillis += search(client, query, rescorer);
+        }
+        stopWatch.stop();
+        System.out.println(name + ": " + (tookInMillis / ITERATIONS) + "ms per search (took), "
+                + (stopWatch.totalTime().millis() / ITERATIONS) + "ms per search (wall clock), "
+                + (tookInMillis * 1000000L / ITERATIONS / NUM_DOCS) + "ns per doc");
+    }
+
+    private static long search(Client client, QueryBuilder query, RescoreBuilder.Rescorer rescorer) {
+        SearchRequestBuilder request = client.prepareSearch("test").setQuery(query).setSize(10);
+        if (rescorer != null) {
+            request.setRescorer(rescorer, RESCORE_WINDOW);
+        }
+        return request.execute().actionGet().getTookInMillis();
+    }
+}
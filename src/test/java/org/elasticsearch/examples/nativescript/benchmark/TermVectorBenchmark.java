@@ -0,0 +1,121 @@
+package org.elasticsearch.examples.nativescript.benchmark;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.examples.nativescript.script.CosineSimilarityScoreScript;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.node.Node;
+
+/**
+ * Finds the number of query terms from which reading the frequencies from term vectors is faster than advancing
+ * the postings of every term, for the cosine similarity script on all documents of an index with short documents.
+ * <p/>
+ * Run it as a Java application with the plugin on the classpath, for example from the IDE.
+ */
+public class TermVectorBenchmark {
+
+    private static final int NUM_DOCS = 50000;
+    private static final int VOCABULARY = 100000;
+    private static final int DOC_LENGTH = 30;
+    private static final int[] QUERY_TERMS = {16, 256, 1024, 2048, 4096, 8192};
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int ITERATIONS = 10;
+
+    public static void main(String[] args) throws Exception {
+        Node node = nodeBuilder().local(true).settings(settingsBuilder()
+                .put("gateway.type", "none")
+                .put("index.number_of_shards", 1)
+                .put("index.number_of_replicas", 0)
+                .put("path.data", "target/benchmark")).node();
+        try {
+            Client client = node.client();
+            indexData(client);
+            Random random = new Random(1);
+            for (int numTerms : QUERY_TERMS) {
+                String[] terms = new String[numTerms];
+                double[] weights = new double[numTerms];
+                for (int i = 0; i < numTerms; i++) {
+                    terms[i] = word(random);
+                    weights[i] = 1.0;
+                }
+                Map<String, Object> params = new HashMap<String, Object>();
+                params.put("field", "text");
+                params.put("terms", terms);
+                params.put("weights", weights);
+                long postings = run(client, params);
+                params.put("strategy", "term_vectors");
+                long termVectors = run(client, params);
+                params.put("strategy", "auto");
+                long auto = run(client, params);
+                System.out.println(numTerms + " terms: postings " + postings + "ms, term vectors " + termVectors
+                        + "ms, auto " + auto + "ms per search");
+            }
+        } finally {
+            node.close();
+        }
+    }
+
+    // zipf like distribution of the words
+    private static String word(Random random) {
+        return "w" + (int) Math.pow(VOCABULARY, random.nextDouble());
+    }
+
+    private static void indexData(Client client) throws Exception {
+        client.admin().indices().prepareCreate("test").addMapping("type", XContentFactory.jsonBuilder().startObject()
+                .startObject("type").startObject("properties")
+                .startObject("text").field("type", "string").field("term_vector", "yes").endObject()
+                .endObject().endObject().endObject()).execute().actionGet();
+        client.admin().cluster().prepareHealth("test").setWaitForGreenStatus().execute().actionGet();
+        Random random = new Random(0);
+        BulkRequestBuilder bulk = client.prepareBulk();
+        long distinctTerms = 0;
+        for (int i = 0; i < NUM_DOCS; i++) {
+            StringBuilder text = new StringBuilder();
+            Set<String> words = new HashSet<String>();
+            for (int j = 0; j < DOC_LENGTH; j++) {
+                String word = word(random);
+                words.add(word);
+                text.append(word).append(' ');
+            }
+            distinctTerms += words.size();
+            bulk.add(client.prepareIndex("test", "type", Integer.toString(i)).setSource("text", text.toString()));
+            if (bulk.numberOfActions() == 1000) {
+                bulk.execute().actionGet();
+                bulk = client.prepareBulk();
+            }
+        }
+        if (bulk.numberOfActions() > 0) {
+            bulk.execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh("test").execute().actionGet();
+        client.admin().indices().prepareOptimize("test").setMaxNumSegments(1).execute().actionGet();
+        System.out.println(NUM_DOCS + " documents with " + (distinctTerms / NUM_DOCS) + " distinct terms on average");
+    }
+
+    private static long run(Client client, Map<String, Object> params) {
+        QueryBuilder query = functionScoreQuery(matchAllQuery()).boostMode(CombineFunction.REPLACE)
+                .add(ScoreFunctionBuilders.scriptFunction(CosineSimilarityScoreScript.SCRIPT_NAME, "native", params));
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            client.prepareSearch("test").setQuery(query).setSize(10).execute().actionGet();
+        }
+        long tookInMillis = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            tookInMillis += client.prepareSearch("test").setQuery(query).setSize(10).execute().actionGet().getTookInMillis();
+        }
+        return tookInMillis / ITERATIONS;
+    }
+}
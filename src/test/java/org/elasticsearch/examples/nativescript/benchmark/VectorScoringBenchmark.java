@@ -0,0 +1,243 @@
+package org.elasticsearch.examples.nativescript.benchmark;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.node.NodeBuilder.nodeBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.StopWatch;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.examples.nativescript.query.DenseVectorLshQueryBuilder;
+import org.elasticsearch.examples.nativescript.script.DenseVectorScoreScript;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.node.Node;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.rescore.RescoreBuilder;
+
+/**
+ * Measures the time it takes to find the 10 nearest neighbours of a vector among 256 dimensional embeddings:
+ * <ul>
+ * <li>by scoring all documents with the dense vector script, for float, int8 and bit vectors, with and without
+ * rescoring the top 100 with the float vectors</li>
+ * <li>by scoring only the candidates of the dense_vector_lsh query, for several numbers of tables and bits</li>
+ * </ul>
+ * and the recall of each approach, the share of the exact 10 nearest neighbours it finds, averaged over a set of
+ * query vectors.
+ * <p/>
+ * Run it as a Java application with the plugin on the classpath, for example from the IDE.
+ */
+public class VectorScoringBenchmark {
+
+    private static final int NUM_DOCS = 50000;
+    private static final int DIMS = 256;
+    private static final int NUM_CLUSTERS = 100;
+    private static final float NOISE = 0.75f;
+    private static final int NUM_QUERIES = 20;
+    private static final int WARMUP_ITERATIONS = 20;
+    private static final int ITERATIONS = 50;
+    private static final int RESCORE_WINDOW = 100;
+    // tables and bits of each LSH field
+    private static final int[][] LSH = {{8, 8}, {16, 8}, {32, 8}, {16, 12}, {32, 12}};
+
+    public static void main(String[] args) throws Exception {
+        Node node = nodeBuilder().local(true).settings(settingsBuilder()
+                .put("gateway.type", "none")
+                .put("index.number_of_shards", 1)
+                .put("index.number_of_replicas", 0)
+                .put("path.data", "target/benchmark")).node();
+        try {
+            Client client = node.client();
+            Random random = new Random(0);
+            float[][] centroids = new float[NUM_CLUSTERS][];
+            for (int i = 0; i < NUM_CLUSTERS; i++) {
+                centroids[i] = randomVector(random, null);
+            }
+            indexData(client, random, centroids);
+
+            float[][] queries = new float[NUM_QUERIES][];
+            for (int i = 0; i < NUM_QUERIES; i++) {
+                queries[i] = randomVector(random, centroids[random.nextInt(NUM_CLUSTERS)]);
+            }
+            for (final String metric : new String[]{"cosine", "dot_product", "l2"}) {
+                run(client, "dense vector script (" + metric + ")", queries, new Approach() {
+                    @Override
+                    QueryBuilder query(float[] vector) {
+                        return vectorQuery("vector", vector, metric);
+                    }
+                });
+            }
+            List<Set<String>> exact = new ArrayList<Set<String>>();
+            for (float[] query : queries) {
+                exact.add(topIds(request(client, vectorQuery("vector", query, "cosine"), null)));
+            }
+
+            for (final String field : new String[]{"int8", "bits"}) {
+                run(client, "dense vector script (" + field + ")", queries, exact, new Approach() {
+                    @Override
+                    QueryBuilder query(float[] vector) {
+                        return vectorQuery(field, vector, "cosine");
+                    }
+                });
+                run(client, "dense vector script (" + field + ", float rescoring of top " + RESCORE_WINDOW + ")", queries, exact, new Approach() {
+                    @Override
+                    QueryBuilder query(float[] vector) {
+                        return vectorQuery(field, vector, "cosine");
+                    }
+
+                    @Override
+                    RescoreBuilder.Rescorer rescorer(float[] vector) {
+                        return RescoreBuilder.queryRescorer(vectorQuery(field + ".float", vector, "cosine"))
+                                .setQueryWeight(0).setRescoreQueryWeight(1);
+                    }
+                });
+            }
+
+            for (int[] lsh : LSH) {
+                final String field = lshField(lsh);
+                run(client, "dense_vector_lsh query (" + lsh[0] + " tables, " + lsh[1] + " bits)", queries, exact, new Approach() {
+                    @Override
+                    QueryBuilder query(float[] vector) {
+                        return new DenseVectorLshQueryBuilder(field, vector);
+                    }
+                });
+            }
+        } finally {
+            node.close();
+        }
+    }
+
+    private static abstract class Approach {
+
+        abstract QueryBuilder query(float[] vector);
+
+        RescoreBuilder.Rescorer rescorer(float[] vector) {
+            return null;
+        }
+    }
+
+    private static String lshField(int[] lsh) {
+        return "lsh_" + lsh[0] + "x" + lsh[1];
+    }
+
+    private static void indexData(Client client, Random random, float[][] centroids) throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+                .startObject("vector").field("type", "dense_vector").field("dims", DIMS).endObject()
+                .startObject("int8").field("type", "dense_vector").field("dims", DIMS).field("encoding", "int8")
+                .field("store_float", true).endObject()
+                .startObject("bits").field("type", "dense_vector").field("dims", DIMS).field("encoding", "bit")
+                .field("store_float", true).endObject();
+        for (int[] lsh : LSH) {
+            mapping.startObject(lshField(lsh)).field("type", "dense_vector").field("dims", DIMS)
+                    .startObject("lsh").field("tables", lsh[0]).field("bits", lsh[1]).endObject().endObject();
+        }
+        mapping.endObject().endObject().endObject();
+        client.admin().indices().prepareCreate("test").addMapping("type", mapping).execute().actionGet();
+        client.admin().cluster().prepareHealth("test").setWaitForGreenStatus().execute().actionGet();
+        BulkRequestBuilder bulk = client.prepareBulk();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            float[] vector = randomVector(random, centroids[random.nextInt(NUM_CLUSTERS)]);
+            XContentBuilder source = XContentFactory.jsonBuilder().startObject()
+                    .field("vector", vector)
+                    .field("int8", vector)
+                    .field("bits", vector);
+            for (int[] lsh : LSH) {
+                source.field(lshField(lsh), vector);
+            }
+            bulk.add(client.prepareIndex("test", "type", Integer.toString(i)).setSource(source.endObject()));
+            if (bulk.numberOfActions() == 1000) {
+                bulk.execute().actionGet();
+                bulk = client.prepareBulk();
+            }
+        }
+        if (bulk.numberOfActions() > 0) {
+            bulk.execute().actionGet();
+        }
+        client.admin().indices().prepareRefresh("test").execute().actionGet();
+        client.admin().indices().prepareOptimize("test").setMaxNumSegments(1).execute().actionGet();
+    }
+
+    // Embeddings are not uniformly distributed, documents are generated around a set of cluster centers
+    private static float[] randomVector(Random random, float[] centroid) {
+        float[] vector = new float[DIMS];
+        for (int i = 0; i < DIMS; i++) {
+            vector[i] = centroid == null ? (float) random.nextGaussian() : centroid[i] + (float) random.nextGaussian() * NOISE;
+        }
+        return vector;
+    }
+
+    private static QueryBuilder vectorQuery(String field, float[] query, String metric) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", field);
+        params.put("vector", query);
+        params.put("metric", metric);
+        return functionScoreQuery(matchAllQuery()).boostMode(CombineFunction.REPLACE)
+                .add(ScoreFunctionBuilders.scriptFunction(DenseVectorScoreScript.SCRIPT_NAME, "native", params));
+    }
+
+    private static void run(Client client, String name, float[][] queries, Approach approach) {
+        run(client, name, queries, null, approach);
+    }
+
+    private static void run(Client client, String name, float[][] queries, List<Set<String>> exact, Approach approach) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            float[] query = queries[i % queries.length];
+            request(client, approach.query(query), approach.rescorer(query)).execute().actionGet();
+        }
+        StopWatch stopWatch = new StopWatch().start();
+        long tookInMillis = 0;
+        long hits = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            float[] query = queries[i % queries.length];
+            SearchResponse response = request(client, approach.query(query), approach.rescorer(query)).execute().actionGet();
+            tookInMillis += response.getTookInMillis();
+            hits += response.getHits().getTotalHits();
+        }
+        stopWatch.stop();
+        String recall = "";
+        if (exact != null) {
+            int found = 0;
+            int total = 0;
+            for (int i = 0; i < queries.length; i++) {
+                Set<String> ids = topIds(request(client, approach.query(queries[i]), approach.rescorer(queries[i])));
+                ids.retainAll(exact.get(i));
+                found += ids.size();
+                total += exact.get(i).size();
+            }
+            recall = ", recall " + String.format("%.2f", (double) found / total);
+        }
+        System.out.println(name + ": " + (tookInMillis / ITERATIONS) + "ms per search (took), "
+                + (stopWatch.totalTime().millis() / ITERATIONS) + "ms per search (wall clock), "
+                + (hits / ITERATIONS) + " docs scored per search" + recall);
+    }
+
+    private static Set<String> topIds(SearchRequestBuilder request) {
+        Set<String> ids = new HashSet<String>();
+        for (SearchHit hit : request.execute().actionGet().getHits()) {
+            ids.add(hit.getId());
+        }
+        return ids;
+    }
+
+    private static SearchRequestBuilder request(Client client, QueryBuilder query, RescoreBuilder.Rescorer rescorer) {
+        SearchRequestBuilder request = client.prepareSearch("test").setQuery(query).setSize(10);
+        if (rescorer != null) {
+            request.setRescorer(rescorer, RESCORE_WINDOW);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,153 @@
+package org.elasticsearch.examples.nativescript.cache;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.base.Predicate;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.examples.nativescript.script.AbstractSearchScriptTests;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.elasticsearch.index.query.FilterBuilders.scriptFilter;
+import static org.elasticsearch.index.query.QueryBuilders.filteredQuery;
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ */
+public class ScriptResultCacheTests extends AbstractSearchScriptTests {
+
+    private static final int NUM_DOCS = 100;
+
+    @Test
+    public void testCachedScripts() throws Exception {
+        indexData();
+
+        // is_prime in a filter
+        for (int i = 0; i < 2; i++) {
+            SearchResponse searchResponse = client().prepareSearch("test")
+                    .setQuery(filteredQuery(matchAllQuery(),
+                            scriptFilter("is_prime").lang("native").addParam("field", "number").addParam("cache", true)))
+                    .execute().actionGet();
+            assertNoFailures(searchResponse);
+            assertHitCount(searchResponse, 25);
+        }
+        long size = cacheSize();
+        assertThat(size, greaterThan(0L));
+
+        // popularity, the cached boost is multiplied with the score of the document
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", "number");
+        params.put("function", "log1p");
+        Map<String, Float> expected = popularityScores(params);
+        params.put("cache", true);
+        assertThat(popularityScores(params), equalTo(expected));
+        assertThat(cacheSize(), greaterThan(size));
+        size = cacheSize();
+        // the same parameters in another order find the cached boosts
+        Map<String, Object> reordered = new HashMap<String, Object>();
+        reordered.put("cache", true);
+        reordered.put("function", "log1p");
+        reordered.put("field", "number");
+        assertThat(popularityScores(reordered), equalTo(expected));
+        assertThat(cacheSize(), equalTo(size));
+
+        // pseudo random sort
+        List<String> expectedOrder = randomOrder(false);
+        assertThat(randomOrder(true), equalTo(expectedOrder));
+        assertThat(randomOrder(true), equalTo(expectedOrder));
+    }
+
+    @Test
+    public void testValuesReleasedWhenSegmentsClose() throws Exception {
+        indexData();
+        SearchResponse searchResponse = client().prepareSearch("test")
+                .setQuery(filteredQuery(matchAllQuery(),
+                        scriptFilter("is_prime").lang("native").addParam("field", "number").addParam("cache", true)))
+                .execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertThat(cacheSize(), greaterThan(0L));
+
+        assertAcked(client().admin().indices().prepareDelete("test"));
+        assertThat(awaitBusy(new Predicate<Object>() {
+            @Override
+            public boolean apply(Object input) {
+                return cacheSize() == 0;
+            }
+        }), equalTo(true));
+    }
+
+    @Test(expected = SearchPhaseExecutionException.class)
+    public void testRandomSortWithoutSaltIsNotCached() throws Exception {
+        indexData();
+        client().prepareSearch("test")
+                .setQuery(matchAllQuery())
+                .addSort(SortBuilders.scriptSort("random", "number").lang("native").param("cache", true))
+                .execute().actionGet();
+    }
+
+    private void indexData() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                .startObject("number").field("type", "integer").endObject()
+                .endObject().endObject().endObject()
+                .string();
+        assertAcked(prepareCreate("test").addMapping("type", mapping));
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource(XContentFactory.jsonBuilder().startObject().field("number", i).endObject()));
+        }
+        indexRandom(true, indexBuilders);
+    }
+
+    private Map<String, Float> popularityScores(Map<String, Object> params) {
+        QueryBuilder query = functionScoreQuery(matchAllQuery()).boostMode(CombineFunction.REPLACE)
+                .add(ScoreFunctionBuilders.scriptFunction("popularity", "native", params));
+        SearchResponse searchResponse = client().prepareSearch("test").setQuery(query).setSize(NUM_DOCS)
+                .execute().actionGet();
+        assertNoFailures(searchResponse);
+        Map<String, Float> scores = new HashMap<String, Float>();
+        for (SearchHit hit : searchResponse.getHits()) {
+            scores.put(hit.getId(), hit.getScore());
+        }
+        return scores;
+    }
+
+    private List<String> randomOrder(boolean cache) {
+        SearchResponse searchResponse = client().prepareSearch("test")
+                .setQuery(matchAllQuery())
+                .setSize(NUM_DOCS)
+                .addSort(SortBuilders.scriptSort("random", "number").lang("native").param("salt", "1234").param("cache", cache))
+                .execute().actionGet();
+        assertNoFailures(searchResponse);
+        List<String> ids = new ArrayList<String>();
+        for (SearchHit hit : searchResponse.getHits()) {
+            ids.add(hit.getId());
+        }
+        return ids;
+    }
+
+    private static long cacheSize() {
+        long size = 0;
+        for (ScriptResultCache cache : cluster().getInstances(ScriptResultCache.class)) {
+            size += cache.size();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,111 @@
+package org.elasticsearch.examples.nativescript.counter;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.common.base.Predicate;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.examples.nativescript.script.AbstractSearchScriptTests;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.ClusterScope;
+import org.elasticsearch.test.ElasticsearchIntegrationTest.Scope;
+import org.junit.Test;
+
+/**
+ */
+@ClusterScope(scope = Scope.TEST, numDataNodes = 1)
+public class CounterBufferTests extends AbstractSearchScriptTests {
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return ImmutableSettings.settingsBuilder()
+                // The test flushes the buffer manually
+                .put("examples.nativescript.counter.flush_interval", "1h")
+                .put("examples.nativescript.counter.max_retries", 2)
+                .put(super.nodeSettings(nodeOrdinal))
+                .build();
+    }
+
+    @Test
+    public void testCoalescedIncrements() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                .startObject("name").field("type", "string").endObject()
+                .startObject("clicks").field("type", "long").endObject()
+                .startObject("views").field("type", "long").endObject()
+                .endObject().endObject().endObject()
+                .string();
+        assertAcked(prepareCreate("test").addMapping("type", mapping));
+
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        indexBuilders.add(client().prepareIndex("test", "type", "1")
+                .setSource(XContentFactory.jsonBuilder().startObject().field("name", "rec 1").field("clicks", 5).endObject()));
+        indexBuilders.add(client().prepareIndex("test", "type", "2")
+                .setSource(XContentFactory.jsonBuilder().startObject().field("name", "rec 2").endObject()));
+        indexRandom(true, indexBuilders);
+
+        final CounterBuffer buffer = cluster().getInstance(CounterBuffer.class);
+        for (int i = 0; i < 100; i++) {
+            buffer.increment("test", "type", "1", "clicks", 1);
+        }
+        for (int i = 0; i < 10; i++) {
+            buffer.increment("test", "type", "2", "clicks", 2);
+        }
+        buffer.increment("test", "type", "1", "views", 3);
+
+        // Three counters are waiting for the flush
+        assertThat(buffer.stats().getReceivedEvents(), equalTo(111L));
+        assertThat(buffer.stats().getBufferedCounters(), equalTo(3L));
+
+        buffer.flush();
+        assertThat(awaitBusy(new Predicate<Object>() {
+            @Override
+            public boolean apply(Object input) {
+                return buffer.stats().getFlushedDocs() == 2;
+            }
+        }), equalTo(true));
+
+        // All increments were sent as two updates in a single bulk
+        CounterBuffer.Stats stats = buffer.stats();
+        assertThat(stats.getBufferedCounters(), equalTo(0L));
+        assertThat(stats.getFlushes(), equalTo(1L));
+        assertThat(stats.getFlushedCounters(), equalTo(3L));
+        assertThat(stats.getFailedDocs(), equalTo(0L));
+
+        Map<String, Object> source = client().prepareGet("test", "type", "1").execute().actionGet().getSourceAsMap();
+        assertThat(((Number) source.get("clicks")).longValue(), equalTo(105L));
+        assertThat(((Number) source.get("views")).longValue(), equalTo(3L));
+        source = client().prepareGet("test", "type", "2").execute().actionGet().getSourceAsMap();
+        assertThat(((Number) source.get("clicks")).longValue(), equalTo(20L));
+    }
+
+    @Test
+    public void testFailedIncrementsAreRetried() throws Exception {
+        assertAcked(prepareCreate("test"));
+        ensureGreen();
+
+        // The document doesn't exist, the update fails with every flush
+        final CounterBuffer buffer = cluster().getInstance(CounterBuffer.class);
+        buffer.increment("test", "type", "missing", "clicks", 1);
+        assertThat(awaitBusy(new Predicate<Object>() {
+            @Override
+            public boolean apply(Object input) {
+                buffer.flush();
+                return buffer.stats().getFailedDocs() == 1;
+            }
+        }), equalTo(true));
+
+        // The increment was sent again twice, then dropped
+        CounterBuffer.Stats stats = buffer.stats();
+        assertThat(stats.getRetriedDocs(), equalTo(2L));
+        assertThat(stats.getFlushes(), equalTo(3L));
+        assertThat(stats.getBufferedCounters(), equalTo(0L));
+        assertThat(stats.getFlushedDocs(), equalTo(0L));
+    }
+}
@@ -0,0 +1,132 @@
+package org.elasticsearch.examples.nativescript.function;
+
+import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.collect.MapBuilder;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.examples.nativescript.script.AbstractSearchScriptTests;
+import org.elasticsearch.examples.nativescript.script.CosineSimilarityScoreScript;
+import org.elasticsearch.examples.nativescript.script.LanguageModelScoreScript;
+import org.elasticsearch.examples.nativescript.script.TFIDFScoreScript;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilder;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.junit.Test;
+
+/**
+ * Checks that the native functions compute the same scores as the corresponding native scripts
+ */
+public class NativeScoreFunctionTests extends AbstractSearchScriptTests {
+
+    final static String[] searchTerms = {"foo", "bar"};
+    final static int numDocs = 50;
+
+    @Test
+    public void testPopularityScoreFunction() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                .startObject("number").field("type", "integer").endObject()
+                .endObject().endObject().endObject()
+                .string();
+        assertAcked(prepareCreate("test").addMapping("type", mapping));
+
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < 10; i++) {
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource(XContentFactory.jsonBuilder().startObject().field("number", i * 7).endObject()));
+        }
+        indexRandom(true, indexBuilders);
+
+        Map<String, Object> params = MapBuilder.<String, Object>newMapBuilder().put("field", "number").put("function", "log1p").map();
+        // The script multiplies the boost by the query score, the function is combined with it by the query
+        assertSameScores(
+                ScoreFunctionBuilders.scriptFunction("popularity", "native", params),
+                NativeScoreFunctionBuilder.popularityScore("number").param("function", "log1p"),
+                CombineFunction.MULT, 10);
+    }
+
+    @Test
+    public void testTermScoreFunctions() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+                .startObject("text").field("type", "multi_field").startObject("fields")
+                .startObject("text").field("type", "string").endObject()
+                .startObject("word_count").field("analyzer", "standard").field("type", "token_count").endObject()
+                .endObject().endObject().endObject().endObject().endObject().string();
+        assertAcked(prepareCreate("test").addMapping("type", mapping));
+
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < numDocs; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = 0; j <= i % 7; j++) {
+                text.append(" foo");
+            }
+            for (int j = 0; j <= i % 3; j++) {
+                text.append(" placeholder");
+            }
+            if (i % 2 == 0) {
+                text.append(" bar");
+            }
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource(XContentFactory.jsonBuilder().startObject().field("text", text.toString()).endObject()));
+        }
+        indexRandom(true, indexBuilders);
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", "text");
+        params.put("terms", searchTerms);
+        assertSameScores(
+                ScoreFunctionBuilders.scriptFunction(TFIDFScoreScript.SCRIPT_NAME, "native", params),
+                NativeScoreFunctionBuilder.tfidfScore("text", searchTerms),
+                CombineFunction.REPLACE, numDocs);
+
+        params.put("weights", new Double[]{1.0, 0.5});
+        assertSameScores(
+                ScoreFunctionBuilders.scriptFunction(CosineSimilarityScoreScript.SCRIPT_NAME, "native", params),
+                NativeScoreFunctionBuilder.cosineSimilarityScore("text", searchTerms, new double[]{1.0, 0.5}),
+                CombineFunction.REPLACE, numDocs);
+
+        params.remove("weights");
+        params.put("word_count_field", "text.word_count");
+        params.put("lambda", 0.9);
+        assertSameScores(
+                ScoreFunctionBuilders.scriptFunction(LanguageModelScoreScript.SCRIPT_NAME, "native", params),
+                NativeScoreFunctionBuilder.languageModelScore("text", "text.word_count", 0.9, searchTerms),
+                CombineFunction.REPLACE, numDocs);
+    }
+
+    private void assertSameScores(ScoreFunctionBuilder script, ScoreFunctionBuilder function, CombineFunction boostMode, int hits) {
+        SearchResponse scriptResponse = client().prepareSearch("test")
+                .setQuery(functionScoreQuery(matchAllQuery()).boostMode(CombineFunction.REPLACE).add(script))
+                .setSize(hits).execute().actionGet();
+        assertNoFailures(scriptResponse);
+        assertHitCount(scriptResponse, hits);
+        SearchResponse functionResponse = client().prepareSearch("test")
+                .setQuery(functionScoreQuery(matchAllQuery()).boostMode(boostMode).add(function))
+                .setSize(hits).execute().actionGet();
+        assertNoFailures(functionResponse);
+        assertHitCount(functionResponse, hits);
+
+        Map<String, Float> scriptScores = new HashMap<String, Float>();
+        for (SearchHit hit : scriptResponse.getHits()) {
+            scriptScores.put(hit.getId(), hit.score());
+        }
+        assertThat(scriptScores.size(), equalTo(hits));
+        for (SearchHit hit : functionResponse.getHits()) {
+            assertThat("score of doc [" + hit.getId() + "]", (double) hit.score(), closeTo(scriptScores.get(hit.getId()), 1.e-4));
+        }
+    }
+}
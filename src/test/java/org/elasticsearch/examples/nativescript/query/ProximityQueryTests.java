@@ -0,0 +1,89 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.examples.nativescript.script.AbstractSearchScriptTests;
+import org.elasticsearch.examples.nativescript.script.PhraseScoreScript;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.junit.Test;
+
+/**
+ * Compares the proximity query with the phrase script
+ */
+public class ProximityQueryTests extends AbstractSearchScriptTests {
+
+    private static final String[] WORDS = {"foo", "bar", "baz", "qux", "quux", "corge"};
+
+    private static final String[] TERMS = {"foo", "bar", "baz"};
+
+    private static final int NUM_DOCS = 500;
+
+    @Test
+    public void testSameScoresAsScript() throws Exception {
+        assertAcked(client().admin().indices().prepareCreate("test"));
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = randomInt(20); j >= 0; j--) {
+                text.append(WORDS[randomInt(WORDS.length - 1)]).append(' ');
+            }
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i)).setSource("text", text.toString()));
+        }
+        // random refreshes create several segments
+        indexRandom(true, indexBuilders);
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", "text");
+        params.put("terms", TERMS);
+        SearchResponse scriptResponse = client().prepareSearch("test")
+                .setQuery(QueryBuilders.functionScoreQuery(QueryBuilders.boolQuery()
+                        .must(QueryBuilders.termQuery("text", "foo"))
+                        .must(QueryBuilders.termQuery("text", "bar"))
+                        .must(QueryBuilders.termQuery("text", "baz")))
+                        .add(ScoreFunctionBuilders.scriptFunction(PhraseScoreScript.SCRIPT_NAME, "native", params))
+                        .boostMode(CombineFunction.REPLACE.getName()))
+                .setSize(NUM_DOCS).execute().actionGet();
+        assertNoFailures(scriptResponse);
+        assertThat(scriptResponse.getHits().getTotalHits(), greaterThan(0L));
+
+        // only the documents containing all terms match
+        SearchResponse queryResponse = client().prepareSearch("test")
+                .setQuery(new ProximityQueryBuilder("text", TERMS).boost(2.0f)).setSize(NUM_DOCS).execute().actionGet();
+        assertNoFailures(queryResponse);
+        assertThat(queryResponse.getHits().getTotalHits(), equalTo(scriptResponse.getHits().getTotalHits()));
+
+        Map<String, Float> scores = new HashMap<String, Float>();
+        for (SearchHit hit : scriptResponse.getHits()) {
+            scores.put(hit.getId(), hit.score());
+        }
+        for (SearchHit hit : queryResponse.getHits()) {
+            assertThat((double) hit.score(), closeTo(2.0 * scores.get(hit.getId()), 1.e-5));
+        }
+    }
+
+    @Test
+    public void testMissingTerm() throws Exception {
+        assertAcked(client().admin().indices().prepareCreate("test"));
+        client().prepareIndex("test", "type", "1").setSource("text", "foo bar").get();
+        refresh();
+        SearchResponse response = client().prepareSearch("test")
+                .setQuery(new ProximityQueryBuilder("text", "foo", "missing")).execute().actionGet();
+        assertNoFailures(response);
+        assertHitCount(response, 0);
+    }
+}
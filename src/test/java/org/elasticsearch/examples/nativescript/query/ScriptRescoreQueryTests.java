@@ -0,0 +1,103 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import static org.elasticsearch.common.settings.ImmutableSettings.settingsBuilder;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.examples.nativescript.script.AbstractSearchScriptTests;
+import org.elasticsearch.examples.nativescript.script.TFIDFScoreScript;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.rescore.RescoreBuilder;
+import org.junit.Test;
+
+/**
+ * Checks that the rescore_script query only changes the scores of the documents in the rescore window
+ */
+public class ScriptRescoreQueryTests extends AbstractSearchScriptTests {
+
+    private static final String[] WORDS = {"foo", "bar", "baz", "qux"};
+
+    private static final int NUM_DOCS = 100;
+
+    private static final int WINDOW = 10;
+
+    @Test
+    public void testRescoreWindow() throws Exception {
+        // a single shard, so that the window is the top of the whole result
+        assertAcked(prepareCreate("test").setSettings(settingsBuilder().put("index.number_of_shards", 1)));
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            StringBuilder text = new StringBuilder("foo ");
+            for (int j = randomInt(10); j >= 0; j--) {
+                text.append(WORDS[randomInt(WORDS.length - 1)]).append(' ');
+            }
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i)).setSource("text", text.toString()));
+        }
+        indexRandom(true, indexBuilders);
+
+        QueryBuilder query = QueryBuilders.matchQuery("text", "bar");
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", "text");
+        params.put("terms", new String[]{"foo", "baz"});
+
+        SearchResponse original = client().prepareSearch("test").setQuery(query).setSize(NUM_DOCS).execute().actionGet();
+        assertNoFailures(original);
+        SearchResponse scripted = client().prepareSearch("test")
+                .setQuery(QueryBuilders.functionScoreQuery(QueryBuilders.matchAllQuery())
+                        .add(ScoreFunctionBuilders.scriptFunction(TFIDFScoreScript.SCRIPT_NAME, "native", params))
+                        .boostMode(CombineFunction.REPLACE.getName()))
+                .setSize(NUM_DOCS).execute().actionGet();
+        assertNoFailures(scripted);
+        Map<String, Float> scriptScores = new HashMap<String, Float>();
+        for (SearchHit hit : scripted.getHits()) {
+            scriptScores.put(hit.getId(), hit.score());
+        }
+
+        for (String scoreMode : new String[]{"total", "multiply"}) {
+            SearchResponse rescored = client().prepareSearch("test").setQuery(query)
+                    .setRescorer(RescoreBuilder.queryRescorer(new ScriptRescoreQueryBuilder(TFIDFScoreScript.SCRIPT_NAME).params(params))
+                            .setQueryWeight(2.0f).setScoreMode(scoreMode), WINDOW)
+                    .setSize(NUM_DOCS).execute().actionGet();
+            assertNoFailures(rescored);
+            assertThat(rescored.getHits().getTotalHits(), equalTo(original.getHits().getTotalHits()));
+
+            Map<String, Float> expected = new HashMap<String, Float>();
+            for (int i = 0; i < original.getHits().getHits().length; i++) {
+                SearchHit hit = original.getHits().getAt(i);
+                float score = hit.score() * 2.0f;
+                if (i < WINDOW) {
+                    float scriptScore = scriptScores.get(hit.getId());
+                    score = scoreMode.equals("total") ? score + scriptScore : score * scriptScore;
+                }
+                expected.put(hit.getId(), score);
+            }
+            for (SearchHit hit : rescored.getHits()) {
+                assertThat(scoreMode + " score of doc " + hit.getId(), (double) hit.score(), closeTo(expected.get(hit.getId()), 1.e-4));
+            }
+        }
+
+        // explaining creates new weights, they must score like the rescorer
+        SearchResponse explained = client().prepareSearch("test").setQuery(query)
+                .setRescorer(RescoreBuilder.queryRescorer(new ScriptRescoreQueryBuilder(TFIDFScoreScript.SCRIPT_NAME).params(params))
+                        .setQueryWeight(0), WINDOW)
+                .setSize(WINDOW).setExplain(true).execute().actionGet();
+        assertNoFailures(explained);
+        for (SearchHit hit : explained.getHits()) {
+            assertThat("score of doc " + hit.getId(), (double) hit.score(), closeTo(scriptScores.get(hit.getId()), 1.e-4));
+            assertThat("explanation of doc " + hit.getId(), (double) hit.explanation().getValue(), closeTo(hit.score(), 1.e-4));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.elasticsearch.examples.nativescript.query;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.examples.nativescript.script.AbstractSearchScriptTests;
+import org.elasticsearch.examples.nativescript.script.CosineSimilarityScoreScript;
+import org.elasticsearch.examples.nativescript.script.TFIDFScoreScript;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.junit.Test;
+
+/**
+ * Compares the term_score query with the term scoring scripts, and its top k mode with exhaustive scoring
+ */
+public class TermScoreQueryTests extends AbstractSearchScriptTests {
+
+    private static final String[] WORDS = {"foo", "bar", "baz", "qux", "quux", "corge"};
+
+    private static final String[] TERMS = {"foo", "bar", "baz"};
+
+    private static final int NUM_DOCS = 500;
+
+    @Test
+    public void testTFIDF() throws Exception {
+        indexData();
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", "text");
+        params.put("terms", TERMS);
+        assertSameScores(new TermScoreQueryBuilder("text", TERMS), TFIDFScoreScript.SCRIPT_NAME, params);
+        assertSameTopK(new TermScoreQueryBuilder("text", TERMS), new TermScoreQueryBuilder("text", TERMS).topK(10), 10);
+    }
+
+    @Test
+    public void testCosine() throws Exception {
+        indexData();
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", "text");
+        params.put("terms", TERMS);
+        params.put("weights", new double[]{1.0, 0.5, 0.1});
+        assertSameScores(new TermScoreQueryBuilder("text", TERMS).model("cosine").weights(1.0, 0.5, 0.1),
+                CosineSimilarityScoreScript.SCRIPT_NAME, params);
+        assertSameTopK(new TermScoreQueryBuilder("text", TERMS).model("cosine").weights(1.0, 0.5, 0.1),
+                new TermScoreQueryBuilder("text", TERMS).model("cosine").weights(1.0, 0.5, 0.1).topK(10), 10);
+    }
+
+    private void assertSameScores(QueryBuilder query, String script, Map<String, Object> params) {
+        SearchResponse scriptResponse = client().prepareSearch("test")
+                .setQuery(QueryBuilders.functionScoreQuery(QueryBuilders.termsQuery("text", TERMS))
+                        .add(ScoreFunctionBuilders.scriptFunction(script, "native", params))
+                        .boostMode(CombineFunction.REPLACE.getName()))
+                .setSize(NUM_DOCS).execute().actionGet();
+        assertNoFailures(scriptResponse);
+        SearchResponse queryResponse = client().prepareSearch("test").setQuery(query).setSize(NUM_DOCS).execute().actionGet();
+        assertNoFailures(queryResponse);
+        assertThat(queryResponse.getHits().getTotalHits(), equalTo(scriptResponse.getHits().getTotalHits()));
+
+        Map<String, Float> scores = new HashMap<String, Float>();
+        for (SearchHit hit : scriptResponse.getHits()) {
+            scores.put(hit.getId(), hit.score());
+        }
+        for (SearchHit hit : queryResponse.getHits()) {
+            assertThat((double) hit.score(), closeTo(scores.get(hit.getId()), 1.e-5));
+        }
+    }
+
+    private void assertSameTopK(QueryBuilder exhaustive, QueryBuilder topK, int k) {
+        SearchResponse expected = client().prepareSearch("test").setQuery(exhaustive).setSize(k).execute().actionGet();
+        assertNoFailures(expected);
+        SearchResponse actual = client().prepareSearch("test").setQuery(topK).setSize(k).execute().actionGet();
+        assertNoFailures(actual);
+        // documents that cannot make it into the top k are skipped
+        assertThat(actual.getHits().getTotalHits(), lessThan(expected.getHits().getTotalHits()));
+        assertThat(actual.getHits().getHits().length, equalTo(k));
+        for (int i = 0; i < k; i++) {
+            assertThat(actual.getHits().getAt(i).getId(), equalTo(expected.getHits().getAt(i).getId()));
+            assertThat(actual.getHits().getAt(i).score(), equalTo(expected.getHits().getAt(i).score()));
+        }
+    }
+
+    private void indexData() throws Exception {
+        assertAcked(client().admin().indices().prepareCreate("test"));
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = randomInt(20); j >= 0; j--) {
+                // skewed frequencies, so the terms get different bounds
+                text.append(WORDS[Math.min(randomInt(WORDS.length - 1), randomInt(WORDS.length - 1))]).append(' ');
+            }
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i)).setSource("text", text.toString()));
+        }
+        // random refreshes create several segments
+        indexRandom(true, indexBuilders);
+        assertThat(client().prepareCount("test").get().getCount(), greaterThan(0L));
+    }
+}
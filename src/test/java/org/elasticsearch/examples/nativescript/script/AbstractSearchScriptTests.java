@@ -20,5 +20,10 @@ public class AbstractSearchScriptTests extends ElasticsearchIntegrationTest {
                 .put(super.nodeSettings(nodeOrdinal))
                 .build();
     }
-    
+
+    @Override
+    protected boolean randomizeNumberOfShardsAndReplicas() {
+        // Scores depend on shard level term statistics, keep all documents in the single shard configured above
+        return false;
+    }
 }
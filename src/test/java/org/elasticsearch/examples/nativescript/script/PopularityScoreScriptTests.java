@@ -1,10 +1,12 @@
 package org.elasticsearch.examples.nativescript.script;
 
 import static org.elasticsearch.index.query.QueryBuilders.functionScoreQuery;
+import static org.elasticsearch.index.query.QueryBuilders.matchAllQuery;
 import static org.elasticsearch.index.query.QueryBuilders.matchQuery;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 
@@ -24,6 +26,8 @@ import org.junit.Test;
  */
 public class PopularityScoreScriptTests extends AbstractSearchScriptTests {
 
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
     @Test
     public void testPopularityScoring() throws Exception {
       
@@ -88,4 +92,163 @@ public class PopularityScoreScriptTests extends AbstractSearchScriptTests {
             assertThat(searchResponse.getHits().getAt(i).score(), equalTo(searchResponse.getHits().getAt(5).score()));
         }
     }
+
+    @Test
+    public void testMultiFieldPopularityScoring() throws Exception {
+
+        // Create a new index
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                .startObject("name").field("type", "string").endObject()
+                .startObject("views").field("type", "integer").endObject()
+                .startObject("likes").field("type", "double").endObject()
+                .endObject().endObject().endObject()
+                .string();
+
+        assertAcked(prepareCreate("test")
+                .addMapping("type", mapping));
+
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+
+        // Index 5 records with views and likes
+        for (int i = 0; i < 5; i++) {
+            indexBuilders.add(
+                    client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource(XContentFactory.jsonBuilder().startObject()
+                            .field("name", "rec " + i)
+                            .field("views", i * 10)
+                            .field("likes", (double) i)
+                            .endObject()));
+        }
+        // Index a record with views only
+        indexBuilders.add(
+                client().prepareIndex("test", "type", "5")
+                .setSource(XContentFactory.jsonBuilder().startObject()
+                        .field("name", "rec 5")
+                        .field("views", 20)
+                        .endObject()));
+
+        indexRandom(true, indexBuilders);
+
+        Map<String, Object> params = MapBuilder.<String, Object> newMapBuilder()
+                .put("fields", MapBuilder.<String, Object> newMapBuilder().put("views", 0.1).put("likes", 2.0).map())
+                .put("function", "sqrt")
+                .put("missing", 1)
+                .map();
+        SearchResponse searchResponse = client().prepareSearch("test")
+                .setQuery(functionScoreQuery(matchAllQuery())
+                        .boostMode(CombineFunction.REPLACE)
+                        .add(ScoreFunctionBuilders.scriptFunction("popularity", "native", params)))
+                .setSize(10)
+                .addField("name")
+                .execute().actionGet();
+
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, 6);
+
+        // Verify that the records are sorted by 1 + sqrt(0.1 * views + 2 * likes)
+        String[] expectedOrder = {"rec 4", "rec 3", "rec 2", "rec 5", "rec 1", "rec 0"};
+        for (int i = 0; i < expectedOrder.length; i++) {
+            assertThat(searchResponse.getHits().getAt(i).field("name").getValue().toString(), equalTo(expectedOrder[i]));
+        }
+        assertThat((double) searchResponse.getHits().getAt(0).score(), closeTo(1 + Math.sqrt(12), 1.e-5));
+        assertThat((double) searchResponse.getHits().getAt(5).score(), closeTo(1.0, 1.e-5));
+    }
+
+    @Test
+    public void testNegativePopularity() throws Exception {
+
+        // Create a new index
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                .startObject("number").field("type", "integer").endObject()
+                .endObject().endObject().endObject()
+                .string();
+
+        assertAcked(prepareCreate("test")
+                .addMapping("type", mapping));
+
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        indexBuilders.add(client().prepareIndex("test", "type", "negative")
+                .setSource(XContentFactory.jsonBuilder().startObject().field("number", -5).endObject()));
+        indexBuilders.add(client().prepareIndex("test", "type", "positive")
+                .setSource(XContentFactory.jsonBuilder().startObject().field("number", 9).endObject()));
+        indexRandom(true, indexBuilders);
+
+        // Negative values are clamped to 0 instead of producing NaN, so the score is the match_all score of 1 boosted
+        // by the boost of a popularity of 0, which is 1
+        for (String function : new String[]{"log", "log1p", "sqrt", "saturation", "sigmoid"}) {
+            Map<String, Object> params = MapBuilder.<String, Object> newMapBuilder()
+                    .put("field", "number")
+                    .put("function", function)
+                    .map();
+            SearchResponse searchResponse = client().prepareSearch("test")
+                    .setQuery(functionScoreQuery(matchAllQuery())
+                            .boostMode(CombineFunction.REPLACE)
+                            .add(ScoreFunctionBuilders.scriptFunction("popularity", "native", params)))
+                    .execute().actionGet();
+
+            assertNoFailures(searchResponse);
+            assertHitCount(searchResponse, 2);
+            assertThat(searchResponse.getHits().getAt(0).id(), equalTo("positive"));
+            assertThat((double) searchResponse.getHits().getAt(1).score(), closeTo(1.0, 1.e-5));
+        }
+    }
+
+    @Test
+    public void testDecayedPopularityScoring() throws Exception {
+
+        // Create a new index
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                .startObject("name").field("type", "string").endObject()
+                .startObject("number").field("type", "integer").endObject()
+                .startObject("created").field("type", "date").endObject()
+                .endObject().endObject().endObject()
+                .string();
+
+        assertAcked(prepareCreate("test")
+                .addMapping("type", mapping));
+
+        long now = 100L * DAY;
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+
+        // Index 5 records with the same popularity, but created i days ago
+        for (int i = 0; i < 5; i++) {
+            indexBuilders.add(
+                    client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource(XContentFactory.jsonBuilder().startObject()
+                            .field("name", "rec " + i)
+                            .field("number", 9)
+                            .field("created", now - i * DAY)
+                            .endObject()));
+        }
+
+        indexRandom(true, indexBuilders);
+
+        Map<String, Object> params = MapBuilder.<String, Object> newMapBuilder()
+                .put("field", "number")
+                .put("timestamp_field", "created")
+                .put("decay_function", "exp")
+                .put("scale", "1d")
+                .put("decay", 0.5)
+                .put("now", now)
+                .map();
+        SearchResponse searchResponse = client().prepareSearch("test")
+                .setQuery(functionScoreQuery(matchAllQuery())
+                        .boostMode(CombineFunction.REPLACE)
+                        .add(ScoreFunctionBuilders.scriptFunction("popularity", "native", params)))
+                .setSize(10)
+                .addField("name")
+                .execute().actionGet();
+
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, 5);
+
+        // Records with value 9 get boost 2, which is halved for every day of age
+        for (int i = 0; i < 5; i++) {
+            assertThat(searchResponse.getHits().getAt(i).field("name").getValue().toString(), equalTo("rec " + i));
+            assertThat((double) searchResponse.getHits().getAt(i).score(), closeTo(2.0 * Math.pow(0.5, i), 1.e-5));
+        }
+    }
 }
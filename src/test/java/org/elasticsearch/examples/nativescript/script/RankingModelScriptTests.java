@@ -0,0 +1,178 @@
+package org.elasticsearch.examples.nativescript.script;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.base.Charsets;
+import org.elasticsearch.common.base.Predicate;
+import org.elasticsearch.common.io.Streams;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.examples.nativescript.query.ScriptRescoreQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.rescore.RescoreBuilder;
+import org.junit.Test;
+
+/**
+ * Scores documents with ranking models loaded from files, and checks that changed files are picked up
+ */
+public class RankingModelScriptTests extends AbstractSearchScriptTests {
+
+    private static final File MODELS_DIRECTORY = new File(TEMP_DIR, "ranking_models-" + System.nanoTime());
+
+    private static final String[] TERMS = {"foo", "bar"};
+
+    private static final int NUM_DOCS = 50;
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return ImmutableSettings.settingsBuilder()
+                .put(super.nodeSettings(nodeOrdinal))
+                .put("examples.nativescript.ranking.path", MODELS_DIRECTORY.getAbsolutePath())
+                .put("watcher.interval", "100ms")
+                .build();
+    }
+
+    @Test
+    public void testLinearModel() throws Exception {
+        indexData();
+        writeModel("linear", "{\"features\": ["
+                + "{\"name\": \"tfidf\", \"script\": \"tfidf_script_score\", \"params\": {\"field\": \"text\"}},"
+                + "{\"name\": \"popularity\", \"script\": \"popularity\", \"params\": {\"field\": \"number\", \"function\": \"log1p\"}}],"
+                + "\"linear\": {\"weights\": {\"tfidf\": 0.5, \"popularity\": 2}, \"bias\": 1}}");
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("terms", TERMS);
+        params.put("field", "text");
+        Map<String, Float> tfidf = scores(TFIDFScoreScript.SCRIPT_NAME, params);
+        params.put("field", "number");
+        params.put("function", "log1p");
+        Map<String, Float> popularity = scores("popularity", params);
+
+        params = new HashMap<String, Object>();
+        params.put("terms", TERMS);
+        params.put("model", "linear");
+        Map<String, Float> scores = awaitScores(params);
+        assertThat(scores.size(), equalTo(NUM_DOCS));
+        for (Map.Entry<String, Float> score : scores.entrySet()) {
+            double expected = 1 + 0.5 * tfidf.get(score.getKey()) + 2 * popularity.get(score.getKey());
+            assertThat((double) score.getValue(), closeTo(expected, 1.e-4));
+        }
+    }
+
+    @Test
+    public void testTreeEnsembleHotSwap() throws Exception {
+        indexData();
+        writeModel("trees", treeModel(10, 20, 30));
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("terms", TERMS);
+        params.put("model", "trees");
+        awaitScores(params);
+        assertTreeScores(params, 10, 20, 30);
+
+        // the new model replaces the previous one once the watcher sees the change
+        writeModel("trees", treeModel(-1, -2, -300));
+        final Map<String, Object> swapParams = params;
+        assertThat(awaitBusy(new Predicate<Object>() {
+            @Override
+            public boolean apply(Object input) {
+                return scores(RankingModelScript.SCRIPT_NAME, swapParams).get("1") < 0;
+            }
+        }), equalTo(true));
+        assertTreeScores(params, -1, -2, -300);
+    }
+
+    /**
+     * The first tree splits on the popularity, the second one adds 100 to the documents containing "foo"
+     */
+    private static String treeModel(double low, double medium, double high) {
+        return "{\"features\": ["
+                + "{\"name\": \"number\", \"script\": \"popularity\", \"params\": {\"field\": \"number\", \"function\": \"linear\"}},"
+                + "{\"name\": \"foo\", \"script\": \"tfidf_script_score\", \"params\": {\"field\": \"text\", \"terms\": [\"foo\"]}}],"
+                + "\"ensemble\": {\"base_score\": 0.5, \"trees\": ["
+                + "{\"feature\": \"number\", \"threshold\": 10, \"left\": {\"value\": " + low + "},"
+                + " \"right\": {\"feature\": \"number\", \"threshold\": 30, \"left\": {\"value\": " + medium + "}, \"right\": {\"value\": " + high + "}}},"
+                + "{\"feature\": \"foo\", \"threshold\": 0, \"left\": {\"value\": 0}, \"right\": {\"value\": 100}}]}}";
+    }
+
+    private void assertTreeScores(Map<String, Object> params, double low, double medium, double high) {
+        // rescoring all documents with a query weight of 0 returns the scores of the model
+        SearchResponse response = client().prepareSearch("test").setQuery(QueryBuilders.matchAllQuery())
+                .setRescorer(RescoreBuilder.queryRescorer(new ScriptRescoreQueryBuilder(RankingModelScript.SCRIPT_NAME).params(params))
+                        .setQueryWeight(0), NUM_DOCS)
+                .setSize(NUM_DOCS).execute().actionGet();
+        assertNoFailures(response);
+        assertThat(response.getHits().getHits().length, equalTo(NUM_DOCS));
+        for (SearchHit hit : response.getHits()) {
+            int number = Integer.parseInt(hit.getId());
+            // the linear popularity is 1 + number, and every third document contains foo
+            int popularity = 1 + number;
+            double expected = 0.5 + (popularity <= 10 ? low : popularity <= 30 ? medium : high) + (number % 3 == 0 ? 100 : 0);
+            assertThat(hit.getId(), (double) hit.score(), closeTo(expected, 1.e-5));
+        }
+    }
+
+    private void indexData() throws Exception {
+        assertAcked(client().admin().indices().prepareCreate("test"));
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource(XContentFactory.jsonBuilder().startObject()
+                            .field("text", i % 3 == 0 ? "foo bar foo" : i % 3 == 1 ? "bar baz" : "qux")
+                            .field("number", i)
+                            .endObject()));
+        }
+        indexRandom(true, indexBuilders);
+    }
+
+    private static void writeModel(String name, String model) throws IOException {
+        MODELS_DIRECTORY.mkdirs();
+        Streams.copy(model.getBytes(Charsets.UTF_8), new File(MODELS_DIRECTORY, name + ".json"));
+    }
+
+    /**
+     * Waits until the model is loaded and returns its scores
+     */
+    private Map<String, Float> awaitScores(final Map<String, Object> params) throws InterruptedException {
+        final Map<String, Float> scores = new HashMap<String, Float>();
+        awaitBusy(new Predicate<Object>() {
+            @Override
+            public boolean apply(Object input) {
+                try {
+                    scores.putAll(scores(RankingModelScript.SCRIPT_NAME, params));
+                    return true;
+                } catch (Exception e) {
+                    return false;
+                }
+            }
+        });
+        return scores;
+    }
+
+    private Map<String, Float> scores(String script, Map<String, Object> params) {
+        SearchResponse searchResponse = client().prepareSearch("test")
+                .setQuery(QueryBuilders.functionScoreQuery()
+                        .add(ScoreFunctionBuilders.scriptFunction(script, "native", params))
+                        .boostMode(CombineFunction.REPLACE.getName())).setSize(NUM_DOCS).execute().actionGet();
+        assertNoFailures(searchResponse);
+        Map<String, Float> scores = new HashMap<String, Float>();
+        for (SearchHit hit : searchResponse.getHits()) {
+            scores.put(hit.getId(), hit.score());
+        }
+        return scores;
+    }
+}
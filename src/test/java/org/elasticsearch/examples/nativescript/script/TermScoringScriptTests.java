@@ -5,6 +5,9 @@ import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitC
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
 import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -13,10 +16,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
+import org.apache.lucene.util.SmallFloat;
 import org.elasticsearch.action.index.IndexRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.cluster.routing.operation.hash.djb.DjbHashFunction;
 import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.examples.nativescript.stats.FieldTermStatistics;
+import org.elasticsearch.examples.nativescript.stats.GlobalTermStatisticsService;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
 import org.elasticsearch.search.SearchHit;
@@ -63,6 +71,27 @@ public class TermScoringScriptTests extends AbstractSearchScriptTests {
 
     }
 
+    @Test
+    public void testTFIDFBulk() throws Exception {
+
+        initData();
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", field);
+        params.put("terms", new String[]{"foo", "bar", placeholder, "missing"});
+        SearchResponse docAtATime = searchAll(TFIDFScoreScript.SCRIPT_NAME, params);
+        params.put("bulk", true);
+        SearchResponse termAtATime = searchAll(TFIDFScoreScript.SCRIPT_NAME, params);
+
+        Map<String, Float> scores = new HashMap<String, Float>();
+        for (SearchHit hit : docAtATime.getHits()) {
+            scores.put(hit.getId(), hit.score());
+        }
+        for (SearchHit hit : termAtATime.getHits()) {
+            assertThat((double) hit.score(), closeTo(scores.get(hit.getId()), 1.e-4));
+        }
+    }
+
     @Test
     public void testCosineSimilarity() throws Exception {
 
@@ -115,6 +144,194 @@ public class TermScoringScriptTests extends AbstractSearchScriptTests {
         }
     }
 
+    @Test
+    public void testProximityScorer() throws Exception {
+        assertAcked(client().admin().indices().prepareCreate("test"));
+        client().prepareIndex("test", "type", "adjacent").setSource(field, "a b c").get();
+        client().prepareIndex("test", "type", "shuffled").setSource(field, "c x a b").get();
+        client().prepareIndex("test", "type", "spread").setSource(field, "a x x b x c x x a b x x x c").get();
+        client().prepareIndex("test", "type", "incomplete").setSource(field, "a b a b").get();
+        refresh();
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", field);
+        params.put("terms", new String[]{"a", "b", "c"});
+        Map<String, Float> scores = scores(PhraseScoreScript.SCRIPT_NAME, params);
+        assertThat(scores.size(), equalTo(4));
+        // window widths 2, 3, 4 and no window
+        assertThat((double) scores.get("adjacent"), closeTo(1.0, 1.e-6));
+        assertThat((double) scores.get("shuffled"), closeTo(2.0 / 3.0, 1.e-6));
+        assertThat((double) scores.get("spread"), closeTo(2.0 / 4.0, 1.e-6));
+        assertThat((double) scores.get("incomplete"), closeTo(0.0, 1.e-6));
+    }
+
+    @Test
+    public void testShingleProximityScorer() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+                .startObject("name").field("type", "multi_field").startObject("fields")
+                .startObject("name").field("type", "string").endObject()
+                .startObject("shingles").field("type", "string").field("analyzer", "bigrams").endObject()
+                .endObject().endObject().endObject().endObject().endObject().string();
+        assertAcked(client().admin().indices().prepareCreate("test").setSettings(ImmutableSettings.settingsBuilder()
+                .put("index.analysis.filter.bigrams.type", "shingle")
+                .put("index.analysis.filter.bigrams.output_unigrams", false)
+                .put("index.analysis.analyzer.bigrams.tokenizer", "standard")
+                .putArray("index.analysis.analyzer.bigrams.filter", "lowercase", "bigrams"))
+                .addMapping("type", mapping));
+        client().prepareIndex("test", "type", "adjacent").setSource("name", "John Smith").get();
+        client().prepareIndex("test", "type", "reversed").setSource("name", "Smith John").get();
+        client().prepareIndex("test", "type", "middle_name").setSource("name", "John Henry Smith").get();
+        client().prepareIndex("test", "type", "first_name_only").setSource("name", "John Henry").get();
+        refresh();
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", "name");
+        params.put("terms", new String[]{"john", "smith"});
+        params.put("shingle_field", "name.shingles");
+        Map<String, Float> scores = scores(PhraseScoreScript.SCRIPT_NAME, params);
+        assertThat((double) scores.get("adjacent"), closeTo(1.0, 1.e-6));
+        assertThat((double) scores.get("reversed"), closeTo(1.0, 1.e-6));
+        assertThat((double) scores.get("middle_name"), closeTo(0.0, 1.e-6));
+        assertThat((double) scores.get("first_name_only"), closeTo(0.0, 1.e-6));
+
+        // positions are only read for documents without the bigram
+        params.put("slop", 1);
+        scores = scores(PhraseScoreScript.SCRIPT_NAME, params);
+        assertThat((double) scores.get("adjacent"), closeTo(1.0, 1.e-6));
+        assertThat((double) scores.get("middle_name"), closeTo(0.5, 1.e-6));
+        assertThat((double) scores.get("first_name_only"), closeTo(0.0, 1.e-6));
+    }
+
+    @Test
+    public void testTermVectorStrategy() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+                .startObject(field).field("type", "string").field("term_vector", "yes").endObject()
+                .endObject().endObject().endObject().string();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("type", mapping));
+        String[] words = new String[50];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = "w" + i;
+        }
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < numDocs; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = randomInt(10); j >= 0; j--) {
+                text.append(words[randomInt(words.length - 1)]).append(' ');
+            }
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i)).setSource(field, text.toString()));
+        }
+        indexRandom(true, indexBuilders);
+
+        // more query terms than distinct terms per document, including terms that don't occur
+        String[] queryTerms = new String[words.length + 10];
+        double[] weights = new double[queryTerms.length];
+        for (int i = 0; i < queryTerms.length; i++) {
+            queryTerms[i] = "w" + i;
+            weights[i] = 1.0 + i % 3;
+        }
+        for (String script : new String[]{TFIDFScoreScript.SCRIPT_NAME, CosineSimilarityScoreScript.SCRIPT_NAME, BM25ScoreScript.SCRIPT_NAME}) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("field", field);
+            params.put("terms", queryTerms);
+            params.put("weights", weights);
+            Map<String, Float> expected = scores(script, params);
+            for (String strategy : new String[]{"term_vectors", "auto"}) {
+                params.put("strategy", strategy);
+                Map<String, Float> actual = scores(script, params);
+                for (Map.Entry<String, Float> score : expected.entrySet()) {
+                    assertThat((double) actual.get(score.getKey()), closeTo(score.getValue(), 1.e-5));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLanguageModelSmoothing() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties").startObject(field)
+                .field("type", "multi_field").startObject("fields").startObject(field).field("type", "string").endObject()
+                .startObject("word_count").field("analyzer", "standard").field("type", "token_count").endObject()
+                .endObject().endObject().endObject().endObject().endObject().string();
+        assertAcked(client().admin().indices().prepareCreate("test")
+                .setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 1)).addMapping("type", mapping));
+        // lengths 1, 4 and 16 are encoded exactly in the norms
+        client().prepareIndex("test", "type", "1").setSource(field, "foo").get();
+        client().prepareIndex("test", "type", "4").setSource(field, "foo bar baz qux").get();
+        client().prepareIndex("test", "type", "16").setSource(field, "foo x x x x x x x x x x x x x x x").get();
+        refresh();
+        // 21 terms, foo occurs 3 times and bar once
+        double[] collectionModel = {3.0 / 21.0, 1.0 / 21.0};
+        int[][] tfs = {{1, 0}, {1, 1}, {1, 0}};
+        String[] ids = {"1", "4", "16"};
+        int[] lengths = {1, 4, 16};
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", field);
+        params.put("terms", searchTerms);
+        params.put("lambda", 0.5);
+        Map<String, Float> scores = scores(LanguageModelScoreScript.SCRIPT_NAME, params);
+        for (int d = 0; d < ids.length; d++) {
+            double expected = 0;
+            for (int t = 0; t < 2; t++) {
+                expected += Math.log(0.5 * collectionModel[t] + 0.5 * tfs[d][t] / lengths[d]);
+            }
+            assertThat((double) scores.get(ids[d]), closeTo(expected, 1.e-5));
+        }
+
+        params.put("smoothing", "dirichlet");
+        params.put("mu", 10);
+        Map<String, Float> normScores = scores(LanguageModelScoreScript.SCRIPT_NAME, params);
+        params.put("word_count_field", wordCountField);
+        Map<String, Float> wordCountScores = scores(LanguageModelScoreScript.SCRIPT_NAME, params);
+        for (int d = 0; d < ids.length; d++) {
+            double expected = 0;
+            for (int t = 0; t < 2; t++) {
+                expected += Math.log((tfs[d][t] + 10 * collectionModel[t]) / (lengths[d] + 10));
+            }
+            assertThat((double) normScores.get(ids[d]), closeTo(expected, 1.e-5));
+            assertThat((double) wordCountScores.get(ids[d]), closeTo(expected, 1.e-5));
+        }
+    }
+
+    @Test
+    public void testLanguageModelMissingField() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+                .startObject("title").field("type", "string").endObject()
+                .startObject("tags").field("type", "string").endObject()
+                .endObject().endObject().endObject().string();
+        assertAcked(client().admin().indices().prepareCreate("test")
+                .setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 1)).addMapping("type", mapping));
+        // both documents are in the same segment, so "untagged" gets norm 0 on tags. A length of 5 is rounded by the norms.
+        client().prepareIndex("test", "type", "tagged").setSource("title", "foo bar baz qux quux", "tags", "foo bar").get();
+        client().prepareIndex("test", "type", "untagged").setSource("title", "foo").get();
+        refresh();
+        double titleLength = normLength(5);
+        double tagsLength = normLength(2);
+        assertThat(titleLength, not(equalTo(5.0)));
+
+        Map<String, Object> fields = new HashMap<String, Object>();
+        fields.put("title", 1.0);
+        fields.put("tags", 2.0);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("fields", fields);
+        params.put("terms", searchTerms);
+        params.put("smoothing", "dirichlet");
+        params.put("mu", 10);
+        Map<String, Float> scores = scores(LanguageModelScoreScript.SCRIPT_NAME, params);
+
+        // title: 6 terms, foo occurs twice and bar once. tags: 2 terms, foo and bar once.
+        double[] titleModel = {2.0 / 6.0, 1.0 / 6.0};
+        double[] tagsModel = {1.0 / 2.0, 1.0 / 2.0};
+        double tagged = 0;
+        double untagged = 0;
+        for (int t = 0; t < 2; t++) {
+            tagged += Math.log((1 + 10 * titleModel[t]) / (titleLength + 10)) + 2 * Math.log((1 + 10 * tagsModel[t]) / (tagsLength + 10));
+            // a missing field has length 0 and only contributes the collection model
+            untagged += Math.log(((t == 0 ? 1 : 0) + 10 * titleModel[t]) / (1 + 10)) + 2 * Math.log(tagsModel[t]);
+        }
+        assertThat((double) scores.get("tagged"), closeTo(tagged, 1.e-5));
+        assertThat((double) scores.get("untagged"), closeTo(untagged, 1.e-5));
+    }
+
     @Test
     public void testLanguageModelScorer() throws Exception {
 
@@ -142,6 +359,198 @@ public class TermScoringScriptTests extends AbstractSearchScriptTests {
         }
     }
 
+    @Test
+    public void testBM25() throws Exception {
+        // Index documents with fields scored by the built-in BM25 similarity
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+                .startObject("title").field("type", "string").field("similarity", "BM25").endObject()
+                .startObject("body").field("type", "string").field("similarity", "BM25").endObject()
+                .endObject().endObject().endObject().string();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("type", mapping));
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < numDocs; i++) {
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource(XContentFactory.jsonBuilder().startObject()
+                            .field("title", i % 3 == 0 ? "foo" : "bar " + placeholder)
+                            .field("body", createText(i % 10 + 1) + (i % 4 == 0 ? "" : " " + placeholder + " " + placeholder))
+                            .endObject()));
+        }
+        indexRandom(true, indexBuilders);
+
+        Map<String, Object> fields = new HashMap<String, Object>();
+        fields.put("title", 2.0);
+        fields.put("body", 1.0);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("fields", fields);
+        params.put("terms", searchTerms);
+        SearchResponse scriptResponse = client()
+                .prepareSearch("test")
+                .setQuery(
+                        QueryBuilders.functionScoreQuery()
+                                .add(ScoreFunctionBuilders.scriptFunction(BM25ScoreScript.SCRIPT_NAME, "native", params))
+                                .boostMode(CombineFunction.REPLACE.getName())).setSize(numDocs).execute().actionGet();
+        assertNoFailures(scriptResponse);
+        assertHitCount(scriptResponse, numDocs);
+
+        // The same query using the built-in similarity, coord is applied by the default similarity and not by BM25
+        SearchResponse queryResponse = client()
+                .prepareSearch("test")
+                .setQuery(QueryBuilders.boolQuery().disableCoord(true)
+                        .should(QueryBuilders.termQuery("title", "foo").boost(2.0f))
+                        .should(QueryBuilders.termQuery("title", "bar").boost(2.0f))
+                        .should(QueryBuilders.termQuery("body", "foo"))
+                        .should(QueryBuilders.termQuery("body", "bar")))
+                .setSize(numDocs).execute().actionGet();
+        assertNoFailures(queryResponse);
+        assertHitCount(queryResponse, numDocs);
+
+        Map<String, Float> scores = new HashMap<String, Float>();
+        for (SearchHit hit : queryResponse.getHits()) {
+            scores.put(hit.getId(), hit.score());
+        }
+        for (SearchHit hit : scriptResponse.getHits()) {
+            assertThat((double) hit.score(), closeTo(scores.get(hit.getId()), 1.e-4));
+        }
+    }
+
+    @Test
+    public void testMultiFieldScoring() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+                .startObject("title").field("type", "string").endObject()
+                .startObject("body").field("type", "string").endObject()
+                .endObject().endObject().endObject().string();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("type", mapping));
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < numDocs; i++) {
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource(XContentFactory.jsonBuilder().startObject()
+                            .field("title", i % 3 == 0 ? "foo" : "bar " + placeholder)
+                            .field("body", createText(i % 10 + 1))
+                            .endObject()));
+        }
+        indexRandom(true, indexBuilders);
+
+        Map<String, Object> fields = new HashMap<String, Object>();
+        fields.put("title", 2.0);
+        fields.put("body", 0.5);
+        for (String script : new String[]{TFIDFScoreScript.SCRIPT_NAME, CosineSimilarityScoreScript.SCRIPT_NAME,
+                LanguageModelScoreScript.SCRIPT_NAME}) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("terms", searchTerms);
+            params.put("weights", weights);
+            params.put("lambda", 0.5);
+            params.put("field", "title");
+            Map<String, Float> titleScores = scores(script, params);
+            params.put("field", "body");
+            Map<String, Float> bodyScores = scores(script, params);
+            params.remove("field");
+            params.put("fields", fields);
+            Map<String, Float> scores = scores(script, params);
+            assertThat(scores.size(), equalTo(numDocs));
+            // one pass over both fields scores like the sum of the boosted single field scores
+            for (Map.Entry<String, Float> score : scores.entrySet()) {
+                double expected = 2.0 * titleScores.get(score.getKey()) + 0.5 * bodyScores.get(score.getKey());
+                assertThat(script, (double) score.getValue(), closeTo(expected, 1.e-4 * Math.max(1, Math.abs(expected))));
+            }
+        }
+    }
+
+    @Test
+    public void testGlobalStatistics() throws Exception {
+        // Two shards with different term statistics
+        assertAcked(client().admin().indices().prepareCreate("test")
+                .setSettings(ImmutableSettings.settingsBuilder().put("index.number_of_shards", 2)));
+        String[] routing = new String[2];
+        for (int i = 0; routing[0] == null || routing[1] == null; i++) {
+            String candidate = Integer.toString(i);
+            routing[Math.abs(new DjbHashFunction().hash(candidate) % 2)] = candidate;
+        }
+        for (int i = 0; i < 10; i++) {
+            client().prepareIndex("test", "type", "foo" + i).setRouting(routing[0]).setSource(field, "foo").get();
+        }
+        for (int i = 0; i < 5; i++) {
+            client().prepareIndex("test", "type", "bar" + i).setRouting(routing[1]).setSource(field, "bar baz").get();
+        }
+        // The same document on both shards
+        client().prepareIndex("test", "type", "target0").setRouting(routing[0]).setSource(field, "foo bar").get();
+        client().prepareIndex("test", "type", "target1").setRouting(routing[1]).setSource(field, "foo bar").get();
+        refresh();
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", field);
+        params.put("terms", searchTerms);
+        SearchResponse shardResponse = searchTargets(params);
+        assertThat(shardResponse.getHits().getAt(0).score(), not(equalTo(shardResponse.getHits().getAt(1).score())));
+
+        // 17 documents, 12 contain foo and 7 contain bar
+        params.put("global_statistics", true);
+        double expected = Math.log(19.0 / 13.0) + Math.log(19.0 / 8.0);
+        for (SearchHit hit : searchTargets(params).getHits()) {
+            assertThat((double) hit.score(), closeTo(expected, 1.e-5));
+        }
+    }
+
+    @Test
+    public void testGlobalStatisticsFailure() throws Exception {
+        GlobalTermStatisticsService service = cluster().getInstance(GlobalTermStatisticsService.class);
+        String[] terms = new String[]{"foo"};
+        // The index doesn't exist yet, so the statistics cannot be collected
+        assertThat(service.statistics("test", "uuid", field, terms), nullValue());
+
+        createIndex("test");
+        client().prepareIndex("test", "type", "1").setSource(field, "foo bar").get();
+        refresh();
+        // The failure is remembered for the retry interval, queries don't wait for the shards again
+        assertThat(service.statistics("test", "uuid", field, terms), nullValue());
+
+        service.clear();
+        FieldTermStatistics statistics = service.statistics("test", "uuid", field, terms);
+        assertThat(statistics, notNullValue());
+        assertThat(statistics.docFreq(0), equalTo(1L));
+    }
+
+    // the length of a field as decoded from its norm
+    private static double normLength(int length) {
+        return BM25ScoreScript.NORM_TABLE[SmallFloat.floatToByte315((float) (1 / Math.sqrt(length))) & 0xFF];
+    }
+
+    private Map<String, Float> scores(String script, Map<String, Object> params) {
+        SearchResponse searchResponse = client().prepareSearch("test")
+                .setQuery(QueryBuilders.functionScoreQuery()
+                        .add(ScoreFunctionBuilders.scriptFunction(script, "native", params))
+                        .boostMode(CombineFunction.REPLACE.getName())).setSize(numDocs).execute().actionGet();
+        assertNoFailures(searchResponse);
+        Map<String, Float> scores = new HashMap<String, Float>();
+        for (SearchHit hit : searchResponse.getHits()) {
+            scores.put(hit.getId(), hit.score());
+        }
+        return scores;
+    }
+
+    private SearchResponse searchAll(String script, Map<String, Object> params) {
+        SearchResponse searchResponse = client()
+                .prepareSearch("test")
+                .setQuery(
+                        QueryBuilders.functionScoreQuery()
+                                .add(ScoreFunctionBuilders.scriptFunction(script, "native", params))
+                                .boostMode(CombineFunction.REPLACE.getName())).setSize(numDocs).execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, numDocs);
+        return searchResponse;
+    }
+
+    private SearchResponse searchTargets(Map<String, Object> params) {
+        SearchResponse searchResponse = client()
+                .prepareSearch("test")
+                .setQuery(
+                        QueryBuilders.functionScoreQuery(QueryBuilders.idsQuery("type").ids("target0", "target1"))
+                                .add(ScoreFunctionBuilders.scriptFunction(TFIDFScoreScript.SCRIPT_NAME, "native", params))
+                                .boostMode(CombineFunction.REPLACE.getName())).execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertHitCount(searchResponse, 2);
+        return searchResponse;
+    }
+
     private void initData() throws IOException, InterruptedException, ExecutionException {
         // Create a new index
         String mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties").startObject(field)
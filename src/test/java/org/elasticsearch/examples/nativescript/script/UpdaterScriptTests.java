@@ -4,7 +4,10 @@ import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcke
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -232,6 +235,57 @@ public class UpdaterScriptTests extends AbstractSearchScriptTests {
 		assertTrue(countries.size() == 1);
 	}
 
+	@Test
+	public void testRepeatedOrderedActions() throws Exception {
+		XContentBuilder source = XContentFactory.jsonBuilder()
+		.startObject()
+			.field("name", "rec1")
+			.field("tags", new String[] {"elasticsearch", "wow"})
+		.endObject();
+		prepareTest(source);
+
+		// the second update reuses the compiled actions, the list set by the first one must not have been modified
+		List<Object> actions = new ArrayList<Object>();
+		Map<String, Object> set = new HashMap<String, Object>();
+		set.put("tags", new ArrayList<Object>(Arrays.asList("sport")));
+		actions.add(Collections.singletonMap("set", set));
+		Map<String, Object> append = new HashMap<String, Object>();
+		append.put("tags", new ArrayList<Object>(Arrays.asList("game")));
+		actions.add(Collections.singletonMap("appendItems", append));
+		for (int i = 0; i < 2; i++) {
+			Map<String, Object> res = updateAndGetResponse("ordered", actions);
+			assertEquals(Arrays.asList("sport", "game"), res.get("tags"));
+		}
+	}
+
+	@Test
+	public void testOperationsRunInFixedOrder() throws Exception {
+		XContentBuilder source = XContentFactory.jsonBuilder()
+		.startObject()
+			.field("name", "rec1")
+			.field("tags", new String[] {"elasticsearch", "wow"})
+		.endObject();
+		prepareTest(source);
+
+		// the removal runs before the addition whatever the order of the parameters
+		for (boolean removeFirst : new boolean[] {true, false, true}) {
+			Map<String, Object> params = new LinkedHashMap<String, Object>();
+			if (removeFirst) {
+				params.put("remove", "tags");
+			}
+			params.put("set", Collections.singletonMap("tags", Arrays.asList("sport")));
+			if (!removeFirst) {
+				params.put("remove", "tags");
+			}
+			client().prepareUpdate(getIndex(), "article", "1")
+					.setScript("updater").setScriptLang("native")
+					.setScriptParams(params)
+					.get();
+			GetResponse getResponse = client().prepareGet(getIndex(), "article", "1").get();
+			assertEquals(Arrays.asList("sport"), getResponse.getSource().get("tags"));
+		}
+	}
+
 	/** "script": "updater", "lang": "native",
 	*   "params": {
 	*	 "doc" : {
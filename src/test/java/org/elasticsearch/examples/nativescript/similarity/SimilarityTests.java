@@ -0,0 +1,113 @@
+package org.elasticsearch.examples.nativescript.similarity;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertHitCount;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.examples.nativescript.script.AbstractSearchScriptTests;
+import org.elasticsearch.examples.nativescript.script.TFIDFScoreScript;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.junit.Test;
+
+/**
+ * Compares the similarities of the plugin with the scripts computing the same formulas
+ */
+public class SimilarityTests extends AbstractSearchScriptTests {
+
+    private static final String[] WORDS = {"foo", "bar", "baz", "qux", "quux", "corge", "grault", "garply"};
+
+    private static final String[] TERMS = {"foo", "bar", "baz"};
+
+    private static final int NUM_DOCS = 500;
+
+    @Test
+    public void testTfidfSimilarity() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+                .startObject("text").field("type", "string").field("similarity", NtnSimilarityProvider.NAME).endObject()
+                .endObject().endObject().endObject().string();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("type", mapping));
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = randomInt(20); j >= 0; j--) {
+                text.append(WORDS[randomInt(WORDS.length - 1)]).append(' ');
+            }
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i)).setSource("text", text.toString()));
+        }
+        indexRandom(true, indexBuilders);
+
+        // the coord factor comes from the default similarity
+        BoolQueryBuilder query = QueryBuilders.boolQuery().disableCoord(true);
+        for (String term : TERMS) {
+            query.should(QueryBuilders.termQuery("text", term));
+        }
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", "text");
+        params.put("terms", TERMS);
+        SearchResponse scriptResponse = client().prepareSearch("test")
+                .setQuery(QueryBuilders.functionScoreQuery(query)
+                        .add(ScoreFunctionBuilders.scriptFunction(TFIDFScoreScript.SCRIPT_NAME, "native", params))
+                        .boostMode(CombineFunction.REPLACE.getName()))
+                .setSize(NUM_DOCS).execute().actionGet();
+        assertNoFailures(scriptResponse);
+        assertThat(scriptResponse.getHits().getTotalHits(), greaterThan(0L));
+
+        SearchResponse similarityResponse = client().prepareSearch("test").setQuery(query).setSize(NUM_DOCS)
+                .execute().actionGet();
+        assertNoFailures(similarityResponse);
+        assertThat(similarityResponse.getHits().getTotalHits(), equalTo(scriptResponse.getHits().getTotalHits()));
+
+        Map<String, Float> scores = new HashMap<String, Float>();
+        for (SearchHit hit : scriptResponse.getHits()) {
+            scores.put(hit.getId(), hit.score());
+        }
+        for (SearchHit hit : similarityResponse.getHits()) {
+            assertThat((double) hit.score(), closeTo(scores.get(hit.getId()), 1.e-4 * hit.score()));
+        }
+    }
+
+    @Test
+    public void testCosineSimilarity() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("type").startObject("properties")
+                .startObject("text").field("type", "string").field("similarity", CosineSimilarityProvider.NAME).endObject()
+                .endObject().endObject().endObject().string();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("type", mapping));
+        client().prepareIndex("test", "type", "1").setSource("text", "foo").get();
+        client().prepareIndex("test", "type", "4").setSource("text", "foo bar baz qux").get();
+        client().prepareIndex("test", "type", "16")
+                .setSource("text", "foo a1 a2 a3 a4 a5 a6 a7 a8 a9 a10 a11 a12 a13 a14 a15").get();
+        refresh();
+
+        // query vector (1, 2), its norm is sqrt(5)
+        SearchResponse response = client().prepareSearch("test")
+                .setQuery(QueryBuilders.boolQuery().disableCoord(true)
+                        .should(QueryBuilders.termQuery("text", "foo"))
+                        .should(QueryBuilders.termQuery("text", "bar").boost(2.0f)))
+                .execute().actionGet();
+        assertNoFailures(response);
+        assertHitCount(response, 3);
+        Map<String, Float> scores = new HashMap<String, Float>();
+        for (SearchHit hit : response.getHits()) {
+            scores.put(hit.getId(), hit.score());
+        }
+        // documents vectors of all terms with norms 1, 2 and 4
+        assertThat((double) scores.get("1"), closeTo(1.0 / Math.sqrt(5), 1.e-6));
+        assertThat((double) scores.get("4"), closeTo(3.0 / (Math.sqrt(5) * 2), 1.e-6));
+        assertThat((double) scores.get("16"), closeTo(1.0 / (Math.sqrt(5) * 4), 1.e-6));
+    }
+}
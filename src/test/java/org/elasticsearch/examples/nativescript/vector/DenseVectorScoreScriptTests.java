@@ -0,0 +1,227 @@
+package org.elasticsearch.examples.nativescript.vector;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertNoFailures;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.elasticsearch.action.index.IndexRequestBuilder;
+import org.elasticsearch.action.search.SearchPhaseExecutionException;
+import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.collect.MapBuilder;
+import org.elasticsearch.common.lucene.search.function.CombineFunction;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.examples.nativescript.query.DenseVectorLshQueryBuilder;
+import org.elasticsearch.examples.nativescript.script.AbstractSearchScriptTests;
+import org.elasticsearch.examples.nativescript.script.DenseVectorScoreScript;
+import org.elasticsearch.index.query.QueryBuilder;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.rescore.RescoreBuilder;
+import org.junit.Test;
+
+/**
+ * Compares the scores of the dense vector script and the dense_vector_lsh query with similarities computed on the
+ * client
+ */
+public class DenseVectorScoreScriptTests extends AbstractSearchScriptTests {
+
+    // not a multiple of four (or eight), to cover the tail of the unrolled loops
+    private static final int DIMS = 7;
+
+    private static final int NUM_DOCS = 50;
+
+    private static final int LSH_TABLES = 4;
+
+    private Map<String, float[]> vectors;
+
+    @Test
+    public void testMetrics() throws Exception {
+        indexData();
+
+        float[] query = randomVector(getRandom());
+        for (DenseVectorScoreScript.Metric metric : DenseVectorScoreScript.Metric.values()) {
+            SearchResponse searchResponse = client().prepareSearch("test").setQuery(vectorQuery("vector", query, metric))
+                    .setSize(NUM_DOCS + 1).execute().actionGet();
+            assertNoFailures(searchResponse);
+            assertThat(searchResponse.getHits().getTotalHits(), equalTo((long) NUM_DOCS + 1));
+            for (SearchHit hit : searchResponse.getHits()) {
+                float[] vector = vectors.get(hit.getId());
+                double expected = vector == null ? 0 : similarity(metric, vector, query);
+                assertThat(metric + " of doc " + hit.getId(), (double) hit.score(), closeTo(expected, 1.e-4));
+            }
+        }
+    }
+
+    @Test
+    public void testQuantized() throws Exception {
+        indexData();
+
+        float[] query = randomVector(getRandom());
+        for (DenseVectorScoreScript.Metric metric : DenseVectorScoreScript.Metric.values()) {
+            SearchResponse searchResponse = client().prepareSearch("test").setQuery(vectorQuery("int8", query, metric))
+                    .setSize(NUM_DOCS + 1).execute().actionGet();
+            assertNoFailures(searchResponse);
+            for (SearchHit hit : searchResponse.getHits()) {
+                float[] vector = vectors.get(hit.getId());
+                double expected = vector == null ? 0 : similarity(metric, vector, query);
+                // each value is off by at most 1/255 of the range of the vector
+                assertThat(metric + " of doc " + hit.getId(), (double) hit.score(), closeTo(expected, 0.05));
+            }
+        }
+
+        SearchResponse searchResponse = client().prepareSearch("test").setQuery(vectorQuery("bits", query, DenseVectorScoreScript.Metric.COSINE))
+                .setSize(NUM_DOCS + 1).execute().actionGet();
+        assertNoFailures(searchResponse);
+        for (SearchHit hit : searchResponse.getHits()) {
+            float[] vector = vectors.get(hit.getId());
+            double expected = vector == null ? 0 : Math.cos(Math.PI * hammingDistance(vector, query) / DIMS);
+            assertThat("hamming cosine of doc " + hit.getId(), (double) hit.score(), closeTo(expected, 1.e-4));
+        }
+
+        // the float vectors are a sub field of the mapping
+        Map<String, Object> floatMapping = client().admin().indices().prepareGetFieldMappings("test").setTypes("type")
+                .setFields("bits.float").get().fieldMappings("test", "type", "bits.float").sourceAsMap();
+        assertThat(floatMapping.get("float"), equalTo((Object) MapBuilder.<String, Object>newMapBuilder()
+                .put("type", "dense_vector").put("dims", DIMS).map()));
+
+        // the top documents by Hamming distance, rescored with the float vectors
+        SearchRequestBuilder rescored = client().prepareSearch("test").setQuery(vectorQuery("bits", query, DenseVectorScoreScript.Metric.COSINE))
+                .setRescorer(RescoreBuilder.queryRescorer(vectorQuery("bits.float", query, DenseVectorScoreScript.Metric.COSINE))
+                        .setQueryWeight(0).setRescoreQueryWeight(1))
+                .setRescoreWindow(20).setSize(10);
+        searchResponse = rescored.execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertThat(searchResponse.getHits().getHits().length, equalTo(10));
+        for (SearchHit hit : searchResponse.getHits()) {
+            double expected = similarity(DenseVectorScoreScript.Metric.COSINE, vectors.get(hit.getId()), query);
+            assertThat("rescored cosine of doc " + hit.getId(), (double) hit.score(), closeTo(expected, 1.e-4));
+        }
+    }
+
+    @Test
+    public void testDimensionMismatch() throws Exception {
+        indexData();
+
+        // a vector of 3 dimensions has the length of the bit vectors of 7 dimensions, it must be rejected nonetheless
+        float[] query = new float[]{1, 2, 3};
+        for (String field : new String[]{"bits", "int8", "bits.float"}) {
+            try {
+                client().prepareSearch("test").setQuery(vectorQuery(field, query, DenseVectorScoreScript.Metric.COSINE))
+                        .execute().actionGet();
+                fail("expected the search on field [" + field + "] to fail");
+            } catch (SearchPhaseExecutionException e) {
+                assertThat(e.getMessage(), containsString("dimensions"));
+            }
+        }
+    }
+
+    @Test
+    public void testLsh() throws Exception {
+        indexData();
+
+        // a document vector shares all buckets with itself, while most other documents share none
+        String id = Integer.toString(getRandom().nextInt(NUM_DOCS));
+        float[] query = vectors.get(id);
+        SearchResponse searchResponse = client().prepareSearch("test").setQuery(new DenseVectorLshQueryBuilder("lsh", query))
+                .setSize(NUM_DOCS).execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertThat(searchResponse.getHits().getTotalHits(), lessThan((long) NUM_DOCS));
+        assertThat(searchResponse.getHits().getAt(0).getId(), equalTo(id));
+        // the candidates get their exact scores
+        for (SearchHit hit : searchResponse.getHits()) {
+            double expected = similarity(DenseVectorScoreScript.Metric.COSINE, vectors.get(hit.getId()), query);
+            assertThat("cosine of doc " + hit.getId(), (double) hit.score(), closeTo(expected, 1.e-4));
+        }
+
+        searchResponse = client().prepareSearch("test").setQuery(new DenseVectorLshQueryBuilder("lsh", query).minMatches(LSH_TABLES))
+                .setSize(NUM_DOCS).execute().actionGet();
+        assertNoFailures(searchResponse);
+        assertThat(searchResponse.getHits().getAt(0).getId(), equalTo(id));
+        assertThat((double) searchResponse.getHits().getAt(0).score(), closeTo(1.0, 1.e-4));
+    }
+
+    private void indexData() throws Exception {
+        assertAcked(prepareCreate("test").addMapping("type", XContentFactory.jsonBuilder().startObject().startObject("type")
+                .startObject("properties")
+                .startObject("vector").field("type", "dense_vector").field("dims", DIMS).endObject()
+                .startObject("int8").field("type", "dense_vector").field("dims", DIMS).field("encoding", "int8").endObject()
+                .startObject("bits").field("type", "dense_vector").field("dims", DIMS).field("encoding", "bit")
+                .field("store_float", true).endObject()
+                .startObject("lsh").field("type", "dense_vector").field("dims", DIMS)
+                .startObject("lsh").field("tables", LSH_TABLES).field("bits", 4).endObject().endObject()
+                .endObject().endObject().endObject()));
+
+        Random random = getRandom();
+        vectors = new HashMap<String, float[]>();
+        List<IndexRequestBuilder> indexBuilders = new ArrayList<IndexRequestBuilder>();
+        for (int i = 0; i < NUM_DOCS; i++) {
+            float[] vector = randomVector(random);
+            vectors.put(Integer.toString(i), vector);
+            indexBuilders.add(client().prepareIndex("test", "type", Integer.toString(i))
+                    .setSource(XContentFactory.jsonBuilder().startObject()
+                            .field("vector", vector).field("int8", vector).field("bits", vector).field("lsh", vector)
+                            .endObject()));
+        }
+        // a document without a vector scores 0
+        indexBuilders.add(client().prepareIndex("test", "type", "missing")
+                .setSource(XContentFactory.jsonBuilder().startObject().field("name", "no vector").endObject()));
+        indexRandom(true, indexBuilders);
+    }
+
+    private static QueryBuilder vectorQuery(String field, float[] query, DenseVectorScoreScript.Metric metric) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("field", field);
+        params.put("vector", query);
+        params.put("metric", metric.name().toLowerCase());
+        return QueryBuilders.functionScoreQuery(QueryBuilders.matchAllQuery())
+                .add(ScoreFunctionBuilders.scriptFunction(DenseVectorScoreScript.SCRIPT_NAME, "native", params))
+                .boostMode(CombineFunction.REPLACE.getName());
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMS];
+        for (int i = 0; i < DIMS; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    private static int hammingDistance(float[] a, float[] b) {
+        int distance = 0;
+        for (int i = 0; i < a.length; i++) {
+            if ((a[i] > 0) != (b[i] > 0)) {
+                distance++;
+            }
+        }
+        return distance;
+    }
+
+    private static double similarity(DenseVectorScoreScript.Metric metric, float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0, l2 = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+            l2 += (a[i] - b[i]) * (a[i] - b[i]);
+        }
+        switch (metric) {
+        case COSINE:
+            return dot / Math.sqrt(normA * normB);
+        case DOT_PRODUCT:
+            return dot;
+        default:
+            return 1 / (1 + Math.sqrt(l2));
+        }
+    }
+}